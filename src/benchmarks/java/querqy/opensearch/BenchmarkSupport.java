@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.opensearch.index.query.QueryShardContext;
+import querqy.opensearch.query.BoostingQueries;
+import querqy.opensearch.query.MatchingQuery;
+import querqy.opensearch.query.PhraseBoostDefinition;
+import querqy.opensearch.query.PhraseBoosts;
+import querqy.opensearch.query.QuerqyQueryBuilder;
+import querqy.opensearch.query.Rewriter;
+import querqy.opensearch.rewriter.NumberUnitRewriterFactory;
+import querqy.opensearch.rewriter.ReplaceRewriterFactory;
+import querqy.opensearch.rewriter.SimpleCommonRulesRewriterFactory;
+import querqy.opensearch.rewriter.WordBreakCompoundRewriterFactory;
+import querqy.rewrite.RewriterFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Fixtures shared by the benchmarks: rewriters configured like in production, an in-memory index and a
+ * {@link QueryShardContext} that only provides what the Querqy query path needs from it.
+ */
+final class BenchmarkSupport {
+
+    static final String[] QUERY_STRINGS = {
+            "aaaaaaaaaaaa1",
+            "laptop bag",
+            "notebook aaaaaaaaaaaa42 sleeve",
+            "cheap laptopbag black",
+            "tv 55 zoll",
+            "aaaaaaaaaaaa99999 f"
+    };
+
+    static final List<String> QUERY_FIELDS = Arrays.asList("title^3", "description");
+
+    private static final String[] DOCS = {
+            "laptop bag black",
+            "laptopbag leather",
+            "notebook sleeve",
+            "tv television 55 zoll",
+            "available cheap laptop"
+    };
+
+    private BenchmarkSupport() {
+    }
+
+    static RewriterFactory commonRulesRewriter(final String rewriterId, final String rules) {
+        final SimpleCommonRulesRewriterFactory factory = new SimpleCommonRulesRewriterFactory(rewriterId);
+        factory.configure(Collections.singletonMap("rules", rules));
+        return factory.createRewriterFactory(null);
+    }
+
+    static RewriterFactory largeCommonRulesRewriter(final String rewriterId) {
+        return commonRulesRewriter(rewriterId, readResource("commonrules/rules-large.txt"));
+    }
+
+    static RewriterFactory boostingCommonRulesRewriter(final String rewriterId) {
+        return commonRulesRewriter(rewriterId, String.join("\n",
+                "laptop =>",
+                "  UP(100): bag",
+                "  DOWN(20): sleeve",
+                "notebook =>",
+                "  SYNONYM: laptop",
+                "  FILTER: available"));
+    }
+
+    static RewriterFactory replaceRewriter(final String rewriterId) {
+        final ReplaceRewriterFactory factory = new ReplaceRewriterFactory(rewriterId);
+        factory.configure(Collections.singletonMap("rules", "notebooks => notebook\nlaptops => laptop"));
+        return factory.createRewriterFactory(null);
+    }
+
+    /**
+     * Create replace rules that map the plural of a generated word to its singular, every tenth rule having a
+     * two-term input.
+     *
+     * @param numRules The number of rules
+     * @return The rules
+     */
+    static String largeReplaceRules(final int numRules) {
+        final StringBuilder rules = new StringBuilder(numRules * 24);
+        for (int i = 0; i < numRules; i++) {
+            final String word = replaceRulesWord(i);
+            if (i % 10 == 0) {
+                rules.append("mini ");
+            }
+            rules.append(word).append("s => ").append(word).append('\n');
+        }
+        return rules.toString();
+    }
+
+    static String replaceRulesWord(final int i) {
+        return "w" + Integer.toString(i, 36);
+    }
+
+    static RewriterFactory numberUnitRewriter(final String rewriterId) {
+        final NumberUnitRewriterFactory factory = new NumberUnitRewriterFactory(rewriterId);
+        factory.configure(Collections.singletonMap("config", readResource("numberunit/number-unit-config.json")));
+        return factory.createRewriterFactory(null);
+    }
+
+    static RewriterFactory wordBreakRewriter(final String rewriterId) {
+        final WordBreakCompoundRewriterFactory factory = new WordBreakCompoundRewriterFactory(rewriterId);
+        factory.configure(Collections.singletonMap("dictionaryField", "title"));
+        return factory.createRewriterFactory(null);
+    }
+
+    static QuerqyQueryBuilder queryBuilder(final String queryString, final List<String> rewriterIds,
+                                           final boolean phraseBoosts) {
+        final QuerqyQueryBuilder builder = new QuerqyQueryBuilder();
+        builder.setMatchingQuery(new MatchingQuery(queryString));
+        builder.setQueryFieldsAndBoostings(QUERY_FIELDS);
+        builder.setRewriters(rewriterIds.stream().map(Rewriter::new).collect(Collectors.toList()));
+        if (phraseBoosts) {
+            builder.setBoostingQueries(new BoostingQueries().phraseBoosts(new PhraseBoosts()
+                    .full(new PhraseBoostDefinition(0, "title^2"))
+                    .bigram(new PhraseBoostDefinition(1, "title", "description"))));
+        }
+        return builder;
+    }
+
+    static Analyzer queryAnalyzer() {
+        return new StandardAnalyzer();
+    }
+
+    static Directory createIndex() throws IOException {
+        final Directory directory = new ByteBuffersDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+            for (final String doc : DOCS) {
+                final Document document = new Document();
+                document.add(new TextField("title", doc, Field.Store.NO));
+                document.add(new TextField("description", doc, Field.Store.NO));
+                writer.addDocument(document);
+            }
+        }
+        return directory;
+    }
+
+    static QueryShardContext shardContext(final DirectoryReader reader) {
+        final QueryShardContext context = mock(QueryShardContext.class);
+        when(context.searcher()).thenReturn(new IndexSearcher(reader));
+        when(context.getIndexReader()).thenReturn(reader);
+        when(context.isCacheable()).thenReturn(true);
+        return context;
+    }
+
+    static String readResource(final String name) {
+        try (InputStream in = BenchmarkSupport.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalStateException("Resource not found: " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
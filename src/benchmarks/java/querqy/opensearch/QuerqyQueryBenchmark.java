@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.Directory;
+import org.opensearch.index.query.QueryShardContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import querqy.lucene.LuceneSearchEngineRequestAdapter;
+import querqy.opensearch.query.QuerqyQueryBuilder;
+import querqy.rewrite.RewriteChain;
+import querqy.rewrite.RewriterFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the full query path of {@link QuerqyProcessor}: parsing, rewriting, term analysis and building the
+ * Lucene query, for an increasing number of rewriters in the chain and with/without phrase boosts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class QuerqyQueryBenchmark {
+
+    @Param({"0", "1", "3", "4"})
+    public int rewriters;
+
+    @Param({"false", "true"})
+    public boolean phraseBoosts;
+
+    private final QuerqyProcessor querqyProcessor = new QuerqyProcessor(null, null);
+
+    private Directory directory;
+    private DirectoryReader reader;
+    private QueryShardContext context;
+    private Analyzer analyzer;
+    private RewriteChain rewriteChain;
+    private QuerqyQueryBuilder[] queryBuilders;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkSupport.createIndex();
+        reader = DirectoryReader.open(directory);
+        context = BenchmarkSupport.shardContext(reader);
+        analyzer = BenchmarkSupport.queryAnalyzer();
+
+        final List<RewriterFactory> factories = new ArrayList<>(rewriters);
+        final List<String> rewriterIds = new ArrayList<>(rewriters);
+        if (rewriters > 0) {
+            factories.add(BenchmarkSupport.largeCommonRulesRewriter("common_rules_large"));
+            rewriterIds.add("common_rules_large");
+        }
+        if (rewriters > 1) {
+            factories.add(BenchmarkSupport.replaceRewriter("replace"));
+            rewriterIds.add("replace");
+            factories.add(BenchmarkSupport.boostingCommonRulesRewriter("common_rules_boosts"));
+            rewriterIds.add("common_rules_boosts");
+        }
+        if (rewriters > 3) {
+            factories.add(BenchmarkSupport.wordBreakRewriter("word_break"));
+            rewriterIds.add("word_break");
+        }
+        rewriteChain = new RewriteChain(factories);
+
+        queryBuilders = new QuerqyQueryBuilder[BenchmarkSupport.QUERY_STRINGS.length];
+        for (int i = 0; i < queryBuilders.length; i++) {
+            queryBuilders[i] = BenchmarkSupport.queryBuilder(BenchmarkSupport.QUERY_STRINGS[i], rewriterIds,
+                    phraseBoosts);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        analyzer.close();
+        reader.close();
+        directory.close();
+    }
+
+    @Benchmark
+    public Query buildQuery() throws LuceneSearchEngineRequestAdapter.SyntaxException {
+        final int i = next;
+        next = (i + 1) % queryBuilders.length;
+        return querqyProcessor.buildQuery(queryBuilders[i], rewriteChain, context, null, null, analyzer,
+                null);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import querqy.model.ExpandedQuery;
+import querqy.opensearch.rewriter.ReplaceRewriterFactory;
+import querqy.opensearch.rewriter.dictionary.MappedRuleDictionary;
+import querqy.parser.WhiteSpaceQuerqyParser;
+import querqy.rewrite.RewriterFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * <p>Compares the storage options of the replace rewriter for large rule sets: the rewrite latency and, printed
+ * when the trial is set up, the heap that is retained by the compiled rules.</p>
+ *
+ * <p>Run with a large heap for a million rules, e.g. {@code ./gradlew jmh -Pjmh.includes=ReplaceRewriterBenchmark}
+ * with {@code -Xmx4g} in the forked JVM's arguments.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class ReplaceRewriterBenchmark {
+
+    @Param({ReplaceRewriterFactory.STORAGE_HEAP, ReplaceRewriterFactory.STORAGE_FST,
+            ReplaceRewriterFactory.STORAGE_MMAP})
+    public String storage;
+
+    @Param({"10000", "1000000"})
+    public int numRules;
+
+    private final WhiteSpaceQuerqyParser parser = new WhiteSpaceQuerqyParser();
+
+    private Path dictionaryDirectory;
+    private String rules;
+    private RewriterFactory rewriterFactory;
+    private String[] queryStrings;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dictionaryDirectory = Files.createTempDirectory("querqy-benchmark");
+        MappedRuleDictionary.initDirectory(dictionaryDirectory);
+        rules = BenchmarkSupport.largeReplaceRules(numRules);
+
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        final long heapBefore = memory.getHeapMemoryUsage().getUsed();
+        final ReplaceRewriterFactory factory = configure();
+        System.gc();
+        final long heapAfter = memory.getHeapMemoryUsage().getUsed();
+        rewriterFactory = factory.createRewriterFactory(null);
+        System.out.printf("%n%s storage, %d rules: retained heap %d KB, estimated %d KB%n", storage, numRules,
+                (heapAfter - heapBefore) / 1024L, factory.ramBytesUsed() / 1024L);
+
+        final String hit = BenchmarkSupport.replaceRulesWord(numRules / 2 + 1);
+        final String twoTermHit = BenchmarkSupport.replaceRulesWord(numRules / 2);
+        queryStrings = new String[] {
+                hit + "s",
+                "laptop bag",
+                "cheap " + hit + "s black",
+                "mini " + twoTermHit + "s case",
+                "mini " + hit,
+                BenchmarkSupport.replaceRulesWord(numRules + 1) + "s"
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        rewriterFactory = null;
+        System.gc();
+        try (Stream<Path> files = Files.list(dictionaryDirectory)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(dictionaryDirectory);
+    }
+
+    @Benchmark
+    public void rewrite(final Blackhole blackhole) {
+        final int i = next;
+        next = (i + 1) % queryStrings.length;
+        final ExpandedQuery query = new ExpandedQuery(parser.parse(queryStrings[i]));
+        blackhole.consume(rewriterFactory.createRewriter(query, null).rewrite(query));
+    }
+
+    /**
+     * The time to compile the rules when a rewriter is saved or reloaded
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public ReplaceRewriterFactory configure() {
+        final Map<String, Object> config = new HashMap<>();
+        config.put("rules", rules);
+        config.put("storage", storage);
+        final ReplaceRewriterFactory factory = new ReplaceRewriterFactory("replace");
+        factory.setDictionaryDirectory(dictionaryDirectory);
+        factory.configure(config);
+        return factory;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.store.Directory;
+import org.opensearch.index.query.QueryShardContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import querqy.model.ExpandedQuery;
+import querqy.opensearch.query.QuerqyQueryBuilder;
+import querqy.parser.WhiteSpaceQuerqyParser;
+import querqy.rewrite.RewriteChain;
+import querqy.rewrite.RewriterFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single rewriter in isolation: parsing the user query and applying the rewrite chain, without
+ * building the Lucene query.
+ *
+ * <p>The number-unit rewriter is only measured here: the range and function score queries that it creates need
+ * real field mappings to be turned into Lucene queries.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RewriterBenchmark {
+
+    @Param({"common_rules", "replace", "number_unit", "word_break"})
+    public String rewriter;
+
+    private final WhiteSpaceQuerqyParser parser = new WhiteSpaceQuerqyParser();
+
+    private Directory directory;
+    private DirectoryReader reader;
+    private Analyzer analyzer;
+    private RewriteChain rewriteChain;
+    private DismaxSearchEngineRequestAdapter[] requestAdapters;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkSupport.createIndex();
+        reader = DirectoryReader.open(directory);
+        final QueryShardContext context = BenchmarkSupport.shardContext(reader);
+        analyzer = BenchmarkSupport.queryAnalyzer();
+
+        rewriteChain = new RewriteChain(Collections.singletonList(createRewriterFactory()));
+
+        requestAdapters = new DismaxSearchEngineRequestAdapter[BenchmarkSupport.QUERY_STRINGS.length];
+        for (int i = 0; i < requestAdapters.length; i++) {
+            final QuerqyQueryBuilder builder = BenchmarkSupport.queryBuilder(BenchmarkSupport.QUERY_STRINGS[i],
+                    Collections.singletonList(rewriter), false);
+            requestAdapters[i] = new DismaxSearchEngineRequestAdapter(builder, rewriteChain, context, null, null,
+                    analyzer);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        analyzer.close();
+        reader.close();
+        directory.close();
+    }
+
+    @Benchmark
+    public void rewrite(final Blackhole blackhole) {
+        final int i = next;
+        next = (i + 1) % requestAdapters.length;
+        final ExpandedQuery query = new ExpandedQuery(parser.parse(BenchmarkSupport.QUERY_STRINGS[i]));
+        blackhole.consume(rewriteChain.rewrite(query, requestAdapters[i]));
+        blackhole.consume(query);
+    }
+
+    private RewriterFactory createRewriterFactory() {
+        switch (rewriter) {
+            case "common_rules": return BenchmarkSupport.largeCommonRulesRewriter(rewriter);
+            case "replace": return BenchmarkSupport.replaceRewriter(rewriter);
+            case "number_unit": return BenchmarkSupport.numberUnitRewriter(rewriter);
+            case "word_break": return BenchmarkSupport.wordBreakRewriter(rewriter);
+            default: throw new IllegalArgumentException("Unknown rewriter: " + rewriter);
+        }
+    }
+}
@@ -21,12 +21,54 @@ package querqy.opensearch;
 
 import org.opensearch.common.cache.Cache;
 import org.opensearch.common.cache.CacheBuilder;
+import org.opensearch.common.cache.RemovalListener;
 import org.opensearch.common.unit.TimeValue;
 
+import java.util.function.ToLongBiFunction;
+
 public class Caches {
 
     public static <K, V> Cache<K, V> buildCache(final TimeValue expireAfterWrite, final TimeValue expireAfterAccess) {
+        return Caches.<K, V>builder(expireAfterWrite, expireAfterAccess).build();
+    }
+
+    /**
+     * Build a cache that evicts the least recently used entries once it holds more than maxSize entries.
+     *
+     * @param maxSize The maximum number of entries
+     * @param <K> The key type
+     * @param <V> The value type
+     * @return The cache
+     */
+    public static <K, V> Cache<K, V> buildCache(final long maxSize) {
+        return CacheBuilder.<K, V>builder().setMaximumWeight(maxSize).build();
+    }
+
+    /**
+     * Build a cache that evicts entries once their total weight exceeds maxWeight.
+     *
+     * @param expireAfterWrite Expire entries after write, 0 for no expiry
+     * @param expireAfterAccess Expire entries after access, 0 for no expiry
+     * @param maxWeight The maximum total weight of the entries, 0 or less for no limit
+     * @param weigher Calculates the weight of an entry
+     * @param removalListener Notified for each entry that was removed from the cache
+     * @param <K> The key type
+     * @param <V> The value type
+     * @return The cache
+     */
+    public static <K, V> Cache<K, V> buildCache(final TimeValue expireAfterWrite, final TimeValue expireAfterAccess,
+                                                final long maxWeight, final ToLongBiFunction<K, V> weigher,
+                                                final RemovalListener<K, V> removalListener) {
+
+        final CacheBuilder<K, V> builder = builder(expireAfterWrite, expireAfterAccess);
+        if (maxWeight > 0) {
+            builder.setMaximumWeight(maxWeight);
+        }
+        return builder.weigher(weigher).removalListener(removalListener).build();
+    }
 
+    private static <K, V> CacheBuilder<K, V> builder(final TimeValue expireAfterWrite,
+                                                     final TimeValue expireAfterAccess) {
         final CacheBuilder<K, V> builder = CacheBuilder.builder();
         if (expireAfterWrite.nanos() > 0) {
             builder.setExpireAfterWrite(expireAfterWrite);
@@ -34,7 +76,7 @@ public class Caches {
         if (expireAfterAccess.nanos() > 0) {
             builder.setExpireAfterAccess(expireAfterAccess);
         }
-        return builder.build();
+        return builder;
     }
 
 }
@@ -34,6 +34,7 @@ import org.opensearch.index.mapper.MappedFieldType;
 import org.opensearch.index.query.QueryShardContext;
 import querqy.opensearch.infologging.OpenSearchInfoLoggingContext;
 import querqy.opensearch.infologging.InfoLoggingSpecProvider;
+import querqy.opensearch.profile.QuerqyProfileBreakdown;
 import querqy.opensearch.query.BoostingQueries;
 import querqy.opensearch.query.Generated;
 import querqy.opensearch.query.InfoLoggingSpec;
@@ -77,15 +78,57 @@ public class DismaxSearchEngineRequestAdapter implements LuceneSearchEngineReque
     final OpenSearchInfoLoggingContext infoLoggingContext;
     private final QuerqyQueryBuilder queryBuilder;
     private final Map<String, Object> context = new HashMap<>();
+    private final TermQueryCache termQueryCache;
+    private final QuerqyProfileBreakdown profileBreakdown;
+    private Analyzer queryAnalyzer;
 
     public DismaxSearchEngineRequestAdapter(final QuerqyQueryBuilder queryBuilder,
                                             final RewriteChain rewriteChain,
                                             final QueryShardContext shardContext,
                                             final InfoLogging infoLogging) {
+        this(queryBuilder, rewriteChain, shardContext, infoLogging, null, null);
+    }
+
+    /**
+     * @param queryBuilder The query builder
+     * @param rewriteChain The rewrite chain
+     * @param shardContext The shard context
+     * @param infoLogging The info logging or null
+     * @param termQueryCache The term query cache or null
+     * @param queryAnalyzer The analyzer for the query fields or null to derive it from the shard context
+     */
+    public DismaxSearchEngineRequestAdapter(final QuerqyQueryBuilder queryBuilder,
+                                            final RewriteChain rewriteChain,
+                                            final QueryShardContext shardContext,
+                                            final InfoLogging infoLogging,
+                                            final TermQueryCache termQueryCache,
+                                            final Analyzer queryAnalyzer) {
+        this(queryBuilder, rewriteChain, shardContext, infoLogging, termQueryCache, queryAnalyzer, null);
+    }
+
+    /**
+     * @param queryBuilder The query builder
+     * @param rewriteChain The rewrite chain
+     * @param shardContext The shard context
+     * @param infoLogging The info logging or null
+     * @param termQueryCache The term query cache or null
+     * @param queryAnalyzer The analyzer for the query fields or null to derive it from the shard context
+     * @param profileBreakdown Records the time spent in the phases of building the query, or null
+     */
+    public DismaxSearchEngineRequestAdapter(final QuerqyQueryBuilder queryBuilder,
+                                            final RewriteChain rewriteChain,
+                                            final QueryShardContext shardContext,
+                                            final InfoLogging infoLogging,
+                                            final TermQueryCache termQueryCache,
+                                            final Analyzer queryAnalyzer,
+                                            final QuerqyProfileBreakdown profileBreakdown) {
         this.shardContext = shardContext;
         this.rewriteChain = rewriteChain;
         this.queryBuilder = queryBuilder;
         this.infoLoggingContext = (infoLogging != null) ? new OpenSearchInfoLoggingContext(infoLogging, this) : null;
+        this.termQueryCache = termQueryCache;
+        this.queryAnalyzer = queryAnalyzer;
+        this.profileBreakdown = profileBreakdown;
     }
 
     /**
@@ -135,9 +178,11 @@ public class DismaxSearchEngineRequestAdapter implements LuceneSearchEngineReque
      */
     @Override
     public Analyzer getQueryAnalyzer() {
-        return new MapperAnalyzerWrapper(mappedFieldType -> mappedFieldType.getTextSearchInfo().getSearchAnalyzer());
-
-
+        if (queryAnalyzer == null) {
+            queryAnalyzer = new MapperAnalyzerWrapper(
+                    mappedFieldType -> mappedFieldType.getTextSearchInfo().getSearchAnalyzer());
+        }
+        return queryAnalyzer;
     }
 
     /**
@@ -147,8 +192,7 @@ public class DismaxSearchEngineRequestAdapter implements LuceneSearchEngineReque
      */
     @Override
     public Optional<TermQueryCache> getTermQueryCache() {
-        // TODO
-        return Optional.empty();
+        return Optional.ofNullable(termQueryCache);
     }
 
     /**
@@ -310,8 +354,12 @@ public class DismaxSearchEngineRequestAdapter implements LuceneSearchEngineReque
                     return boosts;
                 }
 
+                final long start = System.nanoTime();
                 makePhraseFieldsBoostQuery(userQuery, phraseBoostFieldParams, phraseBoosts.getTieBreaker(),
                         getQueryAnalyzer()).ifPresent(boosts::add);
+                if (profileBreakdown != null) {
+                    profileBreakdown.addPhraseBoostNanos(System.nanoTime() - start);
+                }
                 return boosts;
 
             }
@@ -349,6 +397,20 @@ public class DismaxSearchEngineRequestAdapter implements LuceneSearchEngineReque
     @Override
     public Query rawQueryToQuery(final RawQuery rawQuery) throws SyntaxException {
 
+        if (profileBreakdown == null) {
+            return parseRawQuery(rawQuery);
+        }
+        final long start = System.nanoTime();
+        try {
+            return parseRawQuery(rawQuery);
+        } finally {
+            profileBreakdown.addRawQueryNanos(System.nanoTime() - start);
+        }
+
+    }
+
+    private Query parseRawQuery(final RawQuery rawQuery) throws SyntaxException {
+
         try {
             if (rawQuery instanceof QueryBuilderRawQuery) {
                 return ((QueryBuilderRawQuery) rawQuery).getQueryBuilder().toQuery(shardContext);
@@ -560,6 +622,13 @@ public class DismaxSearchEngineRequestAdapter implements LuceneSearchEngineReque
         return false;
     }
 
+    /**
+     * @return The profile breakdown of this request or null if the request isn't profiled
+     */
+    public QuerqyProfileBreakdown getProfileBreakdown() {
+        return profileBreakdown;
+    }
+
     public QueryShardContext getSearchExecutionContext() {
         return shardContext;
     }
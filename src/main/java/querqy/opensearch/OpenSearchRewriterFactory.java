@@ -19,36 +19,120 @@
 
 package querqy.opensearch;
 
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.opensearch.OpenSearchException;
 import org.opensearch.SpecialPermission;
 import org.opensearch.index.shard.IndexShard;
 import querqy.opensearch.rewriterstore.LoadRewriterConfig;
 import querqy.rewrite.RewriterFactory;
 
+import java.nio.file.Path;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.List;
 import java.util.Map;
 
-public abstract class OpenSearchRewriterFactory {
+public abstract class OpenSearchRewriterFactory implements Accountable {
+
+    /**
+     * The heap estimate for rewriters that don't provide their own estimate
+     */
+    public static final long DEFAULT_RAM_BYTES_USED = 16L * 1024L;
+
+    // per rule: the input trie path, the instructions and the parsed right-hand side terms
+    private static final long RAM_BYTES_PER_RULE = 512L;
+    // the characters of the rules are held in the trie, the terms and the instructions
+    private static final long RAM_BYTES_PER_RULES_CHAR = 8L;
 
     protected final String rewriterId;
 
+    protected Path dictionaryDirectory;
+
     protected OpenSearchRewriterFactory(final String rewriterId) {
         this.rewriterId = rewriterId;
     }
 
+    /**
+     * Set the directory in the node's data path in which rewriters can keep their rule dictionaries. It is called
+     * before {@link #configure(Map)} and it is not set if the node has no data path.
+     *
+     * @param dictionaryDirectory The dictionary directory of the node
+     */
+    public void setDictionaryDirectory(final Path dictionaryDirectory) {
+        this.dictionaryDirectory = dictionaryDirectory;
+    }
+
     public abstract void configure(Map<String, Object> config) throws OpenSearchException;
 
     public abstract List<String> validateConfiguration(Map<String, Object> config);
 
+    /**
+     * <p>Create the {@link RewriterFactory} to be used for the given shard.</p>
+     *
+     * <p>A configured instance is shared by all shards of a node (see {@link RewriterFactoryRegistry}) and this
+     * method is called once per shard. Implementations that don't need shard-specific state should return the same,
+     * pre-built RewriterFactory for all shards instead of compiling their configuration again.</p>
+     *
+     * @param indexShard The shard
+     * @return The RewriterFactory for this shard
+     * @throws OpenSearchException if the RewriterFactory cannot be created
+     */
     public abstract RewriterFactory createRewriterFactory(IndexShard indexShard) throws OpenSearchException;
 
     public String getRewriterId() {
         return rewriterId;
     }
 
+    /**
+     * Rewriters whose output depends on the shard's index reader (and not just on the query and the rewriter
+     * configuration) must return true so that their output is never cached beyond the lifetime of a reader.
+     *
+     * @return true iff the rewriter output depends on the index reader
+     */
+    public boolean isReaderDependent() {
+        return false;
+    }
+
+    /**
+     * <p>Estimate the heap that is retained by this configured instance.</p>
+     *
+     * <p>The estimate is used to bound the rewriter cache and it is accounted against the Querqy circuit breaker.
+     * Rewriters that load large rule sets or dictionaries should override this method.</p>
+     *
+     * @return The estimated retained heap in bytes
+     */
+    @Override
+    public long ramBytesUsed() {
+        return DEFAULT_RAM_BYTES_USED;
+    }
+
+    /**
+     * Estimate the retained heap of a rewriter that was compiled from line-based rules.
+     *
+     * @param rules The rules
+     * @return The estimated retained heap in bytes
+     */
+    protected static long estimateRulesRamBytesUsed(final String rules) {
+        if (rules == null || rules.isEmpty()) {
+            return DEFAULT_RAM_BYTES_USED;
+        }
+        long lines = 1;
+        for (int i = 0, len = rules.length(); i < len; i++) {
+            if (rules.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return DEFAULT_RAM_BYTES_USED + RamUsageEstimator.alignObjectSize(lines * RAM_BYTES_PER_RULE
+                + rules.length() * RAM_BYTES_PER_RULES_CHAR);
+    }
+
     public static OpenSearchRewriterFactory loadConfiguredInstance(final LoadRewriterConfig instanceDescription) {
+        return loadConfiguredInstance(instanceDescription, null);
+    }
+
+    public static OpenSearchRewriterFactory loadConfiguredInstance(final LoadRewriterConfig instanceDescription,
+                                                                   final Path dictionaryDirectory) {
 
         final String classField = instanceDescription.getRewriterClassName();
         if (classField == null) {
@@ -82,6 +166,7 @@ public abstract class OpenSearchRewriterFactory {
                         throw new RuntimeException(e);
                     }
 
+                    factory.setDictionaryDirectory(dictionaryDirectory);
                     factory.configure(config);
                     return factory;
 
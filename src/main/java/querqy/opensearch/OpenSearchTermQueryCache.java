@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch;
+
+import org.opensearch.common.cache.Cache;
+import org.opensearch.common.cache.CacheBuilder;
+import org.opensearch.common.settings.Setting;
+import org.opensearch.core.common.unit.ByteSizeValue;
+import org.opensearch.core.index.Index;
+import querqy.lucene.rewrite.cache.CacheKey;
+import querqy.lucene.rewrite.cache.TermQueryCache;
+import querqy.lucene.rewrite.cache.TermQueryCacheValue;
+
+import java.util.Objects;
+
+/**
+ * <p>A node-level cache of the analyzed term queries that Querqy creates for the terms that the rewriters generate
+ * (synonyms, boost and filter terms etc.).</p>
+ *
+ * <p>The analysis of a term only depends on the field analyzer, which is why the entries are scoped to the index and
+ * its mapping version. Terms from the user query are not cached as their number is unbounded and they would
+ * replace the frequently generated terms. The cache is bounded by the number of entries and by their estimated heap
+ * usage.</p>
+ */
+public class OpenSearchTermQueryCache {
+
+    /**
+     * The maximum number of cached term queries per node, 0 disables the cache
+     */
+    public static final Setting<Integer> CACHE_SIZE = Setting.intSetting(
+            "querqy.caches.term_query.size",
+            0, // disabled by default
+            0,
+            Setting.Property.NodeScope);
+
+    public static final Setting<ByteSizeValue> CACHE_MAX_BYTES = Setting.memorySizeSetting(
+            "querqy.caches.term_query.max_bytes",
+            "1%",
+            Setting.Property.NodeScope);
+
+    // the factory and the analyzed terms of an entry, the key is added per entry
+    static final long ENTRY_OVERHEAD_BYTES = 512L;
+
+    private final Cache<Key, TermQueryCacheValue> values;
+
+    public OpenSearchTermQueryCache(final int maxEntries, final long maxBytes) {
+        // an entry weighs at least maxBytes / maxEntries so that the cache is bounded by both
+        final long minEntryWeight = Math.max(1L, maxBytes / maxEntries);
+        values = CacheBuilder.<Key, TermQueryCacheValue>builder()
+                .setMaximumWeight(Math.max(maxBytes, maxEntries))
+                .weigher((key, value) -> Math.max(minEntryWeight, key.ramBytesUsed()))
+                .build();
+    }
+
+    /**
+     * Get a view of this cache for an index.
+     *
+     * @param index The index
+     * @param mappingVersion The current mapping version of the index
+     * @return A TermQueryCache for the index
+     */
+    public TermQueryCache forIndex(final Index index, final long mappingVersion) {
+        return new TermQueryCache() {
+
+            @Override
+            public void put(final CacheKey cacheKey, final TermQueryCacheValue value) {
+                if (cacheKey.term.isGenerated()) {
+                    values.put(new Key(index, mappingVersion, cacheKey), value);
+                }
+            }
+
+            @Override
+            public TermQueryCacheValue get(final CacheKey cacheKey) {
+                return cacheKey.term.isGenerated() ? values.get(new Key(index, mappingVersion, cacheKey)) : null;
+            }
+        };
+    }
+
+    public void clear() {
+        values.invalidateAll();
+    }
+
+    public long count() {
+        return values.count();
+    }
+
+    public long weight() {
+        return values.weight();
+    }
+
+    public Cache.CacheStats stats() {
+        return values.stats();
+    }
+
+    static class Key {
+
+        final Index index;
+        final long mappingVersion;
+        final CacheKey cacheKey;
+        private final int hashCode;
+
+        Key(final Index index, final long mappingVersion, final CacheKey cacheKey) {
+            this.index = index;
+            this.mappingVersion = mappingVersion;
+            this.cacheKey = cacheKey;
+            hashCode = Objects.hash(index, mappingVersion, cacheKey);
+        }
+
+        long ramBytesUsed() {
+            return ENTRY_OVERHEAD_BYTES + 2L * (cacheKey.fieldname.length() + cacheKey.term.getValue().length());
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final Key key = (Key) o;
+            return mappingVersion == key.mappingVersion
+                    && index.equals(key.index)
+                    && cacheKey.equals(key.cacheKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -23,10 +23,14 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.unmodifiableList;
 import static querqy.opensearch.rewriterstore.Constants.SETTINGS_QUERQY_INDEX_NUM_REPLICAS;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.opensearch.action.ActionRequest;
 import org.opensearch.core.action.ActionResponse;
 import org.opensearch.client.Client;
+import org.opensearch.cluster.NamedDiff;
 import org.opensearch.cluster.metadata.IndexNameExpressionResolver;
+import org.opensearch.cluster.metadata.Metadata;
 import org.opensearch.cluster.node.DiscoveryNodes;
 import org.opensearch.cluster.service.ClusterService;
 import org.opensearch.core.common.io.stream.NamedWriteableRegistry;
@@ -35,48 +39,105 @@ import org.opensearch.common.settings.IndexScopedSettings;
 import org.opensearch.common.settings.Setting;
 import org.opensearch.common.settings.Settings;
 import org.opensearch.common.settings.SettingsFilter;
+import org.opensearch.common.util.concurrent.OpenSearchExecutors;
+import org.opensearch.common.util.concurrent.ThreadContext;
+import org.opensearch.core.ParseField;
+import org.opensearch.core.common.breaker.CircuitBreaker;
+import org.opensearch.core.common.unit.ByteSizeValue;
 import org.opensearch.core.xcontent.NamedXContentRegistry;
 import org.opensearch.env.Environment;
 import org.opensearch.env.NodeEnvironment;
 import org.opensearch.index.IndexModule;
 import org.opensearch.index.query.QueryBuilder;
+import org.opensearch.indices.breaker.BreakerSettings;
 import org.opensearch.plugins.ActionPlugin;
+import org.opensearch.plugins.CircuitBreakerPlugin;
+import org.opensearch.plugins.NetworkPlugin;
 import org.opensearch.plugins.Plugin;
 import org.opensearch.plugins.SearchPlugin;
 import org.opensearch.repositories.RepositoriesService;
 import org.opensearch.rest.RestController;
 import org.opensearch.rest.RestHandler;
 import org.opensearch.script.ScriptService;
+import org.opensearch.threadpool.ExecutorBuilder;
+import org.opensearch.threadpool.FixedExecutorBuilder;
 import org.opensearch.threadpool.ThreadPool;
+import org.opensearch.transport.TransportInterceptor;
 import org.opensearch.watcher.ResourceWatcherService;
+import querqy.opensearch.infologging.AsyncLog4jSink;
 import querqy.opensearch.infologging.Log4jSink;
+import querqy.opensearch.infologging.SlowRewriteLog;
 import querqy.opensearch.query.QuerqyQueryBuilder;
+import querqy.opensearch.rewriter.dictionary.MappedRuleDictionary;
+import querqy.opensearch.rewriterstore.BulkPutRewriterAction;
 import querqy.opensearch.rewriterstore.DeleteRewriterAction;
 import querqy.opensearch.rewriterstore.NodesClearRewriterCacheAction;
 import querqy.opensearch.rewriterstore.NodesReloadRewriterAction;
+import querqy.opensearch.rewriterstore.PatchRewriterAction;
+import querqy.opensearch.rewriterstore.RestPatchRewriterAction;
+import querqy.opensearch.rewriterstore.RestBulkPutRewriterAction;
 import querqy.opensearch.rewriterstore.RestDeleteRewriterAction;
 import querqy.opensearch.rewriterstore.RestPutRewriterAction;
 import querqy.opensearch.rewriterstore.PutRewriterAction;
+import querqy.opensearch.rewriterstore.RewritersMetadata;
+import querqy.opensearch.rewriterstore.TransportBulkPutRewriterAction;
 import querqy.opensearch.rewriterstore.TransportDeleteRewriterAction;
 import querqy.opensearch.rewriterstore.TransportNodesClearRewriterCacheAction;
 import querqy.opensearch.rewriterstore.TransportNodesReloadRewriterAction;
+import querqy.opensearch.rewriterstore.TransportPatchRewriterAction;
 import querqy.opensearch.rewriterstore.TransportPutRewriterAction;
+import querqy.opensearch.rewriterstore.TransportUpdateRewritersMetadataAction;
+import querqy.opensearch.rewriterstore.UpdateRewritersMetadataAction;
+import querqy.opensearch.stats.NodesQuerqyStatsAction;
+import querqy.opensearch.stats.RestQuerqyStatsAction;
+import querqy.opensearch.stats.TransportNodesQuerqyStatsAction;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.function.Supplier;
 
-public class QuerqyPlugin extends Plugin implements SearchPlugin, ActionPlugin {
+public class QuerqyPlugin extends Plugin
+        implements SearchPlugin, ActionPlugin, CircuitBreakerPlugin, NetworkPlugin {
 
+    private static final Logger LOGGER = LogManager.getLogger(QuerqyPlugin.class);
+
+    /**
+     * The name of the thread pool in which rewriter configurations are compiled
+     */
+    public static final String REWRITER_LOADER_THREAD_POOL_NAME = "querqy_rewriter_loader";
+
+    /**
+     * The name of the circuit breaker that accounts for the estimated heap of the compiled rewriters
+     */
+    public static final String CIRCUIT_BREAKER_NAME = "querqy";
+
+    public static final Setting<ByteSizeValue> CIRCUIT_BREAKER_LIMIT = Setting.memorySizeSetting(
+            "querqy.breaker.rewriter.limit",
+            "10%",
+            Setting.Property.NodeScope);
 
     private final QuerqyProcessor querqyProcessor;
+    private final RewriterFactoryRegistry rewriterFactoryRegistry;
     private final RewriterShardContexts rewriterShardContexts;
+    private final AsyncLog4jSink asyncInfoLoggingSink;
 
     public QuerqyPlugin(final Settings settings) {
-        rewriterShardContexts = new RewriterShardContexts(settings);
-        querqyProcessor = new QuerqyProcessor(rewriterShardContexts, new Log4jSink());
+        rewriterFactoryRegistry = new RewriterFactoryRegistry(settings);
+        rewriterShardContexts = new RewriterShardContexts(settings, rewriterFactoryRegistry);
+        if (AsyncLog4jSink.ENABLED.get(settings)) {
+            asyncInfoLoggingSink = new AsyncLog4jSink(AsyncLog4jSink.BUFFER_SIZE.get(settings),
+                    AsyncLog4jSink.OVERFLOW_POLICY.get(settings));
+            rewriterFactoryRegistry.getStats().setInfoLoggingSink(asyncInfoLoggingSink);
+            querqyProcessor = new QuerqyProcessor(rewriterShardContexts, asyncInfoLoggingSink);
+        } else {
+            asyncInfoLoggingSink = null;
+            querqyProcessor = new QuerqyProcessor(rewriterShardContexts, new Log4jSink());
+        }
     }
 
     @Override
@@ -106,7 +167,8 @@ public class QuerqyPlugin extends Plugin implements SearchPlugin, ActionPlugin {
                                              final IndexNameExpressionResolver indexNameExpressionResolver,
                                              final Supplier<DiscoveryNodes> nodesInCluster) {
 
-        return Arrays.asList(new RestPutRewriterAction(), new RestDeleteRewriterAction());
+        return Arrays.asList(new RestPutRewriterAction(), new RestPatchRewriterAction(), new RestBulkPutRewriterAction(),
+                new RestDeleteRewriterAction(), new RestQuerqyStatsAction());
 
     }
 
@@ -114,10 +176,15 @@ public class QuerqyPlugin extends Plugin implements SearchPlugin, ActionPlugin {
     public List<ActionHandler<? extends ActionRequest, ? extends ActionResponse>> getActions() {
         return unmodifiableList(asList(
                 new ActionHandler<>(PutRewriterAction.INSTANCE, TransportPutRewriterAction.class),
+                new ActionHandler<>(PatchRewriterAction.INSTANCE, TransportPatchRewriterAction.class),
+                new ActionHandler<>(BulkPutRewriterAction.INSTANCE, TransportBulkPutRewriterAction.class),
                 new ActionHandler<>(NodesReloadRewriterAction.INSTANCE, TransportNodesReloadRewriterAction.class),
                 new ActionHandler<>(DeleteRewriterAction.INSTANCE, TransportDeleteRewriterAction.class),
                 new ActionHandler<>(NodesClearRewriterCacheAction.INSTANCE, TransportNodesClearRewriterCacheAction
-                        .class)
+                        .class),
+                new ActionHandler<>(UpdateRewritersMetadataAction.INSTANCE,
+                        TransportUpdateRewritersMetadataAction.class),
+                new ActionHandler<>(NodesQuerqyStatsAction.INSTANCE, TransportNodesQuerqyStatsAction.class)
 
         ));
     }
@@ -132,13 +199,114 @@ public class QuerqyPlugin extends Plugin implements SearchPlugin, ActionPlugin {
                                                final NamedWriteableRegistry namedWriteableRegistry,
                                                IndexNameExpressionResolver indexNameExpressionResolver,
                                                Supplier<RepositoriesService> repositoriesServiceSupplier) {
-        return Arrays.asList(rewriterShardContexts, querqyProcessor);
+        rewriterFactoryRegistry.setClient(client);
+        rewriterFactoryRegistry.setThreadPool(threadPool);
+        rewriterShardContexts.setThreadPool(threadPool);
+        querqyProcessor.setProfileEnabled(QuerqyProcessor.PROFILE_ENABLED.get(clusterService.getSettings()));
+        clusterService.getClusterSettings().addSettingsUpdateConsumer(QuerqyProcessor.PROFILE_ENABLED,
+                querqyProcessor::setProfileEnabled);
+        querqyProcessor.setInfoLoggingOncePerRequest(QuerqyProcessor.INFO_LOGGING_ONCE_PER_REQUEST.get(
+                clusterService.getSettings()));
+        clusterService.getClusterSettings().addSettingsUpdateConsumer(QuerqyProcessor.INFO_LOGGING_ONCE_PER_REQUEST,
+                querqyProcessor::setInfoLoggingOncePerRequest);
+
+        final SlowRewriteLog slowRewriteLog = rewriterShardContexts.getStats().getSlowRewriteLog();
+        slowRewriteLog.setExecutor(threadPool.generic());
+        slowRewriteLog.applySettings(clusterService.getSettings());
+        clusterService.getClusterSettings().addSettingsUpdateConsumer(slowRewriteLog::applySettings,
+                SlowRewriteLog.SETTINGS);
+        querqyProcessor.setSlowRewriteLog(slowRewriteLog);
+        querqyProcessor.setThreadContext(threadPool.getThreadContext());
+
+        if (asyncInfoLoggingSink != null) {
+            asyncInfoLoggingSink.start(threadPool, AsyncLog4jSink.FLUSH_INTERVAL.get(clusterService.getSettings()));
+        }
+        final Path[] dataPaths = nodeEnvironment.nodeDataPaths();
+        if (dataPaths.length > 0) {
+            final Path dictionaryDir = dataPaths[0].resolve("querqy").resolve("dictionaries");
+            try {
+                MappedRuleDictionary.initDirectory(dictionaryDir);
+                rewriterFactoryRegistry.setDictionaryDirectory(dictionaryDir);
+            } catch (final IOException e) {
+                // rewriters that use memory-mapped rules will fail to load
+                LOGGER.error("Could not initialize rule dictionary directory " + dictionaryDir, e);
+            }
+        }
+
+        clusterService.addListener(new RewritersMetadataListener(rewriterShardContexts, rewriterFactoryRegistry,
+                threadPool.generic()));
+        return Arrays.asList(rewriterFactoryRegistry, rewriterShardContexts, querqyProcessor);
+    }
+
+    @Override
+    public List<TransportInterceptor> getTransportInterceptors(final NamedWriteableRegistry namedWriteableRegistry,
+                                                               final ThreadContext threadContext) {
+        return Collections.singletonList(new ShardSearchRequestInterceptor(threadContext));
+    }
+
+    @Override
+    public List<NamedWriteableRegistry.Entry> getNamedWriteables() {
+        return Arrays.asList(
+                new NamedWriteableRegistry.Entry(Metadata.Custom.class, RewritersMetadata.TYPE,
+                        RewritersMetadata::new),
+                new NamedWriteableRegistry.Entry(NamedDiff.class, RewritersMetadata.TYPE,
+                        RewritersMetadata::readDiffFrom));
+    }
+
+    @Override
+    public List<NamedXContentRegistry.Entry> getNamedXContent() {
+        return Collections.singletonList(new NamedXContentRegistry.Entry(Metadata.Custom.class,
+                new ParseField(RewritersMetadata.TYPE), RewritersMetadata::fromXContent));
+    }
+
+    @Override
+    public List<ExecutorBuilder<?>> getExecutorBuilders(final Settings settings) {
+        // compiling rewriters is CPU-bound, keep it off the search threads and bound the number of concurrent loads
+        final int size = ThreadPool.boundedBy(OpenSearchExecutors.allocatedProcessors(settings) / 2, 1, 4);
+        return Collections.singletonList(new FixedExecutorBuilder(settings, REWRITER_LOADER_THREAD_POOL_NAME, size,
+                1000, "thread_pool." + REWRITER_LOADER_THREAD_POOL_NAME));
     }
 
     @Override
     public List<Setting<?>> getSettings() {
-        return Collections.singletonList(Setting.intSetting(SETTINGS_QUERQY_INDEX_NUM_REPLICAS, 1, 0,
-                Setting.Property.NodeScope));
+        final List<Setting<?>> settings = new ArrayList<>(Arrays.asList(
+                Setting.intSetting(SETTINGS_QUERQY_INDEX_NUM_REPLICAS, 1, 0, Setting.Property.NodeScope),
+                RewriterShardContext.CACHE_EXPIRE_AFTER_WRITE,
+                RewriterShardContext.CACHE_EXPIRE_AFTER_READ,
+                RewriterShardContext.CACHE_MAX_WEIGHT,
+                RewriterFactoryRegistry.LOAD_WAIT_TIMEOUT,
+                RewrittenQueryCache.CACHE_SIZE,
+                SharedQueryCache.CACHE_SIZE,
+                OpenSearchTermQueryCache.CACHE_SIZE,
+                OpenSearchTermQueryCache.CACHE_MAX_BYTES,
+                CIRCUIT_BREAKER_LIMIT,
+                RewriterShardContexts.WARMUP_REWRITERS,
+                QuerqyProcessor.PROFILE_ENABLED,
+                QuerqyProcessor.INFO_LOGGING_ONCE_PER_REQUEST));
+        settings.addAll(SlowRewriteLog.SETTINGS);
+        settings.add(AsyncLog4jSink.ENABLED);
+        settings.add(AsyncLog4jSink.BUFFER_SIZE);
+        settings.add(AsyncLog4jSink.FLUSH_INTERVAL);
+        settings.add(AsyncLog4jSink.OVERFLOW_POLICY);
+        return settings;
+
+    }
 
+    @Override
+    public BreakerSettings getCircuitBreaker(final Settings settings) {
+        return new BreakerSettings(CIRCUIT_BREAKER_NAME, CIRCUIT_BREAKER_LIMIT.get(settings).getBytes(), 1.0,
+                CircuitBreaker.Type.MEMORY, CircuitBreaker.Durability.PERMANENT);
+    }
+
+    @Override
+    public void setCircuitBreaker(final CircuitBreaker circuitBreaker) {
+        rewriterFactoryRegistry.setCircuitBreaker(circuitBreaker);
+    }
+
+    @Override
+    public void close() {
+        if (asyncInfoLoggingSink != null) {
+            asyncInfoLoggingSink.close();
+        }
     }
 }
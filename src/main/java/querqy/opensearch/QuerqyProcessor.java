@@ -19,65 +19,197 @@
 
 package querqy.opensearch;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Query;
+import org.opensearch.action.support.ContextPreservingActionListener;
+import org.opensearch.common.cache.Cache;
+import org.opensearch.common.settings.Setting;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.util.concurrent.ThreadContext;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.tasks.TaskId;
+import org.opensearch.index.query.QueryRewriteContext;
 import org.opensearch.index.query.QueryShardContext;
+import org.opensearch.search.internal.ShardSearchRequest;
 import querqy.opensearch.infologging.LogPayloadType;
 import querqy.opensearch.infologging.SingleSinkInfoLogging;
+import querqy.opensearch.infologging.SlowRewriteLog;
+import querqy.opensearch.profile.QuerqyProfileBreakdown;
+import querqy.opensearch.profile.QuerqyProfileQuery;
 import querqy.opensearch.query.InfoLoggingSpec;
 import querqy.opensearch.query.QuerqyQueryBuilder;
 import querqy.opensearch.query.Rewriter;
+import querqy.opensearch.stats.QuerqyStats;
 import querqy.infologging.InfoLogging;
 import querqy.infologging.Sink;
 import querqy.lucene.LuceneQueries;
 import querqy.lucene.LuceneSearchEngineRequestAdapter;
 import querqy.lucene.QueryParsingController;
+import querqy.lucene.rewrite.cache.TermQueryCache;
+import querqy.model.ExpandedQuery;
 import querqy.rewrite.RewriteChain;
 
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 
 public class QuerqyProcessor {
 
+    /**
+     * Iff true, record the time spent in the phases of building Querqy queries, log it and mark Querqy queries in the
+     * profile API. This is meant for diagnosing slow queries and it is off by default as the marker query hides the
+     * type of the Querqy query from OpenSearch.
+     */
+    public static final Setting<Boolean> PROFILE_ENABLED = Setting.boolSetting(
+            "querqy.profile.enabled",
+            false,
+            Setting.Property.NodeScope,
+            Setting.Property.Dynamic);
+
+    /**
+     * Iff true, only the first shard in the shard list of a search request writes the rewriter info log of the request.
+     * It writes the log when the request is rewritten for the shard, which also happens if the search then skips the
+     * shard. All shards build their queries without info logging.
+     */
+    public static final Setting<Boolean> INFO_LOGGING_ONCE_PER_REQUEST = Setting.boolSetting(
+            "querqy.infologging.once_per_request",
+            true,
+            Setting.Property.NodeScope,
+            Setting.Property.Dynamic);
+
+    private static final Logger PROFILE_LOGGER = LogManager.getLogger(QuerqyProfileBreakdown.class);
+
     private static final RewriteChain EMPTY_REWRITE_CHAIN = new RewriteChain(Collections.emptyList());
 
+    // the number of request ids for which we remember that the info log was written on this node
+    static final int MAX_INFO_LOGGED_REQUESTS = 10_000;
+
     private RewriterShardContexts rewriterShardContexts;
     private Sink infoLoggingSink;
+    private volatile boolean profileEnabled = PROFILE_ENABLED.getDefault(Settings.EMPTY);
+    private volatile boolean infoLoggingOncePerRequest = INFO_LOGGING_ONCE_PER_REQUEST.getDefault(Settings.EMPTY);
+    private SlowRewriteLog slowRewriteLog;
+    private ThreadContext threadContext;
+    // a shard can be rewritten more than once per request, e.g. in the can_match and in the query phase
+    private final Cache<String, Boolean> infoLoggedRequests = Caches.buildCache(MAX_INFO_LOGGED_REQUESTS);
 
     public QuerqyProcessor(final RewriterShardContexts rewriterShardContexts, final Sink infoLoggingSink) {
         this.rewriterShardContexts = rewriterShardContexts;
         this.infoLoggingSink = infoLoggingSink;
     }
 
+    /**
+     * Register an async action that loads the rewriters of the query if they haven't been loaded on this node yet.
+     * This moves fetching and compiling the rewriters from the search thread into the rewrite phase of the request.
+     * Nothing is registered in the shard-level rewrite, which doesn't run async actions.
+     *
+     * @param queryBuilder The query builder
+     * @param context The rewrite context
+     */
+    public void registerRewriterLoading(final QuerqyQueryBuilder queryBuilder, final QueryRewriteContext context) {
+
+        final List<Rewriter> rewriters = queryBuilder.getRewriters();
+        if (rewriters == null || rewriters.isEmpty() || context.convertToShardContext() != null) {
+            return;
+        }
+
+        final List<String> rewritersToLoad = rewriterShardContexts.getRewritersToPreload(
+                rewriters.stream().map(Rewriter::getName).collect(Collectors.toList()));
+
+        if (!rewritersToLoad.isEmpty()) {
+            context.registerAsyncAction((client, listener) -> {
+                // continue the rewrite in the thread context of the request, not in the one of the loading thread
+                final ActionListener<?> contextListener = threadContext == null ? listener
+                        : ContextPreservingActionListener.wrapPreservingContext(listener, threadContext);
+                rewriterShardContexts.preloadRewriters(rewritersToLoad, ActionListener.wrap(
+                        loaded -> contextListener.onResponse(null), contextListener::onFailure));
+            });
+        }
+    }
+
+    public void setProfileEnabled(final boolean profileEnabled) {
+        this.profileEnabled = profileEnabled;
+    }
+
+    public void setInfoLoggingOncePerRequest(final boolean infoLoggingOncePerRequest) {
+        this.infoLoggingOncePerRequest = infoLoggingOncePerRequest;
+    }
+
+    public void setSlowRewriteLog(final SlowRewriteLog slowRewriteLog) {
+        this.slowRewriteLog = slowRewriteLog;
+    }
+
+    public void setThreadContext(final ThreadContext threadContext) {
+        this.threadContext = threadContext;
+    }
+
     public Query parseQuery(final QuerqyQueryBuilder queryBuilder, final QueryShardContext context)
             throws LuceneSearchEngineRequestAdapter.SyntaxException {
 
+        final QuerqyStats stats = rewriterShardContexts.getStats();
+        final QuerqyProfileBreakdown profileBreakdown = profileEnabled ? new QuerqyProfileBreakdown() : null;
+        final long start = System.nanoTime();
+        try {
+            final Query query = resolveAndBuildQuery(queryBuilder, context, profileBreakdown);
+            if (profileBreakdown == null) {
+                return query;
+            }
+            profileBreakdown.setTotalNanos(System.nanoTime() - start);
+            PROFILE_LOGGER.info("[{}][{}] {}", context.index().getName(), context.getShardId(), profileBreakdown);
+            return new QuerqyProfileQuery(query, profileBreakdown);
+        } catch (final LuceneSearchEngineRequestAdapter.SyntaxException | RuntimeException e) {
+            stats.onQueryError();
+            throw e;
+        } finally {
+            stats.onQuery(System.nanoTime() - start);
+        }
+    }
+
+    private Query resolveAndBuildQuery(final QuerqyQueryBuilder queryBuilder, final QueryShardContext context,
+                                       final QuerqyProfileBreakdown profileBreakdown)
+            throws LuceneSearchEngineRequestAdapter.SyntaxException {
+
         final List<Rewriter> rewriters = queryBuilder.getRewriters();
 
+        final RewriteChainAndLogging rewriteChainAndLogging;
         final RewriteChain rewriteChain;
         final Set<String> rewritersEnabledForLogging;
         if (rewriters == null || rewriters.isEmpty()) {
 
+            rewriteChainAndLogging = null;
             rewriteChain = EMPTY_REWRITE_CHAIN;
             rewritersEnabledForLogging = Collections.emptySet();
 
         } else {
 
-            final RewriteChainAndLogging rewriteChainAndLogging = rewriterShardContexts.getRewriteChain(
+            final long start = System.nanoTime();
+            rewriteChainAndLogging = rewriterShardContexts.getRewriteChain(
                     rewriters.stream().map(Rewriter::getName).collect(Collectors.toList()), context);
+            if (profileBreakdown != null) {
+                profileBreakdown.setChainResolutionNanos(System.nanoTime() - start);
+            }
 
             rewriteChain = rewriteChainAndLogging.rewriteChain;
             final InfoLoggingSpec infoLoggingSpec = queryBuilder.getInfoLoggingSpec();
 
-            if ((infoLoggingSpec != null) && (infoLoggingSpec.getPayloadType() != LogPayloadType.NONE)
-                    && !infoLoggingSpec.isLogged()) {
+            // if once per request, the info log is written when the query is rewritten for the shard
+            if (!infoLoggingOncePerRequest && isInfoLoggingRequested(infoLoggingSpec)) {
 
                 infoLoggingSpec.setLogged(true);
-                rewritersEnabledForLogging = rewriteChainAndLogging.rewritersEnabledForLogging;
+                // unsampled rewriters don't even create their log messages
+                rewritersEnabledForLogging = rewriteChainAndLogging.sampleRewritersForLogging(
+                        infoLoggingSpec.getId().orElse(null));
 
             } else {
                 rewritersEnabledForLogging = Collections.emptySet();
@@ -88,11 +220,109 @@ public class QuerqyProcessor {
         final InfoLogging infoLogging = rewritersEnabledForLogging.isEmpty()
                 ? null : new SingleSinkInfoLogging(infoLoggingSink, rewritersEnabledForLogging);
 
+        // info logging is a side effect of rewriting, we must not skip it by using a cached query
+        if (infoLogging != null) {
+            return buildQuery(queryBuilder, rewriteChain, context, infoLogging, profileBreakdown);
+        }
+
+        if (rewriteChainAndLogging == null || rewriteChainAndLogging.rewriterFactories == null) {
+            return buildQuery(queryBuilder, rewriteChain, context, null, profileBreakdown);
+        }
+
+        // The caches hold the rewritten query, not the Lucene query: the Lucene query keeps state of the index reader
+        // that it is used with (e.g. the document frequency correction) and must not be shared by concurrent searches.
+        if (!rewriteChainAndLogging.readerDependent) {
+            final SharedQueryCache sharedQueryCache = rewriterShardContexts.getSharedQueryCache();
+            if (sharedQueryCache != null) {
+                final ExpandedQuery rewrittenQuery = sharedQueryCache.get(queryBuilder,
+                        rewriteChainAndLogging.rewriterVersions);
+                if (rewrittenQuery != null) {
+                    return buildQuery(queryBuilder, rewrittenQuery, "shared_query", context, profileBreakdown);
+                }
+                return buildQuery(queryBuilder, rewriteChainAndLogging, context, profileBreakdown, output ->
+                        sharedQueryCache.put(queryBuilder, rewriteChainAndLogging.rewriterVersions, output));
+            }
+        }
+
+        final RewrittenQueryCache queryCache = rewriterShardContexts.getQueryCache(context);
+        final Object readerCacheKey = queryCache != null && rewriteChainAndLogging.readerDependent
+                ? getReaderCacheKey(context) : null;
+        if (queryCache == null || (rewriteChainAndLogging.readerDependent && readerCacheKey == null)) {
+            return buildQuery(queryBuilder, rewriteChain, context, null, profileBreakdown);
+        }
+
+        final ExpandedQuery rewrittenQuery = queryCache.get(queryBuilder, rewriteChainAndLogging, readerCacheKey);
+        if (rewrittenQuery != null) {
+            return buildQuery(queryBuilder, rewrittenQuery, "rewritten_query", context, profileBreakdown);
+        }
+        return buildQuery(queryBuilder, rewriteChainAndLogging, context, profileBreakdown, output ->
+                queryCache.put(queryBuilder, rewriteChainAndLogging, readerCacheKey, output));
+
+    }
+
+    /**
+     * Build the query from a rewritten query that was taken from a cache.
+     */
+    private Query buildQuery(final QuerqyQueryBuilder queryBuilder, final ExpandedQuery rewrittenQuery,
+                             final String cacheName, final QueryShardContext context,
+                             final QuerqyProfileBreakdown profileBreakdown)
+            throws LuceneSearchEngineRequestAdapter.SyntaxException {
+        if (profileBreakdown != null) {
+            profileBreakdown.setCache(cacheName);
+        }
+        return buildQuery(queryBuilder, RewriteOutputs.replaying(rewrittenQuery), context, null, profileBreakdown);
+    }
+
+    /**
+     * Build the query and pass the rewritten query to the consumer once the query has been built.
+     */
+    private Query buildQuery(final QuerqyQueryBuilder queryBuilder, final RewriteChainAndLogging rewriteChainAndLogging,
+                             final QueryShardContext context, final QuerqyProfileBreakdown profileBreakdown,
+                             final Consumer<ExpandedQuery> rewrittenQueryConsumer)
+            throws LuceneSearchEngineRequestAdapter.SyntaxException {
+        final AtomicReference<ExpandedQuery> rewrittenQuery = new AtomicReference<>();
+        final Query query = buildQuery(queryBuilder,
+                RewriteOutputs.capturing(rewriteChainAndLogging.rewriterFactories, rewrittenQuery::set), context,
+                null, profileBreakdown);
+        // nothing to cache if the chain wasn't applied, e.g. to a match-all query
+        if (rewrittenQuery.get() != null) {
+            rewrittenQueryConsumer.accept(rewrittenQuery.get());
+        }
+        return query;
+    }
+
+    private Query buildQuery(final QuerqyQueryBuilder queryBuilder, final RewriteChain rewriteChain,
+                             final QueryShardContext context, final InfoLogging infoLogging,
+                             final QuerqyProfileBreakdown profileBreakdown)
+            throws LuceneSearchEngineRequestAdapter.SyntaxException {
+        final SearchAnalyzerWrapper queryAnalyzer = rewriterShardContexts.acquireQueryAnalyzer(context);
+        try {
+            return buildQuery(queryBuilder, rewriteChain, context, infoLogging,
+                    rewriterShardContexts.getTermQueryCache(context), queryAnalyzer, profileBreakdown);
+        } finally {
+            queryAnalyzer.decRef();
+        }
+    }
+
+    Query buildQuery(final QuerqyQueryBuilder queryBuilder, final RewriteChain rewriteChain,
+                     final QueryShardContext context, final InfoLogging infoLogging,
+                     final TermQueryCache termQueryCache, final Analyzer queryAnalyzer,
+                     final QuerqyProfileBreakdown profileBreakdown)
+            throws LuceneSearchEngineRequestAdapter.SyntaxException {
+
         final DismaxSearchEngineRequestAdapter requestAdapter =
-                new DismaxSearchEngineRequestAdapter(queryBuilder, rewriteChain, context, infoLogging);
+                new DismaxSearchEngineRequestAdapter(queryBuilder, rewriteChain, context, infoLogging,
+                        termQueryCache, queryAnalyzer, profileBreakdown);
 
         final QueryParsingController controller = new QueryParsingController(requestAdapter);
+        final long start = System.nanoTime();
         final LuceneQueries queries = controller.process();
+        if (profileBreakdown != null) {
+            profileBreakdown.addProcessNanos(System.nanoTime() - start);
+        }
+        if (slowRewriteLog != null) {
+            slowRewriteLog.onRewriteChainEnd(requestAdapter);
+        }
 
 
 //        // TODO: make decos part of the general Querqy object model
@@ -131,6 +361,85 @@ public class QuerqyProcessor {
 
     }
 
+    /**
+     * Write the rewriter info log of the query if this shard is the info logging shard of the request. This is called
+     * when the query is rewritten for a shard. Unlike building the query, this also happens on shards that the search
+     * request skips, for example because a filter of the request can't match any document on the shard.
+     *
+     * @param queryBuilder The query builder
+     * @param context The shard context
+     * @throws LuceneSearchEngineRequestAdapter.SyntaxException if the query can't be parsed
+     */
+    public void writeInfoLog(final QuerqyQueryBuilder queryBuilder, final QueryShardContext context)
+            throws LuceneSearchEngineRequestAdapter.SyntaxException {
+
+        final InfoLoggingSpec infoLoggingSpec = queryBuilder.getInfoLoggingSpec();
+        final List<Rewriter> rewriters = queryBuilder.getRewriters();
+        if (!infoLoggingOncePerRequest || !isInfoLoggingRequested(infoLoggingSpec) || rewriters == null
+                || rewriters.isEmpty() || !isInfoLoggingShard()) {
+            return;
+        }
+        infoLoggingSpec.setLogged(true);
+
+        final RewriteChainAndLogging rewriteChainAndLogging = rewriterShardContexts.getRewriteChain(
+                rewriters.stream().map(Rewriter::getName).collect(Collectors.toList()), context);
+        final Set<String> rewritersEnabledForLogging = rewriteChainAndLogging.sampleRewritersForLogging(
+                infoLoggingSpec.getId().orElse(null));
+        if (!rewritersEnabledForLogging.isEmpty()) {
+            buildQuery(queryBuilder, rewriteChainAndLogging.rewriteChain, context,
+                    new SingleSinkInfoLogging(infoLoggingSink, rewritersEnabledForLogging), null);
+        }
+    }
+
+    private static boolean isInfoLoggingRequested(final InfoLoggingSpec infoLoggingSpec) {
+        return infoLoggingSpec != null && infoLoggingSpec.getPayloadType() != LogPayloadType.NONE
+                && !infoLoggingSpec.isLogged();
+    }
+
+    /**
+     * The first shard in the shard list of the search request writes the info log. The coordinating node sorts the
+     * shards that the request targets after applying the routing and the preference of the request, and it sends the
+     * position of the shard in this list with every shard request. The first shard is rewritten even if the request
+     * then skips it. The id of the search task on the coordinating node, which is the parent task of the shard
+     * request, makes sure that the log is written only once per request if the shard is rewritten more than once on
+     * this node. It is passed with the shard request and not in the query, which would keep the shard request cache
+     * from ever matching. Queries that aren't rewritten for a shard search request, for example for the explain API,
+     * always write the log.
+     *
+     * @return true iff this shard writes the info log of the request
+     */
+    boolean isInfoLoggingShard() {
+        final ShardSearchRequest shardSearchRequest = threadContext == null ? null
+                : ShardSearchRequestInterceptor.getShardSearchRequest(threadContext);
+        if (shardSearchRequest == null) {
+            return true;
+        }
+        // the index is -1 if the coordinating node didn't set it
+        if (shardSearchRequest.shardRequestIndex() > 0) {
+            return false;
+        }
+        final TaskId parentTask = shardSearchRequest.getParentTask();
+        if (parentTask == null || !parentTask.isSet()) {
+            return true;
+        }
+        final String requestId = parentTask.toString();
+        final AtomicBoolean first = new AtomicBoolean(false);
+        try {
+            infoLoggedRequests.computeIfAbsent(requestId, key -> {
+                first.set(true);
+                return Boolean.TRUE;
+            });
+        } catch (final ExecutionException e) {
+            // can't happen, the loader doesn't throw
+            return false;
+        }
+        return first.get();
+    }
+
+    private static Object getReaderCacheKey(final QueryShardContext context) {
+        final IndexReader.CacheHelper cacheHelper = context.getIndexReader().getReaderCacheHelper();
+        return cacheHelper == null ? null : cacheHelper.getKey();
+    }
 
     void appendFilterQueries(final LuceneQueries queries, final BooleanQuery.Builder builder) {
 
@@ -19,17 +19,90 @@
 
 package querqy.opensearch;
 
+import querqy.opensearch.infologging.InfoLoggingSampler;
 import querqy.rewrite.RewriteChain;
+import querqy.rewrite.RewriterFactory;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class RewriteChainAndLogging {
 
     public final RewriteChain rewriteChain;
     public final Set<String> rewritersEnabledForLogging;
+    /**
+     * The samplers of the rewriters that have info logging enabled but don't log all requests
+     */
+    public final Map<String, InfoLoggingSampler> infoLoggingSamplers;
+    /**
+     * True iff the output of at least one rewriter of the chain depends on the index reader
+     */
+    public final boolean readerDependent;
+    /**
+     * The versions of the rewriters in the chain, in the order of the chain
+     */
+    public final List<Long> rewriterVersions;
+    /**
+     * The rewriter factories of the chain or null if they are unknown, in which case the output of the chain can't be
+     * cached
+     */
+    public final List<RewriterFactory> rewriterFactories;
 
     public RewriteChainAndLogging(final RewriteChain rewriteChain, final Set<String> rewritersEnabledForLogging) {
+        this(rewriteChain, rewritersEnabledForLogging, false, Collections.emptyList());
+    }
+
+    public RewriteChainAndLogging(final RewriteChain rewriteChain, final Set<String> rewritersEnabledForLogging,
+                                  final boolean readerDependent, final List<Long> rewriterVersions) {
+        this(rewriteChain, rewritersEnabledForLogging, Collections.emptyMap(), readerDependent, rewriterVersions);
+    }
+
+    public RewriteChainAndLogging(final RewriteChain rewriteChain, final Set<String> rewritersEnabledForLogging,
+                                  final Map<String, InfoLoggingSampler> infoLoggingSamplers,
+                                  final boolean readerDependent, final List<Long> rewriterVersions) {
+        this(rewriteChain, null, rewritersEnabledForLogging, infoLoggingSamplers, readerDependent, rewriterVersions);
+    }
+
+    public RewriteChainAndLogging(final List<RewriterFactory> rewriterFactories,
+                                  final Set<String> rewritersEnabledForLogging,
+                                  final Map<String, InfoLoggingSampler> infoLoggingSamplers,
+                                  final boolean readerDependent, final List<Long> rewriterVersions) {
+        this(new RewriteChain(rewriterFactories), rewriterFactories, rewritersEnabledForLogging, infoLoggingSamplers,
+                readerDependent, rewriterVersions);
+    }
+
+    private RewriteChainAndLogging(final RewriteChain rewriteChain, final List<RewriterFactory> rewriterFactories,
+                                   final Set<String> rewritersEnabledForLogging,
+                                   final Map<String, InfoLoggingSampler> infoLoggingSamplers,
+                                   final boolean readerDependent, final List<Long> rewriterVersions) {
         this.rewriteChain = rewriteChain;
+        this.rewriterFactories = rewriterFactories;
         this.rewritersEnabledForLogging = rewritersEnabledForLogging;
+        this.infoLoggingSamplers = infoLoggingSamplers;
+        this.readerDependent = readerDependent;
+        this.rewriterVersions = rewriterVersions;
+    }
+
+    /**
+     * Sample the rewriters that log the current request.
+     *
+     * @param requestId The id of the info logging spec of the request, can be null
+     * @return The rewriters that have info logging enabled and that sampled the request
+     */
+    public Set<String> sampleRewritersForLogging(final String requestId) {
+        if (infoLoggingSamplers.isEmpty()) {
+            return rewritersEnabledForLogging;
+        }
+        final Set<String> sampled = new HashSet<>(rewritersEnabledForLogging.size());
+        for (final String rewriterId : rewritersEnabledForLogging) {
+            final InfoLoggingSampler sampler = infoLoggingSamplers.get(rewriterId);
+            if (sampler == null || sampler.sample(requestId)) {
+                sampled.add(rewriterId);
+            }
+        }
+        return sampled;
     }
 }
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch;
+
+import querqy.model.ExpandedQuery;
+import querqy.model.Term;
+import querqy.rewrite.QueryRewriter;
+import querqy.rewrite.RewriteChain;
+import querqy.rewrite.RewriterFactory;
+import querqy.rewrite.SearchEngineRequestAdapter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * <p>Rewrite chains that let {@link QuerqyProcessor} reuse the output of parsing and rewriting a query.</p>
+ *
+ * <p>The rewritten {@link ExpandedQuery} only depends on the query and the rewriters. The Lucene query that is built
+ * from it can't be shared: it holds state of the index reader that it is used with (like the document frequency
+ * correction), so it is built for each shard and request.</p>
+ */
+final class RewriteOutputs {
+
+    private static final String CAPTURE_REWRITER_ID = "_querqy_capture_output";
+    private static final String REPLAY_REWRITER_ID = "_querqy_replay_output";
+
+    private RewriteOutputs() {}
+
+    /**
+     * @param rewriterFactories The rewriter factories of the chain
+     * @param outputConsumer Receives the output of the last rewriter of the chain
+     * @return A chain that applies the given rewriters and passes the output on
+     */
+    static RewriteChain capturing(final List<RewriterFactory> rewriterFactories,
+                                  final Consumer<ExpandedQuery> outputConsumer) {
+        final List<RewriterFactory> factories = new ArrayList<>(rewriterFactories.size() + 1);
+        factories.addAll(rewriterFactories);
+        factories.add(captureFactory(outputConsumer));
+        return new RewriteChain(factories);
+    }
+
+    /**
+     * @param output The output of a chain that was captured before
+     * @return A chain that replaces the parsed query with the given output instead of rewriting it
+     */
+    static RewriteChain replaying(final ExpandedQuery output) {
+        return new RewriteChain(Collections.singletonList(replayFactory(output)));
+    }
+
+    static RewriterFactory captureFactory(final Consumer<ExpandedQuery> outputConsumer) {
+        return new RewriterFactory(CAPTURE_REWRITER_ID) {
+            @Override
+            public QueryRewriter createRewriter(final ExpandedQuery input,
+                                                final SearchEngineRequestAdapter searchEngineRequestAdapter) {
+                return query -> {
+                    outputConsumer.accept(query);
+                    return query;
+                };
+            }
+
+            @Override
+            public Set<Term> getGenerableTerms() {
+                return Collections.emptySet();
+            }
+        };
+    }
+
+    static RewriterFactory replayFactory(final ExpandedQuery output) {
+        return new RewriterFactory(REPLAY_REWRITER_ID) {
+            @Override
+            public QueryRewriter createRewriter(final ExpandedQuery input,
+                                                final SearchEngineRequestAdapter searchEngineRequestAdapter) {
+                // building the Lucene query only reads the output, it can be shared by concurrent requests
+                return query -> output;
+            }
+
+            @Override
+            public Set<Term> getGenerableTerms() {
+                return Collections.emptySet();
+            }
+        };
+    }
+}
@@ -0,0 +1,646 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch;
+
+import static querqy.opensearch.RewriterShardContext.CACHE_EXPIRE_AFTER_READ;
+import static querqy.opensearch.RewriterShardContext.CACHE_EXPIRE_AFTER_WRITE;
+import static querqy.opensearch.RewriterShardContext.CACHE_MAX_WEIGHT;
+import static querqy.opensearch.rewriterstore.Constants.QUERQY_INDEX_NAME;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.opensearch.OpenSearchException;
+import org.opensearch.OpenSearchStatusException;
+import org.opensearch.OpenSearchTimeoutException;
+import org.opensearch.ResourceNotFoundException;
+import org.opensearch.action.get.GetResponse;
+import org.opensearch.action.support.GroupedActionListener;
+import org.opensearch.action.support.PlainActionFuture;
+import org.opensearch.client.Client;
+import org.opensearch.common.cache.Cache;
+import org.opensearch.common.cache.RemovalNotification;
+import org.opensearch.common.cache.RemovalReason;
+import org.opensearch.common.settings.Setting;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.common.breaker.CircuitBreaker;
+import org.opensearch.core.common.breaker.NoopCircuitBreaker;
+import org.opensearch.core.rest.RestStatus;
+import org.opensearch.indices.InvalidTypeNameException;
+import org.opensearch.threadpool.ThreadPool;
+import querqy.opensearch.infologging.InfoLoggingSampler;
+import querqy.opensearch.rewriterstore.LoadRewriterConfig;
+import querqy.opensearch.rewriterstore.RewriterConfigMapping;
+import querqy.opensearch.stats.QuerqyStats;
+import querqy.opensearch.stats.RewriterStats;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * <p>Node-level registry of the rewriters that were loaded from the Querqy index.</p>
+ *
+ * <p>A rewriter is loaded and compiled once per node and stored version. All shard contexts on the node share the
+ * same {@link OpenSearchRewriterFactory} and only derive their shard-specific view from it via
+ * {@link OpenSearchRewriterFactory#createRewriterFactory(org.opensearch.index.shard.IndexShard)}.</p>
+ *
+ * <p>A new version whose class and config digest ({@link RewriterConfigMapping#PROP_CONFIG_DIGEST}) equals the digest
+ * of the loaded version reuses the compiled factory, so that saving an unchanged rewriter doesn't compile it again.</p>
+ *
+ * <p>The estimated heap of the compiled rewriters ({@link OpenSearchRewriterFactory#ramBytesUsed()}) is used as the
+ * cache weight, which can be bounded by {@link RewriterShardContext#CACHE_MAX_WEIGHT}, and it is accounted against the
+ * Querqy circuit breaker.</p>
+ */
+public class RewriterFactoryRegistry {
+
+    private static final Logger LOGGER = LogManager.getLogger(RewriterFactoryRegistry.class);
+
+    /**
+     * How long a query waits for a rewriter that isn't loaded on this node before it fails with status 503
+     */
+    public static final Setting<TimeValue> LOAD_WAIT_TIMEOUT = Setting.timeSetting(
+            "querqy.rewriter.load_wait_timeout",
+            TimeValue.timeValueSeconds(10),
+            TimeValue.timeValueMillis(0),
+            Setting.Property.NodeScope);
+
+    final Cache<String, LoadedRewriter> rewriters;
+    private final Map<String, CompletableFuture<LoadedRewriter>> loading = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> removalListeners = new CopyOnWriteArrayList<>();
+    private final QuerqyStats stats = new QuerqyStats();
+    private final long maxWeight;
+    private volatile CircuitBreaker circuitBreaker = new NoopCircuitBreaker(QuerqyPlugin.CIRCUIT_BREAKER_NAME);
+    private Client client;
+    private ThreadPool threadPool;
+    private volatile Path dictionaryDirectory;
+    private final TimeValue loadWaitTimeout;
+
+    public RewriterFactoryRegistry(final Settings settings) {
+        maxWeight = CACHE_MAX_WEIGHT.get(settings).getBytes();
+        loadWaitTimeout = LOAD_WAIT_TIMEOUT.get(settings);
+        rewriters = Caches.buildCache(CACHE_EXPIRE_AFTER_WRITE.get(settings), CACHE_EXPIRE_AFTER_READ.get(settings),
+                maxWeight, (rewriterId, loadedRewriter) -> loadedRewriter.ramBytesUsed, this::onRemoval);
+    }
+
+    public void setClient(final Client client) {
+        this.client = client;
+    }
+
+    public void setThreadPool(final ThreadPool threadPool) {
+        this.threadPool = threadPool;
+    }
+
+    public void setCircuitBreaker(final CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * @param dictionaryDirectory The directory in this node's data path that is passed to the rewriter factories
+     *                            for their rule dictionaries
+     */
+    public void setDictionaryDirectory(final Path dictionaryDirectory) {
+        this.dictionaryDirectory = dictionaryDirectory;
+    }
+
+    /**
+     * Register a listener that is notified with the rewriter id when a rewriter was removed from the cache because
+     * the maximum weight was exceeded, because it expired or because it was cleared. The listener isn't notified if a
+     * rewriter is replaced by a reload.
+     *
+     * @param listener The listener
+     */
+    public void addRemovalListener(final Consumer<String> listener) {
+        removalListeners.add(listener);
+    }
+
+    public long getCount() {
+        return rewriters.count();
+    }
+
+    /**
+     * @return The estimated heap of all compiled rewriters on this node in bytes
+     */
+    public long getWeight() {
+        return rewriters.weight();
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public long getEvictions() {
+        return rewriters.stats().getEvictions();
+    }
+
+    public Cache.CacheStats getCacheStats() {
+        return rewriters.stats();
+    }
+
+    /**
+     * @return The node-level Querqy stats
+     */
+    public QuerqyStats getStats() {
+        return stats;
+    }
+
+    public boolean isLoaded(final String rewriterId) {
+        return rewriters.get(rewriterId) != null;
+    }
+
+    /**
+     * @param rewriterId The rewriter id
+     * @return The version of the loaded rewriter or -1 if the rewriter hasn't been loaded on this node
+     */
+    public long getLoadedVersion(final String rewriterId) {
+        final LoadedRewriter loadedRewriter = rewriters.get(rewriterId);
+        return loadedRewriter == null ? -1L : loadedRewriter.version;
+    }
+
+    /**
+     * @param rewriterId The rewriter id
+     * @return The loaded rewriter or null if the rewriter hasn't been loaded on this node
+     */
+    public LoadedRewriter getLoaded(final String rewriterId) {
+        return rewriters.get(rewriterId);
+    }
+
+    public boolean isLoading(final String rewriterId) {
+        final CompletableFuture<LoadedRewriter> inFlight = loading.get(rewriterId);
+        return inFlight != null && !inFlight.isDone();
+    }
+
+    /**
+     * Run an action once the load of a rewriter that is in progress has completed, successfully or not. The action is
+     * run on the calling thread if the rewriter isn't being loaded, otherwise on the thread that completes the load.
+     *
+     * @param rewriterId The rewriter id
+     * @param action The action to run
+     */
+    public void whenLoadingCompleted(final String rewriterId, final Runnable action) {
+        final CompletableFuture<LoadedRewriter> inFlight = loading.get(rewriterId);
+        if (inFlight == null) {
+            action.run();
+        } else {
+            inFlight.whenComplete((loadedRewriter, e) -> action.run());
+        }
+    }
+
+    /**
+     * Get a loaded rewriter or load it, blocking the calling thread until loading has completed. Concurrent calls for
+     * the same rewriter wait for the same load. This must not be called on the query path, see
+     * {@link #getLoadedOrStartLoading(String)}.
+     *
+     * @param rewriterId The rewriter id
+     * @return The loaded rewriter
+     */
+    public LoadedRewriter getOrLoad(final String rewriterId) {
+        final LoadedRewriter loadedRewriter = rewriters.get(rewriterId);
+        if (loadedRewriter != null) {
+            return loadedRewriter;
+        }
+        final PlainActionFuture<LoadedRewriter> future = PlainActionFuture.newFuture();
+        load(rewriterId, false, future);
+        return future.actionGet();
+    }
+
+    /**
+     * Get a loaded rewriter on the query path. The rewriters of a search request are loaded by the async action that
+     * is registered in the rewrite phase of the request (see {@link QuerqyProcessor#registerRewriterLoading}). A
+     * rewriter is missing here if it was evicted or cleared in between, or if the query is used by an API that
+     * doesn't run async actions (like explain or validate query). Loading it is started then, or an ongoing load is
+     * joined, and the calling thread waits for it for at most {@link #LOAD_WAIT_TIMEOUT}.
+     *
+     * @param rewriterId The rewriter id
+     * @return The loaded rewriter
+     * @throws OpenSearchStatusException with status 503 if the rewriter couldn't be loaded within the timeout
+     */
+    public LoadedRewriter getLoadedOrStartLoading(final String rewriterId) {
+        final LoadedRewriter loadedRewriter = rewriters.get(rewriterId);
+        if (loadedRewriter != null) {
+            return loadedRewriter;
+        }
+        final PlainActionFuture<LoadedRewriter> future = PlainActionFuture.newFuture();
+        load(rewriterId, false, future);
+        try {
+            return future.actionGet(loadWaitTimeout);
+        } catch (final OpenSearchTimeoutException e) {
+            // the load goes on in the background, a retry will find the rewriter
+            throw new OpenSearchStatusException("Rewriter {} hasn't been loaded on this node within {}",
+                    RestStatus.SERVICE_UNAVAILABLE, rewriterId, loadWaitTimeout);
+        }
+    }
+
+    /**
+     * Make sure that all given rewriters are loaded without blocking the calling thread.
+     *
+     * @param rewriterIds The rewriter ids
+     * @param listener Notified once all rewriters were loaded or if any of them failed to load
+     */
+    public void loadAll(final Collection<String> rewriterIds, final ActionListener<Collection<LoadedRewriter>> listener) {
+        if (rewriterIds.isEmpty()) {
+            listener.onResponse(Collections.emptyList());
+            return;
+        }
+        final GroupedActionListener<LoadedRewriter> groupedListener = new GroupedActionListener<>(listener,
+                rewriterIds.size());
+        for (final String rewriterId : rewriterIds) {
+            load(rewriterId, false, groupedListener);
+        }
+    }
+
+    /**
+     * Reload a rewriter if it has been loaded on this node before.
+     *
+     * @param rewriterId The rewriter id
+     * @return true if the rewriter had been loaded and was reloaded, false otherwise
+     */
+    public boolean reloadIfLoaded(final String rewriterId) {
+        if (rewriters.get(rewriterId) != null) {
+            final PlainActionFuture<LoadedRewriter> future = PlainActionFuture.newFuture();
+            load(rewriterId, true, future);
+            future.actionGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reload the given rewriters that have been loaded on this node before. The rewriters are compiled in parallel in
+     * the {@link QuerqyPlugin#REWRITER_LOADER_THREAD_POOL_NAME} thread pool.
+     *
+     * @param rewriterIds The rewriter ids
+     * @return The exceptions by rewriter id for rewriters that couldn't be reloaded
+     */
+    public Map<String, Exception> reloadAllIfLoaded(final Collection<String> rewriterIds) {
+        final Map<String, PlainActionFuture<LoadedRewriter>> futures = new LinkedHashMap<>();
+        for (final String rewriterId : rewriterIds) {
+            if (rewriters.get(rewriterId) != null && !futures.containsKey(rewriterId)) {
+                final PlainActionFuture<LoadedRewriter> future = PlainActionFuture.newFuture();
+                load(rewriterId, true, future);
+                futures.put(rewriterId, future);
+            }
+        }
+        Map<String, Exception> failures = Collections.emptyMap();
+        for (final Map.Entry<String, PlainActionFuture<LoadedRewriter>> entry : futures.entrySet()) {
+            try {
+                entry.getValue().actionGet();
+            } catch (final Exception e) {
+                if (failures.isEmpty()) {
+                    failures = new HashMap<>();
+                }
+                failures.put(entry.getKey(), e);
+            }
+        }
+        return failures;
+    }
+
+    public void clearRewriter(final String rewriterId) {
+        rewriters.invalidate(rewriterId);
+        stats.removeRewriter(rewriterId);
+    }
+
+    public void clearRewriters() {
+        rewriters.invalidateAll();
+        stats.removeRewriters();
+    }
+
+    /**
+     * <p>Load a rewriter asynchronously. The rewriter config is fetched from the Querqy index using the async client
+     * API and then compiled in the {@link QuerqyPlugin#REWRITER_LOADER_THREAD_POOL_NAME} thread pool.</p>
+     *
+     * <p>Loading is single-flight: listeners for a rewriter that is already being loaded will be notified by that
+     * load. A forced load (reload) always fetches the config again and won't join a load that is in progress, as that
+     * might still see the previous version of the config.</p>
+     *
+     * @param rewriterId The rewriter id
+     * @param forceLoad Iff true, load the rewriter even if it was loaded before.
+     * @param listener The listener to notify
+     */
+    protected void load(final String rewriterId, final boolean forceLoad,
+                        final ActionListener<LoadedRewriter> listener) {
+
+        if (!forceLoad) {
+            final LoadedRewriter current = rewriters.get(rewriterId);
+            if (current != null) {
+                listener.onResponse(current);
+                return;
+            }
+        }
+
+        final CompletableFuture<LoadedRewriter> future = new CompletableFuture<>();
+
+        if (forceLoad) {
+            loading.put(rewriterId, future);
+        } else {
+            final CompletableFuture<LoadedRewriter> inFlight = loading.putIfAbsent(rewriterId, future);
+            if (inFlight != null) {
+                notifyOnCompletion(inFlight, listener);
+                return;
+            }
+        }
+
+        notifyOnCompletion(future, listener);
+        final long start = System.nanoTime();
+        future.whenComplete((loadedRewriter, e) -> {
+            loading.remove(rewriterId, future);
+            if (e != null) {
+                stats.onRewriterLoadFailed(rewriterId);
+            } else {
+                stats.rewriter(rewriterId).onLoaded(System.nanoTime() - start);
+            }
+        });
+
+        client.prepareGet(QUERQY_INDEX_NAME, rewriterId).execute(ActionListener.wrap(
+                response -> {
+                    try {
+                        threadPool.executor(QuerqyPlugin.REWRITER_LOADER_THREAD_POOL_NAME)
+                                .execute(() -> {
+                                    try {
+                                        future.complete(onRewriterFetched(rewriterId, response));
+                                    } catch (final Exception e) {
+                                        future.completeExceptionally(e);
+                                    }
+                                });
+                    } catch (final Exception e) {
+                        // rejected execution
+                        future.completeExceptionally(e);
+                    }
+                },
+                e -> future.completeExceptionally(new OpenSearchException("Could not load rewriter " + rewriterId, e))
+        ));
+
+    }
+
+    protected LoadedRewriter onRewriterFetched(final String rewriterId, final GetResponse response) {
+
+        final Map<String, Object> source = response.getSource();
+
+        if (source == null) {
+            throw new ResourceNotFoundException("Rewriter not found: " + rewriterId);
+        }
+
+        final LoadedRewriter current = rewriters.get(rewriterId);
+        if (current != null && current.version == response.getVersion()) {
+            // the stored config didn't change - no need to compile it again
+            return current;
+        }
+
+        if (!isRewriter(source)) {
+            throw new InvalidTypeNameException("Not a rewriter: " + rewriterId);
+        }
+        // the estimate and compiling share the config, which is only parsed and decompressed once
+        final LoadRewriterConfig loadConfig = new LoadRewriterConfig(rewriterId, source);
+
+        // reject the rewriter before compiling it, as compiling already builds the rules structure on the heap
+        final long estimate = estimateRamBytesUsed(loadConfig, current);
+        checkMaxWeight(rewriterId, estimate);
+        // throws a CircuitBreakingException if there isn't enough memory for the rewriter
+        circuitBreaker.addEstimateBytesAndMaybeBreak(estimate, "querqy_rewriter:" + rewriterId);
+
+        final long start = System.nanoTime();
+        final LoadedRewriter loadedRewriter;
+        try {
+            loadedRewriter = compile(response.getVersion(), loadConfig, current, dictionaryDirectory);
+        } catch (final RuntimeException e) {
+            circuitBreaker.addWithoutBreaking(-estimate);
+            throw e;
+        }
+        final long compileNanos = System.nanoTime() - start;
+
+        // replace the estimate with what the compiled rewriter reports
+        circuitBreaker.addWithoutBreaking(loadedRewriter.ramBytesUsed - estimate);
+        try {
+            checkMaxWeight(rewriterId, loadedRewriter.ramBytesUsed);
+        } catch (final OpenSearchException e) {
+            circuitBreaker.addWithoutBreaking(-loadedRewriter.ramBytesUsed);
+            throw e;
+        }
+
+        synchronized (rewriters) {
+            // a load that started earlier must not replace a more recent version
+            final LoadedRewriter latest = rewriters.get(rewriterId);
+            if (latest != null && latest.version > loadedRewriter.version) {
+                circuitBreaker.addWithoutBreaking(-loadedRewriter.ramBytesUsed);
+                return latest;
+            }
+            rewriters.put(rewriterId, loadedRewriter);
+            // after put(), which reports the replaced version as removed
+            stats.rewriter(rewriterId).onCompiled(loadedRewriter.version, loadedRewriter.ramBytesUsed, compileNanos);
+        }
+
+        if (current != null && loadedRewriter.factory == current.factory) {
+            LOGGER.info("Loaded rewriter {} version {}, config unchanged since version {}", rewriterId,
+                    loadedRewriter.version, current.version);
+        } else {
+            LOGGER.info("Loaded rewriter {} version {}, estimated heap: {} bytes", rewriterId, loadedRewriter.version,
+                    loadedRewriter.ramBytesUsed);
+        }
+
+        return loadedRewriter;
+
+    }
+
+    private void checkMaxWeight(final String rewriterId, final long ramBytesUsed) {
+        if (maxWeight > 0 && ramBytesUsed > maxWeight) {
+            throw new OpenSearchException("Rewriter " + rewriterId + " needs about " + ramBytesUsed
+                    + " bytes, which exceeds " + CACHE_MAX_WEIGHT.getKey() + " (" + maxWeight + " bytes)");
+        }
+    }
+
+    /**
+     * Estimate the heap that compiling the stored rewriter will need, without compiling it. The estimate is based on
+     * the size of the stored rules. If the compiled factory of the current rewriter will be reused, its size is
+     * returned.
+     *
+     * @param rewriterId The rewriter id
+     * @param source The stored rewriter
+     * @param current The currently loaded version of the rewriter or null
+     * @return The estimated heap in bytes
+     */
+    static long estimateRamBytesUsed(final String rewriterId, final Map<String, Object> source,
+                                     final LoadedRewriter current) {
+        // compile() will reject it
+        return isRewriter(source) ? estimateRamBytesUsed(new LoadRewriterConfig(rewriterId, source), current) : 0L;
+    }
+
+    /**
+     * Same as {@link #estimateRamBytesUsed(String, Map, LoadedRewriter)} for the config of a stored rewriter.
+     */
+    static long estimateRamBytesUsed(final LoadRewriterConfig loadConfig, final LoadedRewriter current) {
+
+        final String configDigest = loadConfig.getConfigDigest();
+        if (configDigest != null && current != null && configDigest.equals(current.configDigest)) {
+            return current.ramBytesUsed;
+        }
+
+        final Map<String, Object> config = loadConfig.getConfig();
+        final Object rules = config == null ? null : config.get("rules");
+        return OpenSearchRewriterFactory.estimateRulesRamBytesUsed(rules instanceof String ? (String) rules : null);
+    }
+
+    private static boolean isRewriter(final Map<String, Object> source) {
+        return "rewriter".equals(source.get(RewriterConfigMapping.PROP_TYPE));
+    }
+
+    private void onRemoval(final RemovalNotification<String, LoadedRewriter> notification) {
+        circuitBreaker.addWithoutBreaking(-notification.getValue().ramBytesUsed);
+        if (notification.getRemovalReason() == RemovalReason.REPLACED) {
+            return;
+        }
+        final RewriterStats rewriterStats = stats.getRewriter(notification.getKey());
+        if (rewriterStats != null) {
+            rewriterStats.onUnloaded();
+        }
+        if (notification.getRemovalReason() == RemovalReason.EVICTED) {
+            LOGGER.info("Evicted rewriter {} version {}", notification.getKey(), notification.getValue().version);
+        }
+        // the shard contexts still reference the removed rewriter - make them release it, otherwise they would keep
+        // using it and a reload would skip it as it isn't loaded on this node
+        for (final Consumer<String> listener : removalListeners) {
+            listener.accept(notification.getKey());
+        }
+    }
+
+    private static void notifyOnCompletion(final CompletableFuture<LoadedRewriter> future,
+                                           final ActionListener<LoadedRewriter> listener) {
+        future.whenComplete((loadedRewriter, e) -> {
+            if (e != null) {
+                listener.onFailure(e instanceof Exception ? (Exception) e : new OpenSearchException(e));
+            } else {
+                listener.onResponse(loadedRewriter);
+            }
+        });
+    }
+
+    static LoadedRewriter compile(final String rewriterId, final long version, final Map<String, Object> source) {
+        return compile(rewriterId, version, source, null, null);
+    }
+
+    static LoadedRewriter compile(final String rewriterId, final long version, final Map<String, Object> source,
+                                  final LoadedRewriter current) {
+        return compile(rewriterId, version, source, current, null);
+    }
+
+    /**
+     * Compile a rewriter from its stored source. If the stored config digest equals the digest of the current
+     * rewriter, the compiled factory of the current rewriter will be reused.
+     *
+     * @param rewriterId The rewriter id
+     * @param version The version of the stored rewriter
+     * @param source The stored rewriter
+     * @param current The currently loaded version of the rewriter or null
+     * @param dictionaryDirectory The dictionary directory of this node or null
+     * @return The loaded rewriter
+     */
+    static LoadedRewriter compile(final String rewriterId, final long version, final Map<String, Object> source,
+                                  final LoadedRewriter current, final Path dictionaryDirectory) {
+
+        if (!isRewriter(source)) {
+            throw new InvalidTypeNameException("Not a rewriter: " + rewriterId);
+        }
+
+        return compile(version, new LoadRewriterConfig(rewriterId, source), current, dictionaryDirectory);
+    }
+
+    /**
+     * Same as {@link #compile(String, long, Map, LoadedRewriter, Path)} for the config of a stored rewriter.
+     */
+    @SuppressWarnings("unchecked")
+    static LoadedRewriter compile(final long version, final LoadRewriterConfig loadConfig,
+                                  final LoadedRewriter current, final Path dictionaryDirectory) {
+
+        final String rewriterId = loadConfig.getRewriterId();
+        final Map<String, Object> infoLogging = loadConfig.getInfoLoggingConfig();
+        final boolean loggingEnabled;
+        final InfoLoggingSampler infoLoggingSampler;
+        if (infoLogging != null) {
+            final Object sinksObj = infoLogging.get("sinks");
+            if (sinksObj instanceof String) {
+                loggingEnabled = "log4j".equals(sinksObj);
+            } else if (sinksObj instanceof Collection<?>) {
+                Collection<?> sinksCollection = (Collection<?>) sinksObj;
+                loggingEnabled = (sinksCollection.size() > 0) && sinksCollection.contains("log4j");
+            } else {
+                loggingEnabled = false;
+            }
+        } else {
+            loggingEnabled = false;
+        }
+        infoLoggingSampler = loggingEnabled
+                ? InfoLoggingSampler.fromConfig((Map<String, Object>) infoLogging.get("sampling"))
+                : null;
+
+        final String configDigest = loadConfig.getConfigDigest();
+        final OpenSearchRewriterFactory factory = configDigest != null && current != null
+                && configDigest.equals(current.configDigest)
+                ? current.factory
+                : OpenSearchRewriterFactory.loadConfiguredInstance(loadConfig, dictionaryDirectory);
+
+        return new LoadedRewriter(rewriterId, version, factory, loggingEnabled, infoLoggingSampler, configDigest);
+    }
+
+    public static class LoadedRewriter {
+        public final String rewriterId;
+        public final long version;
+        public final OpenSearchRewriterFactory factory;
+        public final boolean loggingEnabled;
+        /**
+         * Null if all requests are to be logged
+         */
+        public final InfoLoggingSampler infoLoggingSampler;
+        /**
+         * The digest of the stored class and config or null if unknown
+         */
+        public final String configDigest;
+        public final long ramBytesUsed;
+
+        public LoadedRewriter(final String rewriterId, final long version, final OpenSearchRewriterFactory factory,
+                              final boolean loggingEnabled) {
+            this(rewriterId, version, factory, loggingEnabled, null);
+        }
+
+        public LoadedRewriter(final String rewriterId, final long version, final OpenSearchRewriterFactory factory,
+                              final boolean loggingEnabled, final InfoLoggingSampler infoLoggingSampler) {
+            this(rewriterId, version, factory, loggingEnabled, infoLoggingSampler, null);
+        }
+
+        public LoadedRewriter(final String rewriterId, final long version, final OpenSearchRewriterFactory factory,
+                              final boolean loggingEnabled, final InfoLoggingSampler infoLoggingSampler,
+                              final String configDigest) {
+            this.rewriterId = rewriterId;
+            this.version = version;
+            this.factory = factory;
+            this.loggingEnabled = loggingEnabled;
+            this.infoLoggingSampler = infoLoggingSampler;
+            this.configDigest = configDigest;
+            this.ramBytesUsed = Math.max(0L, factory.ramBytesUsed());
+        }
+    }
+}
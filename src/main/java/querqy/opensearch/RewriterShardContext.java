@@ -22,30 +22,27 @@ package querqy.opensearch;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.opensearch.OpenSearchException;
-import org.opensearch.ResourceNotFoundException;
-import org.opensearch.action.get.GetResponse;
-import org.opensearch.client.Client;
 import org.opensearch.common.cache.Cache;
 import org.opensearch.common.settings.Setting;
 import org.opensearch.common.settings.Settings;
 import org.opensearch.common.unit.TimeValue;
+import org.opensearch.core.common.unit.ByteSizeValue;
 import org.opensearch.index.IndexService;
 import org.opensearch.core.index.shard.ShardId;
-import org.opensearch.indices.InvalidTypeNameException;
-import querqy.opensearch.rewriterstore.LoadRewriterConfig;
-import querqy.opensearch.rewriterstore.RewriterConfigMapping;
-import querqy.rewrite.RewriteChain;
+import querqy.opensearch.RewriterFactoryRegistry.LoadedRewriter;
+import querqy.opensearch.infologging.InfoLoggingSampler;
+import querqy.opensearch.stats.QuerqyStats;
 import querqy.rewrite.RewriterFactory;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
-
-import static querqy.opensearch.rewriterstore.Constants.QUERQY_INDEX_NAME;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class RewriterShardContext {
 
@@ -62,25 +59,86 @@ public class RewriterShardContext {
             TimeValue.timeValueNanos(0),
             Setting.Property.NodeScope);
 
+    /**
+     * The maximum estimated heap of the compiled rewriters on a node, -1 for no limit
+     */
+    public static final Setting<ByteSizeValue> CACHE_MAX_WEIGHT = Setting.memorySizeSetting(
+            "querqy.caches.rewriter.max_weight",
+            "-1", // no limit by default
+            Setting.Property.NodeScope);
+
     private static final Logger LOGGER = LogManager.getLogger(RewriterShardContext.class);
 
+    // the number of distinct rewriter combinations for which we keep a RewriteChain
+    static final int MAX_CACHED_CHAINS = 1024;
+
     final Cache<String, RewriterFactoryAndLogging> factories;
-    final Client client;
+    // Chains are cached with the expiry of the factories: a cached chain doesn't read the factories, which would
+    // otherwise keep the factories of a chain in use beyond their expiry
+    final Cache<List<String>, VersionedRewriteChain> chains;
+    // incremented whenever a factory is replaced or removed, making all cached chains stale at once
+    private final AtomicLong factoriesGeneration = new AtomicLong();
+    // null if disabled
+    final RewrittenQueryCache queryCache;
+    // guarded by this for writes
+    private volatile SearchAnalyzerWrapper queryAnalyzer;
+    private boolean closed = false;
+    final RewriterFactoryRegistry registry;
+    final QuerqyStats stats;
     final IndexService indexService;
     final ShardId shardId;
 
     public RewriterShardContext(final ShardId shardId, final IndexService indexService, final Settings settings,
-                                final Client client) {
+                                final RewriterFactoryRegistry registry) {
         this.indexService = indexService;
         this.shardId = shardId;
-        this.client = client;
-        factories = Caches.buildCache(CACHE_EXPIRE_AFTER_READ.get(settings), CACHE_EXPIRE_AFTER_WRITE.get(settings));
+        this.registry = registry;
+        this.stats = registry.getStats();
+        final TimeValue expireAfterWrite = CACHE_EXPIRE_AFTER_WRITE.get(settings);
+        final TimeValue expireAfterRead = CACHE_EXPIRE_AFTER_READ.get(settings);
+        factories = Caches.buildCache(expireAfterWrite, expireAfterRead, -1L, (rewriterId, factoryAndLogging) -> 1L,
+                notification -> onFactoryRemoved());
+        chains = Caches.buildCache(expireAfterWrite, expireAfterRead, MAX_CACHED_CHAINS,
+                (rewriterIds, chain) -> 1L, notification -> { });
+        final int queryCacheSize = RewrittenQueryCache.CACHE_SIZE.get(settings);
+        queryCache = queryCacheSize > 0 ? new RewrittenQueryCache(queryCacheSize) : null;
         LOGGER.info("Context loaded for shard {} {}", shardId, shardId.getIndex());
     }
 
+    /**
+     * Get the rewrite chain for the given rewriters. Chains are cached by the ordered list of rewriter ids. A cached
+     * chain is only returned as long as none of the factories has been reloaded, cleared or expired since it was
+     * created.
+     *
+     * @param rewriterIds The ordered rewriter ids
+     * @return The chain and the rewriters that have info logging enabled
+     */
     public RewriteChainAndLogging getRewriteChain(final List<String> rewriterIds) {
+
+        // read the generation before resolving the factories so that a concurrent reload makes this chain stale
+        final long generation = factoriesGeneration.get();
+
+        final VersionedRewriteChain cached = chains.get(rewriterIds);
+        if (cached != null && cached.generation == generation) {
+            stats.onChainCacheHit();
+            return cached.rewriteChainAndLogging;
+        }
+        stats.onChainCacheMiss();
+
+        final RewriteChainAndLogging rewriteChainAndLogging = createRewriteChain(rewriterIds);
+
+        chains.put(Collections.unmodifiableList(new ArrayList<>(rewriterIds)),
+                new VersionedRewriteChain(generation, rewriteChainAndLogging));
+
+        return rewriteChainAndLogging;
+    }
+
+    protected RewriteChainAndLogging createRewriteChain(final List<String> rewriterIds) {
         final List<RewriterFactory> rewriterFactories = new ArrayList<>(rewriterIds.size());
         final Set<String> loggingEnabledRewriters = new HashSet<>();
+        final Map<String, InfoLoggingSampler> infoLoggingSamplers = new HashMap<>();
+        final List<Long> rewriterVersions = new ArrayList<>(rewriterIds.size());
+        boolean readerDependent = false;
 
         for (final String id : rewriterIds) {
 
@@ -91,89 +149,205 @@ public class RewriterShardContext {
             rewriterFactories.add(factoryAndLogging.rewriterFactory);
             if (factoryAndLogging.loggingEnabled) {
                 loggingEnabledRewriters.add(id);
+                if (factoryAndLogging.infoLoggingSampler != null) {
+                    infoLoggingSamplers.put(id, factoryAndLogging.infoLoggingSampler);
+                }
             }
+            readerDependent |= factoryAndLogging.readerDependent;
+            rewriterVersions.add(factoryAndLogging.version);
 
         }
 
-        return new RewriteChainAndLogging(new RewriteChain(rewriterFactories), loggingEnabledRewriters);
+        return new RewriteChainAndLogging(Collections.unmodifiableList(rewriterFactories),
+                Collections.unmodifiableSet(loggingEnabledRewriters), infoLoggingSamplers, readerDependent,
+                Collections.unmodifiableList(rewriterVersions));
     }
 
     public void clearRewriter(final String rewriterId) {
         factories.invalidate(rewriterId);
     }
 
+    public Cache.CacheStats getFactoryCacheStats() {
+        return factories.stats();
+    }
+
     public void clearRewriters() {
         factories.invalidateAll();
+        chains.invalidateAll();
     }
 
-    public void reloadRewriter(final String rewriterId) {
-        if (factories.get(rewriterId) != null) {
-            loadFactory(rewriterId, true);
+    private void onFactoryRemoved() {
+        factoriesGeneration.incrementAndGet();
+        // the generation makes the chains stale, but they would still reference the removed factory
+        chains.invalidateAll();
+        if (queryCache != null) {
+            // not needed for correctness as the chain is part of the key, but the entries would be dead weight
+            queryCache.clear();
         }
     }
 
-    public synchronized RewriterFactoryAndLogging loadFactory(final String rewriterId, final boolean forceLoad) {
+    /**
+     * Get the analyzer for the query fields. The analyzer is shared by all requests and replaced when the mapping of
+     * the index changes. The caller must release it using {@link SearchAnalyzerWrapper#decRef()} once the query has
+     * been built. A replaced analyzer is closed when the last query that uses it releases it.
+     *
+     * @return The query analyzer for the current mapping version
+     */
+    public SearchAnalyzerWrapper acquireQueryAnalyzer() {
+        final long mappingVersion = indexService.getMetadata().getMappingVersion();
+        while (true) {
+            final SearchAnalyzerWrapper analyzer = queryAnalyzer;
+            if (analyzer != null && analyzer.getMappingVersion() == mappingVersion) {
+                if (analyzer.tryIncRef()) {
+                    return analyzer;
+                }
+                // replaced and released by all queries in the meantime
+                continue;
+            }
+            synchronized (this) {
+                if (closed) {
+                    // not shared, the reference of the caller is the only one
+                    return new SearchAnalyzerWrapper(indexService.mapperService(), mappingVersion);
+                }
+                if (queryAnalyzer == analyzer) {
+                    final SearchAnalyzerWrapper newAnalyzer = new SearchAnalyzerWrapper(indexService.mapperService(),
+                            mappingVersion);
+                    newAnalyzer.tryIncRef();
+                    queryAnalyzer = newAnalyzer;
+                    if (analyzer != null) {
+                        analyzer.decRef();
+                    }
+                    return newAnalyzer;
+                }
+            }
+        }
+    }
 
-        RewriterFactoryAndLogging factoryAndLogging = factories.get(rewriterId);
+    /**
+     * Release the resources of this context once the shard has been closed or has moved. Queries that are still
+     * running keep their references to the query analyzer.
+     */
+    public synchronized void close() {
+        closed = true;
+        if (queryAnalyzer != null) {
+            queryAnalyzer.decRef();
+            queryAnalyzer = null;
+        }
+    }
 
-        if (forceLoad || (factoryAndLogging == null)) {
+    /**
+     * @return The cache of rewritten queries for this shard or null if query caching is disabled
+     */
+    public RewrittenQueryCache getQueryCache() {
+        return queryCache;
+    }
 
-            final GetResponse response;
+    /**
+     * Replace the factory of a rewriter with the factory for the version that is currently loaded in the registry.
+     * The new factory is created before it replaces the current one, so that queries never wait for it. Queries that
+     * have already obtained the rewrite chain finish with the previous version.
+     *
+     * @param rewriterId The rewriter id
+     */
+    public void reloadRewriter(final String rewriterId) {
+        if (factories.get(rewriterId) != null) {
+            loadFactory(rewriterId, true);
+        }
+    }
 
-            try {
-                response = client.prepareGet(QUERQY_INDEX_NAME, rewriterId).execute().get();
-            } catch (InterruptedException | ExecutionException e) {
-                throw new OpenSearchException("Could not load rewriter " + rewriterId, e);
-            }
+    /**
+     * Like {@link #reloadRewriter(String)} but for a rewriter version that has already been loaded by the registry.
+     *
+     * @param loadedRewriter The loaded rewriter
+     */
+    public void reloadRewriter(final LoadedRewriter loadedRewriter) {
+        if (factories.get(loadedRewriter.rewriterId) != null) {
+            factories.put(loadedRewriter.rewriterId, createFactoryAndLogging(loadedRewriter));
+        }
+    }
 
-            final Map<String, Object> source = response.getSource();
+    /**
+     * Get the factory of a rewriter for this shard. Unless forceLoad is set, this waits for the rewriter to be loaded
+     * only for a bounded time (see {@link RewriterFactoryRegistry#getLoadedOrStartLoading(String)}), so that it can be
+     * called on the query path.
+     *
+     * @param rewriterId The rewriter id
+     * @param forceLoad Iff true, replace the cached factory and load the rewriter if needed, blocking until it has
+     *                  been loaded
+     * @return The factory for this shard
+     */
+    public RewriterFactoryAndLogging loadFactory(final String rewriterId, final boolean forceLoad) {
+
+        if (forceLoad) {
+            return replaceFactory(registry.getOrLoad(rewriterId));
+        }
 
-            if (source == null) {
-                throw new ResourceNotFoundException("Rewriter not found: " + rewriterId);
+        try {
+            // computeIfAbsent only blocks concurrent requests for the same rewriter, while the rewriter is loaded or
+            // the factory is derived from a loaded rewriter
+            final RewriterFactoryAndLogging factoryAndLogging = factories.computeIfAbsent(rewriterId,
+                    id -> createFactoryAndLogging(registry.getLoadedOrStartLoading(id)));
+            if (factoryAndLogging.version < registry.getLoadedVersion(rewriterId)) {
+                // a reload swapped the registry version after we had read it but before our factory was cached, so
+                // the reload didn't see our factory and didn't replace it
+                return replaceFactory(registry.getLoadedOrStartLoading(rewriterId));
             }
-
-            if (!"rewriter".equals(source.get(RewriterConfigMapping.PROP_TYPE))) {
-                throw new InvalidTypeNameException("Not a rewriter: " + rewriterId);
+            return factoryAndLogging;
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
+            throw new OpenSearchException("Could not load rewriter " + rewriterId, cause);
+        }
 
-            final LoadRewriterConfig loadConfig = new LoadRewriterConfig(rewriterId, source);
-
-            final Map<String, Object> infoLogging = loadConfig.getInfoLoggingConfig();
-            final boolean loggingEnabled;
-            if (infoLogging != null) {
-                final Object sinksObj = infoLogging.get("sinks");
-                if (sinksObj instanceof String) {
-                    loggingEnabled = "log4j".equals(sinksObj);
-                } else if (sinksObj instanceof Collection<?>) {
-                    Collection<?> sinksCollection = (Collection<?>) sinksObj;
-                    loggingEnabled = (sinksCollection.size() > 0) && sinksCollection.contains("log4j");
-                } else {
-                    loggingEnabled = false;
-                }
-            } else {
-                loggingEnabled = false;
-            }
+    }
 
-            final RewriterFactory factory = OpenSearchRewriterFactory.loadConfiguredInstance(loadConfig)
-                    .createRewriterFactory(indexService.getShard(shardId.id()));
-            factoryAndLogging = new RewriterFactoryAndLogging(factory, loggingEnabled);
-            factories.put(rewriterId, factoryAndLogging);
+    private RewriterFactoryAndLogging replaceFactory(final LoadedRewriter loadedRewriter) {
+        final RewriterFactoryAndLogging factoryAndLogging = createFactoryAndLogging(loadedRewriter);
+        factories.put(loadedRewriter.rewriterId, factoryAndLogging);
+        return factoryAndLogging;
+    }
 
+    protected RewriterFactoryAndLogging createFactoryAndLogging(final LoadedRewriter loadedRewriter) {
+        final RewriterFactory factory = loadedRewriter.factory
+                .createRewriterFactory(indexService.getShard(shardId.id()));
+        return new RewriterFactoryAndLogging(stats.rewriter(loadedRewriter.rewriterId).instrument(factory),
+                loadedRewriter.loggingEnabled, loadedRewriter.infoLoggingSampler, loadedRewriter.version,
+                loadedRewriter.factory.isReaderDependent());
+    }
 
-        }
 
-        return factoryAndLogging;
+    static class VersionedRewriteChain {
+        final long generation;
+        final RewriteChainAndLogging rewriteChainAndLogging;
 
+        VersionedRewriteChain(final long generation, final RewriteChainAndLogging rewriteChainAndLogging) {
+            this.generation = generation;
+            this.rewriteChainAndLogging = rewriteChainAndLogging;
+        }
     }
 
-
     public static class RewriterFactoryAndLogging {
         public final RewriterFactory rewriterFactory;
         public final boolean loggingEnabled;
+        public final InfoLoggingSampler infoLoggingSampler;
+        public final long version;
+        public final boolean readerDependent;
+
+        public RewriterFactoryAndLogging(final RewriterFactory rewriterFactory, final boolean loggingEnabled,
+                                         final long version, final boolean readerDependent) {
+            this(rewriterFactory, loggingEnabled, null, version, readerDependent);
+        }
 
-        public RewriterFactoryAndLogging(final RewriterFactory rewriterFactory, final boolean loggingEnabled) {
+        public RewriterFactoryAndLogging(final RewriterFactory rewriterFactory, final boolean loggingEnabled,
+                                         final InfoLoggingSampler infoLoggingSampler, final long version,
+                                         final boolean readerDependent) {
             this.rewriterFactory = rewriterFactory;
             this.loggingEnabled = loggingEnabled;
+            this.infoLoggingSampler = infoLoggingSampler;
+            this.version = version;
+            this.readerDependent = readerDependent;
         }
     }
 }
@@ -23,87 +23,463 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.opensearch.OpenSearchException;
 import org.opensearch.cluster.routing.ShardRouting;
+import org.opensearch.common.cache.Cache;
 import org.opensearch.common.inject.Inject;
+import org.opensearch.common.settings.Setting;
 import org.opensearch.common.settings.Settings;
+import org.opensearch.core.action.ActionListener;
 import org.opensearch.index.query.QueryShardContext;
 import org.opensearch.index.shard.IndexEventListener;
 import org.opensearch.index.shard.IndexShard;
 import org.opensearch.core.index.shard.ShardId;
 import org.opensearch.indices.IndicesService;
+import org.opensearch.threadpool.ThreadPool;
+import querqy.lucene.rewrite.cache.TermQueryCache;
+import querqy.opensearch.RewriterFactoryRegistry.LoadedRewriter;
+import querqy.opensearch.stats.NodeQuerqyStats;
+import querqy.opensearch.stats.QuerqyStats;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public class RewriterShardContexts implements IndexEventListener {
 
+    /**
+     * The ids of the rewriters that are loaded when a shard is started, before the first query hits the shard.
+     */
+    public static final Setting<List<String>> WARMUP_REWRITERS = Setting.listSetting(
+            "querqy.warmup.rewriters",
+            Collections.emptyList(),
+            Function.identity(),
+            Setting.Property.NodeScope);
+
     private static final Logger LOGGER = LogManager.getLogger(RewriterShardContexts.class);
 
 
     private final Map<ShardId, RewriterShardContext> shardContexts;
+    private final Map<ShardId, WarmupStatus> warmupStatuses;
+    // the started shards of non-system indices on this node, only these nodes apply rewriters
+    private final Set<ShardId> startedShards;
+    // serializes reloads, see reloadRewriter()
+    private final Object reloadLock = new Object();
+    private final RewriterFactoryRegistry registry;
+    private final List<String> warmupRewriterIds;
+    private final boolean queryCacheEnabled;
+    private final SharedQueryCache sharedQueryCache;
+    private final OpenSearchTermQueryCache termQueryCache;
 
     private IndicesService indicesService;
+    private ThreadPool threadPool;
     private Settings settings;
 
-    public RewriterShardContexts(final Settings settings) {
+    public RewriterShardContexts(final Settings settings, final RewriterFactoryRegistry registry) {
         this.settings = settings;
+        this.registry = registry;
         shardContexts = new ConcurrentHashMap<>();
+        warmupStatuses = new ConcurrentHashMap<>();
+        startedShards = ConcurrentHashMap.newKeySet();
+        warmupRewriterIds = WARMUP_REWRITERS.get(settings);
+        queryCacheEnabled = RewrittenQueryCache.CACHE_SIZE.get(settings) > 0;
+        final int sharedQueryCacheSize = SharedQueryCache.CACHE_SIZE.get(settings);
+        sharedQueryCache = sharedQueryCacheSize > 0 ? new SharedQueryCache(sharedQueryCacheSize) : null;
+        final int termQueryCacheSize = OpenSearchTermQueryCache.CACHE_SIZE.get(settings);
+        termQueryCache = termQueryCacheSize > 0
+                ? new OpenSearchTermQueryCache(termQueryCacheSize,
+                        OpenSearchTermQueryCache.CACHE_MAX_BYTES.get(settings).getBytes())
+                : null;
+        // release the shards' references to rewriters that were removed from the node-level cache
+        registry.addRemovalListener(rewriterId ->
+                shardContexts.values().forEach(ctx -> ctx.clearRewriter(rewriterId)));
     }
 
     public RewriteChainAndLogging getRewriteChain(final List<String> rewriterIds,
                                                   final QueryShardContext context) {
+        return getShardContext(context).getRewriteChain(rewriterIds);
+    }
+
+    /**
+     * @param context The query shard context
+     * @return The cache of rewritten queries for the shard or null if query caching is disabled
+     */
+    public RewrittenQueryCache getQueryCache(final QueryShardContext context) {
+        return queryCacheEnabled ? getShardContext(context).getQueryCache() : null;
+    }
 
+    /**
+     * @return The node-level cache of queries that are shared by the shards of an index or null if it is disabled
+     */
+    public SharedQueryCache getSharedQueryCache() {
+        return sharedQueryCache;
+    }
+
+    /**
+     * @return The node-level term query cache or null if it is disabled
+     */
+    public OpenSearchTermQueryCache getTermQueryCache() {
+        return termQueryCache;
+    }
+
+    /**
+     * @param context The query shard context
+     * @return The term query cache for the index of the shard or null if term query caching is disabled
+     */
+    public TermQueryCache getTermQueryCache(final QueryShardContext context) {
+        return termQueryCache == null ? null : termQueryCache.forIndex(context.index(),
+                context.getIndexSettings().getIndexMetadata().getMappingVersion());
+    }
+
+    /**
+     * @param context The query shard context
+     * @return The analyzer for the query fields of the shard, to be released using
+     *         {@link SearchAnalyzerWrapper#decRef()}
+     */
+    public SearchAnalyzerWrapper acquireQueryAnalyzer(final QueryShardContext context) {
+        return getShardContext(context).acquireQueryAnalyzer();
+    }
+
+    /**
+     * @return The summed up stats of the rewritten query caches of all shards on this node
+     */
+    public Cache.CacheStats getQueryCacheStats() {
+        long hits = 0L;
+        long misses = 0L;
+        long evictions = 0L;
+        for (final RewriterShardContext shardContext : shardContexts.values()) {
+            final RewrittenQueryCache queryCache = shardContext.getQueryCache();
+            if (queryCache != null) {
+                final Cache.CacheStats stats = queryCache.stats();
+                hits += stats.getHits();
+                misses += stats.getMisses();
+                evictions += stats.getEvictions();
+            }
+        }
+        return new Cache.CacheStats(hits, misses, evictions);
+    }
+
+    /**
+     * @return The summed up stats of the rewriter factory caches of all shards on this node
+     */
+    public Cache.CacheStats getFactoryCacheStats() {
+        long hits = 0L;
+        long misses = 0L;
+        long evictions = 0L;
+        for (final RewriterShardContext shardContext : shardContexts.values()) {
+            final Cache.CacheStats stats = shardContext.getFactoryCacheStats();
+            hits += stats.getHits();
+            misses += stats.getMisses();
+            evictions += stats.getEvictions();
+        }
+        return new Cache.CacheStats(hits, misses, evictions);
+    }
+
+    public QuerqyStats getStats() {
+        return registry.getStats();
+    }
+
+    /**
+     * @param rewriterIds The ids of the rewriters to report, all rewriters if empty
+     * @return The Querqy stats of this node
+     */
+    public NodeQuerqyStats getNodeStats(final List<String> rewriterIds) {
+        final QuerqyStats stats = registry.getStats();
+
+        final Map<String, NodeQuerqyStats.CacheUsage> caches = new LinkedHashMap<>();
+        caches.put("rewriter", toCacheUsage(registry.getCacheStats()));
+        caches.put("rewrite_chain", stats.getChainCacheUsage());
+        caches.put("rewriter_factory", toCacheUsage(getFactoryCacheStats()));
+        if (queryCacheEnabled) {
+            caches.put("rewritten_query", toCacheUsage(getQueryCacheStats()));
+        }
+        if (sharedQueryCache != null) {
+            caches.put("shared_query", toCacheUsage(sharedQueryCache.stats()));
+        }
+        if (termQueryCache != null) {
+            caches.put("term_query", toCacheUsage(termQueryCache.stats()));
+        }
+
+        final Map<String, NodeQuerqyStats.ShardWarmup> warmups = new TreeMap<>();
+        warmupStatuses.forEach((shardId, warmupStatus) -> warmups.put(shardId.toString(),
+                new NodeQuerqyStats.ShardWarmup(warmupStatus.getState().name().toLowerCase(Locale.ROOT),
+                        warmupStatus.getTookMillis())));
+
+        return new NodeQuerqyStats(stats.getQueryLatency(), stats.getQueryErrors(), registry.getCount(),
+                stats.getRewriterLoadFailures(), registry.getWeight(), registry.getMaxWeight(), caches,
+                stats.getRewriterStats(rewriterIds), stats.getLogUsage(), warmups);
+    }
+
+    private static NodeQuerqyStats.CacheUsage toCacheUsage(final Cache.CacheStats stats) {
+        return new NodeQuerqyStats.CacheUsage(stats.getHits(), stats.getMisses(), stats.getEvictions());
+    }
+
+    private RewriterShardContext getShardContext(final QueryShardContext context) {
         final ShardId shardId = new ShardId(context.getFullyQualifiedIndex(), context.getShardId());
-        RewriterShardContext shardContext = shardContexts.get(shardId);
+        final RewriterShardContext shardContext = shardContexts.get(shardId);
+        return shardContext != null ? shardContext : loadShardContext(shardId);
+    }
 
-        if (shardContext == null) {
-            shardContext = loadShardContext(shardId, context);
+    /**
+     * Get the ids of the rewriters that should be loaded before the query is applied to the shards of this node. This
+     * will be empty if the rewriters are loaded already or if no shard of a non-system index has been started on this
+     * node, like on coordinating-only nodes or on nodes that only hold the Querqy index. The rewrite context doesn't
+     * tell the target index of the request, so a node with shards of any other index will preload the rewriters.
+     *
+     * @param rewriterIds The ids of the rewriters used in a query
+     * @return The ids of the rewriters that need to be loaded
+     */
+    public List<String> getRewritersToPreload(final List<String> rewriterIds) {
+        if (startedShards.isEmpty()) {
+            return Collections.emptyList();
         }
+        List<String> result = null;
+        for (final String rewriterId : rewriterIds) {
+            if (!registry.isLoaded(rewriterId)) {
+                if (result == null) {
+                    result = new ArrayList<>(rewriterIds.size());
+                }
+                result.add(rewriterId);
+            }
+        }
+        return result == null ? Collections.emptyList() : result;
+    }
 
-        return shardContext.getRewriteChain(rewriterIds);
+    public void preloadRewriters(final List<String> rewriterIds,
+                                 final ActionListener<Collection<LoadedRewriter>> listener) {
+        registry.loadAll(rewriterIds, listener);
     }
 
-    protected synchronized RewriterShardContext loadShardContext(final ShardId shardId,
-                                                                 final QueryShardContext context) {
+    protected synchronized RewriterShardContext loadShardContext(final ShardId shardId) {
         RewriterShardContext shardContext = shardContexts.get(shardId);
 
         if (shardContext == null) {
             shardContext = new RewriterShardContext(shardId, indicesService.indexService(shardId.getIndex()),  settings,
-                    context.getClient());
+                    registry);
             shardContexts.put(shardId, shardContext);
         }
 
         return shardContext;
     }
 
-    public synchronized void reloadRewriter(final String rewriterId) {
-        shardContexts.values().forEach(ctx -> {
-            try {
-                ctx.reloadRewriter(rewriterId);
-            } catch (final Exception e) {
-                LOGGER.error("Error reloading rewriter " + rewriterId, e);
-                throw new OpenSearchException("Could not reload rewriter " + rewriterId, e);
-            }
+    /**
+     * <p>Reload a rewriter. The new version is compiled while the current version keeps serving queries on all shards.
+     * It then replaces the current version with a single reference swap in the node-level registry and in each shard
+     * context.</p>
+     *
+     * <p>Reloads are serialized with each other but never hold the monitor of this object, which is used by the query
+     * path and by the shard lifecycle callbacks.</p>
+     *
+     * @param rewriterId The rewriter id
+     */
+    public void reloadRewriter(final String rewriterId) {
+        synchronized (reloadLock) {
+            doReloadRewriter(rewriterId);
+        }
+    }
+
+    private void doReloadRewriter(final String rewriterId) {
+        try {
+            // compile once per node, the shard contexts will only derive their view from the shared instance
+            registry.reloadIfLoaded(rewriterId);
+        } catch (final Exception e) {
+            LOGGER.error("Error reloading rewriter " + rewriterId, e);
+            throw new OpenSearchException("Could not reload rewriter " + rewriterId, e);
+        }
+        final Map<String, Exception> failures = reloadShardContexts(Collections.singletonList(rewriterId));
+        clearSharedQueryCache();
+        if (!failures.isEmpty()) {
+            throw (OpenSearchException) failures.get(rewriterId);
+        }
+    }
+
+    /**
+     * Reload several rewriters, compiling them in parallel. Like {@link #reloadRewriter(String)}, this doesn't block
+     * queries.
+     *
+     * @param rewriterIds The rewriter ids
+     * @return The exceptions by rewriter id for rewriters that couldn't be reloaded
+     */
+    public Map<String, Exception> reloadRewriters(final Collection<String> rewriterIds) {
+        synchronized (reloadLock) {
+            return doReloadRewriters(rewriterIds);
+        }
+    }
+
+    private Map<String, Exception> doReloadRewriters(final Collection<String> rewriterIds) {
+        final Map<String, Exception> failures = new HashMap<>();
+        registry.reloadAllIfLoaded(rewriterIds).forEach((rewriterId, e) -> {
+            LOGGER.error("Error reloading rewriter " + rewriterId, e);
+            failures.put(rewriterId, new OpenSearchException("Could not reload rewriter " + rewriterId, e));
         });
+        final List<String> reloaded = new ArrayList<>(rewriterIds.size());
+        for (final String rewriterId : rewriterIds) {
+            if (!failures.containsKey(rewriterId)) {
+                reloaded.add(rewriterId);
+            }
+        }
+        failures.putAll(reloadShardContexts(reloaded));
+        clearSharedQueryCache();
+        return failures;
+    }
+
+    /**
+     * <p>Make all shard contexts derive their view from the rewriter versions that are now loaded in the registry.</p>
+     *
+     * <p>Deriving the view can be shard-specific work (like for the word break rewriter), so the shards are updated
+     * in parallel in the {@link QuerqyPlugin#REWRITER_LOADER_THREAD_POOL_NAME} thread pool, with the calling thread
+     * taking over if the pool rejects a task. The loaded rewriters are passed on so that the tasks never have to load
+     * a rewriter themselves while holding a thread of the pool.</p>
+     *
+     * @param rewriterIds The ids of the reloaded rewriters
+     * @return The exceptions by rewriter id for rewriters that couldn't be reloaded on all shards
+     */
+    private Map<String, Exception> reloadShardContexts(final Collection<String> rewriterIds) {
+        final List<LoadedRewriter> loadedRewriters = new ArrayList<>(rewriterIds.size());
+        for (final String rewriterId : rewriterIds) {
+            final LoadedRewriter loadedRewriter = registry.getLoaded(rewriterId);
+            if (loadedRewriter != null) {
+                loadedRewriters.add(loadedRewriter);
+            }
+        }
+        final List<RewriterShardContext> contexts = new ArrayList<>(shardContexts.values());
+        if (loadedRewriters.isEmpty() || contexts.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        final Map<String, Exception> failures = new ConcurrentHashMap<>();
+        final List<CompletableFuture<Void>> futures = new ArrayList<>(contexts.size());
+        for (final RewriterShardContext ctx : contexts) {
+            final Runnable task = () -> {
+                for (final LoadedRewriter loadedRewriter : loadedRewriters) {
+                    try {
+                        ctx.reloadRewriter(loadedRewriter);
+                    } catch (final Exception e) {
+                        LOGGER.error("Error reloading rewriter " + loadedRewriter.rewriterId + " for shard "
+                                + ctx.shardId, e);
+                        failures.putIfAbsent(loadedRewriter.rewriterId, new OpenSearchException(
+                                "Could not reload rewriter " + loadedRewriter.rewriterId, e));
+                    }
+                }
+            };
+            if (threadPool == null || contexts.size() == 1) {
+                task.run();
+            } else {
+                try {
+                    futures.add(CompletableFuture.runAsync(task,
+                            threadPool.executor(QuerqyPlugin.REWRITER_LOADER_THREAD_POOL_NAME)));
+                } catch (final RejectedExecutionException e) {
+                    task.run();
+                }
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        return failures;
     }
 
     public void clearRewriter(final String rewriterId) {
+        registry.clearRewriter(rewriterId);
         shardContexts.values().forEach(ctx -> ctx.clearRewriter(rewriterId));
+        clearSharedQueryCache();
     }
 
     public void clearRewriters() {
+        registry.clearRewriters();
         shardContexts.values().forEach(RewriterShardContext::clearRewriters);
+        clearSharedQueryCache();
+        if (termQueryCache != null) {
+            termQueryCache.clear();
+        }
+    }
+
+    private void clearSharedQueryCache() {
+        if (sharedQueryCache != null) {
+            sharedQueryCache.clear();
+        }
     }
 
     @Override
     public synchronized void shardRoutingChanged(final IndexShard indexShard, final ShardRouting oldRouting,
                                                  final ShardRouting newRouting) {
-        shardContexts.remove(indexShard.shardId());
+        closeShardContext(indexShard.shardId());
     }
 
     @Override
     public synchronized void afterIndexShardClosed(final ShardId shardId, final IndexShard indexShard, final Settings indexSettings) {
-        shardContexts.remove(shardId);
+        closeShardContext(shardId);
+        warmupStatuses.remove(shardId);
+        startedShards.remove(shardId);
+    }
+
+    private void closeShardContext(final ShardId shardId) {
+        final RewriterShardContext shardContext = shardContexts.remove(shardId);
+        if (shardContext != null) {
+            shardContext.close();
+        }
+    }
+
+    /**
+     * Loads the rewriters configured in {@link #WARMUP_REWRITERS} so that the first queries after a shard was started
+     * (after a restart or relocation) don't have to wait for rewriters to load. This is called on the cluster state
+     * applier thread and must not block: the rewriters are loaded in the background.
+     *
+     * @param indexShard The started shard
+     */
+    @Override
+    public void afterIndexShardStarted(final IndexShard indexShard) {
+
+        final ShardId shardId = indexShard.shardId();
+
+        // don't load rewriters for system or hidden indices like the Querqy index itself
+        if (shardId.getIndexName().startsWith(".")) {
+            return;
+        }
+        startedShards.add(shardId);
+        if (warmupRewriterIds.isEmpty()) {
+            return;
+        }
+
+        final WarmupStatus warmupStatus = new WarmupStatus(warmupRewriterIds);
+        warmupStatuses.put(shardId, warmupStatus);
+
+        registry.loadAll(warmupRewriterIds, ActionListener.wrap(
+                loaded -> threadPool.generic().execute(() -> {
+                    try {
+                        final RewriterShardContext shardContext = shardContexts.containsKey(shardId)
+                                ? shardContexts.get(shardId) : loadShardContext(shardId);
+                        for (final String rewriterId : warmupRewriterIds) {
+                            shardContext.loadFactory(rewriterId, false);
+                        }
+                        warmupStatus.onReady();
+                        LOGGER.info("Warmed up rewriters {} for shard {} in {}ms", warmupRewriterIds, shardId,
+                                warmupStatus.getTookMillis());
+                    } catch (final Exception e) {
+                        onWarmupFailure(shardId, warmupStatus, e);
+                    }
+                }),
+                e -> onWarmupFailure(shardId, warmupStatus, e)
+        ));
+
+    }
+
+    private void onWarmupFailure(final ShardId shardId, final WarmupStatus warmupStatus, final Exception e) {
+        warmupStatus.onFailure();
+        // rewriters that couldn't be loaded will be loaded again on the first query that uses them
+        LOGGER.warn("Could not warm up rewriters " + warmupRewriterIds + " for shard " + shardId, e);
+    }
+
+    public Map<ShardId, WarmupStatus> getWarmupStatuses() {
+        return Collections.unmodifiableMap(warmupStatuses);
     }
 
     @Inject
@@ -111,4 +487,48 @@ public class RewriterShardContexts implements IndexEventListener {
         this.indicesService = indicesService;
     }
 
+    public void setThreadPool(final ThreadPool threadPool) {
+        this.threadPool = threadPool;
+    }
+
+    public static class WarmupStatus {
+
+        public enum State { WARMING_UP, READY, FAILED }
+
+        private final List<String> rewriterIds;
+        private final long startNanos = System.nanoTime();
+        private volatile State state = State.WARMING_UP;
+        private volatile long tookNanos = -1L;
+
+        WarmupStatus(final List<String> rewriterIds) {
+            this.rewriterIds = rewriterIds;
+        }
+
+        void onReady() {
+            tookNanos = System.nanoTime() - startNanos;
+            state = State.READY;
+        }
+
+        void onFailure() {
+            tookNanos = System.nanoTime() - startNanos;
+            state = State.FAILED;
+        }
+
+        public List<String> getRewriterIds() {
+            return rewriterIds;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * @return The time it took to warm up the shard in milliseconds, or -1 if warm-up hasn't finished yet
+         */
+        public long getTookMillis() {
+            final long took = tookNanos;
+            return took < 0L ? -1L : TimeUnit.NANOSECONDS.toMillis(took);
+        }
+    }
+
 }
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.opensearch.cluster.ClusterChangedEvent;
+import org.opensearch.cluster.ClusterStateListener;
+import querqy.opensearch.rewriterstore.RewritersMetadata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>Reloads rewriters in the background when the {@link RewritersMetadata} of the cluster state shows a more recent
+ * version than the version that was loaded on this node, and clears rewriters that were removed from the metadata.</p>
+ *
+ * <p>Saving a rewriter still reloads it on all nodes before the response is returned. This listener makes nodes that
+ * missed that request, for example because they were disconnected, converge with the next cluster state. Only
+ * rewriters that have been loaded on this node are reloaded.</p>
+ *
+ * <p>A rewriter that is being loaded when its version changes might have been fetched before the new version was
+ * saved. It is checked again once that load has completed.</p>
+ */
+public class RewritersMetadataListener implements ClusterStateListener {
+
+    private static final Logger LOGGER = LogManager.getLogger(RewritersMetadataListener.class);
+
+    private final RewriterShardContexts rewriterShardContexts;
+    private final RewriterFactoryRegistry registry;
+    private final Executor executor;
+
+    public RewritersMetadataListener(final RewriterShardContexts rewriterShardContexts,
+                                     final RewriterFactoryRegistry registry, final Executor executor) {
+        this.rewriterShardContexts = rewriterShardContexts;
+        this.registry = registry;
+        this.executor = executor;
+    }
+
+    @Override
+    public void clusterChanged(final ClusterChangedEvent event) {
+        if (!event.metadataChanged()) {
+            return;
+        }
+        final RewritersMetadata current = RewritersMetadata.getOrEmpty(event.state().metadata());
+        final RewritersMetadata previous = RewritersMetadata.getOrEmpty(event.previousState().metadata());
+        if (current.equals(previous)) {
+            return;
+        }
+
+        final List<String> removed = new ArrayList<>();
+        for (final String rewriterId : previous.getRewriters().keySet()) {
+            if (!current.getRewriters().containsKey(rewriterId) && registry.isLoaded(rewriterId)) {
+                removed.add(rewriterId);
+            }
+        }
+
+        final List<String> loading = getLoadingRewriterIds(current, previous);
+
+        if (removed.isEmpty() && loading.isEmpty() && getStaleRewriterIds(current).isEmpty()) {
+            return;
+        }
+
+        // don't block the cluster applier thread with loading rewriters
+        executor.execute(() -> {
+            try {
+                removed.forEach(rewriterShardContexts::clearRewriter);
+                // check again, the rewriters might have been reloaded by a reload request in the meantime
+                final List<String> stale = getStaleRewriterIds(current);
+                if (!stale.isEmpty()) {
+                    LOGGER.info("Reloading rewriters {} after a version change in the cluster state", stale);
+                    rewriterShardContexts.reloadRewriters(stale);
+                }
+                for (final String rewriterId : loading) {
+                    reloadIfStaleWhenLoaded(rewriterId, current.getRewriters().get(rewriterId).version);
+                }
+            } catch (final Exception e) {
+                LOGGER.error("Could not apply rewriters metadata", e);
+            }
+        });
+    }
+
+    private void reloadIfStaleWhenLoaded(final String rewriterId, final long version) {
+        registry.whenLoadingCompleted(rewriterId, () -> executor.execute(() -> {
+            try {
+                if (registry.isLoading(rewriterId)) {
+                    // another load was started in the meantime
+                    reloadIfStaleWhenLoaded(rewriterId, version);
+                    return;
+                }
+                final long loadedVersion = registry.getLoadedVersion(rewriterId);
+                if (loadedVersion > -1L && loadedVersion < version) {
+                    LOGGER.info("Reloading rewriter {} after it was loaded in a stale version", rewriterId);
+                    rewriterShardContexts.reloadRewriters(Collections.singletonList(rewriterId));
+                }
+            } catch (final Exception e) {
+                LOGGER.error("Could not reload rewriter " + rewriterId, e);
+            }
+        }));
+    }
+
+    List<String> getStaleRewriterIds(final RewritersMetadata metadata) {
+        final List<String> stale = new ArrayList<>();
+        for (final Map.Entry<String, RewritersMetadata.RewriterVersion> entry : metadata.getRewriters().entrySet()) {
+            final long loadedVersion = registry.getLoadedVersion(entry.getKey());
+            if (loadedVersion > -1L && loadedVersion < entry.getValue().version
+                    && !registry.isLoading(entry.getKey())) {
+                stale.add(entry.getKey());
+            }
+        }
+        return stale;
+    }
+
+    List<String> getLoadingRewriterIds(final RewritersMetadata current, final RewritersMetadata previous) {
+        final List<String> loading = new ArrayList<>();
+        for (final Map.Entry<String, RewritersMetadata.RewriterVersion> entry : current.getRewriters().entrySet()) {
+            final RewritersMetadata.RewriterVersion previousVersion = previous.getRewriters().get(entry.getKey());
+            if ((previousVersion == null || previousVersion.version != entry.getValue().version)
+                    && registry.isLoading(entry.getKey())) {
+                loading.add(entry.getKey());
+            }
+        }
+        return loading;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch;
+
+import org.opensearch.common.cache.Cache;
+import org.opensearch.common.settings.Setting;
+import querqy.model.ExpandedQuery;
+import querqy.opensearch.query.QuerqyQueryBuilder;
+
+import java.util.Objects;
+
+/**
+ * <p>A shard-level LRU cache of the rewritten queries that {@link QuerqyProcessor} created for a
+ * {@link QuerqyQueryBuilder}. The Lucene query is built from the rewritten query for each request (see
+ * {@link RewriteOutputs}).</p>
+ *
+ * <p>Entries are keyed by the query builder and the {@link RewriteChainAndLogging} that was used to rewrite the query.
+ * As a new chain object is created when one of its rewriters is reloaded or cleared, entries for outdated rewriter
+ * versions can never be returned. If the chain contains rewriters that depend on the index reader, the entries are
+ * additionally scoped to the reader's cache key.</p>
+ */
+public class RewrittenQueryCache {
+
+    /**
+     * The maximum number of cached queries per shard, 0 disables the cache
+     */
+    public static final Setting<Integer> CACHE_SIZE = Setting.intSetting(
+            "querqy.caches.rewritten_query.size",
+            0, // disabled by default
+            0,
+            Setting.Property.NodeScope);
+
+    private final Cache<Key, ExpandedQuery> queries;
+
+    public RewrittenQueryCache(final int size) {
+        queries = Caches.buildCache(size);
+    }
+
+    public ExpandedQuery get(final QuerqyQueryBuilder queryBuilder, final RewriteChainAndLogging rewriteChain,
+                             final Object readerCacheKey) {
+        return queries.get(new Key(queryBuilder, rewriteChain, readerCacheKey));
+    }
+
+    public void put(final QuerqyQueryBuilder queryBuilder, final RewriteChainAndLogging rewriteChain,
+                    final Object readerCacheKey, final ExpandedQuery rewrittenQuery) {
+        queries.put(new Key(queryBuilder, rewriteChain, readerCacheKey), rewrittenQuery);
+    }
+
+    public void clear() {
+        queries.invalidateAll();
+    }
+
+    public long count() {
+        return queries.count();
+    }
+
+    public Cache.CacheStats stats() {
+        return queries.stats();
+    }
+
+    static class Key {
+
+        final QuerqyQueryBuilder queryBuilder;
+        final RewriteChainAndLogging rewriteChain;
+        final Object readerCacheKey;
+        private final int hashCode;
+
+        Key(final QuerqyQueryBuilder queryBuilder, final RewriteChainAndLogging rewriteChain,
+            final Object readerCacheKey) {
+            this.queryBuilder = queryBuilder;
+            this.rewriteChain = rewriteChain;
+            this.readerCacheKey = readerCacheKey;
+            hashCode = Objects.hash(queryBuilder, System.identityHashCode(rewriteChain), readerCacheKey);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final Key key = (Key) o;
+            // the chain is compared by identity: a reloaded rewriter results in a new chain
+            return rewriteChain == key.rewriteChain
+                    && Objects.equals(readerCacheKey, key.readerCacheKey)
+                    && queryBuilder.equals(key.queryBuilder);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.DelegatingAnalyzerWrapper;
+import org.opensearch.index.mapper.MappedFieldType;
+import org.opensearch.index.mapper.MapperService;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>An analyzer that delegates to the search analyzers of the fields of an index for a given mapping version.</p>
+ *
+ * <p>The analyzer per field is looked up only once and kept in a table. An instance is shared by all requests to a
+ * shard, which also lets Lucene reuse the token stream components across requests. It must be replaced when the
+ * mapping version changes (see {@link RewriterShardContext#acquireQueryAnalyzer()}).</p>
+ *
+ * <p>The instance is reference counted. The shard context holds one reference for as long as the instance is its
+ * current analyzer, and every query that uses it holds another one. The analyzer is closed when the last reference has
+ * been released.</p>
+ */
+public class SearchAnalyzerWrapper extends DelegatingAnalyzerWrapper {
+
+    private final MapperService mapperService;
+    private final long mappingVersion;
+    private final Map<String, Analyzer> fieldAnalyzers = new ConcurrentHashMap<>();
+    // starts with the reference of the creator
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    public SearchAnalyzerWrapper(final MapperService mapperService, final long mappingVersion) {
+        super(Analyzer.PER_FIELD_REUSE_STRATEGY);
+        this.mapperService = mapperService;
+        this.mappingVersion = mappingVersion;
+    }
+
+    public long getMappingVersion() {
+        return mappingVersion;
+    }
+
+    /**
+     * @return true iff a reference was acquired, false if the analyzer has already been closed
+     */
+    public boolean tryIncRef() {
+        int count;
+        do {
+            count = refCount.get();
+            if (count <= 0) {
+                return false;
+            }
+        } while (!refCount.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    /**
+     * Release a reference and close the analyzer if it was the last one.
+     */
+    public void decRef() {
+        final int count = refCount.decrementAndGet();
+        if (count == 0) {
+            // only closes the reuse state of this wrapper, the field analyzers belong to the mapper service
+            close();
+        } else if (count < 0) {
+            throw new IllegalStateException("SearchAnalyzerWrapper was already closed");
+        }
+    }
+
+    boolean isClosed() {
+        return refCount.get() <= 0;
+    }
+
+    @Override
+    protected Analyzer getWrappedAnalyzer(final String fieldName) {
+        final Analyzer analyzer = fieldAnalyzers.get(fieldName);
+        return analyzer != null ? analyzer : fieldAnalyzers.computeIfAbsent(fieldName, this::lookupAnalyzer);
+    }
+
+    private Analyzer lookupAnalyzer(final String fieldName) {
+        final MappedFieldType fieldType = mapperService.fieldType(fieldName);
+        if (fieldType != null) {
+            final Analyzer analyzer = fieldType.getTextSearchInfo().getSearchAnalyzer();
+            if (analyzer != null) {
+                return analyzer;
+            }
+        }
+        return mapperService.getIndexAnalyzers().getDefaultSearchAnalyzer();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch;
+
+import org.opensearch.common.util.concurrent.ThreadContext;
+import org.opensearch.search.internal.ShardSearchRequest;
+import org.opensearch.transport.TransportInterceptor;
+import org.opensearch.transport.TransportRequest;
+import org.opensearch.transport.TransportRequestHandler;
+
+/**
+ * Makes the {@link ShardSearchRequest} that a shard handles available in the thread context, so that queries that are
+ * rewritten for the shard can see which shard of the search request they belong to.
+ */
+public class ShardSearchRequestInterceptor implements TransportInterceptor {
+
+    static final String TRANSIENT_SHARD_SEARCH_REQUEST = "_querqy_shard_search_request";
+
+    private final ThreadContext threadContext;
+
+    public ShardSearchRequestInterceptor(final ThreadContext threadContext) {
+        this.threadContext = threadContext;
+    }
+
+    @Override
+    public <T extends TransportRequest> TransportRequestHandler<T> interceptHandler(
+            final String action, final String executor, final boolean forceExecution,
+            final TransportRequestHandler<T> actualHandler) {
+
+        return (request, channel, task) -> {
+            if (!(request instanceof ShardSearchRequest)
+                    || threadContext.getTransient(TRANSIENT_SHARD_SEARCH_REQUEST) != null) {
+                actualHandler.messageReceived(request, channel, task);
+                return;
+            }
+            // the handler might run in the context of the sender if the request is local
+            try (ThreadContext.StoredContext ignored = threadContext.newStoredContext(true)) {
+                threadContext.putTransient(TRANSIENT_SHARD_SEARCH_REQUEST, request);
+                actualHandler.messageReceived(request, channel, task);
+            }
+        };
+    }
+
+    /**
+     * @param threadContext The thread context
+     * @return The shard search request that is being handled in the thread context or null if there isn't any, for
+     * example if a query is rewritten for the explain or for the validate query API.
+     */
+    public static ShardSearchRequest getShardSearchRequest(final ThreadContext threadContext) {
+        return threadContext.getTransient(TRANSIENT_SHARD_SEARCH_REQUEST);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch;
+
+import org.opensearch.common.cache.Cache;
+import org.opensearch.common.settings.Setting;
+import querqy.model.ExpandedQuery;
+import querqy.opensearch.query.QuerqyQueryBuilder;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <p>A node-level cache of the rewritten queries that {@link QuerqyProcessor} created for a
+ * {@link QuerqyQueryBuilder}.</p>
+ *
+ * <p>Without this cache, a query is parsed and rewritten on every shard that it is applied to. As long as none of the
+ * rewriters depends on the index reader, the rewritten query only depends on the query and the rewriter versions, and
+ * it can be shared by all shards on this node. Each shard still builds its own Lucene query from it (see
+ * {@link RewriteOutputs}), which also registers the named queries of the query in the context of the shard.</p>
+ *
+ * <p>Shards that rewrite the same query concurrently will each rewrite it.</p>
+ */
+public class SharedQueryCache {
+
+    /**
+     * The maximum number of cached queries per node, 0 disables the cache
+     */
+    public static final Setting<Integer> CACHE_SIZE = Setting.intSetting(
+            "querqy.caches.shared_query.size",
+            0, // disabled by default
+            0,
+            Setting.Property.NodeScope);
+
+    private final Cache<Key, ExpandedQuery> queries;
+
+    public SharedQueryCache(final int size) {
+        queries = Caches.buildCache(size);
+    }
+
+    public ExpandedQuery get(final QuerqyQueryBuilder queryBuilder, final List<Long> rewriterVersions) {
+        return queries.get(new Key(queryBuilder, rewriterVersions));
+    }
+
+    public void put(final QuerqyQueryBuilder queryBuilder, final List<Long> rewriterVersions,
+                    final ExpandedQuery rewrittenQuery) {
+        queries.put(new Key(queryBuilder, rewriterVersions), rewrittenQuery);
+    }
+
+    public void clear() {
+        queries.invalidateAll();
+    }
+
+    public long count() {
+        return queries.count();
+    }
+
+    public Cache.CacheStats stats() {
+        return queries.stats();
+    }
+
+    static class Key {
+
+        final QuerqyQueryBuilder queryBuilder;
+        final List<Long> rewriterVersions;
+        private final int hashCode;
+
+        Key(final QuerqyQueryBuilder queryBuilder, final List<Long> rewriterVersions) {
+            this.queryBuilder = queryBuilder;
+            this.rewriterVersions = rewriterVersions;
+            hashCode = Objects.hash(queryBuilder, rewriterVersions);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final Key key = (Key) o;
+            return rewriterVersions.equals(key.rewriterVersions)
+                    && queryBuilder.equals(key.queryBuilder);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
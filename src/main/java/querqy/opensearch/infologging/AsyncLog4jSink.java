@@ -0,0 +1,358 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch.infologging;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.opensearch.common.settings.Setting;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.threadpool.Scheduler;
+import org.opensearch.threadpool.ThreadPool;
+import querqy.infologging.Sink;
+import querqy.opensearch.query.InfoLoggingSpec;
+import querqy.rewrite.SearchEngineRequestAdapter;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>A {@link Sink} that writes the same log messages as the {@link Log4jSink} but moves formatting and writing them
+ * off the search thread.</p>
+ *
+ * <p>The messages of a request are collected in a buffer that is reused by the search thread. At the end of the
+ * request, they are copied into a slot of a preallocated ring buffer, which is drained in batches on the generic
+ * thread pool - periodically and as soon as the ring buffer is half full. If the ring buffer is full, the messages of
+ * the request are either dropped or written on the search thread, depending on the {@link OverflowPolicy}. Both are
+ * counted.</p>
+ */
+public class AsyncLog4jSink implements Sink, Closeable {
+
+    public enum OverflowPolicy {
+
+        /**
+         * Drop the messages of the request
+         */
+        DROP,
+
+        /**
+         * Write the messages of the request on the calling thread
+         */
+        SYNC;
+
+        public static OverflowPolicy parse(final String value) {
+            try {
+                return OverflowPolicy.valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (final IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown overflow policy [" + value + "], expected one of "
+                        + Arrays.toString(values()).toLowerCase(Locale.ROOT));
+            }
+        }
+    }
+
+    public static final Setting<Boolean> ENABLED = Setting.boolSetting(
+            "querqy.infologging.async.enabled",
+            false,
+            Setting.Property.NodeScope);
+
+    /**
+     * The number of requests that can be buffered, rounded up to the next power of two
+     */
+    public static final Setting<Integer> BUFFER_SIZE = Setting.intSetting(
+            "querqy.infologging.async.buffer_size",
+            8192,
+            2,
+            1 << 20,
+            Setting.Property.NodeScope);
+
+    public static final Setting<TimeValue> FLUSH_INTERVAL = Setting.positiveTimeSetting(
+            "querqy.infologging.async.flush_interval",
+            TimeValue.timeValueMillis(200),
+            Setting.Property.NodeScope);
+
+    public static final Setting<OverflowPolicy> OVERFLOW_POLICY = new Setting<>(
+            "querqy.infologging.async.overflow",
+            OverflowPolicy.DROP.name().toLowerCase(Locale.ROOT),
+            OverflowPolicy::parse,
+            Setting.Property.NodeScope);
+
+    private static final String CONTEXT_KEY = AsyncLog4jSink.class.getName() + ".MESSAGES";
+
+    private final Logger logger;
+    private final OverflowPolicy overflowPolicy;
+
+    private final Slot[] slots;
+    private final int mask;
+    // the sequence of the last slot claimed by a search thread
+    private final AtomicLong claimed = new AtomicLong(-1L);
+    // the sequence of the last slot written to the log, only updated by the draining thread
+    private volatile long consumed = -1L;
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    private final ThreadLocal<RequestMessages> requestMessages = ThreadLocal.withInitial(RequestMessages::new);
+
+    private final LongAdder logged = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private volatile Executor executor = null;
+    private volatile Scheduler.Cancellable flushTask = null;
+
+    public AsyncLog4jSink(final int bufferSize, final OverflowPolicy overflowPolicy) {
+        this(LogManager.getLogger(Log4jSink.class), bufferSize, overflowPolicy);
+    }
+
+    AsyncLog4jSink(final Logger logger, final int bufferSize, final OverflowPolicy overflowPolicy) {
+        this.logger = logger;
+        this.overflowPolicy = overflowPolicy;
+        final int capacity = Integer.highestOneBit(Math.max(2, bufferSize) - 1) << 1;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Start draining the ring buffer on the generic thread pool.
+     *
+     * @param threadPool The thread pool
+     * @param flushInterval The maximum time between draining the ring buffer
+     */
+    public void start(final ThreadPool threadPool, final TimeValue flushInterval) {
+        executor = threadPool.generic();
+        flushTask = threadPool.scheduleWithFixedDelay(this::drain, flushInterval, ThreadPool.Names.GENERIC);
+    }
+
+    @Override
+    public void close() {
+        final Scheduler.Cancellable task = flushTask;
+        if (task != null) {
+            task.cancel();
+        }
+        drain();
+    }
+
+    @Override
+    public void log(final Object message, final String rewriterId,
+                    final SearchEngineRequestAdapter searchEngineRequestAdapter) {
+
+        final Map<String, Object> context = searchEngineRequestAdapter.getContext();
+        RequestMessages messages = (RequestMessages) context.get(CONTEXT_KEY);
+        if (messages == null) {
+            // all messages of a request are logged on the same thread, between parsing the query and
+            // endOfRequest, we can reuse the buffer of the thread
+            messages = requestMessages.get();
+            messages.clear();
+            context.put(CONTEXT_KEY, messages);
+        }
+        messages.add(rewriterId, message);
+
+    }
+
+    @Override
+    public void endOfRequest(final SearchEngineRequestAdapter searchEngineRequestAdapter) {
+
+        final RequestMessages messages = (RequestMessages) searchEngineRequestAdapter.getContext().remove(CONTEXT_KEY);
+        if (messages == null || messages.size == 0) {
+            return;
+        }
+        if (!(searchEngineRequestAdapter instanceof InfoLoggingSpecProvider)) {
+            messages.clear();
+            return;
+        }
+
+        final InfoLoggingSpec spec = Log4jSink.getInfoLoggingSpec(searchEngineRequestAdapter);
+        if (spec.getPayloadType() == LogPayloadType.NONE) {
+            messages.clear();
+            return;
+        }
+
+        final long sequence = claim();
+        if (sequence < 0L) {
+            overflows.increment();
+            if (overflowPolicy == OverflowPolicy.SYNC) {
+                Log4jSink.write(logger, spec.getPayloadType(), spec.getId().orElse(null), messages.toMap());
+                logged.increment();
+            } else {
+                dropped.increment();
+            }
+            messages.clear();
+            return;
+        }
+
+        final Slot slot = slots[(int) sequence & mask];
+        slot.copyFrom(spec.getPayloadType(), spec.getId().orElse(null), messages);
+        slot.sequence = sequence; // publish
+        messages.clear();
+
+        if (sequence - consumed > (mask >> 1)) {
+            triggerDrain();
+        }
+    }
+
+    private long claim() {
+        long current;
+        long next;
+        do {
+            current = claimed.get();
+            next = current + 1L;
+            if (next - consumed > slots.length) {
+                return -1L;
+            }
+        } while (!claimed.compareAndSet(current, next));
+        return next;
+    }
+
+    private void triggerDrain() {
+        final Executor currentExecutor = executor;
+        if (currentExecutor != null && !draining.get()) {
+            try {
+                currentExecutor.execute(this::drain);
+            } catch (final RejectedExecutionException e) {
+                // the scheduled flush will pick them up
+            }
+        }
+    }
+
+    /**
+     * Write all published requests to the log. Only one thread drains at a time, a concurrent call returns
+     * immediately.
+     */
+    void drain() {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long sequence = consumed + 1L;
+            while (true) {
+                final Slot slot = slots[(int) sequence & mask];
+                if (slot.sequence != sequence) {
+                    // not yet published
+                    break;
+                }
+                try {
+                    Log4jSink.write(logger, slot.payloadType, slot.id, slot.toMap());
+                    logged.increment();
+                } catch (final RuntimeException e) {
+                    dropped.increment();
+                } finally {
+                    slot.clear();
+                    consumed = sequence;
+                }
+                sequence++;
+            }
+        } finally {
+            draining.set(false);
+        }
+    }
+
+    public long getLoggedCount() {
+        return logged.sum();
+    }
+
+    public long getOverflowCount() {
+        return overflows.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * The messages of a request in the order in which they were logged
+     */
+    static class RequestMessages {
+
+        String[] rewriterIds = new String[8];
+        Object[] messages = new Object[8];
+        int size = 0;
+
+        void add(final String rewriterId, final Object message) {
+            if (size == rewriterIds.length) {
+                rewriterIds = Arrays.copyOf(rewriterIds, size << 1);
+                messages = Arrays.copyOf(messages, size << 1);
+            }
+            rewriterIds[size] = rewriterId;
+            messages[size] = message;
+            size++;
+        }
+
+        void copyFrom(final RequestMessages other) {
+            if (rewriterIds.length < other.size) {
+                rewriterIds = new String[other.rewriterIds.length];
+                messages = new Object[other.messages.length];
+            }
+            System.arraycopy(other.rewriterIds, 0, rewriterIds, 0, other.size);
+            System.arraycopy(other.messages, 0, messages, 0, other.size);
+            size = other.size;
+        }
+
+        void clear() {
+            Arrays.fill(rewriterIds, 0, size, null);
+            Arrays.fill(messages, 0, size, null);
+            size = 0;
+        }
+
+        /**
+         * @return The messages grouped by rewriter id, in the format of the {@link Log4jSink}
+         */
+        Map<String, List<Object>> toMap() {
+            final Map<String, List<Object>> map = new TreeMap<>();
+            for (int i = 0; i < size; i++) {
+                map.computeIfAbsent(rewriterIds[i], key -> new ArrayList<>()).add(messages[i]);
+            }
+            return map;
+        }
+    }
+
+    static class Slot extends RequestMessages {
+
+        volatile long sequence = -1L;
+        LogPayloadType payloadType;
+        String id;
+
+        void copyFrom(final LogPayloadType payloadType, final String id, final RequestMessages messages) {
+            this.payloadType = payloadType;
+            this.id = id;
+            copyFrom(messages);
+        }
+
+        @Override
+        void clear() {
+            super.clear();
+            payloadType = null;
+            id = null;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch.infologging;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>Decides whether a request is logged by a rewriter that has info logging enabled. It is configured in the
+ * <code>sampling</code> object of the rewriter's <code>info_logging</code> config:</p>
+ *
+ * <pre>
+ * "info_logging": {
+ *     "sinks": "log4j",
+ *     "sampling": {
+ *         "rate": 0.01,
+ *         "by": "id",
+ *         "max_per_second": 50,
+ *         "burst": 100
+ *     }
+ * }
+ * </pre>
+ *
+ * <p><code>rate</code> is the fraction of requests to log. They are picked at random (<code>"by": "random"</code>,
+ * the default) or by a hash of the id of the request's info logging spec (<code>"by": "id"</code>) so that all shards
+ * that see the same request make the same decision. Requests without an id are sampled at random.
+ * <code>max_per_second</code> additionally limits the logged requests by a token bucket of the rewriter on each node,
+ * which holds up to <code>burst</code> tokens (default: <code>max_per_second</code>).</p>
+ */
+public class InfoLoggingSampler {
+
+    public static final String CONFIG_RATE = "rate";
+    public static final String CONFIG_BY = "by";
+    public static final String CONFIG_MAX_PER_SECOND = "max_per_second";
+    public static final String CONFIG_BURST = "burst";
+
+    public enum By { RANDOM, ID }
+
+    private static final double UNSIGNED_INT_RANGE = 4294967296.0; // 2^32
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final double rate;
+    private final By by;
+    private final TokenBucket tokenBucket;
+
+    InfoLoggingSampler(final double rate, final By by, final double maxPerSecond, final int burst,
+                       final LongSupplier nanoClock) {
+        this.rate = rate;
+        this.by = by;
+        this.tokenBucket = maxPerSecond > 0.0 ? new TokenBucket(maxPerSecond, burst, nanoClock) : null;
+    }
+
+    /**
+     * Create a sampler from the <code>sampling</code> config of a rewriter.
+     *
+     * @param config The sampling config, can be null
+     * @return The sampler or null if all requests are to be logged
+     * @throws IllegalArgumentException if the config is invalid
+     */
+    public static InfoLoggingSampler fromConfig(final Map<String, Object> config) {
+
+        if (config == null || config.isEmpty()) {
+            return null;
+        }
+
+        final double rate = getNumber(config, CONFIG_RATE, 1.0).doubleValue();
+        if (!(rate >= 0.0 && rate <= 1.0)) {
+            throw new IllegalArgumentException("info_logging.sampling." + CONFIG_RATE
+                    + " must be between 0.0 and 1.0 but was " + rate);
+        }
+
+        final Object byObj = config.getOrDefault(CONFIG_BY, "random");
+        final By by;
+        try {
+            by = By.valueOf(String.valueOf(byObj).toUpperCase(Locale.ROOT));
+        } catch (final IllegalArgumentException e) {
+            throw new IllegalArgumentException("info_logging.sampling." + CONFIG_BY
+                    + " must be 'random' or 'id' but was " + byObj);
+        }
+
+        final double maxPerSecond = getNumber(config, CONFIG_MAX_PER_SECOND, 0).doubleValue();
+        if (maxPerSecond < 0.0) {
+            throw new IllegalArgumentException("info_logging.sampling." + CONFIG_MAX_PER_SECOND
+                    + " must not be negative but was " + maxPerSecond);
+        }
+        final int burst = getNumber(config, CONFIG_BURST, Math.max(1, (int) Math.ceil(maxPerSecond))).intValue();
+        if (burst < 1) {
+            throw new IllegalArgumentException("info_logging.sampling." + CONFIG_BURST + " must be at least 1 but was "
+                    + burst);
+        }
+
+        if (rate == 1.0 && maxPerSecond == 0.0) {
+            return null;
+        }
+
+        return new InfoLoggingSampler(rate, by, maxPerSecond, burst, System::nanoTime);
+    }
+
+    /**
+     * @param requestId The id of the info logging spec of the request, can be null
+     * @return true iff the request is to be logged
+     */
+    public boolean sample(final String requestId) {
+        if (rate < 1.0) {
+            final double value = (by == By.ID && requestId != null)
+                    ? hashToUnitInterval(requestId)
+                    : ThreadLocalRandom.current().nextDouble();
+            if (value >= rate) {
+                return false;
+            }
+        }
+        return tokenBucket == null || tokenBucket.tryAcquire();
+    }
+
+    static double hashToUnitInterval(final String requestId) {
+        final int hash = StringHelper.murmurhash3_x86_32(new BytesRef(requestId), 0);
+        return (hash & 0xffffffffL) / UNSIGNED_INT_RANGE;
+    }
+
+    private static Number getNumber(final Map<String, Object> config, final String name, final Number defaultValue) {
+        final Object value = config.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof Number) {
+            return (Number) value;
+        }
+        try {
+            return Double.parseDouble(value.toString());
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("info_logging.sampling." + name + " must be a number but was " + value);
+        }
+    }
+
+    /**
+     * A lock-free token bucket. Instead of counting tokens, it keeps the time at which the bucket would be full again
+     * (the generic cell rate algorithm).
+     */
+    static class TokenBucket {
+
+        private final long nanosPerToken;
+        private final long burstNanos;
+        private final LongSupplier nanoClock;
+        private final AtomicLong fullAt;
+
+        TokenBucket(final double tokensPerSecond, final int burst, final LongSupplier nanoClock) {
+            this.nanosPerToken = Math.max(1L, (long) (NANOS_PER_SECOND / tokensPerSecond));
+            this.burstNanos = nanosPerToken * burst;
+            this.nanoClock = nanoClock;
+            this.fullAt = new AtomicLong(nanoClock.getAsLong());
+        }
+
+        boolean tryAcquire() {
+            while (true) {
+                final long now = nanoClock.getAsLong();
+                final long current = fullAt.get();
+                final long next = Math.max(current, now) + nanosPerToken;
+                if (next - now > burstNanos) {
+                    return false;
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -43,6 +43,8 @@ public class Log4jSink implements Sink {
             .addParents(MARKER_QUERQY_REWRITER);
     public static final Marker MARKER_QUERQY_REWRITER_DETAIL = MarkerManager.getMarker("DETAIL")
             .addParents(MARKER_QUERQY_REWRITER);
+    public static final Marker MARKER_QUERQY_SLOW_REWRITE = MarkerManager.getMarker("SLOW_REWRITE")
+            .addParents(MARKER_QUERQY_REWRITER);
 
     @Override
     @SuppressWarnings("unchecked")
@@ -65,21 +67,28 @@ public class Log4jSink implements Sink {
 
         if (messages != null && !messages.isEmpty()) {
             if (searchEngineRequestAdapter instanceof InfoLoggingSpecProvider) {
-                final InfoLoggingSpec spec = ((InfoLoggingSpecProvider) searchEngineRequestAdapter).getInfoLoggingSpec()
-                        .orElse(DEFAULT_SPEC);
-                switch (spec.getPayloadType()) {
-                        case REWRITER_ID:
-                        logger.info(MARKER_QUERQY_REWRITER_ID,
-                                new LogMessage.RewriterIdLogMessage(spec.getId().orElse(null), messages));
-                        break;
-                        case DETAIL:
-                            logger.info(MARKER_QUERQY_REWRITER_DETAIL,
-                                    new LogMessage.DetailLogMessage(spec.getId().orElse(null), messages));
-                            break;
-
-                    };
+                final InfoLoggingSpec spec = getInfoLoggingSpec(searchEngineRequestAdapter);
+                write(logger, spec.getPayloadType(), spec.getId().orElse(null), messages);
             }
         }
     }
 
+    static InfoLoggingSpec getInfoLoggingSpec(final SearchEngineRequestAdapter searchEngineRequestAdapter) {
+        return ((InfoLoggingSpecProvider) searchEngineRequestAdapter).getInfoLoggingSpec().orElse(DEFAULT_SPEC);
+    }
+
+    static void write(final Logger logger, final LogPayloadType payloadType, final String id,
+                      final Map<String, List<Object>> messages) {
+        switch (payloadType) {
+            case REWRITER_ID:
+                logger.info(MARKER_QUERQY_REWRITER_ID, new LogMessage.RewriterIdLogMessage(id, messages));
+                break;
+            case DETAIL:
+                logger.info(MARKER_QUERQY_REWRITER_DETAIL, new LogMessage.DetailLogMessage(id, messages));
+                break;
+            default:
+                break;
+        }
+    }
+
 }
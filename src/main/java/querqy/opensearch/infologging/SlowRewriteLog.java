@@ -0,0 +1,432 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch.infologging;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.util.JsonUtils;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+import org.opensearch.common.settings.Setting;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+import querqy.lucene.LuceneSearchEngineRequestAdapter;
+import querqy.model.AbstractNodeVisitor;
+import querqy.model.ExpandedQuery;
+import querqy.model.QuerqyQuery;
+import querqy.model.Term;
+import querqy.rewrite.SearchEngineRequestAdapter;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>Logs rewriters and rewrite chains that take longer than the configured warn/info thresholds.</p>
+ *
+ * <p>An entry holds the rewriter id, a hash of the query string, the elapsed time and the size of the rewritten
+ * query. Entries are rate-limited and handed over to a bounded queue that is drained by another thread so that the
+ * search thread never waits for the appender. Entries that exceed the rate limit or that don't fit into the queue
+ * are dropped and counted. The number of entries suppressed by the rate limit is reported with the next entry.</p>
+ */
+public class SlowRewriteLog {
+
+    /**
+     * The rewriter id that is logged for the entire rewrite chain
+     */
+    public static final String CHAIN = "_chain";
+
+    public static final Setting<TimeValue> REWRITER_WARN_THRESHOLD = thresholdSetting(
+            "querqy.slowlog.rewrite.threshold.warn");
+
+    public static final Setting<TimeValue> REWRITER_INFO_THRESHOLD = thresholdSetting(
+            "querqy.slowlog.rewrite.threshold.info");
+
+    public static final Setting<TimeValue> CHAIN_WARN_THRESHOLD = thresholdSetting(
+            "querqy.slowlog.rewrite.chain.threshold.warn");
+
+    public static final Setting<TimeValue> CHAIN_INFO_THRESHOLD = thresholdSetting(
+            "querqy.slowlog.rewrite.chain.threshold.info");
+
+    /**
+     * Per-rewriter overrides of the warn threshold: querqy.slowlog.rewrite.rewriter.&lt;rewriter id&gt;.threshold.warn
+     */
+    public static final Setting.AffixSetting<TimeValue> REWRITER_WARN_THRESHOLD_OVERRIDE = Setting.affixKeySetting(
+            "querqy.slowlog.rewrite.rewriter.", "threshold.warn", SlowRewriteLog::thresholdSetting);
+
+    /**
+     * Per-rewriter overrides of the info threshold: querqy.slowlog.rewrite.rewriter.&lt;rewriter id&gt;.threshold.info
+     */
+    public static final Setting.AffixSetting<TimeValue> REWRITER_INFO_THRESHOLD_OVERRIDE = Setting.affixKeySetting(
+            "querqy.slowlog.rewrite.rewriter.", "threshold.info", SlowRewriteLog::thresholdSetting);
+
+    public static final Setting<Integer> MAX_ENTRIES_PER_SECOND = Setting.intSetting(
+            "querqy.slowlog.rewrite.max_entries_per_second",
+            100,
+            1,
+            Setting.Property.NodeScope,
+            Setting.Property.Dynamic);
+
+    public static final List<Setting<?>> SETTINGS = Collections.unmodifiableList(Arrays.asList(
+            REWRITER_WARN_THRESHOLD, REWRITER_INFO_THRESHOLD, CHAIN_WARN_THRESHOLD, CHAIN_INFO_THRESHOLD,
+            REWRITER_WARN_THRESHOLD_OVERRIDE, REWRITER_INFO_THRESHOLD_OVERRIDE, MAX_ENTRIES_PER_SECOND));
+
+    static final int QUEUE_CAPACITY = 1024;
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long DISABLED = Long.MAX_VALUE;
+    private static final String CHAIN_NANOS_KEY = SlowRewriteLog.class.getName() + ".CHAIN_NANOS";
+    private static final String CHAIN_OUTPUT_KEY = SlowRewriteLog.class.getName() + ".CHAIN_OUTPUT";
+
+    private final Logger logger;
+    private final LongSupplier nanoClock;
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    private volatile Thresholds thresholds = Thresholds.of(Settings.EMPTY);
+    private volatile int maxEntriesPerSecond = MAX_ENTRIES_PER_SECOND.getDefault(Settings.EMPTY);
+    private volatile Executor executor = Runnable::run;
+
+    private volatile long currentSecond = Long.MIN_VALUE;
+    private final AtomicInteger entriesInCurrentSecond = new AtomicInteger();
+    private final AtomicLong suppressedSinceLastEntry = new AtomicLong();
+
+    private final LongAdder logged = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public SlowRewriteLog() {
+        this(LogManager.getLogger(SlowRewriteLog.class), System::nanoTime);
+    }
+
+    SlowRewriteLog(final Logger logger, final LongSupplier nanoClock) {
+        this.logger = logger;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Apply the thresholds and the rate limit. Settings that are not set fall back to their defaults.
+     *
+     * @param settings The node settings or an update of the {@link #SETTINGS}
+     */
+    public void applySettings(final Settings settings) {
+        thresholds = Thresholds.of(settings);
+        maxEntriesPerSecond = MAX_ENTRIES_PER_SECOND.get(settings);
+    }
+
+    /**
+     * Set the executor that writes the entries to the log. Entries are written on the calling thread by default.
+     *
+     * @param executor The executor
+     */
+    public void setExecutor(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Check a single rewriter against its thresholds and collect its time for the rewrite chain.
+     *
+     * @param rewriterId The rewriter id
+     * @param nanos The time it took to create the rewriter and to rewrite the query
+     * @param searchEngineRequestAdapter The request adapter
+     * @param output The rewritten query or null if the rewriter failed
+     */
+    public void onRewrite(final String rewriterId, final long nanos,
+                          final SearchEngineRequestAdapter searchEngineRequestAdapter, final ExpandedQuery output) {
+
+        final Thresholds current = thresholds;
+
+        if (current.chainInfoNanos != DISABLED) {
+            final Map<String, Object> context = searchEngineRequestAdapter.getContext();
+            ((long[]) context.computeIfAbsent(CHAIN_NANOS_KEY, key -> new long[1]))[0] += nanos;
+            if (output != null) {
+                // rewriters are applied in chain order, the last output is the output of the chain
+                context.put(CHAIN_OUTPUT_KEY, output);
+            }
+        }
+
+        if (nanos >= current.minRewriterInfoNanos) {
+            final long[] overrides = current.rewriterOverrides.get(rewriterId);
+            final long warnNanos = overrides != null ? overrides[0] : current.rewriterWarnNanos;
+            final long infoNanos = overrides != null ? overrides[1] : current.rewriterInfoNanos;
+            log(rewriterId, nanos, warnNanos, infoNanos, searchEngineRequestAdapter, output);
+        }
+
+    }
+
+    /**
+     * Check the time that the rewriters of the chain took in total against the chain thresholds. This must be called
+     * once the rewrite chain has been applied.
+     *
+     * @param searchEngineRequestAdapter The request adapter
+     */
+    public void onRewriteChainEnd(final SearchEngineRequestAdapter searchEngineRequestAdapter) {
+        final Thresholds current = thresholds;
+        if (current.chainInfoNanos == DISABLED) {
+            return;
+        }
+        final Map<String, Object> context = searchEngineRequestAdapter.getContext();
+        final long[] chainNanos = (long[]) context.remove(CHAIN_NANOS_KEY);
+        final ExpandedQuery output = (ExpandedQuery) context.remove(CHAIN_OUTPUT_KEY);
+        if (chainNanos != null) {
+            log(CHAIN, chainNanos[0], current.chainWarnNanos, current.chainInfoNanos, searchEngineRequestAdapter,
+                    output);
+        }
+    }
+
+    private void log(final String rewriterId, final long nanos, final long warnNanos, final long infoNanos,
+                     final SearchEngineRequestAdapter searchEngineRequestAdapter, final ExpandedQuery output) {
+
+        final Level level;
+        if (nanos >= warnNanos) {
+            level = Level.WARN;
+        } else if (nanos >= infoNanos) {
+            level = Level.INFO;
+        } else {
+            return;
+        }
+
+        if (!tryAcquire()) {
+            rateLimited.increment();
+            suppressedSinceLastEntry.incrementAndGet();
+            return;
+        }
+
+        final Entry entry = new Entry(level, rewriterId, queryStringHash(searchEngineRequestAdapter), nanos,
+                output == null ? -1 : expandedQuerySize(output), suppressedSinceLastEntry.getAndSet(0L));
+
+        if (!queue.offer(entry)) {
+            dropped.increment();
+            return;
+        }
+
+        if (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (final RejectedExecutionException e) {
+                draining.set(false);
+            }
+        }
+    }
+
+    private boolean tryAcquire() {
+        final long second = nanoClock.getAsLong() / NANOS_PER_SECOND;
+        if (second != currentSecond) {
+            synchronized (this) {
+                if (second != currentSecond) {
+                    entriesInCurrentSecond.set(0);
+                    currentSecond = second;
+                }
+            }
+        }
+        return entriesInCurrentSecond.incrementAndGet() <= maxEntriesPerSecond;
+    }
+
+    private void drain() {
+        do {
+            Entry entry;
+            while ((entry = queue.poll()) != null) {
+                logger.log(entry.level, Log4jSink.MARKER_QUERQY_SLOW_REWRITE, entry);
+                logged.increment();
+            }
+            draining.set(false);
+            // an entry might have been queued after polling the last one but before resetting the flag
+        } while (!queue.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    public long getLoggedCount() {
+        return logged.sum();
+    }
+
+    public long getRateLimitedCount() {
+        return rateLimited.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    static String queryStringHash(final SearchEngineRequestAdapter searchEngineRequestAdapter) {
+        if (searchEngineRequestAdapter instanceof LuceneSearchEngineRequestAdapter) {
+            final String queryString = ((LuceneSearchEngineRequestAdapter) searchEngineRequestAdapter)
+                    .getQueryString();
+            if (queryString != null) {
+                return Integer.toHexString(queryString.hashCode());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param expandedQuery The rewritten query
+     * @return The number of terms in the user query plus the number of filter and boost queries
+     */
+    static int expandedQuerySize(final ExpandedQuery expandedQuery) {
+        int size = 0;
+        final QuerqyQuery<?> userQuery = expandedQuery.getUserQuery();
+        if (userQuery != null) {
+            final TermCounter termCounter = new TermCounter();
+            userQuery.accept(termCounter);
+            size += termCounter.terms;
+        }
+        return size + sizeOf(expandedQuery.getFilterQueries()) + sizeOf(expandedQuery.getBoostUpQueries())
+                + sizeOf(expandedQuery.getBoostDownQueries());
+    }
+
+    private static int sizeOf(final Collection<?> queries) {
+        return queries == null ? 0 : queries.size();
+    }
+
+    private static Setting<TimeValue> thresholdSetting(final String key) {
+        return Setting.timeSetting(key, TimeValue.MINUS_ONE, TimeValue.MINUS_ONE, Setting.Property.NodeScope,
+                Setting.Property.Dynamic);
+    }
+
+    private static long toNanos(final TimeValue threshold) {
+        return threshold.nanos() < 0L ? DISABLED : threshold.nanos();
+    }
+
+    private static class TermCounter extends AbstractNodeVisitor<Void> {
+
+        int terms = 0;
+
+        @Override
+        public Void visit(final Term term) {
+            terms++;
+            return null;
+        }
+    }
+
+    private static class Thresholds {
+
+        final long rewriterWarnNanos;
+        final long rewriterInfoNanos;
+        final long chainWarnNanos;
+        final long chainInfoNanos;
+        // rewriter id -> {warn, info}
+        final Map<String, long[]> rewriterOverrides;
+        // the lowest threshold of any rewriter, allows for a single comparison on the hot path
+        final long minRewriterInfoNanos;
+
+        private Thresholds(final long rewriterWarnNanos, final long rewriterInfoNanos, final long chainWarnNanos,
+                           final long chainInfoNanos, final Map<String, long[]> rewriterOverrides) {
+            this.rewriterWarnNanos = rewriterWarnNanos;
+            this.rewriterInfoNanos = Math.min(rewriterInfoNanos, rewriterWarnNanos);
+            this.chainWarnNanos = chainWarnNanos;
+            this.chainInfoNanos = Math.min(chainInfoNanos, chainWarnNanos);
+            this.rewriterOverrides = rewriterOverrides;
+            long min = this.rewriterInfoNanos;
+            for (final long[] override : rewriterOverrides.values()) {
+                min = Math.min(min, override[1]);
+            }
+            this.minRewriterInfoNanos = min;
+        }
+
+        static Thresholds of(final Settings settings) {
+
+            final long warnNanos = toNanos(REWRITER_WARN_THRESHOLD.get(settings));
+            final long infoNanos = toNanos(REWRITER_INFO_THRESHOLD.get(settings));
+
+            final Map<String, TimeValue> warnOverrides = REWRITER_WARN_THRESHOLD_OVERRIDE.getAsMap(settings);
+            final Map<String, TimeValue> infoOverrides = REWRITER_INFO_THRESHOLD_OVERRIDE.getAsMap(settings);
+
+            final Map<String, long[]> overrides = new HashMap<>();
+            warnOverrides.forEach((rewriterId, threshold) ->
+                    overrides.computeIfAbsent(rewriterId, id -> new long[] {warnNanos, infoNanos})[0]
+                            = toNanos(threshold));
+            infoOverrides.forEach((rewriterId, threshold) ->
+                    overrides.computeIfAbsent(rewriterId, id -> new long[] {warnNanos, infoNanos})[1]
+                            = toNanos(threshold));
+            overrides.values().forEach(override -> override[1] = Math.min(override[0], override[1]));
+
+            return new Thresholds(warnNanos, infoNanos, toNanos(CHAIN_WARN_THRESHOLD.get(settings)),
+                    toNanos(CHAIN_INFO_THRESHOLD.get(settings)), overrides);
+        }
+    }
+
+    static class Entry implements Message, StringBuilderFormattable {
+
+        final Level level;
+        final String rewriterId;
+        final String queryHash;
+        final long nanos;
+        final int expandedQuerySize;
+        final long suppressed;
+
+        Entry(final Level level, final String rewriterId, final String queryHash, final long nanos,
+              final int expandedQuerySize, final long suppressed) {
+            this.level = level;
+            this.rewriterId = rewriterId;
+            this.queryHash = queryHash;
+            this.nanos = nanos;
+            this.expandedQuerySize = expandedQuerySize;
+            this.suppressed = suppressed;
+        }
+
+        @Override
+        public String getFormattedMessage() {
+            final StringBuilder builder = new StringBuilder();
+            formatTo(builder);
+            return builder.toString();
+        }
+
+        @Override
+        public String getFormat() {
+            return "";
+        }
+
+        @Override
+        public Object[] getParameters() {
+            return null;
+        }
+
+        @Override
+        public Throwable getThrowable() {
+            return null;
+        }
+
+        @Override
+        public void formatTo(final StringBuilder buffer) {
+            buffer.append("{\"rewriter\":\"");
+            JsonUtils.quoteAsString(rewriterId, buffer);
+            buffer.append("\",\"query_hash\":");
+            LogMessage.appendValue(queryHash, buffer);
+            buffer.append(",\"took_nanos\":").append(nanos)
+                    .append(",\"expanded_query_size\":").append(expandedQuerySize);
+            if (suppressed > 0L) {
+                buffer.append(",\"suppressed\":").append(suppressed);
+            }
+            buffer.append('}');
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch.profile;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>The time spent in the phases of building a single Querqy query on a shard, in nanoseconds.</p>
+ *
+ * <p>A breakdown is only used by the thread that builds the query and it is not thread-safe.</p>
+ */
+public class QuerqyProfileBreakdown {
+
+    private long totalNanos;
+    private long chainResolutionNanos;
+    private long processNanos;
+    private long phraseBoostNanos;
+    private long rawQueryNanos;
+    private int rawQueryCount;
+    private final Map<String, Long> rewriterNanos = new LinkedHashMap<>();
+    private String cache;
+
+    public void setTotalNanos(final long totalNanos) {
+        this.totalNanos = totalNanos;
+    }
+
+    public void setChainResolutionNanos(final long chainResolutionNanos) {
+        this.chainResolutionNanos = chainResolutionNanos;
+    }
+
+    /**
+     * Record parsing, rewriting and building the Lucene query (QueryParsingController#process)
+     *
+     * @param nanos The elapsed time
+     */
+    public void addProcessNanos(final long nanos) {
+        processNanos += nanos;
+    }
+
+    public void addPhraseBoostNanos(final long nanos) {
+        phraseBoostNanos += nanos;
+    }
+
+    public void addRawQueryNanos(final long nanos) {
+        rawQueryNanos += nanos;
+        rawQueryCount++;
+    }
+
+    public void addRewriterNanos(final String rewriterId, final long nanos) {
+        rewriterNanos.merge(rewriterId, nanos, Long::sum);
+    }
+
+    /**
+     * @param cache The name of the cache that the rewritten query was taken from
+     */
+    public void setCache(final String cache) {
+        this.cache = cache;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getChainResolutionNanos() {
+        return chainResolutionNanos;
+    }
+
+    public long getPhraseBoostNanos() {
+        return phraseBoostNanos;
+    }
+
+    public long getRawQueryNanos() {
+        return rawQueryNanos;
+    }
+
+    public int getRawQueryCount() {
+        return rawQueryCount;
+    }
+
+    public Map<String, Long> getRewriterNanos() {
+        return rewriterNanos;
+    }
+
+    public long getRewriteNanos() {
+        long sum = 0L;
+        for (final long nanos : rewriterNanos.values()) {
+            sum += nanos;
+        }
+        return sum;
+    }
+
+    /**
+     * @return The time for parsing the user query and building the Lucene query, without rewriting, phrase boosts
+     * and raw queries
+     */
+    public long getLuceneQueryNanos() {
+        return Math.max(0L, processNanos - getRewriteNanos() - phraseBoostNanos - rawQueryNanos);
+    }
+
+    /**
+     * @return The name of the cache that the rewritten query was taken from or null if the query was rewritten
+     */
+    public String getCache() {
+        return cache;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("total_nanos=").append(totalNanos)
+                .append(", chain_resolution_nanos=").append(chainResolutionNanos);
+        for (final Map.Entry<String, Long> entry : rewriterNanos.entrySet()) {
+            sb.append(", rewriter[").append(entry.getKey()).append("]_nanos=").append(entry.getValue());
+        }
+        sb.append(", lucene_query_nanos=").append(getLuceneQueryNanos())
+                .append(", phrase_boosts_nanos=").append(phraseBoostNanos)
+                .append(", raw_queries_nanos=").append(rawQueryNanos)
+                .append(", raw_queries=").append(rawQueryCount);
+        if (cache != null) {
+            sb.append(", cache=").append(cache);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch.profile;
+
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Weight;
+
+import java.io.IOException;
+
+/**
+ * <p>Marks a Querqy query and carries its {@link QuerqyProfileBreakdown} while profiling is enabled.</p>
+ *
+ * <p>This query delegates scoring to the wrapped query, like a {@link org.apache.lucene.search.BoostQuery}, so that
+ * the Querqy query shows up as a node of its own in the profile output. OpenSearch doesn't know this query type, which
+ * changes nested document detection and highlighting, and it must therefore only be used while diagnosing. The
+ * timings are not part of the description so that they don't end up in explain output and slow logs.</p>
+ */
+public final class QuerqyProfileQuery extends Query {
+
+    private final Query query;
+    private final QuerqyProfileBreakdown breakdown;
+
+    public QuerqyProfileQuery(final Query query, final QuerqyProfileBreakdown breakdown) {
+        this.query = query;
+        this.breakdown = breakdown;
+    }
+
+    public Query getQuery() {
+        return query;
+    }
+
+    public QuerqyProfileBreakdown getBreakdown() {
+        return breakdown;
+    }
+
+    @Override
+    public Query rewrite(final IndexSearcher indexSearcher) throws IOException {
+        final Query rewritten = query.rewrite(indexSearcher);
+        return rewritten == query ? this : new QuerqyProfileQuery(rewritten, breakdown);
+    }
+
+    @Override
+    public Weight createWeight(final IndexSearcher searcher, final ScoreMode scoreMode, final float boost)
+            throws IOException {
+        return query.createWeight(searcher, scoreMode, boost);
+    }
+
+    @Override
+    public void visit(final QueryVisitor visitor) {
+        query.visit(visitor.getSubVisitor(BooleanClause.Occur.MUST, this));
+    }
+
+    @Override
+    public String toString(final String field) {
+        return "querqy(" + query.toString(field) + ")";
+    }
+
+    /**
+     * The breakdown is not part of the identity: queries that only differ in their timings are equal.
+     */
+    @Override
+    public boolean equals(final Object other) {
+        return sameClassAs(other) && query.equals(((QuerqyProfileQuery) other).query);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * classHash() + query.hashCode();
+    }
+}
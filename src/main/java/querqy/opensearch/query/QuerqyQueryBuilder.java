@@ -32,6 +32,8 @@ import org.opensearch.core.xcontent.ObjectParser;
 import org.opensearch.core.xcontent.XContentBuilder;
 import org.opensearch.core.xcontent.XContentParser;
 import org.opensearch.index.query.AbstractQueryBuilder;
+import org.opensearch.index.query.QueryBuilder;
+import org.opensearch.index.query.QueryRewriteContext;
 import org.opensearch.index.query.QueryShardContext;
 import querqy.opensearch.QuerqyProcessor;
 import querqy.lucene.LuceneSearchEngineRequestAdapter;
@@ -227,6 +229,22 @@ public class QuerqyQueryBuilder extends AbstractQueryBuilder<QuerqyQueryBuilder>
         }
     }
 
+    @Override
+    protected QueryBuilder doRewrite(final QueryRewriteContext queryRewriteContext) throws IOException {
+        if (querqyProcessor != null) {
+            querqyProcessor.registerRewriterLoading(this, queryRewriteContext);
+            final QueryShardContext shardContext = queryRewriteContext.convertToShardContext();
+            if (shardContext != null) {
+                try {
+                    querqyProcessor.writeInfoLog(this, shardContext);
+                } catch (final LuceneSearchEngineRequestAdapter.SyntaxException e) {
+                    throw new IOException(e);
+                }
+            }
+        }
+        return this;
+    }
+
     /**
      * Indicates whether some other {@link org.opensearch.index.query.QueryBuilder} object of the same type is
      * "equal to" this one.
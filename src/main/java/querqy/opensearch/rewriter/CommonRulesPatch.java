@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>A change of individual rules of a {@link SimpleCommonRulesRewriterFactory}.</p>
+ *
+ * <p>Rules are identified by their input, i.e. by the part of the input line before {@code =>}. A rule comprises its
+ * input line and all following lines up to the next input line. Putting a rule replaces all rules that have the same
+ * input or appends the rule if there is no such rule. Removing an input removes all rules that have this input.</p>
+ */
+public class CommonRulesPatch {
+
+    public static final String PROP_PUT = "put";
+    public static final String PROP_REMOVE = "remove";
+
+    private static final String INPUT_SEPARATOR = "=>";
+    private static final String MULTILINE_PROPERTIES_START = "@{";
+    private static final String MULTILINE_PROPERTIES_END = "}@";
+
+    private final String put;
+    private final List<String> remove;
+
+    public CommonRulesPatch(final String put, final List<String> remove) {
+        this.put = put == null ? "" : put;
+        this.remove = remove == null ? Collections.emptyList() : remove;
+    }
+
+    /**
+     * Create a patch from the content of a patch request.
+     *
+     * @param content The request content
+     * @return The patch
+     * @throws IllegalArgumentException if the content is not a valid patch
+     */
+    public static CommonRulesPatch fromContent(final Map<String, Object> content) {
+        if (content == null) {
+            throw new IllegalArgumentException("Missing patch");
+        }
+        for (final String key : content.keySet()) {
+            if (!PROP_PUT.equals(key) && !PROP_REMOVE.equals(key)) {
+                throw new IllegalArgumentException("Unknown patch property: " + key);
+            }
+        }
+
+        final Object putObj = content.get(PROP_PUT);
+        if (putObj != null && !(putObj instanceof String)) {
+            throw new IllegalArgumentException("'" + PROP_PUT + "' must be a string of rules");
+        }
+
+        final Object removeObj = content.get(PROP_REMOVE);
+        final List<String> remove;
+        if (removeObj == null) {
+            remove = Collections.emptyList();
+        } else if (removeObj instanceof String) {
+            remove = Collections.singletonList((String) removeObj);
+        } else if (removeObj instanceof Collection) {
+            remove = new ArrayList<>(((Collection<?>) removeObj).size());
+            for (final Object input : (Collection<?>) removeObj) {
+                if (!(input instanceof String)) {
+                    throw new IllegalArgumentException("'" + PROP_REMOVE + "' must be a list of rule inputs");
+                }
+                remove.add((String) input);
+            }
+        } else {
+            throw new IllegalArgumentException("'" + PROP_REMOVE + "' must be a list of rule inputs");
+        }
+
+        final CommonRulesPatch patch = new CommonRulesPatch((String) putObj, remove);
+        if (patch.isEmpty()) {
+            throw new IllegalArgumentException("Patch must contain '" + PROP_PUT + "' or '" + PROP_REMOVE + "'");
+        }
+
+        final ParsedRules putRules = parse(patch.put);
+        if (!putRules.prelude.toString().trim().isEmpty()) {
+            throw new IllegalArgumentException("'" + PROP_PUT + "' must start with the input line of a rule");
+        }
+        for (final String input : remove) {
+            if (normalizeInput(input, false).isEmpty()) {
+                throw new IllegalArgumentException("'" + PROP_REMOVE + "' must not contain empty inputs");
+            }
+        }
+
+        return patch;
+    }
+
+    public boolean isEmpty() {
+        return put.trim().isEmpty() && remove.isEmpty();
+    }
+
+    /**
+     * Apply the patch to rules.
+     *
+     * @param rules The current rules
+     * @param ignoreCase Iff true, inputs are compared case-insensitively, like in the rewriter
+     * @return The patched rules
+     */
+    public String apply(final String rules, final boolean ignoreCase) {
+
+        final Map<String, Rule> putRules = new LinkedHashMap<>();
+        for (final Rule rule : parse(put).rules) {
+            final Rule previous = putRules.putIfAbsent(rule.key(ignoreCase), rule);
+            if (previous != null) {
+                // several rules with the same input in the patch
+                previous.text.append(rule.text);
+            }
+        }
+
+        final Set<String> removeKeys = new HashSet<>();
+        for (final String input : remove) {
+            removeKeys.add(normalizeInput(input, ignoreCase));
+        }
+
+        final ParsedRules current = parse(rules == null ? "" : rules);
+        final StringBuilder result = new StringBuilder(current.length + put.length());
+        result.append(current.prelude);
+
+        final Set<String> replaced = new HashSet<>();
+        for (final Rule rule : current.rules) {
+            final String key = rule.key(ignoreCase);
+            if (removeKeys.contains(key)) {
+                continue;
+            }
+            final Rule replacement = putRules.get(key);
+            if (replacement == null) {
+                appendRule(result, rule.text);
+            } else if (replaced.add(key)) {
+                // only the first rule for this input is replaced, further rules for the input are dropped
+                appendRule(result, replacement.text);
+            }
+        }
+
+        for (final Map.Entry<String, Rule> entry : putRules.entrySet()) {
+            if (!replaced.contains(entry.getKey()) && !removeKeys.contains(entry.getKey())) {
+                appendRule(result, entry.getValue().text);
+            }
+        }
+
+        return result.toString();
+    }
+
+    private static void appendRule(final StringBuilder result, final CharSequence rule) {
+        final int length = result.length();
+        if (length > 0 && result.charAt(length - 1) != '\n') {
+            result.append('\n');
+        }
+        result.append(rule);
+    }
+
+    static String normalizeInput(final String input, final boolean ignoreCase) {
+        final int separator = input.indexOf(INPUT_SEPARATOR);
+        final String normalized = (separator < 0 ? input : input.substring(0, separator)).trim()
+                .replaceAll("\\s+", " ");
+        return ignoreCase ? normalized.toLowerCase(Locale.ROOT) : normalized;
+    }
+
+    static ParsedRules parse(final String rules) {
+
+        final ParsedRules parsed = new ParsedRules(rules.length());
+        StringBuilder block = parsed.prelude;
+        boolean inMultilineProperties = false;
+
+        final int length = rules.length();
+        int pos = 0;
+        while (pos < length) {
+            final int newLine = rules.indexOf('\n', pos);
+            final int end = newLine < 0 ? length : newLine + 1;
+            final String line = rules.substring(pos, end).trim();
+
+            if (inMultilineProperties) {
+                inMultilineProperties = !line.endsWith(MULTILINE_PROPERTIES_END);
+            } else if (line.startsWith(MULTILINE_PROPERTIES_START)) {
+                inMultilineProperties = !line.endsWith(MULTILINE_PROPERTIES_END);
+            } else if (!line.startsWith("#")) {
+                final int separator = line.indexOf(INPUT_SEPARATOR);
+                if (separator >= 0) {
+                    final Rule rule = new Rule(line.substring(0, separator));
+                    parsed.rules.add(rule);
+                    block = rule.text;
+                }
+            }
+
+            block.append(rules, pos, end);
+            pos = end;
+        }
+
+        return parsed;
+    }
+
+    static class ParsedRules {
+        final int length;
+        final StringBuilder prelude = new StringBuilder();
+        final List<Rule> rules = new ArrayList<>();
+
+        ParsedRules(final int length) {
+            this.length = length;
+        }
+    }
+
+    static class Rule {
+        final String input;
+        final StringBuilder text = new StringBuilder();
+
+        Rule(final String input) {
+            this.input = input;
+        }
+
+        String key(final boolean ignoreCase) {
+            return normalizeInput(input, ignoreCase);
+        }
+    }
+}
@@ -23,6 +23,11 @@ import org.opensearch.OpenSearchException;
 import org.opensearch.index.shard.IndexShard;
 import querqy.opensearch.ConfigUtils;
 import querqy.opensearch.OpenSearchRewriterFactory;
+import querqy.opensearch.rewriter.dictionary.MappedRuleDictionary;
+import querqy.opensearch.rewriter.replace.DictionaryReplaceRewriterFactory;
+import querqy.opensearch.rewriter.replace.FstReplaceRewriterFactory;
+import querqy.opensearch.rewriter.replace.FstReplaceRules;
+import querqy.opensearch.rewriter.replace.ReplaceRulesParser;
 import querqy.rewrite.RewriterFactory;
 import querqy.rewrite.commonrules.QuerqyParserFactory;
 import querqy.rewrite.commonrules.WhiteSpaceQuerqyParserFactory;
@@ -43,7 +48,23 @@ public class ReplaceRewriterFactory extends OpenSearchRewriterFactory {
 
     private static final String DEFAULT_INPUT_DELIMITER = "\t";
 
-    private querqy.rewrite.contrib.ReplaceRewriterFactory delegate;
+    /**
+     * Keep the compiled rules on the heap (default)
+     */
+    public static final String STORAGE_HEAP = "heap";
+
+    /**
+     * Keep the rules in a memory-mapped file in the node's data path, see {@link MappedRuleDictionary}
+     */
+    public static final String STORAGE_MMAP = "mmap";
+
+    /**
+     * Compile the rules into Lucene FSTs on the heap, see {@link FstReplaceRules}
+     */
+    public static final String STORAGE_FST = "fst";
+
+    private RewriterFactory delegate;
+    private long ramBytesUsed = DEFAULT_RAM_BYTES_USED;
 
     public ReplaceRewriterFactory(String rewriterId) {
         super(rewriterId);
@@ -52,6 +73,7 @@ public class ReplaceRewriterFactory extends OpenSearchRewriterFactory {
     @Override
     public void configure(Map<String, Object> config) {
         final String rules = (String) config.get("rules");
+        ramBytesUsed = estimateRulesRamBytesUsed(rules);
         final InputStreamReader rulesReader = new InputStreamReader(
                 new ByteArrayInputStream(
                         rules.getBytes(StandardCharsets.UTF_8)),
@@ -64,6 +86,34 @@ public class ReplaceRewriterFactory extends OpenSearchRewriterFactory {
         final QuerqyParserFactory querqyParser = ConfigUtils.getInstanceFromArg(
                 config, "querqyParser", DEFAULT_RHS_QUERY_PARSER);
 
+        final String storage = ConfigUtils.getStringArg(config, "storage", STORAGE_HEAP);
+        if (STORAGE_FST.equals(storage)) {
+            final FstReplaceRules fstRules;
+            try {
+                fstRules = FstReplaceRules.build(ReplaceRulesParser.parse(rules, inputDelimiter, ignoreCase, true));
+            } catch (final IOException e) {
+                throw new OpenSearchException("Could not compile rules for rewriter " + rewriterId, e);
+            }
+            delegate = new FstReplaceRewriterFactory(rewriterId, fstRules, ignoreCase, querqyParser.createParser());
+            ramBytesUsed = DEFAULT_RAM_BYTES_USED + fstRules.ramBytesUsed();
+            return;
+        }
+
+        if (STORAGE_MMAP.equals(storage)) {
+            final ReplaceRulesParser parsed = ReplaceRulesParser.parse(rules, inputDelimiter, ignoreCase);
+            final MappedRuleDictionary dictionary;
+            try {
+                dictionary = MappedRuleDictionary.create(dictionaryDirectory, parsed.getRules(),
+                        parsed.getMaxInputTerms());
+            } catch (final IOException e) {
+                throw new OpenSearchException("Could not create rule dictionary for rewriter " + rewriterId, e);
+            }
+            delegate = new DictionaryReplaceRewriterFactory(rewriterId, dictionary, ignoreCase,
+                    querqyParser.createParser());
+            ramBytesUsed = DEFAULT_RAM_BYTES_USED + dictionary.ramBytesUsed();
+            return;
+        }
+
         try {
             delegate = new querqy.rewrite.contrib.ReplaceRewriterFactory(rewriterId, rulesReader, ignoreCase,
                     inputDelimiter, querqyParser.createParser());
@@ -96,6 +146,19 @@ public class ReplaceRewriterFactory extends OpenSearchRewriterFactory {
             return Collections.singletonList("Invalid attribute 'querqyParser': " + e.getMessage());
         }
 
+        final String storage = ConfigUtils.getStringArg(config, "storage", STORAGE_HEAP);
+        if (STORAGE_MMAP.equals(storage) || STORAGE_FST.equals(storage)) {
+            try {
+                ReplaceRulesParser.parse(rules, inputDelimiter, ignoreCase, STORAGE_FST.equals(storage));
+            } catch (final IllegalArgumentException e) {
+                return Collections.singletonList("Cannot create rewriter: " + e.getMessage());
+            }
+            return null;
+        } else if (!STORAGE_HEAP.equals(storage)) {
+            return Collections.singletonList("Invalid attribute 'storage': " + storage + ", expected '" + STORAGE_HEAP
+                    + "', '" + STORAGE_MMAP + "' or '" + STORAGE_FST + "'");
+        }
+
         try {
             new querqy.rewrite.contrib.ReplaceRewriterFactory(rewriterId, rulesReader, ignoreCase, inputDelimiter,
                     querqyParser.createParser());
@@ -106,6 +169,11 @@ public class ReplaceRewriterFactory extends OpenSearchRewriterFactory {
         return null;
     }
 
+    @Override
+    public long ramBytesUsed() {
+        return ramBytesUsed;
+    }
+
     @Override
     public RewriterFactory createRewriterFactory(IndexShard indexShard) {
         return delegate;
@@ -44,6 +44,7 @@ public class SimpleCommonRulesRewriterFactory extends OpenSearchRewriterFactory
     private static final QuerqyParserFactory DEFAULT_RHS_QUERY_PARSER = new WhiteSpaceQuerqyParserFactory();
 
     private querqy.rewrite.commonrules.SimpleCommonRulesRewriterFactory delegate;
+    private long ramBytesUsed = DEFAULT_RAM_BYTES_USED;
 
     public SimpleCommonRulesRewriterFactory(final String rewriterId) {
         super(rewriterId);
@@ -58,6 +59,7 @@ public class SimpleCommonRulesRewriterFactory extends OpenSearchRewriterFactory
                 .getInstanceFromArg(config, "querqyParser", DEFAULT_RHS_QUERY_PARSER);
 
         final String rules = ConfigUtils.getStringArg(config, "rules", "");
+        ramBytesUsed = estimateRulesRamBytesUsed(rules);
 
         // TODO: we might want to configure named selection strategies in the future
         final Map<String, SelectionStrategyFactory> selectionStrategyFactories = Collections.emptyMap();
@@ -100,6 +102,11 @@ public class SimpleCommonRulesRewriterFactory extends OpenSearchRewriterFactory
         return null;
     }
 
+    @Override
+    public long ramBytesUsed() {
+        return ramBytesUsed;
+    }
+
     @Override
     public RewriterFactory createRewriterFactory(final IndexShard indexShard) {
         return delegate;
@@ -213,6 +213,14 @@ public class WordBreakCompoundRewriterFactory extends OpenSearchRewriterFactory
         };
     }
 
+    /**
+     * Compounding and decompounding use the term statistics of the shard's index reader.
+     */
+    @Override
+    public boolean isReaderDependent() {
+        return true;
+    }
+
     public WordBreakSpellChecker getSpellChecker() {
         return spellChecker;
     }
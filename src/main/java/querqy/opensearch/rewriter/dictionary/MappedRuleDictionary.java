@@ -0,0 +1,278 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriter.dictionary;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.opensearch.common.UUIDs;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * <p>A {@link RuleDictionary} that is written to a file in the node's data path and memory-mapped. The heap only
+ * holds this handle, lookups read keys and values directly from the mapping.</p>
+ *
+ * <p>File layout (big-endian): magic, format version, number of keys, max input terms, key offsets and value offsets
+ * (one more than keys each, relative to the start of the key/value section), the keys sorted by their unsigned UTF-8
+ * bytes, the values, and a CRC32 of everything before it.</p>
+ *
+ * <p>The file is deleted once the dictionary has become unreachable. The mapping is released by the JVM when the
+ * buffer is garbage-collected, so queries that still use a dictionary that has been replaced by a reload can never
+ * read from an unmapped region. Files left over from a previous run of the node are deleted by
+ * {@link #initDirectory(Path)}.</p>
+ *
+ * <p>The directory is passed in per node (see
+ * {@link querqy.opensearch.OpenSearchRewriterFactory#setDictionaryDirectory(Path)}) so that nodes that share a JVM
+ * never write to each other's data path.</p>
+ */
+public final class MappedRuleDictionary implements RuleDictionary {
+
+    private static final Logger LOGGER = LogManager.getLogger(MappedRuleDictionary.class);
+
+    static final int MAGIC = 0x51514431; // QQD1
+    static final int FORMAT_VERSION = 1;
+    static final String FILE_SUFFIX = ".qdict";
+
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+    // the object header, the buffer and the int fields of the handle
+    private static final long RAM_BYTES_USED = 256L;
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int maxInputTerms;
+    private final int keyOffsetsStart;
+    private final int valueOffsetsStart;
+    private final int keysStart;
+    private final int valuesStart;
+
+    private MappedRuleDictionary(final ByteBuffer buffer) {
+        this.buffer = buffer;
+        size = buffer.getInt(2 * Integer.BYTES);
+        maxInputTerms = buffer.getInt(3 * Integer.BYTES);
+        keyOffsetsStart = HEADER_BYTES;
+        valueOffsetsStart = keyOffsetsStart + (size + 1) * Integer.BYTES;
+        keysStart = valueOffsetsStart + (size + 1) * Integer.BYTES;
+        valuesStart = keysStart + buffer.getInt(keyOffsetsStart + size * Integer.BYTES);
+    }
+
+    /**
+     * Create the directory for the dictionary files and delete files that were left over from a previous run.
+     *
+     * @param dir The directory, will be created if it doesn't exist
+     * @throws IOException if the directory cannot be created or cleaned up
+     */
+    public static void initDirectory(final Path dir) throws IOException {
+        Files.createDirectories(dir);
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + FILE_SUFFIX)) {
+            for (final Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Write the rules to a new file in the dictionary directory and map it.
+     *
+     * @param dir The dictionary directory of the node or null if it isn't available
+     * @param rules The outputs by input
+     * @param maxInputTerms The maximum number of terms of any input
+     * @return The mapped dictionary
+     * @throws IOException if the file cannot be written or mapped
+     */
+    public static MappedRuleDictionary create(final Path dir, final Map<String, String> rules,
+                                              final int maxInputTerms) throws IOException {
+        if (dir == null) {
+            throw new IllegalStateException("The directory for memory-mapped rule dictionaries is not available");
+        }
+        final Path file = dir.resolve(UUIDs.randomBase64UUID() + FILE_SUFFIX);
+        try {
+            write(file, rules, maxInputTerms);
+            return open(file);
+        } catch (final IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    static void write(final Path file, final Map<String, String> rules, final int maxInputTerms)
+            throws IOException {
+
+        final List<byte[][]> entries = new ArrayList<>(rules.size());
+        for (final Map.Entry<String, String> rule : rules.entrySet()) {
+            entries.add(new byte[][] {
+                    rule.getKey().getBytes(StandardCharsets.UTF_8), rule.getValue().getBytes(StandardCharsets.UTF_8)});
+        }
+        entries.sort((e1, e2) -> Arrays.compareUnsigned(e1[0], e2[0]));
+
+        long keysLength = 0L;
+        long valuesLength = 0L;
+        for (final byte[][] entry : entries) {
+            keysLength += entry[0].length;
+            valuesLength += entry[1].length;
+        }
+        final long fileLength = HEADER_BYTES + 2L * (entries.size() + 1) * Integer.BYTES + keysLength + valuesLength
+                + Long.BYTES;
+        if (fileLength > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Rule dictionary too large: " + fileLength + " bytes");
+        }
+
+        final CRC32 crc = new CRC32();
+        try (final OutputStream fileOut = Files.newOutputStream(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+             final DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                     new BufferedOutputStream(fileOut, 64 * 1024), crc))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+            out.writeInt(maxInputTerms);
+            int offset = 0;
+            for (final byte[][] entry : entries) {
+                out.writeInt(offset);
+                offset += entry[0].length;
+            }
+            out.writeInt(offset);
+            offset = 0;
+            for (final byte[][] entry : entries) {
+                out.writeInt(offset);
+                offset += entry[1].length;
+            }
+            out.writeInt(offset);
+            for (final byte[][] entry : entries) {
+                out.write(entry[0]);
+            }
+            for (final byte[][] entry : entries) {
+                out.write(entry[1]);
+            }
+            out.flush();
+            // not part of the checksum
+            new DataOutputStream(fileOut).writeLong(crc.getValue());
+        }
+    }
+
+    static MappedRuleDictionary open(final Path file) throws IOException {
+        final ByteBuffer buffer;
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        final int length = buffer.capacity();
+        if (length < HEADER_BYTES + Long.BYTES || buffer.getInt(0) != MAGIC
+                || buffer.getInt(Integer.BYTES) != FORMAT_VERSION) {
+            throw new IOException("Not a rule dictionary file: " + file);
+        }
+        final CRC32 crc = new CRC32();
+        final ByteBuffer content = buffer.duplicate();
+        content.limit(length - Long.BYTES);
+        crc.update(content);
+        if (crc.getValue() != buffer.getLong(length - Long.BYTES)) {
+            throw new IOException("Checksum mismatch in rule dictionary file: " + file);
+        }
+        final MappedRuleDictionary dictionary = new MappedRuleDictionary(buffer.asReadOnlyBuffer());
+        CLEANER.register(dictionary, () -> {
+            try {
+                Files.deleteIfExists(file);
+            } catch (final IOException e) {
+                // still mapped on some platforms, will be deleted on the next start of the node
+                LOGGER.debug("Could not delete rule dictionary file " + file, e);
+            }
+        });
+        return dictionary;
+    }
+
+    @Override
+    public String get(final byte[] key, final int offset, final int length) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int cmp = compareKey(mid, key, offset, length);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return readValue(mid);
+            }
+        }
+        return null;
+    }
+
+    private int compareKey(final int index, final byte[] key, final int offset, final int length) {
+        final int start = keysStart + buffer.getInt(keyOffsetsStart + index * Integer.BYTES);
+        final int end = keysStart + buffer.getInt(keyOffsetsStart + (index + 1) * Integer.BYTES);
+        final int len = Math.min(end - start, length);
+        for (int i = 0; i < len; i++) {
+            final int cmp = Byte.toUnsignedInt(buffer.get(start + i)) - Byte.toUnsignedInt(key[offset + i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return (end - start) - length;
+    }
+
+    private String readValue(final int index) {
+        final int start = valuesStart + buffer.getInt(valueOffsetsStart + index * Integer.BYTES);
+        final int end = valuesStart + buffer.getInt(valueOffsetsStart + (index + 1) * Integer.BYTES);
+        final byte[] value = new byte[end - start];
+        // absolute reads only, the buffer is shared by concurrent lookups
+        final ByteBuffer view = buffer.duplicate();
+        view.position(start);
+        view.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int getMaxInputTerms() {
+        return maxInputTerms;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The size of the mapped file, which is not on the heap
+     */
+    public long getMappedBytes() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return RAM_BYTES_USED;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriter.dictionary;
+
+import org.apache.lucene.util.Accountable;
+
+/**
+ * A read-only map from rule inputs to rule outputs. Multi-term inputs are stored as the terms joined by
+ * {@link #TERM_SEPARATOR}. Keys are looked up as UTF-8 bytes so that callers can reuse a buffer across lookups.
+ */
+public interface RuleDictionary extends Accountable {
+
+    char TERM_SEPARATOR = '\u001f';
+
+    /**
+     * @param key The UTF-8 bytes of the key
+     * @param offset The offset of the key in the array
+     * @param length The length of the key
+     * @return The output for the key or null if the key doesn't exist
+     */
+    String get(byte[] key, int offset, int length);
+
+    /**
+     * @return The maximum number of terms of any input
+     */
+    int getMaxInputTerms();
+
+    /**
+     * @return The number of inputs
+     */
+    int size();
+}
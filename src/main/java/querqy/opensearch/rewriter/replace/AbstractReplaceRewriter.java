@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriter.replace;
+
+import querqy.model.BooleanClause;
+import querqy.model.Clause;
+import querqy.model.DisjunctionMaxQuery;
+import querqy.model.ExpandedQuery;
+import querqy.model.Query;
+import querqy.model.QuerqyQuery;
+import querqy.model.Term;
+import querqy.parser.QuerqyParser;
+import querqy.rewrite.QueryRewriter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>Base class for replace rewriters that look up the replacements for the terms of the user query in a rules
+ * structure owned by this plugin.</p>
+ *
+ * <p>Only flat user queries, i.e. queries that consist of optional clauses with a single, non-generated term without
+ * a field name, are rewritten. Other queries, for example queries that an earlier rewriter in the chain expanded with
+ * synonyms, are left untouched. Replacements that would remove all terms from the query are not applied.</p>
+ *
+ * <p>If an input matched, the user query is replaced by a new query that is parsed from the replaced terms with the
+ * configured RHS parser ({@code querqyParser}). Outputs with several terms therefore become several clauses, and
+ * the new query doesn't keep any other properties of the original query.</p>
+ */
+public abstract class AbstractReplaceRewriter implements QueryRewriter {
+
+    protected final boolean ignoreCase;
+    private final QuerqyParser querqyParser;
+
+    protected AbstractReplaceRewriter(final boolean ignoreCase, final QuerqyParser querqyParser) {
+        this.ignoreCase = ignoreCase;
+        this.querqyParser = querqyParser;
+    }
+
+    @Override
+    public ExpandedQuery rewrite(final ExpandedQuery query) {
+        final QuerqyQuery<?> userQuery = query.getUserQuery();
+        if (!(userQuery instanceof Query)) {
+            return query;
+        }
+        final List<String> terms = getTerms((Query) userQuery);
+        if (terms == null || terms.isEmpty()) {
+            return query;
+        }
+        final List<String> replaced = replace(terms);
+        if (replaced != null && !replaced.isEmpty()) {
+            query.setUserQuery(querqyParser.parse(String.join(" ", replaced)));
+        }
+        return query;
+    }
+
+    /**
+     * @param terms The query terms
+     * @return The terms after replacement or null if no input matched
+     */
+    abstract List<String> replace(List<String> terms);
+
+    /**
+     * @param terms The query terms
+     * @return The UTF-8 bytes of the terms, lower-cased if the rewriter ignores case
+     */
+    protected byte[][] encode(final List<String> terms) {
+        final byte[][] encoded = new byte[terms.size()][];
+        for (int i = 0; i < encoded.length; i++) {
+            final String term = terms.get(i);
+            encoded[i] = (ignoreCase ? term.toLowerCase(Locale.ROOT) : term).getBytes(StandardCharsets.UTF_8);
+        }
+        return encoded;
+    }
+
+    private static List<String> getTerms(final Query query) {
+        final List<BooleanClause> clauses = query.getClauses();
+        final List<String> terms = new ArrayList<>(clauses.size());
+        for (final BooleanClause clause : clauses) {
+            if (!(clause instanceof DisjunctionMaxQuery) || clause.getOccur() != Clause.Occur.SHOULD) {
+                return null;
+            }
+            final List<Term> dmqTerms = ((DisjunctionMaxQuery) clause).getTerms();
+            if (dmqTerms.size() != 1) {
+                return null;
+            }
+            final Term term = dmqTerms.get(0);
+            if (term.getField() != null || term.isGenerated()) {
+                return null;
+            }
+            terms.add(term.getValue().toString());
+        }
+        return terms;
+    }
+}
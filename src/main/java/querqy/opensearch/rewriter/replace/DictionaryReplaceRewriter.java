@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriter.replace;
+
+import querqy.opensearch.rewriter.dictionary.RuleDictionary;
+import querqy.parser.QuerqyParser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces sequences of query terms with the output of the longest matching input in a {@link RuleDictionary},
+ * scanning the query from left to right. Matches don't overlap.
+ */
+public class DictionaryReplaceRewriter extends AbstractReplaceRewriter {
+
+    private final RuleDictionary dictionary;
+
+    public DictionaryReplaceRewriter(final RuleDictionary dictionary, final boolean ignoreCase,
+                                     final QuerqyParser querqyParser) {
+        super(ignoreCase, querqyParser);
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    List<String> replace(final List<String> terms) {
+        final int numTerms = terms.size();
+        final byte[][] encoded = encode(terms);
+
+        final int maxInputTerms = dictionary.getMaxInputTerms();
+        byte[] key = new byte[64];
+        List<String> result = null;
+        int pos = 0;
+        while (pos < numTerms) {
+            String output = null;
+            int matchLength = Math.min(maxInputTerms, numTerms - pos);
+            for (; matchLength > 0; matchLength--) {
+                int length = matchLength - 1;
+                for (int i = pos; i < pos + matchLength; i++) {
+                    length += encoded[i].length;
+                }
+                if (key.length < length) {
+                    key = new byte[length];
+                }
+                int offset = 0;
+                for (int i = pos; i < pos + matchLength; i++) {
+                    if (i > pos) {
+                        key[offset++] = (byte) RuleDictionary.TERM_SEPARATOR;
+                    }
+                    System.arraycopy(encoded[i], 0, key, offset, encoded[i].length);
+                    offset += encoded[i].length;
+                }
+                output = dictionary.get(key, 0, length);
+                if (output != null) {
+                    break;
+                }
+            }
+
+            if (output == null) {
+                if (result != null) {
+                    result.add(terms.get(pos));
+                }
+                pos++;
+            } else {
+                if (result == null) {
+                    result = new ArrayList<>(terms.subList(0, pos));
+                }
+                if (!output.isEmpty()) {
+                    result.add(output);
+                }
+                pos += matchLength;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriter.replace;
+
+import querqy.model.ExpandedQuery;
+import querqy.model.Term;
+import querqy.opensearch.rewriter.dictionary.RuleDictionary;
+import querqy.parser.QuerqyParser;
+import querqy.rewrite.QueryRewriter;
+import querqy.rewrite.RewriterFactory;
+import querqy.rewrite.SearchEngineRequestAdapter;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Creates {@link DictionaryReplaceRewriter}s that look up the replacements in a {@link RuleDictionary}.
+ */
+public class DictionaryReplaceRewriterFactory extends RewriterFactory {
+
+    private final RuleDictionary dictionary;
+    private final boolean ignoreCase;
+    private final QuerqyParser querqyParser;
+
+    public DictionaryReplaceRewriterFactory(final String rewriterId, final RuleDictionary dictionary,
+                                            final boolean ignoreCase, final QuerqyParser querqyParser) {
+        super(rewriterId);
+        this.dictionary = dictionary;
+        this.ignoreCase = ignoreCase;
+        this.querqyParser = querqyParser;
+    }
+
+    @Override
+    public QueryRewriter createRewriter(final ExpandedQuery input,
+                                        final SearchEngineRequestAdapter searchEngineRequestAdapter) {
+        return new DictionaryReplaceRewriter(dictionary, ignoreCase, querqyParser);
+    }
+
+    @Override
+    public Set<Term> getGenerableTerms() {
+        return Collections.emptySet();
+    }
+
+    public RuleDictionary getDictionary() {
+        return dictionary;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriter.replace;
+
+import querqy.parser.QuerqyParser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces sequences of query terms using {@link FstReplaceRules}, scanning the query from left to right. At each
+ * position, the longest exact input wins over prefix and suffix rules. Matches don't overlap.
+ */
+public class FstReplaceRewriter extends AbstractReplaceRewriter {
+
+    private final FstReplaceRules rules;
+
+    public FstReplaceRewriter(final FstReplaceRules rules, final boolean ignoreCase, final QuerqyParser querqyParser) {
+        super(ignoreCase, querqyParser);
+        this.rules = rules;
+    }
+
+    @Override
+    List<String> replace(final List<String> terms) {
+        final byte[][] encoded = encode(terms);
+        List<String> result = null;
+        int pos = 0;
+        while (pos < encoded.length) {
+            int matchLength = 1;
+            final String output;
+            final long exactMatch = rules.matchExact(encoded, pos);
+            if (exactMatch > -1L) {
+                matchLength = (int) (exactMatch >>> 32);
+                output = rules.getValue((int) exactMatch);
+            } else {
+                output = rules.matchWildcard(encoded[pos]);
+            }
+
+            if (output == null) {
+                if (result != null) {
+                    result.add(terms.get(pos));
+                }
+            } else {
+                if (result == null) {
+                    result = new ArrayList<>(terms.subList(0, pos));
+                }
+                if (!output.isEmpty()) {
+                    result.add(output);
+                }
+            }
+            pos += matchLength;
+        }
+        return result;
+    }
+}
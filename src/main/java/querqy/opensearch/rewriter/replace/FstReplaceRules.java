@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriter.replace;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.FSTCompiler;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+import org.apache.lucene.util.fst.Util;
+import querqy.opensearch.rewriter.dictionary.RuleDictionary;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>The rules of the replace rewriter compiled into Lucene {@link FST}s.</p>
+ *
+ * <p>There is one FST for exact inputs, keyed by the UTF-8 bytes of the input terms joined by
+ * {@link RuleDictionary#TERM_SEPARATOR}, one for inputs with a trailing wildcard (prefix rules) and one for inputs
+ * with a leading wildcard (suffix rules), keyed by the reversed bytes of the input. The FSTs map the inputs to the
+ * ordinal of their output. Outputs are de-duplicated and held in a single byte array so that, unlike the heap storage,
+ * no objects are retained per rule and common prefixes and suffixes of the inputs are shared.</p>
+ */
+public class FstReplaceRules implements Accountable {
+
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(FstReplaceRules.class);
+
+    /**
+     * The placeholder for the part of the term that was matched by the wildcard
+     */
+    static final String WILDCARD_PLACEHOLDER = "$1";
+
+    private final FST<Long> exact;
+    private final FST<Long> prefixes;
+    private final FST<Long> suffixes;
+    private final byte[] values;
+    private final int[] valueOffsets;
+
+    private FstReplaceRules(final FST<Long> exact, final FST<Long> prefixes, final FST<Long> suffixes,
+                            final byte[] values, final int[] valueOffsets) {
+        this.exact = exact;
+        this.prefixes = prefixes;
+        this.suffixes = suffixes;
+        this.values = values;
+        this.valueOffsets = valueOffsets;
+    }
+
+    /**
+     * @param parsed The parsed rules
+     * @return The compiled rules
+     * @throws IOException if an FST cannot be compiled
+     */
+    public static FstReplaceRules build(final ReplaceRulesParser parsed) throws IOException {
+        final Map<String, Integer> ordinals = new HashMap<>();
+        final List<byte[]> outputs = new ArrayList<>();
+
+        final FST<Long> exact = compile(parsed.getRules(), false, ordinals, outputs);
+        final FST<Long> prefixes = compile(parsed.getPrefixRules(), false, ordinals, outputs);
+        final FST<Long> suffixes = compile(parsed.getSuffixRules(), true, ordinals, outputs);
+
+        final int[] valueOffsets = new int[outputs.size() + 1];
+        for (int i = 0; i < outputs.size(); i++) {
+            valueOffsets[i + 1] = valueOffsets[i] + outputs.get(i).length;
+        }
+        final byte[] values = new byte[valueOffsets[outputs.size()]];
+        for (int i = 0; i < outputs.size(); i++) {
+            final byte[] output = outputs.get(i);
+            System.arraycopy(output, 0, values, valueOffsets[i], output.length);
+        }
+        return new FstReplaceRules(exact, prefixes, suffixes, values, valueOffsets);
+    }
+
+    private static FST<Long> compile(final Map<String, String> rules, final boolean reverse,
+                                     final Map<String, Integer> ordinals, final List<byte[]> outputs)
+            throws IOException {
+        if (rules.isEmpty()) {
+            return null;
+        }
+        final byte[][] keys = new byte[rules.size()][];
+        final long[] keyOrdinals = new long[keys.length];
+        final Integer[] order = new Integer[keys.length];
+        int i = 0;
+        for (final Map.Entry<String, String> rule : rules.entrySet()) {
+            keys[i] = rule.getKey().getBytes(StandardCharsets.UTF_8);
+            if (reverse) {
+                reverse(keys[i]);
+            }
+            keyOrdinals[i] = ordinals.computeIfAbsent(rule.getValue(), value -> {
+                outputs.add(value.getBytes(StandardCharsets.UTF_8));
+                return outputs.size() - 1;
+            });
+            order[i] = i;
+            i++;
+        }
+        // the FSTCompiler expects the inputs in sorted order
+        Arrays.sort(order, (o1, o2) -> Arrays.compareUnsigned(keys[o1], keys[o2]));
+
+        final FSTCompiler<Long> compiler = new FSTCompiler.Builder<>(FST.INPUT_TYPE.BYTE1,
+                PositiveIntOutputs.getSingleton()).build();
+        final IntsRefBuilder scratch = new IntsRefBuilder();
+        for (final int ord : order) {
+            compiler.add(Util.toIntsRef(new BytesRef(keys[ord]), scratch), keyOrdinals[ord]);
+        }
+        return FST.fromFSTReader(compiler.compile(), compiler.getFSTReader());
+    }
+
+    private static void reverse(final byte[] bytes) {
+        for (int i = 0, j = bytes.length - 1; i < j; i++, j--) {
+            final byte b = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = b;
+        }
+    }
+
+    /**
+     * Find the longest exact input that starts at the term at pos. The FST is walked only once along the terms and
+     * the output is recorded at each term boundary.
+     *
+     * @param encoded The UTF-8 bytes of the query terms
+     * @param pos The index of the first term
+     * @return The number of matched terms in the upper and the output ordinal in the lower 32 bits or -1 if no input
+     * matched
+     */
+    long matchExact(final byte[][] encoded, final int pos) {
+        if (exact == null) {
+            return -1L;
+        }
+        try {
+            final FST.BytesReader reader = exact.getBytesReader();
+            final FST.Arc<Long> arc = exact.getFirstArc(new FST.Arc<>());
+            long output = 0L;
+            long match = -1L;
+            for (int i = pos; i < encoded.length; i++) {
+                if (i > pos) {
+                    if (exact.findTargetArc(RuleDictionary.TERM_SEPARATOR, arc, arc, reader) == null) {
+                        break;
+                    }
+                    output += arc.output();
+                }
+                final byte[] term = encoded[i];
+                int j = 0;
+                for (; j < term.length; j++) {
+                    if (exact.findTargetArc(term[j] & 0xFF, arc, arc, reader) == null) {
+                        break;
+                    }
+                    output += arc.output();
+                }
+                if (j < term.length) {
+                    break;
+                }
+                if (arc.isFinal()) {
+                    match = ((long) (i - pos + 1) << 32) | (output + arc.nextFinalOutput());
+                }
+            }
+            return match;
+        } catch (final IOException e) {
+            // cannot happen with an on-heap FST
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Apply the prefix rule with the longest input to the term or, if no prefix rule matches, the suffix rule with the
+     * longest input. The wildcard must match at least one character.
+     *
+     * @param term The UTF-8 bytes of the term
+     * @return The output with the wildcard placeholder replaced or null if no rule matched
+     */
+    String matchWildcard(final byte[] term) {
+        long match = longestPartialMatch(prefixes, term, false);
+        if (match > -1L) {
+            final int length = (int) (match >>> 32);
+            return getValue((int) match).replace(WILDCARD_PLACEHOLDER,
+                    new String(term, length, term.length - length, StandardCharsets.UTF_8));
+        }
+        match = longestPartialMatch(suffixes, term, true);
+        if (match > -1L) {
+            final int length = (int) (match >>> 32);
+            return getValue((int) match).replace(WILDCARD_PLACEHOLDER,
+                    new String(term, 0, term.length - length, StandardCharsets.UTF_8));
+        }
+        return null;
+    }
+
+    private static long longestPartialMatch(final FST<Long> fst, final byte[] term, final boolean reverse) {
+        if (fst == null) {
+            return -1L;
+        }
+        try {
+            final FST.BytesReader reader = fst.getBytesReader();
+            final FST.Arc<Long> arc = fst.getFirstArc(new FST.Arc<>());
+            long output = 0L;
+            long match = -1L;
+            // stop before the last byte so that the wildcard matches at least one character
+            for (int i = 0; i < term.length - 1; i++) {
+                final int label = term[reverse ? term.length - 1 - i : i] & 0xFF;
+                if (fst.findTargetArc(label, arc, arc, reader) == null) {
+                    break;
+                }
+                output += arc.output();
+                if (arc.isFinal()) {
+                    match = ((long) (i + 1) << 32) | (output + arc.nextFinalOutput());
+                }
+            }
+            return match;
+        } catch (final IOException e) {
+            // cannot happen with an on-heap FST
+            throw new IllegalStateException(e);
+        }
+    }
+
+    String getValue(final int ordinal) {
+        return new String(values, valueOffsets[ordinal], valueOffsets[ordinal + 1] - valueOffsets[ordinal],
+                StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return BASE_RAM_BYTES_USED
+                + (exact == null ? 0L : exact.ramBytesUsed())
+                + (prefixes == null ? 0L : prefixes.ramBytesUsed())
+                + (suffixes == null ? 0L : suffixes.ramBytesUsed())
+                + RamUsageEstimator.sizeOf(values)
+                + RamUsageEstimator.sizeOf(valueOffsets);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriter.replace;
+
+import querqy.opensearch.rewriter.dictionary.RuleDictionary;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Parses the rules of the replace rewriter into a map from input to output for a {@link RuleDictionary}.</p>
+ *
+ * <p>The syntax is the syntax of the replace rewriter: one rule per line, several inputs separated by the input
+ * delimiter on the left-hand side of '=>' and the output on the right-hand side. Lines starting with '#' are comments.
+ * Single-term inputs can start or end with a wildcard ('*') if the parser is created to allow wildcards. The part of
+ * the term that is matched by the wildcard can be referenced as '$1' in the output.</p>
+ */
+public class ReplaceRulesParser {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final Map<String, String> rules = new HashMap<>();
+    private final Map<String, String> prefixRules = new HashMap<>();
+    private final Map<String, String> suffixRules = new HashMap<>();
+    private int maxInputTerms = 0;
+
+    /**
+     * @param rules The rules
+     * @param inputDelimiter The delimiter between inputs
+     * @param ignoreCase Iff true, inputs will be lower-cased
+     * @return The parser holding the parsed rules
+     * @throws IllegalArgumentException if the rules are invalid
+     */
+    public static ReplaceRulesParser parse(final String rules, final String inputDelimiter,
+                                           final boolean ignoreCase) {
+        return parse(rules, inputDelimiter, ignoreCase, false);
+    }
+
+    /**
+     * @param rules The rules
+     * @param inputDelimiter The delimiter between inputs
+     * @param ignoreCase Iff true, inputs will be lower-cased
+     * @param allowWildcards Iff true, single-term inputs may start or end with a wildcard
+     * @return The parser holding the parsed rules
+     * @throws IllegalArgumentException if the rules are invalid
+     */
+    public static ReplaceRulesParser parse(final String rules, final String inputDelimiter,
+                                           final boolean ignoreCase, final boolean allowWildcards) {
+        final ReplaceRulesParser parser = new ReplaceRulesParser();
+        final String[] lines = rules.split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            parser.parseLine(lines[i].trim(), i + 1, inputDelimiter, ignoreCase, allowWildcards);
+        }
+        return parser;
+    }
+
+    private void parseLine(final String line, final int lineNumber, final String inputDelimiter,
+                           final boolean ignoreCase, final boolean allowWildcards) {
+        if (line.isEmpty() || line.startsWith("#")) {
+            return;
+        }
+        final int arrow = line.indexOf("=>");
+        if (arrow < 0) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": '=>' expected");
+        }
+        final String output = String.join(" ", WHITESPACE.split(line.substring(arrow + 2).trim()));
+
+        boolean hasInput = false;
+        for (final String input : line.substring(0, arrow).split(Pattern.quote(inputDelimiter))) {
+            final String trimmed = input.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (trimmed.indexOf('*') > -1) {
+                if (!allowWildcards) {
+                    throw new IllegalArgumentException("Line " + lineNumber + ": wildcard inputs are not supported "
+                            + "with this storage: " + trimmed);
+                }
+                parseWildcardInput(ignoreCase ? trimmed.toLowerCase(Locale.ROOT) : trimmed, output, lineNumber);
+                maxInputTerms = Math.max(maxInputTerms, 1);
+                hasInput = true;
+                continue;
+            }
+            final String[] terms = WHITESPACE.split(ignoreCase ? trimmed.toLowerCase(Locale.ROOT) : trimmed);
+            final String key = String.join(String.valueOf(RuleDictionary.TERM_SEPARATOR), terms);
+            if (rules.put(key, output) != null) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": duplicate input: " + trimmed);
+            }
+            maxInputTerms = Math.max(maxInputTerms, terms.length);
+            hasInput = true;
+        }
+        if (!hasInput) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": input expected");
+        }
+    }
+
+    private void parseWildcardInput(final String input, final String output, final int lineNumber) {
+        final int wildcard = input.indexOf('*');
+        if (input.length() < 2 || wildcard != input.lastIndexOf('*') || WHITESPACE.matcher(input).find()) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": a wildcard input must be a single term "
+                    + "with a single wildcard: " + input);
+        }
+        final Map<String, String> target;
+        final String key;
+        if (wildcard == 0) {
+            target = suffixRules;
+            key = input.substring(1);
+        } else if (wildcard == input.length() - 1) {
+            target = prefixRules;
+            key = input.substring(0, wildcard);
+        } else {
+            throw new IllegalArgumentException("Line " + lineNumber + ": the wildcard must be at the beginning or "
+                    + "at the end of the input: " + input);
+        }
+        if (target.put(key, output) != null) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": duplicate input: " + input);
+        }
+    }
+
+    public Map<String, String> getRules() {
+        return rules;
+    }
+
+    /**
+     * @return The rules for inputs with a trailing wildcard, keyed by the input without the wildcard
+     */
+    public Map<String, String> getPrefixRules() {
+        return prefixRules;
+    }
+
+    /**
+     * @return The rules for inputs with a leading wildcard, keyed by the input without the wildcard
+     */
+    public Map<String, String> getSuffixRules() {
+        return suffixRules;
+    }
+
+    public int getMaxInputTerms() {
+        return maxInputTerms;
+    }
+}
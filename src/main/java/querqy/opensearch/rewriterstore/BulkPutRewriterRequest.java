@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriterstore;
+
+import org.opensearch.action.ActionRequest;
+import org.opensearch.action.ActionRequestValidationException;
+import org.opensearch.action.ValidateActions;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Saves several rewriters at once. The request is only executed if all rewriter definitions are valid.
+ */
+public class BulkPutRewriterRequest extends ActionRequest {
+
+    private final Map<String, Map<String, Object>> rewriters;
+
+    public BulkPutRewriterRequest(final StreamInput in) throws IOException {
+        super(in);
+        rewriters = in.readMap(StreamInput::readString, input -> input.readMap());
+    }
+
+    /**
+     * @param rewriters The rewriter definitions (see {@link PutRewriterRequest#getContent()}) by rewriter id
+     */
+    public BulkPutRewriterRequest(final Map<String, Map<String, Object>> rewriters) {
+        super();
+        this.rewriters = rewriters;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        if (rewriters == null || rewriters.isEmpty()) {
+            return ValidateActions.addValidationError("No rewriters to save", null);
+        }
+        ActionRequestValidationException validationException = null;
+        for (final Map.Entry<String, Map<String, Object>> entry : rewriters.entrySet()) {
+            final String rewriterId = entry.getKey();
+            if (rewriterId == null || rewriterId.trim().isEmpty()) {
+                validationException = ValidateActions.addValidationError("Rewriter id must not be empty",
+                        validationException);
+                continue;
+            }
+            if (entry.getValue() == null) {
+                validationException = ValidateActions.addValidationError("[" + rewriterId
+                        + "] Missing rewriter definition", validationException);
+                continue;
+            }
+            final ActionRequestValidationException rewriterException = new PutRewriterRequest(rewriterId,
+                    entry.getValue()).validate();
+            if (rewriterException != null) {
+                for (final String error : rewriterException.validationErrors()) {
+                    validationException = ValidateActions.addValidationError("[" + rewriterId + "] " + error,
+                            validationException);
+                }
+            }
+        }
+        return validationException;
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeMap(rewriters, StreamOutput::writeString, (output, content) -> output.writeMap(content));
+    }
+
+    public Map<String, Map<String, Object>> getRewriters() {
+        return rewriters;
+    }
+
+}
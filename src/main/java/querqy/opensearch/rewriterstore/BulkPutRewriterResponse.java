@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriterstore;
+
+import org.opensearch.OpenSearchException;
+import org.opensearch.action.FailedNodeException;
+import org.opensearch.action.bulk.BulkItemResponse;
+import org.opensearch.action.bulk.BulkResponse;
+import org.opensearch.common.xcontent.StatusToXContentObject;
+import org.opensearch.core.action.ActionResponse;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+import org.opensearch.core.rest.RestStatus;
+import org.opensearch.core.xcontent.XContentBuilder;
+
+import java.io.IOException;
+
+/**
+ * The result of a {@link BulkPutRewriterRequest}, reporting the status of each rewriter.
+ */
+public class BulkPutRewriterResponse extends ActionResponse implements StatusToXContentObject {
+
+    private final BulkResponse bulkResponse;
+    // null if no rewriter was saved
+    private final NodesReloadRewriterResponse reloadResponse;
+
+    public BulkPutRewriterResponse(final BulkResponse bulkResponse,
+                                   final NodesReloadRewriterResponse reloadResponse) {
+        this.bulkResponse = bulkResponse;
+        this.reloadResponse = reloadResponse;
+    }
+
+    public BulkPutRewriterResponse(final StreamInput in) throws IOException {
+        super(in);
+        bulkResponse = new BulkResponse(in);
+        reloadResponse = in.readOptionalWriteable(NodesReloadRewriterResponse::new);
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        bulkResponse.writeTo(out);
+        out.writeOptionalWriteable(reloadResponse);
+    }
+
+    @Override
+    public RestStatus status() {
+        return RestStatus.OK;
+    }
+
+    /**
+     * @return true if any rewriter couldn't be saved or reloaded
+     */
+    public boolean hasErrors() {
+        if (bulkResponse.hasFailures()) {
+            return true;
+        }
+        if (reloadResponse == null) {
+            return false;
+        }
+        if (reloadResponse.hasFailures()) {
+            return true;
+        }
+        for (final NodesReloadRewriterResponse.NodeResponse node : reloadResponse.getNodes()) {
+            if (node.reloadException() != null || !node.rewriterExceptions().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public XContentBuilder toXContent(final XContentBuilder builder, final Params params) throws IOException {
+
+        builder.startObject();
+        builder.field("took", bulkResponse.getTook().millis());
+        builder.field("errors", hasErrors());
+        builder.startObject("rewriters");
+        for (final BulkItemResponse item : bulkResponse.getItems()) {
+            builder.startObject(item.getId());
+            if (item.isFailed()) {
+                builder.field("status", item.getFailure().getStatus().getStatus());
+                builder.startObject("error");
+                OpenSearchException.generateThrowableXContent(builder, params, item.getFailure().getCause());
+                builder.endObject();
+            } else {
+                builder.field("status", item.status().getStatus());
+                builder.field("result", item.getResponse().getResult().getLowercase());
+                builder.field("version", item.getVersion());
+                writeReloadFailures(builder, params, item.getId());
+            }
+            builder.endObject();
+        }
+        builder.endObject();
+        if (reloadResponse != null) {
+            builder.field("reloaded", reloadResponse);
+        }
+        builder.endObject();
+        return builder;
+    }
+
+    private void writeReloadFailures(final XContentBuilder builder, final Params params, final String rewriterId)
+            throws IOException {
+        if (reloadResponse == null) {
+            return;
+        }
+        boolean started = false;
+        for (final NodesReloadRewriterResponse.NodeResponse node : reloadResponse.getNodes()) {
+            Exception e = node.rewriterExceptions().get(rewriterId);
+            if (e == null) {
+                // a request for a single rewriter reports the exception as the reload exception
+                e = node.reloadException();
+            }
+            if (e != null) {
+                if (!started) {
+                    builder.startObject("reload_failures");
+                    started = true;
+                }
+                builder.startObject(node.getNode().getId());
+                OpenSearchException.generateThrowableXContent(builder, params, e);
+                builder.endObject();
+            }
+        }
+        for (final FailedNodeException e : reloadResponse.failures()) {
+            if (!started) {
+                builder.startObject("reload_failures");
+                started = true;
+            }
+            builder.startObject(e.nodeId());
+            OpenSearchException.generateThrowableXContent(builder, params, e);
+            builder.endObject();
+        }
+        if (started) {
+            builder.endObject();
+        }
+    }
+
+    public BulkResponse getBulkResponse() {
+        return bulkResponse;
+    }
+
+    public NodesReloadRewriterResponse getReloadResponse() {
+        return reloadResponse;
+    }
+}
@@ -26,6 +26,8 @@ public interface Constants {
 
     String QUERQY_REWRITER_BASE_ROUTE = "/_plugins/_querqy/rewriter";
 
+    String QUERQY_STATS_ROUTE = "/_plugins/_querqy/stats";
+
     String SETTINGS_QUERQY_INDEX_NUM_REPLICAS = "querqy.store.replicas";
 
     int DEFAULT_QUERQY_INDEX_NUM_REPLICAS = 1;
@@ -26,6 +26,7 @@ public class LoadRewriterConfig {
     private final RewriterConfigMapping configMapping;
     private final String rewriterId;
     private final Map<String, Object> luceneDoc;
+    private Map<String, Object> config;
 
     public LoadRewriterConfig(final String rewriterId, final Map<String, Object> luceneDoc) {
         this.configMapping = RewriterConfigMapping.getMapping(luceneDoc);
@@ -45,15 +46,22 @@ public class LoadRewriterConfig {
         return configMapping.getRewriterClassName(rewriterId, luceneDoc);
     }
 
+    /**
+     * @return The config of the rewriter. It is parsed (and decompressed) on the first call only.
+     */
     public Map<String, Object> getConfig() {
-        return configMapping.getConfig(rewriterId, luceneDoc);
+        if (config == null) {
+            config = configMapping.getConfig(rewriterId, luceneDoc);
+        }
+        return config;
     }
 
     public Map<String, Object> getInfoLoggingConfig() {
         return configMapping.getInfoLoggingConfig(rewriterId, luceneDoc);
     }
 
-
-
+    public String getConfigDigest() {
+        return configMapping.getConfigDigest(luceneDoc);
+    }
 
 }
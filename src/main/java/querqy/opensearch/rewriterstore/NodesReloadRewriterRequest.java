@@ -25,58 +25,85 @@ import org.opensearch.core.common.io.stream.StreamInput;
 import org.opensearch.core.common.io.stream.StreamOutput;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 
 public class NodesReloadRewriterRequest extends BaseNodesRequest<NodesReloadRewriterRequest> {
 
-    private final String rewriterId;
+    private final List<String> rewriterIds;
 
     public NodesReloadRewriterRequest(final String rewriterId, final String... nodesIds) {
+        this(Collections.singletonList(rewriterId), nodesIds);
+    }
+
+    /**
+     * Reload several rewriters at once. The nodes rebuild the rewriters in parallel.
+     *
+     * @param rewriterIds The ids of the rewriters to reload
+     * @param nodesIds The nodes to reload the rewriters on, all nodes if empty
+     */
+    public NodesReloadRewriterRequest(final List<String> rewriterIds, final String... nodesIds) {
         super(nodesIds);
-        this.rewriterId = rewriterId;
+        this.rewriterIds = rewriterIds;
     }
 
     public NodesReloadRewriterRequest(final StreamInput in) throws IOException {
         super(in);
-        rewriterId = in.readString();
+        rewriterIds = in.readStringList();
     }
 
     @Override
     public void writeTo(final StreamOutput out) throws IOException {
         super.writeTo(out);
-        out.writeString(rewriterId);
+        out.writeStringCollection(rewriterIds);
     }
 
     public NodeRequest newNodeRequest() {
-        return new NodeRequest(rewriterId);
+        return new NodeRequest(rewriterIds);
     }
 
+    /**
+     * @return The id of the first rewriter to reload
+     */
     public String getRewriterId() {
-        return rewriterId;
+        return rewriterIds.get(0);
+    }
+
+    public List<String> getRewriterIds() {
+        return rewriterIds;
     }
 
 
     public static class NodeRequest extends BaseNodeRequest {
 
-        String rewriterId;
+        List<String> rewriterIds;
 
         public NodeRequest(final StreamInput in) throws IOException {
             super(in);
-            rewriterId = in.readString();
+            rewriterIds = in.readStringList();
         }
 
         public NodeRequest(final String rewriterId) {
+            this(Collections.singletonList(rewriterId));
+        }
+
+        public NodeRequest(final List<String> rewriterIds) {
             super();
-            this.rewriterId = rewriterId;
+            this.rewriterIds = rewriterIds;
         }
 
         @Override
         public void writeTo(final StreamOutput out) throws IOException {
             super.writeTo(out);
-            out.writeString(rewriterId);
+            out.writeStringCollection(rewriterIds);
         }
 
         public String getRewriterId() {
-            return rewriterId;
+            return rewriterIds.get(0);
+        }
+
+        public List<String> getRewriterIds() {
+            return rewriterIds;
         }
 
     }
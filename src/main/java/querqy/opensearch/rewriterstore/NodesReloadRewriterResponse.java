@@ -34,7 +34,9 @@ import org.opensearch.core.xcontent.ToXContentObject;
 import org.opensearch.core.xcontent.XContentBuilder;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 public class NodesReloadRewriterResponse extends BaseNodesResponse<NodesReloadRewriterResponse.NodeResponse>
@@ -68,12 +70,22 @@ public class NodesReloadRewriterResponse extends BaseNodesResponse<NodesReloadRe
         for (final NodeResponse node : getNodes()) {
             builder.startObject(node.getNode().getId());
             builder.field("name", node.getNode().getName());
+            builder.field("took", node.getTookMillis());
             final Exception e = node.reloadException();
             if (e != null) {
                 builder.startObject("reload_exception");
                 OpenSearchException.generateThrowableXContent(builder, params, e);
                 builder.endObject();
             }
+            if (!node.rewriterExceptions().isEmpty()) {
+                builder.startObject("rewriter_exceptions");
+                for (final Map.Entry<String, Exception> entry : node.rewriterExceptions().entrySet()) {
+                    builder.startObject(entry.getKey());
+                    OpenSearchException.generateThrowableXContent(builder, params, entry.getValue());
+                    builder.endObject();
+                }
+                builder.endObject();
+            }
             builder.endObject();
         }
         builder.endObject();
@@ -125,21 +137,56 @@ public class NodesReloadRewriterResponse extends BaseNodesResponse<NodesReloadRe
     public static class NodeResponse extends BaseNodeResponse {
 
         private final Exception reloadException;
+        private final Map<String, Exception> rewriterExceptions;
+        private final long tookMillis;
 
         public NodeResponse(final StreamInput in) throws IOException {
             super(in);
             reloadException = in.readBoolean() ? in.readException() : null;
+            rewriterExceptions = in.readMap(StreamInput::readString, StreamInput::readException);
+            tookMillis = in.readVLong();
         }
 
         public NodeResponse(final DiscoveryNode node, final Exception reloadException) {
+            this(node, reloadException, Collections.emptyMap());
+        }
+
+        /**
+         * @param node The node
+         * @param reloadException The exception if reloading a single rewriter failed
+         * @param rewriterExceptions The exceptions by rewriter id if reloading several rewriters failed for some
+         */
+        public NodeResponse(final DiscoveryNode node, final Exception reloadException,
+                            final Map<String, Exception> rewriterExceptions) {
+            this(node, reloadException, rewriterExceptions, 0L);
+        }
+
+        /**
+         * @param node The node
+         * @param reloadException The exception if reloading a single rewriter failed
+         * @param rewriterExceptions The exceptions by rewriter id if reloading several rewriters failed for some
+         * @param tookMillis The time it took the node to reload the rewriters on all of its shards
+         */
+        public NodeResponse(final DiscoveryNode node, final Exception reloadException,
+                            final Map<String, Exception> rewriterExceptions, final long tookMillis) {
             super(node);
             this.reloadException = reloadException;
+            this.rewriterExceptions = rewriterExceptions;
+            this.tookMillis = tookMillis;
         }
 
         public Exception reloadException() {
             return this.reloadException;
         }
 
+        public Map<String, Exception> rewriterExceptions() {
+            return rewriterExceptions;
+        }
+
+        public long getTookMillis() {
+            return tookMillis;
+        }
+
         @Override
         public void writeTo(final StreamOutput out) throws IOException {
             super.writeTo(out);
@@ -149,6 +196,8 @@ public class NodesReloadRewriterResponse extends BaseNodesResponse<NodesReloadRe
             } else {
                 out.writeBoolean(false);
             }
+            out.writeMap(rewriterExceptions, StreamOutput::writeString, StreamOutput::writeException);
+            out.writeVLong(tookMillis);
         }
 
         @Override
@@ -160,8 +209,20 @@ public class NodesReloadRewriterResponse extends BaseNodesResponse<NodesReloadRe
                 return false;
             }
             final NodeResponse that = (NodeResponse) o;
+            if (tookMillis != that.tookMillis) {
+                return false;
+            }
             // We cannot rely on the Exception to implement equals(), users of NodesReloadRewriterResponse will
             // be interested just in the message anyway
+            if (!rewriterExceptions.keySet().equals(that.rewriterExceptions.keySet())) {
+                return false;
+            }
+            for (final Map.Entry<String, Exception> entry : rewriterExceptions.entrySet()) {
+                if (!Objects.equals(entry.getValue().getMessage(),
+                        that.rewriterExceptions.get(entry.getKey()).getMessage())) {
+                    return false;
+                }
+            }
             if (reloadException == null) {
                 return that.reloadException == null;
             } else if (that.reloadException == null) {
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriterstore;
+
+import org.opensearch.action.ActionRequest;
+import org.opensearch.action.ActionRequestValidationException;
+import org.opensearch.action.ValidateActions;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+import querqy.opensearch.rewriter.CommonRulesPatch;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Changes individual rules of a common rules rewriter (see {@link CommonRulesPatch}).
+ */
+public class PatchRewriterRequest extends ActionRequest {
+
+    private final Map<String, Object> content;
+    private final String rewriterId;
+
+    public PatchRewriterRequest(final StreamInput in) throws IOException {
+        super(in);
+        rewriterId = in.readString();
+        content = in.readMap();
+    }
+
+    public PatchRewriterRequest(final String rewriterId, final Map<String, Object> content) {
+        super();
+        this.rewriterId = rewriterId;
+        this.content = content;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        if (rewriterId == null) {
+            return ValidateActions.addValidationError("Missing rewriter id", null);
+        }
+        try {
+            CommonRulesPatch.fromContent(content);
+        } catch (final IllegalArgumentException e) {
+            return ValidateActions.addValidationError(e.getMessage(), null);
+        }
+        return null;
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(rewriterId);
+        out.writeMap(content);
+    }
+
+    public String getRewriterId() {
+        return rewriterId;
+    }
+
+    public Map<String, Object> getContent() {
+        return content;
+    }
+
+    public CommonRulesPatch getPatch() {
+        return CommonRulesPatch.fromContent(content);
+    }
+
+}
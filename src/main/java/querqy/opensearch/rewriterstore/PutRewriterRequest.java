@@ -25,7 +25,9 @@ import org.opensearch.action.ActionRequestValidationException;
 import org.opensearch.action.ValidateActions;
 import org.opensearch.core.common.io.stream.StreamInput;
 import org.opensearch.core.common.io.stream.StreamOutput;
+import org.opensearch.index.seqno.SequenceNumbers;
 import querqy.opensearch.OpenSearchRewriterFactory;
+import querqy.opensearch.infologging.InfoLoggingSampler;
 
 import java.io.IOException;
 import java.security.AccessController;
@@ -39,17 +41,38 @@ public class PutRewriterRequest extends ActionRequest {
 
     private final Map<String, Object> content;
     private final String rewriterId;
+    private final long ifSeqNo;
+    private final long ifPrimaryTerm;
 
     public PutRewriterRequest(final StreamInput in) throws IOException {
         super(in);
         rewriterId = in.readString();
         content = in.readMap();
+        ifSeqNo = in.readZLong();
+        ifPrimaryTerm = in.readVLong();
     }
 
     public PutRewriterRequest(final String rewriterId, final Map<String, Object> content) {
+        this(rewriterId, content, SequenceNumbers.UNASSIGNED_SEQ_NO, SequenceNumbers.UNASSIGNED_PRIMARY_TERM);
+    }
+
+    /**
+     * Create a request that only saves the rewriter if the stored rewriter has not been changed since it was read
+     * with the given sequence number and primary term.
+     *
+     * @param rewriterId The rewriter id
+     * @param content The rewriter definition
+     * @param ifSeqNo The sequence number of the stored rewriter or {@link SequenceNumbers#UNASSIGNED_SEQ_NO}
+     * @param ifPrimaryTerm The primary term of the stored rewriter or
+     *                      {@link SequenceNumbers#UNASSIGNED_PRIMARY_TERM}
+     */
+    public PutRewriterRequest(final String rewriterId, final Map<String, Object> content, final long ifSeqNo,
+                              final long ifPrimaryTerm) {
         super();
         this.rewriterId = rewriterId;
         this.content = content;
+        this.ifSeqNo = ifSeqNo;
+        this.ifPrimaryTerm = ifPrimaryTerm;
     }
 
     @Override
@@ -85,6 +108,17 @@ public class PutRewriterRequest extends ActionRequest {
                     }
                 }
             }
+            final Object samplingObj = loggingConfig.get("sampling");
+            if (samplingObj != null) {
+                if (!(samplingObj instanceof Map)) {
+                    return ValidateActions.addValidationError("info_logging.sampling must be an object", null);
+                }
+                try {
+                    InfoLoggingSampler.fromConfig((Map<String, Object>) samplingObj);
+                } catch (final IllegalArgumentException e) {
+                    return ValidateActions.addValidationError(e.getMessage(), null);
+                }
+            }
         }
 
 
@@ -125,6 +159,8 @@ public class PutRewriterRequest extends ActionRequest {
         super.writeTo(out);
         out.writeString(rewriterId);
         out.writeMap(content);
+        out.writeZLong(ifSeqNo);
+        out.writeVLong(ifPrimaryTerm);
     }
 
     public String getRewriterId() {
@@ -135,4 +171,12 @@ public class PutRewriterRequest extends ActionRequest {
         return content;
     }
 
+    public long getIfSeqNo() {
+        return ifSeqNo;
+    }
+
+    public long getIfPrimaryTerm() {
+        return ifPrimaryTerm;
+    }
+
 }
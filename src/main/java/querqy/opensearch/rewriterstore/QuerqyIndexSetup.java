@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriterstore;
+
+import static querqy.opensearch.rewriterstore.Constants.DEFAULT_QUERQY_INDEX_NUM_REPLICAS;
+import static querqy.opensearch.rewriterstore.Constants.QUERQY_INDEX_NAME;
+import static querqy.opensearch.rewriterstore.Constants.SETTINGS_QUERQY_INDEX_NUM_REPLICAS;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.opensearch.action.admin.indices.create.CreateIndexRequest;
+import org.opensearch.action.admin.indices.create.CreateIndexRequestBuilder;
+import org.opensearch.action.admin.indices.create.CreateIndexResponse;
+import org.opensearch.action.admin.indices.mapping.get.GetMappingsResponse;
+import org.opensearch.action.admin.indices.mapping.put.PutMappingRequest;
+import org.opensearch.client.Client;
+import org.opensearch.client.IndicesAdminClient;
+import org.opensearch.cluster.metadata.MappingMetadata;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.xcontent.XContentType;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.index.IndexNotFoundException;
+
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Creates the Querqy index or updates its mappings to the current {@link RewriterConfigMapping} before rewriters
+ * are saved.
+ */
+class QuerqyIndexSetup {
+
+    private static final Logger LOGGER = LogManager.getLogger(QuerqyIndexSetup.class);
+
+    private final Client client;
+    private final Settings settings;
+    private boolean mappingsVersionChecked = false;
+
+    QuerqyIndexSetup(final Client client, final Settings settings) {
+        this.client = client;
+        this.settings = settings;
+    }
+
+    /**
+     * Make sure that the Querqy index exists and that its mappings are up-to-date.
+     *
+     * @param listener Notified once the index can be written to
+     */
+    void ensureIndex(final ActionListener<Void> listener) {
+
+        final IndicesAdminClient indicesClient = client.admin().indices();
+
+        indicesClient.prepareGetMappings(QUERQY_INDEX_NAME).execute(new ActionListener<GetMappingsResponse>() {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public void onResponse(final GetMappingsResponse getMappingsResponse) {
+                final Map<String, MappingMetadata> mappings = getMappingsResponse.getMappings();
+
+                if (!mappingsVersionChecked) {
+
+                    final Map<String, Object> properties = (Map<String, Object>) mappings.get(QUERQY_INDEX_NAME)
+                            .getSourceAsMap().get("properties");
+                    if (!properties.containsKey("info_logging")) {
+                        try {
+                            update1To3(indicesClient);
+                            mappingsVersionChecked = true;
+                        } catch (final Exception e) {
+                            listener.onFailure(e);
+                            return;
+                        }
+
+                    } else if (!properties.containsKey(RewriterConfigMapping.V3_MAPPING.getConfigStringProperty())) {
+                        try {
+                            update2To3(indicesClient);
+                            mappingsVersionChecked = true;
+                        } catch (final Exception e) {
+                            listener.onFailure(e);
+                            return;
+                        }
+
+                    }
+                    if (!properties.containsKey(RewriterConfigMapping.CURRENT.getConfigStringProperty())) {
+                        try {
+                            update3To4(indicesClient);
+                            mappingsVersionChecked = true;
+                        } catch (final Exception e) {
+                            listener.onFailure(e);
+                            return;
+                        }
+                    }
+                    // the properties below were added to the v4 mapping later, indices of any version might lack them
+                    if (!hasInfoLoggingSampling(properties)) {
+                        try {
+                            addInfoLoggingSampling(indicesClient);
+                            mappingsVersionChecked = true;
+                        } catch (final Exception e) {
+                            listener.onFailure(e);
+                            return;
+                        }
+                    }
+                    if (!properties.containsKey(RewriterConfigMapping.PROP_CONFIG_DIGEST)) {
+                        try {
+                            addConfigDigest(indicesClient);
+                            mappingsVersionChecked = true;
+                        } catch (final Exception e) {
+                            listener.onFailure(e);
+                            return;
+                        }
+                    }
+                }
+                listener.onResponse(null);
+
+            }
+
+            @Override
+            public void onFailure(final Exception e) {
+                if ((e instanceof IndexNotFoundException) || (e.getCause() instanceof IndexNotFoundException)) {
+
+                    indicesClient.create(buildCreateQuerqyIndexRequest(indicesClient),
+                            new ActionListener<CreateIndexResponse>() {
+
+                                @Override
+                                public void onResponse(final CreateIndexResponse createIndexResponse) {
+                                    LOGGER.info("Created index {}", QUERQY_INDEX_NAME);
+                                    mappingsVersionChecked = true;
+                                    listener.onResponse(null);
+                                }
+
+                                @Override
+                                public void onFailure(final Exception e) {
+                                    listener.onFailure(e);
+                                }
+                            });
+
+                } else {
+                    listener.onFailure(e);
+                }
+            }
+        });
+
+    }
+
+    protected void update1To3(final IndicesAdminClient indicesClient ) throws ExecutionException,
+            InterruptedException {
+        final PutMappingRequest request = new PutMappingRequest(QUERQY_INDEX_NAME).source(
+                "{\n" +
+                        "    \"properties\": {\n" +
+                        "      \"info_logging\": {\n" +
+                        "        \"properties\": {\n" +
+                        "          \"sinks\": {\"type\" : \"keyword\" }\n" +
+                        "        }\n" +
+                        "      },\n" +
+                        "      \"config_v_003\": {\n" +
+                        "        \"type\" : \"keyword\",\n" +
+                        "        \"doc_values\": false,\n" +
+                        "        \"index\": false\n" +
+                        "      }" +
+                        "    }\n" +
+                        "}", XContentType.JSON
+        );
+
+        if (!indicesClient.putMapping(request).get().isAcknowledged()) {
+            throw new IllegalStateException("Adding info_logging to mappings not " +
+                    "acknowledged");
+        }
+
+        LOGGER.info("Added info_logging property and config_v_003 to index {}", QUERQY_INDEX_NAME);
+
+    }
+
+    protected void update2To3(final IndicesAdminClient indicesClient ) throws ExecutionException,
+            InterruptedException {
+        final PutMappingRequest request = new PutMappingRequest(QUERQY_INDEX_NAME).source(
+                "{\n" +
+                        "    \"properties\": {\n" +
+                        "      \"config_v_003\": {\n" +
+                        "        \"type\" : \"keyword\",\n" +
+                        "        \"doc_values\": false,\n" +
+                        "        \"index\": false\n" +
+                        "      }" +
+                        "    }\n" +
+                        "}", XContentType.JSON
+        );
+
+        if (!indicesClient.putMapping(request).get().isAcknowledged()) {
+            throw new IllegalStateException("Adding config_v_003 to mappings not " +
+                    "acknowledged");
+        }
+
+        LOGGER.info("Added config_v_003 property to index {}", QUERQY_INDEX_NAME);
+
+    }
+
+    protected void update3To4(final IndicesAdminClient indicesClient ) throws ExecutionException,
+            InterruptedException {
+        final PutMappingRequest request = new PutMappingRequest(QUERQY_INDEX_NAME).source(
+                "{\n" +
+                        "    \"properties\": {\n" +
+                        "      \"config_v_004\": {\n" +
+                        "        \"type\" : \"binary\"\n" +
+                        "      }" +
+                        "    }\n" +
+                        "}", XContentType.JSON
+        );
+
+        if (!indicesClient.putMapping(request).get().isAcknowledged()) {
+            throw new IllegalStateException("Adding config_v_004 to mappings not " +
+                    "acknowledged");
+        }
+
+        LOGGER.info("Added config_v_004 property to index {}", QUERQY_INDEX_NAME);
+
+    }
+
+    @SuppressWarnings("unchecked")
+    static boolean hasInfoLoggingSampling(final Map<String, Object> properties) {
+        final Map<String, Object> infoLogging = (Map<String, Object>) properties.get("info_logging");
+        if (infoLogging == null) {
+            return false;
+        }
+        final Map<String, Object> infoLoggingProperties = (Map<String, Object>) infoLogging.get("properties");
+        return infoLoggingProperties != null && infoLoggingProperties.containsKey("sampling");
+    }
+
+    protected void addInfoLoggingSampling(final IndicesAdminClient indicesClient) throws ExecutionException,
+            InterruptedException {
+        // not indexed, otherwise dynamic mapping would add a field per sampling param
+        final PutMappingRequest request = new PutMappingRequest(QUERQY_INDEX_NAME).source(
+                "{\n" +
+                        "    \"properties\": {\n" +
+                        "      \"info_logging\": {\n" +
+                        "        \"properties\": {\n" +
+                        "          \"sampling\": {\"type\" : \"object\", \"enabled\": false }\n" +
+                        "        }\n" +
+                        "      }" +
+                        "    }\n" +
+                        "}", XContentType.JSON
+        );
+
+        if (!indicesClient.putMapping(request).get().isAcknowledged()) {
+            throw new IllegalStateException("Adding info_logging.sampling to mappings not " +
+                    "acknowledged");
+        }
+
+        LOGGER.info("Added info_logging.sampling property to index {}", QUERQY_INDEX_NAME);
+
+    }
+
+    protected void addConfigDigest(final IndicesAdminClient indicesClient) throws ExecutionException,
+            InterruptedException {
+        final PutMappingRequest request = new PutMappingRequest(QUERQY_INDEX_NAME).source(
+                "{\n" +
+                        "    \"properties\": {\n" +
+                        "      \"" + RewriterConfigMapping.PROP_CONFIG_DIGEST + "\": {\n" +
+                        "        \"type\" : \"keyword\",\n" +
+                        "        \"doc_values\": false,\n" +
+                        "        \"index\": false\n" +
+                        "      }" +
+                        "    }\n" +
+                        "}", XContentType.JSON
+        );
+
+        if (!indicesClient.putMapping(request).get().isAcknowledged()) {
+            throw new IllegalStateException("Adding " + RewriterConfigMapping.PROP_CONFIG_DIGEST + " to mappings not " +
+                    "acknowledged");
+        }
+
+        LOGGER.info("Added {} property to index {}", RewriterConfigMapping.PROP_CONFIG_DIGEST, QUERQY_INDEX_NAME);
+
+    }
+
+    protected CreateIndexRequest buildCreateQuerqyIndexRequest(final IndicesAdminClient indicesClient) {
+
+        final CreateIndexRequestBuilder createIndexRequestBuilder = indicesClient.prepareCreate(QUERQY_INDEX_NAME);
+        final int numReplicas = settings.getAsInt(SETTINGS_QUERQY_INDEX_NUM_REPLICAS, DEFAULT_QUERQY_INDEX_NUM_REPLICAS);
+        return  createIndexRequestBuilder.setMapping(readUtf8Resource("querqy-mapping.json"))
+                .setSettings(Settings.builder().put("number_of_replicas", numReplicas))
+                .request();
+    }
+
+
+    private static String readUtf8Resource(final String name) {
+        final Scanner scanner = new Scanner(QuerqyIndexSetup.class.getClassLoader().getResourceAsStream(name),
+                Charset.forName("utf-8").name()).useDelimiter("\\A");
+        return scanner.hasNext() ? scanner.next() : "";
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriterstore;
+
+import org.opensearch.action.ActionRequestBuilder;
+import org.opensearch.client.OpenSearchClient;
+import org.opensearch.client.node.NodeClient;
+import org.opensearch.common.xcontent.XContentHelper;
+import org.opensearch.common.xcontent.XContentType;
+import org.opensearch.rest.BaseRestHandler;
+import org.opensearch.rest.RestRequest;
+import org.opensearch.rest.action.RestStatusToXContentListener;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static querqy.opensearch.rewriterstore.Constants.QUERQY_REWRITER_BASE_ROUTE;
+
+public class RestBulkPutRewriterAction extends BaseRestHandler {
+
+    public static final String PROP_REWRITERS = "rewriters";
+
+    @Override
+    public String getName() {
+        return "Save Querqy rewriters in bulk";
+    }
+
+    @Override
+    public List<Route> routes() {
+        return Arrays.asList(
+                new Route(RestRequest.Method.PUT, QUERQY_REWRITER_BASE_ROUTE + "/_bulk"),
+                new Route(RestRequest.Method.POST, QUERQY_REWRITER_BASE_ROUTE + "/_bulk"));
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(final RestRequest request, final NodeClient client) {
+
+        final BulkPutRewriterRequestBuilder requestBuilder = createRequestBuilder(request, client);
+
+        return (channel) -> requestBuilder.execute(new RestStatusToXContentListener<>(channel));
+
+    }
+
+    @SuppressWarnings("unchecked")
+    BulkPutRewriterRequestBuilder createRequestBuilder(final RestRequest request, final NodeClient client) {
+
+        final Map<String, Object> source = XContentHelper
+                .convertToMap(request.content(), true, XContentType.JSON).v2();
+
+        for (final String key : source.keySet()) {
+            if (!PROP_REWRITERS.equals(key)) {
+                throw new IllegalArgumentException("RestBulkPutRewriterAction: unknown property " + key);
+            }
+        }
+
+        final Object rewritersObj = source.get(PROP_REWRITERS);
+        if (!(rewritersObj instanceof Map)) {
+            throw new IllegalArgumentException("RestBulkPutRewriterAction requires an object '" + PROP_REWRITERS
+                    + "' that maps rewriter ids to rewriter definitions");
+        }
+
+        final Map<String, Map<String, Object>> rewriters = new LinkedHashMap<>();
+        for (final Map.Entry<String, Object> entry : ((Map<String, Object>) rewritersObj).entrySet()) {
+            if (!(entry.getValue() instanceof Map)) {
+                throw new IllegalArgumentException("RestBulkPutRewriterAction: the definition of rewriter "
+                        + entry.getKey() + " must be an object");
+            }
+            rewriters.put(entry.getKey().trim(), (Map<String, Object>) entry.getValue());
+        }
+
+        return new BulkPutRewriterRequestBuilder(client, BulkPutRewriterAction.INSTANCE,
+                new BulkPutRewriterRequest(rewriters));
+    }
+
+
+    public static class BulkPutRewriterRequestBuilder
+            extends ActionRequestBuilder<BulkPutRewriterRequest, BulkPutRewriterResponse> {
+
+        public BulkPutRewriterRequestBuilder(final OpenSearchClient client, final BulkPutRewriterAction action,
+                                             final BulkPutRewriterRequest request) {
+            super(client, action, request);
+        }
+    }
+}
@@ -24,6 +24,7 @@ import org.opensearch.client.OpenSearchClient;
 import org.opensearch.client.node.NodeClient;
 import org.opensearch.common.xcontent.XContentHelper;
 import org.opensearch.common.xcontent.XContentType;
+import org.opensearch.index.seqno.SequenceNumbers;
 import org.opensearch.rest.BaseRestHandler;
 import org.opensearch.rest.RestRequest;
 import org.opensearch.rest.action.RestStatusToXContentListener;
@@ -75,7 +76,9 @@ public class RestPutRewriterAction extends BaseRestHandler {
                 .convertToMap(request.content(), false, XContentType.JSON).v2();
 
         return new PutRewriterRequestBuilder(client, PutRewriterAction.INSTANCE,
-                new PutRewriterRequest(rewriterId, source));
+                new PutRewriterRequest(rewriterId, source,
+                        request.paramAsLong("if_seq_no", SequenceNumbers.UNASSIGNED_SEQ_NO),
+                        request.paramAsLong("if_primary_term", SequenceNumbers.UNASSIGNED_PRIMARY_TERM)));
     }
 
 
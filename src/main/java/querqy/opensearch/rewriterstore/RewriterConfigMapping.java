@@ -25,27 +25,113 @@ import org.opensearch.core.common.ParsingException;
 import org.opensearch.core.common.bytes.BytesArray;
 import org.opensearch.common.xcontent.XContentHelper;
 import org.opensearch.common.xcontent.XContentType;
+import org.opensearch.core.xcontent.DeprecationHandler;
+import org.opensearch.core.xcontent.NamedXContentRegistry;
 import org.opensearch.core.xcontent.XContentBuilder;
 import org.opensearch.core.xcontent.XContentParser;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.SequenceInputStream;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 public abstract class RewriterConfigMapping {
 
-    public static final int CURRENT_MAPPING_VERSION = 3;
+    public static final int CURRENT_MAPPING_VERSION = 4;
+
+    /**
+     * The max number of compressed bytes per chunk of a version 4 config. Chunks keep the single values in the
+     * _source well below the max string length of the JSON parser.
+     */
+    public static final int CONFIG_CHUNK_BYTES = 1024 * 1024;
 
     public static final String PROP_VERSION = "version";
     public static final String PROP_TYPE = "type";
+    public static final String PROP_CONFIG_DIGEST = "config_digest";
+
+    /**
+     * The format of {@link #PROP_CONFIG_DIGEST}. Digests in another format are ignored, which makes the nodes compile
+     * the rewriter from its config.
+     */
+    public static final String CONFIG_DIGEST_FORMAT = "1";
 
+    /**
+     * Version 4 stores the config as deflate-compressed JSON, split into Base64-encoded binary chunks.
+     */
     public static final RewriterConfigMapping CURRENT = new RewriterConfigMapping() {
 
+        @Override
+        public String getConfigStringProperty() {
+            return "config_v_004";
+        }
+
+        @Override
+        public final String getRewriterClassNameProperty() {
+            return "class";
+        }
+
+        @Override
+        public String getInfoLoggingProperty() {
+            return "info_logging";
+        }
+
+        @Override
+        public String getRewriterClassName(final String rewriterId, final Map<String, Object> source) {
+            return (String) source.get(getRewriterClassNameProperty());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map<String, Object> getInfoLoggingConfig(final String rewriterId, final Map<String, Object> source) {
+            return (Map<String, Object>) source.get(getInfoLoggingProperty());
+        }
+
+        @Override
+        public Map<String, Object> getConfig(final String rewriterId, final Map<String, Object> source) {
+
+            final Object configValue = source.get(getConfigStringProperty());
+            if (configValue == null) {
+                return Collections.emptyMap();
+            }
+
+            final List<?> chunks;
+            if (configValue instanceof String) {
+                chunks = Collections.singletonList(configValue);
+            } else if (configValue instanceof List) {
+                chunks = (List<?>) configValue;
+            } else {
+                throw new IllegalArgumentException("Unexpected config value class: " + configValue);
+            }
+
+            // the chunks are decoded and decompressed while the JSON is being parsed
+            try (final XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY,
+                    DeprecationHandler.THROW_UNSUPPORTED_OPERATION, openCompressedChunks(chunks))) {
+                return parser.map();
+            } catch (final IOException e) {
+                throw new OpenSearchException("Could not load 'config' of rewriter " + rewriterId, e);
+            }
+        }
+
+    };
+
+    public static final RewriterConfigMapping V3_MAPPING = new RewriterConfigMapping() {
+
         @Override
         public String getConfigStringProperty() {
             return "config_v_003";
@@ -128,16 +214,21 @@ public abstract class RewriterConfigMapping {
             return CURRENT;
         }
 
+        if (version == 3) {
+            return V3_MAPPING;
+        }
+
         throw new IllegalArgumentException("Unknown rewriter config version: " + version);
 
     }
 
     @SuppressWarnings("unchecked")
     public static Map<String, Object> toLuceneSource(final Map<String, Object> putRequestContent) throws IOException {
-        final Map<String, Object> source = new HashMap<>(putRequestContent.size() + 3);
+        final Map<String, Object> source = new HashMap<>(putRequestContent.size() + 4);
         source.put(PROP_TYPE, "rewriter");
         source.put(PROP_VERSION, CURRENT_MAPPING_VERSION);
-        source.put(CURRENT.getRewriterClassNameProperty(), putRequestContent.get("class"));
+        final String className = (String) putRequestContent.get("class");
+        source.put(CURRENT.getRewriterClassNameProperty(), className);
 
         final Map<String, Object> infoLoggingConfig = (Map<String, Object>) putRequestContent.get("info_logging");
         if (infoLoggingConfig != null) {
@@ -145,15 +236,111 @@ public abstract class RewriterConfigMapping {
         }
 
         final Map<String, Object> config = (Map<String, Object>) putRequestContent.get("config");
-        if (config != null) {
-            final String jsonString = mapToJsonString(config);
-            // See constraints in org.elasticsearch.index.mapper.KeywordFieldMapper.indexValue()
-            source.put(CURRENT.getConfigStringProperty(), stringToSourceValue(jsonString, 32766));
+        final String jsonString = config != null ? mapToJsonString(config) : null;
+        if (jsonString != null) {
+            source.put(CURRENT.getConfigStringProperty(), compressToSourceValue(jsonString, CONFIG_CHUNK_BYTES));
         }
+        source.put(PROP_CONFIG_DIGEST, configDigest(className, jsonString));
 
         return source;
     }
 
+    /**
+     * Compress a String using deflate and split the compressed bytes into Base64-encoded chunks.
+     *
+     * @param string The input string
+     * @param maxChunkBytes The max number of compressed bytes per chunk
+     * @return The encoded chunks
+     * @throws IOException if the string cannot be compressed
+     */
+    static List<String> compressToSourceValue(final String string, final int maxChunkBytes) throws IOException {
+        if (maxChunkBytes < 1) {
+            throw new IllegalArgumentException("maxChunkBytes >= 1 expected");
+        }
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(32, string.length() / 8));
+        try (final Writer writer = new OutputStreamWriter(new DeflaterOutputStream(bos), StandardCharsets.UTF_8)) {
+            writer.write(string);
+        }
+        final byte[] compressed = bos.toByteArray();
+        final List<String> chunks = new ArrayList<>(compressed.length / maxChunkBytes + 1);
+        final Base64.Encoder encoder = Base64.getEncoder();
+        for (int offset = 0; offset < compressed.length; offset += maxChunkBytes) {
+            final int length = Math.min(maxChunkBytes, compressed.length - offset);
+            final byte[] chunk = new byte[length];
+            System.arraycopy(compressed, offset, chunk, 0, length);
+            chunks.add(encoder.encodeToString(chunk));
+        }
+        return chunks;
+    }
+
+    /**
+     * Open a stream that decodes and decompresses the chunks created by
+     * {@link #compressToSourceValue(String, int)} one after another.
+     *
+     * @param chunks The Base64-encoded chunks
+     * @return The stream of the uncompressed bytes
+     */
+    static InputStream openCompressedChunks(final List<?> chunks) {
+        final Iterator<?> iterator = chunks.iterator();
+        final Base64.Decoder decoder = Base64.getDecoder();
+        return new InflaterInputStream(new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                return decoder.wrap(new ByteArrayInputStream(((String) iterator.next())
+                        .getBytes(StandardCharsets.ISO_8859_1)));
+            }
+        }));
+    }
+
+    /**
+     * <p>Calculate the digest of a rewriter class and its config.</p>
+     *
+     * <p>The digest is stored with the rewriter when it is saved. Nodes compare it to the digest of the rewriter that
+     * they have already compiled and skip compiling configs that didn't change.</p>
+     *
+     * @param className The rewriter class name
+     * @param configJson The config as stored in the Querqy index or null
+     * @return The digest, prefixed with {@link #CONFIG_DIGEST_FORMAT}
+     */
+    public static String configDigest(final String className, final String configJson) {
+        final MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        if (className != null) {
+            messageDigest.update(className.trim().getBytes(StandardCharsets.UTF_8));
+        }
+        messageDigest.update((byte) 0);
+        if (configJson != null) {
+            messageDigest.update(configJson.getBytes(StandardCharsets.UTF_8));
+        }
+        final StringBuilder sb = new StringBuilder(CONFIG_DIGEST_FORMAT).append(':');
+        for (final byte b : messageDigest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get the digest of the class and config that was stored with the rewriter.
+     *
+     * @param source The stored rewriter
+     * @return The digest or null if no digest was stored or if it has an unknown format
+     */
+    public String getConfigDigest(final Map<String, Object> source) {
+        final Object digest = source.get(PROP_CONFIG_DIGEST);
+        return digest instanceof String && ((String) digest).startsWith(CONFIG_DIGEST_FORMAT + ":")
+                ? (String) digest
+                : null;
+    }
+
     /**
      * Lucene doesn't allow us to save Strings in keywords fields if their UTF-8-encoded version exceeds a certain byte
      * array length. This method splits Strings into an array of Strings whose elements are guaranteed not to exceed
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriterstore;
+
+import org.opensearch.Version;
+import org.opensearch.cluster.AbstractNamedDiffable;
+import org.opensearch.cluster.NamedDiff;
+import org.opensearch.cluster.metadata.Metadata;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+import org.opensearch.core.common.io.stream.Writeable;
+import org.opensearch.core.xcontent.XContentBuilder;
+import org.opensearch.core.xcontent.XContentParser;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * <p>Cluster state metadata that holds the version and config digest of each stored rewriter.</p>
+ *
+ * <p>Nodes compare the versions to the versions of the rewriters that they have loaded and reload stale rewriters
+ * (see {@link querqy.opensearch.RewritersMetadataListener}). This makes nodes that missed a reload request converge
+ * with the next cluster state that they receive. The metadata is not persisted, as nodes load the current version of
+ * a rewriter from the Querqy index anyway after a restart.</p>
+ */
+public class RewritersMetadata extends AbstractNamedDiffable<Metadata.Custom> implements Metadata.Custom {
+
+    public static final String TYPE = "querqy_rewriters";
+
+    public static final RewritersMetadata EMPTY = new RewritersMetadata(Collections.emptyMap());
+
+    private final Map<String, RewriterVersion> rewriters;
+
+    public RewritersMetadata(final Map<String, RewriterVersion> rewriters) {
+        this.rewriters = Collections.unmodifiableMap(rewriters);
+    }
+
+    public RewritersMetadata(final StreamInput in) throws IOException {
+        this(in.readMap(StreamInput::readString, RewriterVersion::new));
+    }
+
+    public static NamedDiff<Metadata.Custom> readDiffFrom(final StreamInput in) throws IOException {
+        return readDiffFrom(Metadata.Custom.class, TYPE, in);
+    }
+
+    public static RewritersMetadata fromXContent(final XContentParser parser) throws IOException {
+        final Map<String, RewriterVersion> rewriters = new HashMap<>();
+        for (final Map.Entry<String, Object> entry : parser.map().entrySet()) {
+            @SuppressWarnings("unchecked")
+            final Map<String, Object> value = (Map<String, Object>) entry.getValue();
+            rewriters.put(entry.getKey(), new RewriterVersion(((Number) value.get("version")).longValue(),
+                    (String) value.get(RewriterConfigMapping.PROP_CONFIG_DIGEST)));
+        }
+        return new RewritersMetadata(rewriters);
+    }
+
+    public static RewritersMetadata getOrEmpty(final Metadata metadata) {
+        final RewritersMetadata rewritersMetadata = metadata.custom(TYPE);
+        return rewritersMetadata == null ? EMPTY : rewritersMetadata;
+    }
+
+    public Map<String, RewriterVersion> getRewriters() {
+        return rewriters;
+    }
+
+    /**
+     * Apply changes to the metadata. A version is only replaced by a more recent version.
+     *
+     * @param put The versions of saved rewriters by rewriter id
+     * @param remove The ids of deleted rewriters
+     * @return The changed metadata or this object if nothing changed
+     */
+    public RewritersMetadata apply(final Map<String, RewriterVersion> put, final Collection<String> remove) {
+        Map<String, RewriterVersion> changed = null;
+        for (final Map.Entry<String, RewriterVersion> entry : put.entrySet()) {
+            final RewriterVersion current = rewriters.get(entry.getKey());
+            if (current == null || current.version < entry.getValue().version) {
+                if (changed == null) {
+                    changed = new HashMap<>(rewriters);
+                }
+                changed.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (final String rewriterId : remove) {
+            if (rewriters.containsKey(rewriterId)) {
+                if (changed == null) {
+                    changed = new HashMap<>(rewriters);
+                }
+                changed.remove(rewriterId);
+            }
+        }
+        return changed == null ? this : new RewritersMetadata(changed);
+    }
+
+    @Override
+    public EnumSet<Metadata.XContentContext> context() {
+        return EnumSet.of(Metadata.XContentContext.API);
+    }
+
+    @Override
+    public String getWriteableName() {
+        return TYPE;
+    }
+
+    @Override
+    public Version getMinimalSupportedVersion() {
+        return Version.CURRENT.minimumCompatibilityVersion();
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        out.writeMap(rewriters, StreamOutput::writeString, (output, version) -> version.writeTo(output));
+    }
+
+    @Override
+    public XContentBuilder toXContent(final XContentBuilder builder, final Params params) throws IOException {
+        for (final Map.Entry<String, RewriterVersion> entry : rewriters.entrySet()) {
+            builder.startObject(entry.getKey());
+            builder.field("version", entry.getValue().version);
+            if (entry.getValue().configDigest != null) {
+                builder.field(RewriterConfigMapping.PROP_CONFIG_DIGEST, entry.getValue().configDigest);
+            }
+            builder.endObject();
+        }
+        return builder;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return rewriters.equals(((RewritersMetadata) o).rewriters);
+    }
+
+    @Override
+    public int hashCode() {
+        return rewriters.hashCode();
+    }
+
+    public static class RewriterVersion implements Writeable {
+
+        public final long version;
+        /**
+         * Null if unknown
+         */
+        public final String configDigest;
+
+        public RewriterVersion(final long version, final String configDigest) {
+            this.version = version;
+            this.configDigest = configDigest;
+        }
+
+        public RewriterVersion(final StreamInput in) throws IOException {
+            version = in.readLong();
+            configDigest = in.readOptionalString();
+        }
+
+        @Override
+        public void writeTo(final StreamOutput out) throws IOException {
+            out.writeLong(version);
+            out.writeOptionalString(configDigest);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final RewriterVersion that = (RewriterVersion) o;
+            return version == that.version && Objects.equals(configDigest, that.configDigest);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(version, configDigest);
+        }
+    }
+}
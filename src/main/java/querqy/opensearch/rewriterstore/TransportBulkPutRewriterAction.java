@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriterstore;
+
+import static org.opensearch.core.action.ActionListener.wrap;
+import static querqy.opensearch.rewriterstore.Constants.QUERQY_INDEX_NAME;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.opensearch.action.bulk.BulkItemResponse;
+import org.opensearch.action.bulk.BulkRequest;
+import org.opensearch.action.bulk.BulkResponse;
+import org.opensearch.action.index.IndexRequest;
+import org.opensearch.action.support.ActionFilters;
+import org.opensearch.action.support.HandledTransportAction;
+import org.opensearch.action.support.WriteRequest;
+import org.opensearch.client.Client;
+import org.opensearch.cluster.service.ClusterService;
+import org.opensearch.common.inject.Inject;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.tasks.Task;
+import org.opensearch.transport.TransportService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Saves several rewriters with a single bulk request and a single refresh of the Querqy index.</p>
+ *
+ * <p>The saved rewriters are then reloaded with a single {@link NodesReloadRewriterAction}, which makes each node
+ * compile them in parallel. Rewriters that couldn't be saved are reported in the response but don't fail the other
+ * rewriters.</p>
+ */
+public class TransportBulkPutRewriterAction extends HandledTransportAction<BulkPutRewriterRequest,
+        BulkPutRewriterResponse> {
+
+    private static final Logger LOGGER = LogManager.getLogger(TransportBulkPutRewriterAction.class);
+
+    private final Client client;
+    private final ClusterService clusterService;
+    private final QuerqyIndexSetup indexSetup;
+
+    @Inject
+    public TransportBulkPutRewriterAction(final TransportService transportService, final ActionFilters actionFilters,
+                                          final ClusterService clusterService, final Client client,
+                                          final Settings settings) {
+        super(BulkPutRewriterAction.NAME, false, transportService, actionFilters, BulkPutRewriterRequest::new);
+        this.clusterService = clusterService;
+        this.client = client;
+        this.indexSetup = new QuerqyIndexSetup(client, settings);
+    }
+
+    @Override
+    protected void doExecute(final Task task, final BulkPutRewriterRequest request,
+                             final ActionListener<BulkPutRewriterResponse> listener) {
+
+        indexSetup.ensureIndex(wrap(
+                (ignored) -> saveRewriters(task, request, listener),
+                listener::onFailure
+        ));
+
+    }
+
+    protected void saveRewriters(final Task task, final BulkPutRewriterRequest request,
+                                 final ActionListener<BulkPutRewriterResponse> listener) throws IOException {
+
+        final Map<String, String> configDigests = new HashMap<>();
+        final BulkRequest bulkRequest = buildBulkRequest(request, configDigests);
+        bulkRequest.setParentTask(clusterService.localNode().getId(), task.getId());
+
+        client.bulk(bulkRequest, wrap(
+                (bulkResponse) -> {
+                    final List<String> saved = getSavedRewriterIds(bulkResponse);
+                    LOGGER.info("Saved rewriters {}", saved);
+                    if (saved.isEmpty()) {
+                        listener.onResponse(new BulkPutRewriterResponse(bulkResponse, null));
+                        return;
+                    }
+                    TransportUpdateRewritersMetadataAction.updateThen(client,
+                            new UpdateRewritersMetadataRequest(getSavedVersions(bulkResponse, configDigests),
+                                    Collections.emptyList()),
+                            () -> client.execute(NodesReloadRewriterAction.INSTANCE,
+                                    new NodesReloadRewriterRequest(saved),
+                                    wrap(
+                                            (reloadResponse) -> listener.onResponse(
+                                                    new BulkPutRewriterResponse(bulkResponse, reloadResponse)),
+                                            listener::onFailure
+                                    )));
+                },
+                (e) -> {
+                    LOGGER.error("Could not save rewriters " + request.getRewriters().keySet(), e);
+                    listener.onFailure(e);
+                }
+        ));
+    }
+
+    static BulkRequest buildBulkRequest(final BulkPutRewriterRequest request, final Map<String, String> configDigests)
+            throws IOException {
+        // a single refresh for all rewriters
+        final BulkRequest bulkRequest = new BulkRequest().setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE);
+        for (final Map.Entry<String, Map<String, Object>> entry : request.getRewriters().entrySet()) {
+            final Map<String, Object> source = RewriterConfigMapping.toLuceneSource(entry.getValue());
+            configDigests.put(entry.getKey(), (String) source.get(RewriterConfigMapping.PROP_CONFIG_DIGEST));
+            bulkRequest.add(new IndexRequest(QUERQY_INDEX_NAME).id(entry.getKey()).source(source));
+        }
+        return bulkRequest;
+    }
+
+    static List<String> getSavedRewriterIds(final BulkResponse bulkResponse) {
+        final List<String> saved = new ArrayList<>(bulkResponse.getItems().length);
+        for (final BulkItemResponse item : bulkResponse.getItems()) {
+            if (!item.isFailed()) {
+                saved.add(item.getId());
+            }
+        }
+        return saved;
+    }
+
+    static Map<String, RewritersMetadata.RewriterVersion> getSavedVersions(final BulkResponse bulkResponse,
+                                                                          final Map<String, String> configDigests) {
+        final Map<String, RewritersMetadata.RewriterVersion> versions = new HashMap<>();
+        for (final BulkItemResponse item : bulkResponse.getItems()) {
+            if (!item.isFailed()) {
+                versions.put(item.getId(), new RewritersMetadata.RewriterVersion(item.getVersion(),
+                        configDigests.get(item.getId())));
+            }
+        }
+        return versions;
+    }
+
+}
@@ -59,13 +59,15 @@ public class TransportDeleteRewriterAction  extends HandledTransportAction<Delet
                 // TODO: exit if response status code is 404 (though is shouldn't harm to clear the rewriter from cache
                 // regardless)
 
-                client.execute(NodesClearRewriterCacheAction.INSTANCE,
-                        new NodesClearRewriterCacheRequest(request.getRewriterId()),
-                        wrap(
-                                (clearResponse) -> listener.onResponse(new DeleteRewriterResponse(deleteResponse,
-                                        clearResponse)),
-                                listener::onFailure
-                        ));
+                TransportUpdateRewritersMetadataAction.updateThen(client,
+                        UpdateRewritersMetadataRequest.remove(request.getRewriterId()),
+                        () -> client.execute(NodesClearRewriterCacheAction.INSTANCE,
+                                new NodesClearRewriterCacheRequest(request.getRewriterId()),
+                                wrap(
+                                        (clearResponse) -> listener.onResponse(new DeleteRewriterResponse(
+                                                deleteResponse, clearResponse)),
+                                        listener::onFailure
+                                )));
             }
 
             @Override
@@ -32,7 +32,10 @@ import org.opensearch.transport.TransportService;
 import querqy.opensearch.RewriterShardContexts;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class TransportNodesReloadRewriterAction extends TransportNodesAction<NodesReloadRewriterRequest,
         NodesReloadRewriterResponse, NodesReloadRewriterRequest.NodeRequest, NodesReloadRewriterResponse.NodeResponse> {
@@ -77,13 +80,24 @@ public class TransportNodesReloadRewriterAction extends TransportNodesAction<Nod
     @Override
     protected NodesReloadRewriterResponse.NodeResponse nodeOperation(
             final NodesReloadRewriterRequest.NodeRequest request) {
+        final long start = System.nanoTime();
+        if (request.getRewriterIds().size() > 1) {
+            final Map<String, Exception> failures = rewriterShardContexts.reloadRewriters(request.getRewriterIds());
+            return new NodesReloadRewriterResponse.NodeResponse(clusterService.localNode(), null, failures,
+                    tookMillis(start));
+        }
         try {
             rewriterShardContexts.reloadRewriter(request.getRewriterId());
-            return new NodesReloadRewriterResponse.NodeResponse(clusterService.localNode(), null);
+            return new NodesReloadRewriterResponse.NodeResponse(clusterService.localNode(), null,
+                    Collections.emptyMap(), tookMillis(start));
         } catch (final Exception e) {
-            return new NodesReloadRewriterResponse.NodeResponse(clusterService.localNode(), e);
+            return new NodesReloadRewriterResponse.NodeResponse(clusterService.localNode(), e,
+                    Collections.emptyMap(), tookMillis(start));
         }
     }
 
+    private static long tookMillis(final long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
 
 }
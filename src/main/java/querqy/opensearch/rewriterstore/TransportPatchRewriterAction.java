@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriterstore;
+
+import static querqy.opensearch.rewriterstore.Constants.QUERQY_INDEX_NAME;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.opensearch.ResourceNotFoundException;
+import org.opensearch.action.get.GetResponse;
+import org.opensearch.action.support.ActionFilters;
+import org.opensearch.action.support.HandledTransportAction;
+import org.opensearch.client.Client;
+import org.opensearch.common.inject.Inject;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.tasks.Task;
+import org.opensearch.transport.TransportService;
+import querqy.opensearch.rewriter.SimpleCommonRulesRewriterFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Applies a {@link PatchRewriterRequest} to the stored rules of a common rules rewriter.</p>
+ *
+ * <p>The patched rewriter is saved via the {@link PutRewriterAction}, which validates the rules and reloads the
+ * rewriter on all nodes. Saving is conditional on the sequence number of the rewriter that was patched, so that
+ * concurrent patches fail with a version conflict instead of overwriting each other.</p>
+ */
+public class TransportPatchRewriterAction extends HandledTransportAction<PatchRewriterRequest, PutRewriterResponse> {
+
+    private static final Logger LOGGER = LogManager.getLogger(TransportPatchRewriterAction.class);
+
+    private final Client client;
+
+    @Inject
+    public TransportPatchRewriterAction(final TransportService transportService, final ActionFilters actionFilters,
+                                        final Client client) {
+        super(PatchRewriterAction.NAME, false, transportService, actionFilters, PatchRewriterRequest::new);
+        this.client = client;
+    }
+
+    @Override
+    protected void doExecute(final Task task, final PatchRewriterRequest request,
+                             final ActionListener<PutRewriterResponse> listener) {
+
+        final String rewriterId = request.getRewriterId();
+
+        client.prepareGet(QUERQY_INDEX_NAME, rewriterId).execute(ActionListener.wrap(
+                response -> {
+                    final PutRewriterRequest putRequest;
+                    try {
+                        putRequest = buildPutRequest(request, response);
+                    } catch (final Exception e) {
+                        listener.onFailure(e);
+                        return;
+                    }
+                    LOGGER.info("Patching rewriter {}", rewriterId);
+                    client.execute(PutRewriterAction.INSTANCE, putRequest, listener);
+                },
+                listener::onFailure
+        ));
+    }
+
+    static PutRewriterRequest buildPutRequest(final PatchRewriterRequest request, final GetResponse response) {
+
+        final String rewriterId = request.getRewriterId();
+        final Map<String, Object> source = response.getSource();
+        if (source == null) {
+            throw new ResourceNotFoundException("Rewriter not found: " + rewriterId);
+        }
+
+        final LoadRewriterConfig loadConfig = new LoadRewriterConfig(rewriterId, source);
+        final String className = loadConfig.getRewriterClassName();
+        if (className == null || !SimpleCommonRulesRewriterFactory.class.getName().equals(className.trim())) {
+            throw new IllegalArgumentException("Only rules of a " + SimpleCommonRulesRewriterFactory.class.getName()
+                    + " can be patched but rewriter " + rewriterId + " is a " + className);
+        }
+
+        final Map<String, Object> config = new HashMap<>(loadConfig.getConfig());
+        final Object rules = config.get("rules");
+        final Object ignoreCase = config.getOrDefault("ignoreCase", true);
+        config.put("rules", request.getPatch().apply(rules instanceof String ? (String) rules : "",
+                Boolean.TRUE.equals(ignoreCase)));
+
+        final Map<String, Object> content = new HashMap<>();
+        content.put("class", className);
+        content.put("config", config);
+        final Map<String, Object> infoLogging = loadConfig.getInfoLoggingConfig();
+        if (infoLogging != null) {
+            content.put("info_logging", infoLogging);
+        }
+
+        return new PutRewriterRequest(rewriterId, content, response.getSeqNo(), response.getPrimaryTerm());
+    }
+
+}
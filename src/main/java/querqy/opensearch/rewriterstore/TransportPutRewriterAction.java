@@ -20,19 +20,12 @@
 package querqy.opensearch.rewriterstore;
 
 import static org.opensearch.core.action.ActionListener.wrap;
-import static querqy.opensearch.rewriterstore.Constants.DEFAULT_QUERQY_INDEX_NUM_REPLICAS;
 import static querqy.opensearch.rewriterstore.Constants.QUERQY_INDEX_NAME;
-import static querqy.opensearch.rewriterstore.Constants.SETTINGS_QUERQY_INDEX_NUM_REPLICAS;
 import static querqy.opensearch.rewriterstore.PutRewriterAction.NAME;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.opensearch.core.action.ActionListener;
-import org.opensearch.action.admin.indices.create.CreateIndexRequest;
-import org.opensearch.action.admin.indices.create.CreateIndexRequestBuilder;
-import org.opensearch.action.admin.indices.create.CreateIndexResponse;
-import org.opensearch.action.admin.indices.mapping.get.GetMappingsResponse;
-import org.opensearch.action.admin.indices.mapping.put.PutMappingRequest;
 import org.opensearch.action.index.IndexAction;
 import org.opensearch.action.index.IndexRequest;
 import org.opensearch.action.index.IndexResponse;
@@ -40,22 +33,15 @@ import org.opensearch.action.support.ActionFilters;
 import org.opensearch.action.support.HandledTransportAction;
 import org.opensearch.action.support.WriteRequest;
 import org.opensearch.client.Client;
-import org.opensearch.client.IndicesAdminClient;
-import org.opensearch.cluster.metadata.MappingMetadata;
 import org.opensearch.cluster.service.ClusterService;
-import java.util.Map;
 import org.opensearch.common.inject.Inject;
 import org.opensearch.common.settings.Settings;
-import org.opensearch.common.xcontent.XContentType;
-import org.opensearch.index.IndexNotFoundException;
+import org.opensearch.index.seqno.SequenceNumbers;
 import org.opensearch.tasks.Task;
 import org.opensearch.transport.TransportService;
 
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.util.Map;
-import java.util.Scanner;
-import java.util.concurrent.ExecutionException;
 
 public class TransportPutRewriterAction extends HandledTransportAction<PutRewriterRequest, PutRewriterResponse> {
 
@@ -63,8 +49,7 @@ public class TransportPutRewriterAction extends HandledTransportAction<PutRewrit
 
     private final Client client;
     private final ClusterService clusterService;
-    private final Settings settings;
-    private boolean mappingsVersionChecked = false;
+    private final QuerqyIndexSetup indexSetup;
 
     @Inject
     public TransportPutRewriterAction(final TransportService transportService, final ActionFilters actionFilters,
@@ -73,163 +58,43 @@ public class TransportPutRewriterAction extends HandledTransportAction<PutRewrit
         super(NAME, false, transportService, actionFilters, PutRewriterRequest::new);
         this.clusterService = clusterService;
         this.client = client;
-        this.settings = settings;
+        this.indexSetup = new QuerqyIndexSetup(client, settings);
     }
 
     @Override
     protected void doExecute(final Task task, final PutRewriterRequest request,
                              final ActionListener<PutRewriterResponse> listener) {
 
-        final IndicesAdminClient indicesClient = client.admin().indices();
-
-        indicesClient.prepareGetMappings(QUERQY_INDEX_NAME).execute(new ActionListener<GetMappingsResponse>() {
-
-            @Override
-            @SuppressWarnings("unchecked")
-            public void onResponse(final GetMappingsResponse getMappingsResponse) {
-                final Map<String, MappingMetadata> mappings = getMappingsResponse.getMappings();
-
-                if (!mappingsVersionChecked) {
-
-                    final Map<String, Object> properties = (Map<String, Object>) mappings.get(QUERQY_INDEX_NAME)
-                            .getSourceAsMap().get("properties");
-                    if (!properties.containsKey("info_logging")) {
-                        try {
-                            update1To3(indicesClient);
-                            mappingsVersionChecked = true;
-                        } catch (final Exception e) {
-                            listener.onFailure(e);
-                            return;
-                        }
-
-                    } else if (!properties.containsKey(RewriterConfigMapping.CURRENT.getConfigStringProperty())) {
-                        try {
-                            update2To3(indicesClient);
-                            mappingsVersionChecked = true;
-                        } catch (final Exception e) {
-                            listener.onFailure(e);
-                            return;
-                        }
-
-                    }
-                }
-                try {
-                    saveRewriter(task, request, listener);
-                } catch (final IOException e) {
-                    listener.onFailure(e);
-                }
-
-            }
-
-            @Override
-            public void onFailure(final Exception e) {
-                if ((e instanceof IndexNotFoundException) || (e.getCause() instanceof IndexNotFoundException)) {
-
-                    indicesClient.create(buildCreateQuerqyIndexRequest(indicesClient),
-                            new ActionListener<CreateIndexResponse>() {
-
-                                @Override
-                                public void onResponse(final CreateIndexResponse createIndexResponse) {
-                                    LOGGER.info("Created index {}", QUERQY_INDEX_NAME);
-                                    mappingsVersionChecked = true;
-                                    try {
-                                        saveRewriter(task, request, listener);
-                                    } catch (final IOException e) {
-                                        listener.onFailure(e);
-                                    }
-                                }
-
-                                @Override
-                                public void onFailure(final Exception e) {
-                                    listener.onFailure(e);
-                                }
-                            });
-
-                } else {
-                    listener.onFailure(e);
-                }
-            }
-        });
-
-    }
-
-    protected void update1To3(final IndicesAdminClient indicesClient ) throws ExecutionException,
-            InterruptedException {
-        final PutMappingRequest request = new PutMappingRequest(QUERQY_INDEX_NAME).source(
-                "{\n" +
-                        "    \"properties\": {\n" +
-                        "      \"info_logging\": {\n" +
-                        "        \"properties\": {\n" +
-                        "          \"sinks\": {\"type\" : \"keyword\" }\n" +
-                        "        }\n" +
-                        "      },\n" +
-                        "      \"config_v_003\": {\n" +
-                        "        \"type\" : \"keyword\",\n" +
-                        "        \"doc_values\": false,\n" +
-                        "        \"index\": false\n" +
-                        "      }" +
-                        "    }\n" +
-                        "}", XContentType.JSON
-        );
-
-        if (!indicesClient.putMapping(request).get().isAcknowledged()) {
-            throw new IllegalStateException("Adding info_logging to mappings not " +
-                    "acknowledged");
-        }
-
-        LOGGER.info("Added info_logging property and config_v_003 to index {}", QUERQY_INDEX_NAME);
-
-    }
-
-    protected void update2To3(final IndicesAdminClient indicesClient ) throws ExecutionException,
-            InterruptedException {
-        final PutMappingRequest request = new PutMappingRequest(QUERQY_INDEX_NAME).source(
-                "{\n" +
-                        "    \"properties\": {\n" +
-                        "      \"config_v_003\": {\n" +
-                        "        \"type\" : \"keyword\",\n" +
-                        "        \"doc_values\": false,\n" +
-                        "        \"index\": false\n" +
-                        "      }" +
-                        "    }\n" +
-                        "}", XContentType.JSON
-        );
-
-        if (!indicesClient.putMapping(request).get().isAcknowledged()) {
-            throw new IllegalStateException("Adding config_v_003 to mappings not " +
-                    "acknowledged");
-        }
-
-        LOGGER.info("Added config_v_003 property to index {}", QUERQY_INDEX_NAME);
-
-    }
-
-    protected CreateIndexRequest buildCreateQuerqyIndexRequest(final IndicesAdminClient indicesClient) {
+        indexSetup.ensureIndex(wrap(
+                (ignored) -> saveRewriter(task, request, listener),
+                listener::onFailure
+        ));
 
-        final CreateIndexRequestBuilder createIndexRequestBuilder = indicesClient.prepareCreate(QUERQY_INDEX_NAME);
-        final int numReplicas = settings.getAsInt(SETTINGS_QUERQY_INDEX_NUM_REPLICAS, DEFAULT_QUERQY_INDEX_NUM_REPLICAS);
-        return  createIndexRequestBuilder.setMapping(readUtf8Resource("querqy-mapping.json"))
-                .setSettings(Settings.builder().put("number_of_replicas", numReplicas))
-                .request();
     }
 
-
     protected void saveRewriter(final Task task, final PutRewriterRequest request,
                                 final ActionListener<PutRewriterResponse> listener) throws IOException {
-        final IndexRequest indexRequest = buildIndexRequest(task, request);
+        final Map<String, Object> source = RewriterConfigMapping.toLuceneSource(request.getContent());
+        final IndexRequest indexRequest = buildIndexRequest(task, request, source);
         client.execute(IndexAction.INSTANCE, indexRequest,
 
                 new ActionListener<IndexResponse>() {
                     @Override
                     public void onResponse(final IndexResponse indexResponse) {
                         LOGGER.info("Saved rewriter {}", request.getRewriterId());
-                        client.execute(NodesReloadRewriterAction.INSTANCE,
-                                new NodesReloadRewriterRequest(request.getRewriterId()),
-                                wrap(
-                                        (reloadResponse) -> listener
-                                                .onResponse(new PutRewriterResponse(indexResponse, reloadResponse)),
-                                        listener::onFailure
-                                ));
+                        // record the version in the cluster state first so that nodes that miss the reload request
+                        // below will still pick up the new version
+                        TransportUpdateRewritersMetadataAction.updateThen(client,
+                                UpdateRewritersMetadataRequest.put(request.getRewriterId(),
+                                        indexResponse.getVersion(),
+                                        (String) source.get(RewriterConfigMapping.PROP_CONFIG_DIGEST)),
+                                () -> client.execute(NodesReloadRewriterAction.INSTANCE,
+                                        new NodesReloadRewriterRequest(request.getRewriterId()),
+                                        wrap(
+                                                (reloadResponse) -> listener.onResponse(
+                                                        new PutRewriterResponse(indexResponse, reloadResponse)),
+                                                listener::onFailure
+                                        )));
                     }
 
                     @Override
@@ -241,22 +106,18 @@ public class TransportPutRewriterAction extends HandledTransportAction<PutRewrit
         ;
     }
 
-    private IndexRequest buildIndexRequest(final Task parentTask, final PutRewriterRequest request) throws IOException {
+    private IndexRequest buildIndexRequest(final Task parentTask, final PutRewriterRequest request,
+                                           final Map<String, Object> source) {
 
         final IndexRequest indexRequest = client.prepareIndex(QUERQY_INDEX_NAME).setId(request.getRewriterId())
-                .setCreate(false).setSource(RewriterConfigMapping.toLuceneSource(request.getContent()))
+                .setCreate(false).setSource(source)
                 .setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE).request();
+        if (request.getIfSeqNo() != SequenceNumbers.UNASSIGNED_SEQ_NO) {
+            // fails with a version conflict if the rewriter was changed after it had been read
+            indexRequest.setIfSeqNo(request.getIfSeqNo()).setIfPrimaryTerm(request.getIfPrimaryTerm());
+        }
         indexRequest.setParentTask(clusterService.localNode().getId(), parentTask.getId());
         return indexRequest;
     }
 
-
-    private static String readUtf8Resource(final String name) {
-        final Scanner scanner = new Scanner(TransportPutRewriterAction.class.getClassLoader().getResourceAsStream(name),
-                Charset.forName("utf-8").name()).useDelimiter("\\A");
-        return scanner.hasNext() ? scanner.next() : "";
-    }
-
-
-
 }
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriterstore;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.opensearch.action.support.ActionFilters;
+import org.opensearch.action.support.clustermanager.TransportClusterManagerNodeAction;
+import org.opensearch.action.support.master.AcknowledgedResponse;
+import org.opensearch.client.Client;
+import org.opensearch.cluster.ClusterState;
+import org.opensearch.cluster.ClusterStateUpdateTask;
+import org.opensearch.cluster.block.ClusterBlockException;
+import org.opensearch.cluster.block.ClusterBlockLevel;
+import org.opensearch.cluster.metadata.IndexNameExpressionResolver;
+import org.opensearch.cluster.metadata.Metadata;
+import org.opensearch.cluster.service.ClusterService;
+import org.opensearch.common.Priority;
+import org.opensearch.common.inject.Inject;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.threadpool.ThreadPool;
+import org.opensearch.transport.TransportService;
+
+import java.io.IOException;
+
+/**
+ * Records rewriter versions in the {@link RewritersMetadata} of the cluster state.
+ */
+public class TransportUpdateRewritersMetadataAction
+        extends TransportClusterManagerNodeAction<UpdateRewritersMetadataRequest, AcknowledgedResponse> {
+
+    private static final Logger LOGGER = LogManager.getLogger(TransportUpdateRewritersMetadataAction.class);
+
+    @Inject
+    public TransportUpdateRewritersMetadataAction(final TransportService transportService,
+                                                  final ClusterService clusterService, final ThreadPool threadPool,
+                                                  final ActionFilters actionFilters,
+                                                  final IndexNameExpressionResolver indexNameExpressionResolver) {
+        super(UpdateRewritersMetadataAction.NAME, transportService, clusterService, threadPool, actionFilters,
+                UpdateRewritersMetadataRequest::new, indexNameExpressionResolver);
+    }
+
+    /**
+     * Update the rewriters metadata and then continue with the next step, regardless of the outcome of the update.
+     * The metadata only helps nodes to catch up with rewriter changes that they missed, and the rewriter has already
+     * been saved at this point, so a failure is logged but not passed on.
+     *
+     * @param client The client
+     * @param request The metadata update
+     * @param next The next step
+     */
+    static void updateThen(final Client client, final UpdateRewritersMetadataRequest request, final Runnable next) {
+        client.execute(UpdateRewritersMetadataAction.INSTANCE, request, new ActionListener<AcknowledgedResponse>() {
+            @Override
+            public void onResponse(final AcknowledgedResponse response) {
+                next.run();
+            }
+
+            @Override
+            public void onFailure(final Exception e) {
+                LOGGER.warn("Could not update rewriters metadata", e);
+                next.run();
+            }
+        });
+    }
+
+    @Override
+    protected String executor() {
+        return ThreadPool.Names.SAME;
+    }
+
+    @Override
+    protected AcknowledgedResponse read(final StreamInput in) throws IOException {
+        return new AcknowledgedResponse(in);
+    }
+
+    @Override
+    protected void clusterManagerOperation(final UpdateRewritersMetadataRequest request, final ClusterState state,
+                                           final ActionListener<AcknowledgedResponse> listener) {
+        clusterService.submitStateUpdateTask("querqy-update-rewriters-metadata",
+                new ClusterStateUpdateTask(Priority.NORMAL) {
+
+                    @Override
+                    public ClusterState execute(final ClusterState currentState) {
+                        final RewritersMetadata current = RewritersMetadata.getOrEmpty(currentState.metadata());
+                        final RewritersMetadata updated = current.apply(request.getPut(), request.getRemove());
+                        if (updated == current) {
+                            return currentState;
+                        }
+                        return ClusterState.builder(currentState)
+                                .metadata(Metadata.builder(currentState.metadata())
+                                        .putCustom(RewritersMetadata.TYPE, updated))
+                                .build();
+                    }
+
+                    @Override
+                    public void onFailure(final String source, final Exception e) {
+                        listener.onFailure(e);
+                    }
+
+                    @Override
+                    public void clusterStateProcessed(final String source, final ClusterState oldState,
+                                                      final ClusterState newState) {
+                        listener.onResponse(new AcknowledgedResponse(true));
+                    }
+                });
+    }
+
+    @Override
+    protected ClusterBlockException checkBlock(final UpdateRewritersMetadataRequest request,
+                                               final ClusterState state) {
+        return state.blocks().globalBlockedException(ClusterBlockLevel.METADATA_WRITE);
+    }
+}
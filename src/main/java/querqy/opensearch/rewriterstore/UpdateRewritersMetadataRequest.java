@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriterstore;
+
+import org.opensearch.action.ActionRequestValidationException;
+import org.opensearch.action.support.clustermanager.ClusterManagerNodeRequest;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class UpdateRewritersMetadataRequest extends ClusterManagerNodeRequest<UpdateRewritersMetadataRequest> {
+
+    private final Map<String, RewritersMetadata.RewriterVersion> put;
+    private final List<String> remove;
+
+    public UpdateRewritersMetadataRequest(final Map<String, RewritersMetadata.RewriterVersion> put,
+                                          final List<String> remove) {
+        this.put = put;
+        this.remove = remove;
+    }
+
+    public UpdateRewritersMetadataRequest(final StreamInput in) throws IOException {
+        super(in);
+        put = in.readMap(StreamInput::readString, RewritersMetadata.RewriterVersion::new);
+        remove = in.readStringList();
+    }
+
+    public static UpdateRewritersMetadataRequest put(final String rewriterId, final long version,
+                                                     final String configDigest) {
+        return new UpdateRewritersMetadataRequest(Collections.singletonMap(rewriterId,
+                new RewritersMetadata.RewriterVersion(version, configDigest)), Collections.emptyList());
+    }
+
+    public static UpdateRewritersMetadataRequest remove(final String rewriterId) {
+        return new UpdateRewritersMetadataRequest(Collections.emptyMap(), Collections.singletonList(rewriterId));
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        return null;
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeMap(put, StreamOutput::writeString, (output, version) -> version.writeTo(output));
+        out.writeStringCollection(remove);
+    }
+
+    public Map<String, RewritersMetadata.RewriterVersion> getPut() {
+        return put;
+    }
+
+    public List<String> getRemove() {
+        return remove;
+    }
+}
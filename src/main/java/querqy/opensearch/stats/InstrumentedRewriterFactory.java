@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch.stats;
+
+import querqy.opensearch.DismaxSearchEngineRequestAdapter;
+import querqy.opensearch.infologging.SlowRewriteLog;
+import querqy.opensearch.profile.QuerqyProfileBreakdown;
+import querqy.model.ExpandedQuery;
+import querqy.model.Term;
+import querqy.rewrite.ContextAwareQueryRewriter;
+import querqy.rewrite.QueryRewriter;
+import querqy.rewrite.RewriterFactory;
+import querqy.rewrite.SearchEngineRequestAdapter;
+
+import java.util.Set;
+
+/**
+ * Decorates a {@link RewriterFactory} to measure creating the rewriter and rewriting the query. The time is recorded
+ * in the node stats and in the profile breakdown of the request, if the request is profiled, and it is checked against
+ * the thresholds of the {@link SlowRewriteLog}.
+ */
+class InstrumentedRewriterFactory extends RewriterFactory {
+
+    private final String rewriterId;
+    private final RewriterFactory delegate;
+    private final RewriterStats stats;
+    private final SlowRewriteLog slowRewriteLog;
+
+    InstrumentedRewriterFactory(final String rewriterId, final RewriterFactory delegate, final RewriterStats stats,
+                                final SlowRewriteLog slowRewriteLog) {
+        super(rewriterId);
+        this.rewriterId = rewriterId;
+        this.delegate = delegate;
+        this.stats = stats;
+        this.slowRewriteLog = slowRewriteLog;
+    }
+
+    @Override
+    public QueryRewriter createRewriter(final ExpandedQuery input,
+                                        final SearchEngineRequestAdapter searchEngineRequestAdapter) {
+        final long start = System.nanoTime();
+        final QueryRewriter rewriter;
+        try {
+            rewriter = delegate.createRewriter(input, searchEngineRequestAdapter);
+        } catch (final RuntimeException e) {
+            stats.onRewriteError();
+            throw e;
+        }
+        final long createNanos = System.nanoTime() - start;
+        final QuerqyProfileBreakdown profileBreakdown =
+                searchEngineRequestAdapter instanceof DismaxSearchEngineRequestAdapter
+                        ? ((DismaxSearchEngineRequestAdapter) searchEngineRequestAdapter).getProfileBreakdown()
+                        : null;
+        return rewriter instanceof ContextAwareQueryRewriter
+                ? new InstrumentedContextAwareQueryRewriter((ContextAwareQueryRewriter) rewriter, createNanos,
+                        searchEngineRequestAdapter, profileBreakdown)
+                : new InstrumentedQueryRewriter(rewriter, createNanos, searchEngineRequestAdapter, profileBreakdown);
+    }
+
+    private void onRewrite(final long nanos, final SearchEngineRequestAdapter searchEngineRequestAdapter,
+                           final QuerqyProfileBreakdown profileBreakdown, final ExpandedQuery output) {
+        stats.onRewrite(nanos);
+        if (profileBreakdown != null) {
+            profileBreakdown.addRewriterNanos(rewriterId, nanos);
+        }
+        if (slowRewriteLog != null) {
+            slowRewriteLog.onRewrite(rewriterId, nanos, searchEngineRequestAdapter, output);
+        }
+    }
+
+    @Override
+    public Set<Term> getGenerableTerms() {
+        return delegate.getGenerableTerms();
+    }
+
+    private class InstrumentedQueryRewriter implements QueryRewriter {
+
+        final QueryRewriter rewriter;
+        final long createNanos;
+        final SearchEngineRequestAdapter searchEngineRequestAdapter;
+        final QuerqyProfileBreakdown profileBreakdown;
+
+        InstrumentedQueryRewriter(final QueryRewriter rewriter, final long createNanos,
+                                  final SearchEngineRequestAdapter searchEngineRequestAdapter,
+                                  final QuerqyProfileBreakdown profileBreakdown) {
+            this.rewriter = rewriter;
+            this.createNanos = createNanos;
+            this.searchEngineRequestAdapter = searchEngineRequestAdapter;
+            this.profileBreakdown = profileBreakdown;
+        }
+
+        @Override
+        public ExpandedQuery rewrite(final ExpandedQuery query) {
+            final long start = System.nanoTime();
+            ExpandedQuery output = null;
+            try {
+                output = rewriter.rewrite(query);
+                return output;
+            } catch (final RuntimeException e) {
+                stats.onRewriteError();
+                throw e;
+            } finally {
+                onRewrite(createNanos + System.nanoTime() - start, searchEngineRequestAdapter, profileBreakdown,
+                        output);
+            }
+        }
+    }
+
+    private class InstrumentedContextAwareQueryRewriter extends InstrumentedQueryRewriter
+            implements ContextAwareQueryRewriter {
+
+        InstrumentedContextAwareQueryRewriter(final ContextAwareQueryRewriter rewriter, final long createNanos,
+                                              final SearchEngineRequestAdapter searchEngineRequestAdapter,
+                                              final QuerqyProfileBreakdown profileBreakdown) {
+            super(rewriter, createNanos, searchEngineRequestAdapter, profileBreakdown);
+        }
+
+        @Override
+        public ExpandedQuery rewrite(final ExpandedQuery query,
+                                     final SearchEngineRequestAdapter searchEngineRequestAdapter) {
+            final long start = System.nanoTime();
+            ExpandedQuery output = null;
+            try {
+                output = ((ContextAwareQueryRewriter) rewriter).rewrite(query, searchEngineRequestAdapter);
+                return output;
+            } catch (final RuntimeException e) {
+                stats.onRewriteError();
+                throw e;
+            } finally {
+                onRewrite(createNanos + System.nanoTime() - start, searchEngineRequestAdapter, profileBreakdown,
+                        output);
+            }
+        }
+    }
+}
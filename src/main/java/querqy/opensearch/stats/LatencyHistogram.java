@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch.stats;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>A lock-free latency recorder with log-linear buckets, similar to an HDR histogram with 16 sub-buckets per power
+ * of two. Recorded values are accurate to about 6%, values above ~137s end up in the last bucket.</p>
+ *
+ * <p>Buckets are {@link LongAdder}s, so that concurrent search threads recording into the same bucket don't contend
+ * on a single counter.</p>
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_SHIFT = 32;
+
+    static final int BUCKETS = (MAX_SHIFT + 2) * SUB_BUCKETS;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(final long nanos) {
+        final long value = Math.max(0L, nanos);
+        counts[bucketIndex(value)].increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public Snapshot snapshot() {
+        final long[] snapshotCounts = new long[BUCKETS];
+        long count = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshotCounts[i] = counts[i].sum();
+            count += snapshotCounts[i];
+        }
+        return new Snapshot(snapshotCounts, count, sum.sum(), max.get());
+    }
+
+    static int bucketIndex(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        if (shift > MAX_SHIFT) {
+            return BUCKETS - 1;
+        }
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @param index The bucket index
+     * @return The highest value that is recorded in this bucket
+     */
+    static long highestValueInBucket(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        final long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1L) << shift) - 1L;
+    }
+
+    public static class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(final long[] counts, final long count, final long sum, final long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param quantile The quantile, between 0 and 1
+         * @return The value at the given quantile, or 0 if nothing was recorded
+         */
+        public long getValueAtQuantile(final double quantile) {
+            if (count == 0L) {
+                return 0L;
+            }
+            final long rank = Math.max(1L, (long) Math.ceil(quantile * count));
+            long seen = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueInBucket(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
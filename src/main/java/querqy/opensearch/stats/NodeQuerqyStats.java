@@ -0,0 +1,645 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch.stats;
+
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+import org.opensearch.core.common.io.stream.Writeable;
+import org.opensearch.core.xcontent.ToXContentFragment;
+import org.opensearch.core.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Querqy stats of a single node, as reported by the stats API.
+ */
+public class NodeQuerqyStats implements Writeable, ToXContentFragment {
+
+    private final Latency queryLatency;
+    private final long queryErrors;
+    private final long loadedRewriters;
+    private final long rewriterLoadFailures;
+    private final long heapEstimateBytes;
+    private final long maxHeapBytes;
+    private final Map<String, CacheUsage> caches;
+    private final Map<String, Rewriter> rewriters;
+    private final Map<String, LogUsage> logs;
+    private final Map<String, ShardWarmup> warmups;
+
+    public NodeQuerqyStats(final Latency queryLatency, final long queryErrors, final long loadedRewriters,
+                           final long rewriterLoadFailures, final long heapEstimateBytes, final long maxHeapBytes,
+                           final Map<String, CacheUsage> caches, final Map<String, Rewriter> rewriters,
+                           final Map<String, LogUsage> logs, final Map<String, ShardWarmup> warmups) {
+        this.queryLatency = queryLatency;
+        this.queryErrors = queryErrors;
+        this.loadedRewriters = loadedRewriters;
+        this.rewriterLoadFailures = rewriterLoadFailures;
+        this.heapEstimateBytes = heapEstimateBytes;
+        this.maxHeapBytes = maxHeapBytes;
+        this.caches = caches;
+        this.rewriters = rewriters;
+        this.logs = logs;
+        this.warmups = warmups;
+    }
+
+    public NodeQuerqyStats(final StreamInput in) throws IOException {
+        queryLatency = new Latency(in);
+        queryErrors = in.readVLong();
+        loadedRewriters = in.readVLong();
+        rewriterLoadFailures = in.readVLong();
+        heapEstimateBytes = in.readVLong();
+        maxHeapBytes = in.readLong();
+        final int numCaches = in.readVInt();
+        caches = new LinkedHashMap<>(numCaches);
+        for (int i = 0; i < numCaches; i++) {
+            caches.put(in.readString(), new CacheUsage(in));
+        }
+        final int numRewriters = in.readVInt();
+        rewriters = new TreeMap<>();
+        for (int i = 0; i < numRewriters; i++) {
+            rewriters.put(in.readString(), new Rewriter(in));
+        }
+        final int numLogs = in.readVInt();
+        logs = new LinkedHashMap<>(numLogs);
+        for (int i = 0; i < numLogs; i++) {
+            logs.put(in.readString(), new LogUsage(in));
+        }
+        final int numWarmups = in.readVInt();
+        warmups = new TreeMap<>();
+        for (int i = 0; i < numWarmups; i++) {
+            warmups.put(in.readString(), new ShardWarmup(in));
+        }
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        queryLatency.writeTo(out);
+        out.writeVLong(queryErrors);
+        out.writeVLong(loadedRewriters);
+        out.writeVLong(rewriterLoadFailures);
+        out.writeVLong(heapEstimateBytes);
+        out.writeLong(maxHeapBytes);
+        out.writeVInt(caches.size());
+        for (final Map.Entry<String, CacheUsage> entry : caches.entrySet()) {
+            out.writeString(entry.getKey());
+            entry.getValue().writeTo(out);
+        }
+        out.writeVInt(rewriters.size());
+        for (final Map.Entry<String, Rewriter> entry : rewriters.entrySet()) {
+            out.writeString(entry.getKey());
+            entry.getValue().writeTo(out);
+        }
+        out.writeVInt(logs.size());
+        for (final Map.Entry<String, LogUsage> entry : logs.entrySet()) {
+            out.writeString(entry.getKey());
+            entry.getValue().writeTo(out);
+        }
+        out.writeVInt(warmups.size());
+        for (final Map.Entry<String, ShardWarmup> entry : warmups.entrySet()) {
+            out.writeString(entry.getKey());
+            entry.getValue().writeTo(out);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(final XContentBuilder builder, final Params params) throws IOException {
+        builder.startObject("queries");
+        builder.field("errors", queryErrors);
+        queryLatency.toXContent(builder, params);
+        builder.endObject();
+
+        builder.startObject("rewriter_registry");
+        builder.field("loaded", loadedRewriters);
+        builder.field("load_failures", rewriterLoadFailures);
+        builder.field("heap_estimate_in_bytes", heapEstimateBytes);
+        builder.field("max_heap_in_bytes", maxHeapBytes);
+        builder.endObject();
+
+        builder.startObject("caches");
+        for (final Map.Entry<String, CacheUsage> entry : caches.entrySet()) {
+            builder.startObject(entry.getKey());
+            entry.getValue().toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+
+        builder.startObject("rewriters");
+        for (final Map.Entry<String, Rewriter> entry : rewriters.entrySet()) {
+            builder.startObject(entry.getKey());
+            entry.getValue().toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+
+        builder.startObject("logs");
+        for (final Map.Entry<String, LogUsage> entry : logs.entrySet()) {
+            builder.startObject(entry.getKey());
+            entry.getValue().toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+
+        builder.startObject("warmup");
+        for (final Map.Entry<String, ShardWarmup> entry : warmups.entrySet()) {
+            builder.startObject(entry.getKey());
+            entry.getValue().toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+
+    public Latency getQueryLatency() {
+        return queryLatency;
+    }
+
+    public long getQueryErrors() {
+        return queryErrors;
+    }
+
+    public Map<String, CacheUsage> getCaches() {
+        return caches;
+    }
+
+    public Map<String, Rewriter> getRewriters() {
+        return rewriters;
+    }
+
+    public Map<String, LogUsage> getLogs() {
+        return logs;
+    }
+
+    public Map<String, ShardWarmup> getWarmups() {
+        return warmups;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final NodeQuerqyStats that = (NodeQuerqyStats) o;
+        return queryErrors == that.queryErrors
+                && loadedRewriters == that.loadedRewriters
+                && rewriterLoadFailures == that.rewriterLoadFailures
+                && heapEstimateBytes == that.heapEstimateBytes
+                && maxHeapBytes == that.maxHeapBytes
+                && Objects.equals(queryLatency, that.queryLatency)
+                && Objects.equals(caches, that.caches)
+                && Objects.equals(rewriters, that.rewriters)
+                && Objects.equals(logs, that.logs)
+                && Objects.equals(warmups, that.warmups);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(queryLatency, queryErrors, loadedRewriters, rewriterLoadFailures, heapEstimateBytes,
+                maxHeapBytes, caches, rewriters, logs, warmups);
+    }
+
+    private static double toMicros(final long nanos) {
+        return nanos / 1000.0;
+    }
+
+    private static long toMillis(final long nanos) {
+        return nanos < 0L ? -1L : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * A summary of a {@link LatencyHistogram}, all values in nanoseconds.
+     */
+    public static class Latency implements Writeable, ToXContentFragment {
+
+        private final long count;
+        private final long sum;
+        private final long p50;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        public Latency(final long count, final long sum, final long p50, final long p99, final long p999,
+                       final long max) {
+            this.count = count;
+            this.sum = sum;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        public Latency(final StreamInput in) throws IOException {
+            this(in.readVLong(), in.readVLong(), in.readVLong(), in.readVLong(), in.readVLong(), in.readVLong());
+        }
+
+        public static Latency of(final LatencyHistogram.Snapshot snapshot) {
+            return new Latency(snapshot.getCount(), snapshot.getSum(), snapshot.getValueAtQuantile(0.5),
+                    snapshot.getValueAtQuantile(0.99), snapshot.getValueAtQuantile(0.999), snapshot.getMax());
+        }
+
+        @Override
+        public void writeTo(final StreamOutput out) throws IOException {
+            out.writeVLong(count);
+            out.writeVLong(sum);
+            out.writeVLong(p50);
+            out.writeVLong(p99);
+            out.writeVLong(p999);
+            out.writeVLong(max);
+        }
+
+        @Override
+        public XContentBuilder toXContent(final XContentBuilder builder, final Params params) throws IOException {
+            builder.field("count", count);
+            builder.startObject("latency");
+            builder.field("mean_micros", count == 0L ? 0.0 : toMicros(sum) / count);
+            builder.field("p50_micros", toMicros(p50));
+            builder.field("p99_micros", toMicros(p99));
+            builder.field("p999_micros", toMicros(p999));
+            builder.field("max_micros", toMicros(max));
+            builder.endObject();
+            return builder;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Latency that = (Latency) o;
+            return count == that.count && sum == that.sum && p50 == that.p50 && p99 == that.p99
+                    && p999 == that.p999 && max == that.max;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(count, sum, p50, p99, p999, max);
+        }
+    }
+
+    public static class CacheUsage implements Writeable, ToXContentFragment {
+
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        public CacheUsage(final long hits, final long misses, final long evictions) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public CacheUsage(final StreamInput in) throws IOException {
+            this(in.readVLong(), in.readVLong(), in.readVLong());
+        }
+
+        @Override
+        public void writeTo(final StreamOutput out) throws IOException {
+            out.writeVLong(hits);
+            out.writeVLong(misses);
+            out.writeVLong(evictions);
+        }
+
+        @Override
+        public XContentBuilder toXContent(final XContentBuilder builder, final Params params) throws IOException {
+            builder.field("hits", hits);
+            builder.field("misses", misses);
+            builder.field("evictions", evictions);
+            builder.field("hit_rate", getHitRate());
+            return builder;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public double getHitRate() {
+            final long lookups = hits + misses;
+            return lookups == 0L ? 0.0 : (double) hits / lookups;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final CacheUsage that = (CacheUsage) o;
+            return hits == that.hits && misses == that.misses && evictions == that.evictions;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(hits, misses, evictions);
+        }
+    }
+
+    /**
+     * The usage of a log that is written asynchronously: the number of entries written, the number of times that its
+     * buffer was full and the number of entries that were dropped.
+     */
+    public static class LogUsage implements Writeable, ToXContentFragment {
+
+        private final long logged;
+        private final long overflows;
+        private final long dropped;
+
+        public LogUsage(final long logged, final long overflows, final long dropped) {
+            this.logged = logged;
+            this.overflows = overflows;
+            this.dropped = dropped;
+        }
+
+        public LogUsage(final StreamInput in) throws IOException {
+            this(in.readVLong(), in.readVLong(), in.readVLong());
+        }
+
+        @Override
+        public void writeTo(final StreamOutput out) throws IOException {
+            out.writeVLong(logged);
+            out.writeVLong(overflows);
+            out.writeVLong(dropped);
+        }
+
+        @Override
+        public XContentBuilder toXContent(final XContentBuilder builder, final Params params) throws IOException {
+            builder.field("logged", logged);
+            builder.field("overflows", overflows);
+            builder.field("dropped", dropped);
+            return builder;
+        }
+
+        public long getLogged() {
+            return logged;
+        }
+
+        public long getOverflows() {
+            return overflows;
+        }
+
+        public long getDropped() {
+            return dropped;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final LogUsage that = (LogUsage) o;
+            return logged == that.logged && overflows == that.overflows && dropped == that.dropped;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(logged, overflows, dropped);
+        }
+    }
+
+    public static class Rewriter implements Writeable, ToXContentFragment {
+
+        private final long version;
+        private final long heapEstimateBytes;
+        private final Latency rewrites;
+        private final long rewriteErrors;
+        private final long loads;
+        private final long loadFailures;
+        private final long lastLoadNanos;
+        private final long totalLoadNanos;
+        private final long compilations;
+        private final long lastCompileNanos;
+        private final long totalCompileNanos;
+
+        public Rewriter(final long version, final long heapEstimateBytes, final Latency rewrites,
+                        final long rewriteErrors, final long loads, final long loadFailures, final long lastLoadNanos, final long totalLoadNanos,
+                        final long compilations, final long lastCompileNanos, final long totalCompileNanos) {
+            this.version = version;
+            this.heapEstimateBytes = heapEstimateBytes;
+            this.rewrites = rewrites;
+            this.rewriteErrors = rewriteErrors;
+            this.loads = loads;
+            this.loadFailures = loadFailures;
+            this.lastLoadNanos = lastLoadNanos;
+            this.totalLoadNanos = totalLoadNanos;
+            this.compilations = compilations;
+            this.lastCompileNanos = lastCompileNanos;
+            this.totalCompileNanos = totalCompileNanos;
+        }
+
+        public Rewriter(final StreamInput in) throws IOException {
+            this(in.readLong(), in.readVLong(), new Latency(in), in.readVLong(), in.readVLong(), in.readVLong(),
+                    in.readLong(), in.readVLong(), in.readVLong(), in.readLong(), in.readVLong());
+        }
+
+        @Override
+        public void writeTo(final StreamOutput out) throws IOException {
+            out.writeLong(version);
+            out.writeVLong(heapEstimateBytes);
+            rewrites.writeTo(out);
+            out.writeVLong(rewriteErrors);
+            out.writeVLong(loads);
+            out.writeVLong(loadFailures);
+            out.writeLong(lastLoadNanos);
+            out.writeVLong(totalLoadNanos);
+            out.writeVLong(compilations);
+            out.writeLong(lastCompileNanos);
+            out.writeVLong(totalCompileNanos);
+        }
+
+        @Override
+        public XContentBuilder toXContent(final XContentBuilder builder, final Params params) throws IOException {
+            builder.field("version", version);
+            builder.field("heap_estimate_in_bytes", heapEstimateBytes);
+
+            builder.startObject("rewrites");
+            builder.field("errors", rewriteErrors);
+            rewrites.toXContent(builder, params);
+            builder.endObject();
+
+            builder.startObject("loads");
+            builder.field("count", loads);
+            builder.field("failures", loadFailures);
+            builder.field("last_took_millis", toMillis(lastLoadNanos));
+            builder.field("total_took_millis", toMillis(totalLoadNanos));
+            builder.endObject();
+
+            builder.startObject("compilations");
+            builder.field("count", compilations);
+            builder.field("last_took_millis", toMillis(lastCompileNanos));
+            builder.field("total_took_millis", toMillis(totalCompileNanos));
+            builder.endObject();
+            return builder;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public long getHeapEstimateBytes() {
+            return heapEstimateBytes;
+        }
+
+        public Latency getRewrites() {
+            return rewrites;
+        }
+
+        public long getRewriteErrors() {
+            return rewriteErrors;
+        }
+
+        public long getLoads() {
+            return loads;
+        }
+
+        public long getCompilations() {
+            return compilations;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Rewriter that = (Rewriter) o;
+            return version == that.version
+                    && heapEstimateBytes == that.heapEstimateBytes
+                    && rewriteErrors == that.rewriteErrors
+                    && loads == that.loads
+                    && loadFailures == that.loadFailures
+                    && lastLoadNanos == that.lastLoadNanos
+                    && totalLoadNanos == that.totalLoadNanos
+                    && compilations == that.compilations
+                    && lastCompileNanos == that.lastCompileNanos
+                    && totalCompileNanos == that.totalCompileNanos
+                    && Objects.equals(rewrites, that.rewrites);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(version, heapEstimateBytes, rewrites, rewriteErrors, loads,
+                    loadFailures, lastLoadNanos, totalLoadNanos, compilations, lastCompileNanos, totalCompileNanos);
+        }
+    }
+
+    /**
+     * The warm-up of the rewriters for a shard that was started on this node.
+     */
+    public static class ShardWarmup implements Writeable, ToXContentFragment {
+
+        private final String state;
+        private final long tookMillis;
+
+        /**
+         * @param state The warm-up state
+         * @param tookMillis The time the warm-up took in milliseconds or -1 if it hasn't finished yet
+         */
+        public ShardWarmup(final String state, final long tookMillis) {
+            this.state = state;
+            this.tookMillis = tookMillis;
+        }
+
+        public ShardWarmup(final StreamInput in) throws IOException {
+            this(in.readString(), in.readLong());
+        }
+
+        @Override
+        public void writeTo(final StreamOutput out) throws IOException {
+            out.writeString(state);
+            out.writeLong(tookMillis);
+        }
+
+        @Override
+        public XContentBuilder toXContent(final XContentBuilder builder, final Params params) throws IOException {
+            builder.field("state", state);
+            builder.field("took_in_millis", tookMillis);
+            return builder;
+        }
+
+        public String getState() {
+            return state;
+        }
+
+        public long getTookMillis() {
+            return tookMillis;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final ShardWarmup that = (ShardWarmup) o;
+            return tookMillis == that.tookMillis && state.equals(that.state);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(state, tookMillis);
+        }
+    }
+}
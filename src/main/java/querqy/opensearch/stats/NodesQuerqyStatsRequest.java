@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch.stats;
+
+import org.opensearch.action.support.nodes.BaseNodeRequest;
+import org.opensearch.action.support.nodes.BaseNodesRequest;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+public class NodesQuerqyStatsRequest extends BaseNodesRequest<NodesQuerqyStatsRequest> {
+
+    private final List<String> rewriterIds;
+
+    public NodesQuerqyStatsRequest(final StreamInput in) throws IOException {
+        super(in);
+        rewriterIds = in.readStringList();
+    }
+
+    public NodesQuerqyStatsRequest() {
+        super((String[]) null);
+        rewriterIds = Collections.emptyList();
+    }
+
+    /**
+     * @param rewriterIds The ids of the rewriters to report, all rewriters if empty
+     * @param nodesIds The nodes to query, all nodes if empty
+     */
+    public NodesQuerqyStatsRequest(final List<String> rewriterIds, final String... nodesIds) {
+        super(nodesIds);
+        this.rewriterIds = rewriterIds;
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeStringCollection(rewriterIds);
+    }
+
+    public List<String> getRewriterIds() {
+        return rewriterIds;
+    }
+
+    public NodeRequest newNodeRequest() {
+        return new NodeRequest(rewriterIds);
+    }
+
+    public static class NodeRequest extends BaseNodeRequest {
+
+        final List<String> rewriterIds;
+
+        public NodeRequest(final StreamInput in) throws IOException {
+            super(in);
+            rewriterIds = in.readStringList();
+        }
+
+        public NodeRequest(final List<String> rewriterIds) {
+            this.rewriterIds = rewriterIds;
+        }
+
+        @Override
+        public void writeTo(final StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeStringCollection(rewriterIds);
+        }
+
+        public List<String> getRewriterIds() {
+            return rewriterIds;
+        }
+
+    }
+}
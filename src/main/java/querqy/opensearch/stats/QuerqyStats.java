@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch.stats;
+
+import querqy.opensearch.infologging.AsyncLog4jSink;
+import querqy.opensearch.infologging.SlowRewriteLog;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Node-level counters of the Querqy query path. The counters are cheap enough to be always on: recording is a
+ * {@link LongAdder} increment or a {@link LatencyHistogram} update.</p>
+ */
+public class QuerqyStats {
+
+    private final Map<String, RewriterStats> rewriters = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram queryLatency = new LatencyHistogram();
+    private final LongAdder queryErrors = new LongAdder();
+    private final LongAdder rewriterLoadFailures = new LongAdder();
+    private final LongAdder chainCacheHits = new LongAdder();
+    private final LongAdder chainCacheMisses = new LongAdder();
+
+    private final SlowRewriteLog slowRewriteLog = new SlowRewriteLog();
+    private volatile AsyncLog4jSink infoLoggingSink = null;
+
+    /**
+     * Get or create the stats of a rewriter. This must only be called for rewriters that were loaded successfully so
+     * that rewriter ids from queries that don't refer to a stored rewriter don't create any stats.
+     *
+     * @param rewriterId The rewriter id
+     * @return The stats of the rewriter, never null
+     */
+    public RewriterStats rewriter(final String rewriterId) {
+        final RewriterStats stats = rewriters.get(rewriterId);
+        return stats != null ? stats : rewriters.computeIfAbsent(rewriterId,
+                id -> new RewriterStats(id, slowRewriteLog));
+    }
+
+    /**
+     * @param rewriterId The rewriter id
+     * @return The stats of the rewriter or null if the rewriter hasn't been loaded
+     */
+    public RewriterStats getRewriter(final String rewriterId) {
+        return rewriters.get(rewriterId);
+    }
+
+    public void removeRewriter(final String rewriterId) {
+        rewriters.remove(rewriterId);
+    }
+
+    public void removeRewriters() {
+        rewriters.clear();
+    }
+
+    /**
+     * Record a failed load, also for rewriters that don't exist
+     *
+     * @param rewriterId The rewriter id
+     */
+    public void onRewriterLoadFailed(final String rewriterId) {
+        rewriterLoadFailures.increment();
+        final RewriterStats stats = rewriters.get(rewriterId);
+        if (stats != null) {
+            stats.onLoadFailed();
+        }
+    }
+
+    public long getRewriterLoadFailures() {
+        return rewriterLoadFailures.sum();
+    }
+
+    public void onQuery(final long nanos) {
+        queryLatency.record(nanos);
+    }
+
+    public void onQueryError() {
+        queryErrors.increment();
+    }
+
+    public void onChainCacheHit() {
+        chainCacheHits.increment();
+    }
+
+    public void onChainCacheMiss() {
+        chainCacheMisses.increment();
+    }
+
+    public SlowRewriteLog getSlowRewriteLog() {
+        return slowRewriteLog;
+    }
+
+    /**
+     * Report the usage of the info logging sink if info logging is asynchronous
+     *
+     * @param infoLoggingSink The sink
+     */
+    public void setInfoLoggingSink(final AsyncLog4jSink infoLoggingSink) {
+        this.infoLoggingSink = infoLoggingSink;
+    }
+
+    public Map<String, NodeQuerqyStats.LogUsage> getLogUsage() {
+        final Map<String, NodeQuerqyStats.LogUsage> logs = new LinkedHashMap<>();
+        final long slowRewritesOverflows = slowRewriteLog.getDroppedCount();
+        logs.put("slow_rewrite", new NodeQuerqyStats.LogUsage(slowRewriteLog.getLoggedCount(), slowRewritesOverflows,
+                slowRewritesOverflows + slowRewriteLog.getRateLimitedCount()));
+        final AsyncLog4jSink sink = infoLoggingSink;
+        if (sink != null) {
+            logs.put("info_logging", new NodeQuerqyStats.LogUsage(sink.getLoggedCount(), sink.getOverflowCount(),
+                    sink.getDroppedCount()));
+        }
+        return logs;
+    }
+
+    public NodeQuerqyStats.Latency getQueryLatency() {
+        return NodeQuerqyStats.Latency.of(queryLatency.snapshot());
+    }
+
+    public long getQueryErrors() {
+        return queryErrors.sum();
+    }
+
+    public NodeQuerqyStats.CacheUsage getChainCacheUsage() {
+        return new NodeQuerqyStats.CacheUsage(chainCacheHits.sum(), chainCacheMisses.sum(), 0L);
+    }
+
+    /**
+     * @param rewriterIds The ids of the rewriters to report, all rewriters if empty
+     * @return The stats of the rewriters, sorted by id
+     */
+    public Map<String, NodeQuerqyStats.Rewriter> getRewriterStats(final Collection<String> rewriterIds) {
+        final Map<String, NodeQuerqyStats.Rewriter> result = new TreeMap<>();
+        for (final RewriterStats stats : rewriters.values()) {
+            if (rewriterIds.isEmpty() || rewriterIds.contains(stats.getRewriterId())) {
+                result.put(stats.getRewriterId(), stats.toNodeStats());
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch.stats;
+
+import static querqy.opensearch.rewriterstore.Constants.QUERQY_STATS_ROUTE;
+
+import org.opensearch.client.node.NodeClient;
+import org.opensearch.core.common.Strings;
+import org.opensearch.rest.BaseRestHandler;
+import org.opensearch.rest.RestRequest;
+import org.opensearch.rest.action.RestToXContentListener;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class RestQuerqyStatsAction extends BaseRestHandler {
+
+    public static final String PARAM_REWRITER_ID = "rewriterId";
+    public static final String PARAM_NODES = "nodes";
+
+    @Override
+    public String getName() {
+        return "Get Querqy node stats";
+    }
+
+    @Override
+    public List<Route> routes() {
+        return Arrays.asList(
+                new Route(RestRequest.Method.GET, QUERQY_STATS_ROUTE),
+                new Route(RestRequest.Method.GET, QUERQY_STATS_ROUTE + "/{rewriterId}"));
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(final RestRequest request, final NodeClient client) {
+
+        final NodesQuerqyStatsRequest statsRequest = createRequest(request);
+
+        return (channel) -> client.execute(NodesQuerqyStatsAction.INSTANCE, statsRequest,
+                new RestToXContentListener<>(channel));
+    }
+
+    NodesQuerqyStatsRequest createRequest(final RestRequest request) {
+        final String[] rewriterIds = Strings.splitStringByCommaToArray(request.param(PARAM_REWRITER_ID));
+        final String[] nodesIds = Strings.splitStringByCommaToArray(request.param(PARAM_NODES));
+        return new NodesQuerqyStatsRequest(Arrays.asList(rewriterIds), nodesIds);
+    }
+}
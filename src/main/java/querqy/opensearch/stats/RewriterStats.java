@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch.stats;
+
+import querqy.opensearch.infologging.SlowRewriteLog;
+import querqy.rewrite.RewriterFactory;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters of a single rewriter on this node. All shards of the node record into the same instance. Instances are
+ * only created for rewriters that were loaded successfully and they are removed with the rewriter.
+ */
+public class RewriterStats {
+
+    private final String rewriterId;
+    private final SlowRewriteLog slowRewriteLog;
+
+    private final LatencyHistogram rewriteLatency = new LatencyHistogram();
+    private final LongAdder rewriteErrors = new LongAdder();
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder totalLoadNanos = new LongAdder();
+    private volatile long lastLoadNanos = -1L;
+
+    private final LongAdder compilations = new LongAdder();
+    private final LongAdder totalCompileNanos = new LongAdder();
+    private volatile long lastCompileNanos = -1L;
+
+    private volatile long version = -1L;
+    private volatile long ramBytesUsed = 0L;
+
+    public RewriterStats(final String rewriterId) {
+        this(rewriterId, null);
+    }
+
+    public RewriterStats(final String rewriterId, final SlowRewriteLog slowRewriteLog) {
+        this.rewriterId = rewriterId;
+        this.slowRewriteLog = slowRewriteLog;
+    }
+
+    /**
+     * Wrap a rewriter factory so that the rewriters that it creates record their latency and errors here and report
+     * slow rewrites to the {@link SlowRewriteLog}.
+     *
+     * @param rewriterFactory The shard's rewriter factory
+     * @return The instrumented factory
+     */
+    public RewriterFactory instrument(final RewriterFactory rewriterFactory) {
+        return new InstrumentedRewriterFactory(rewriterId, rewriterFactory, this, slowRewriteLog);
+    }
+
+    public void onRewrite(final long nanos) {
+        rewriteLatency.record(nanos);
+    }
+
+    public void onRewriteError() {
+        rewriteErrors.increment();
+    }
+
+    /**
+     * Record fetching the rewriter config from the Querqy index, including compiling it if it had changed.
+     *
+     * @param nanos The time it took to load the rewriter
+     */
+    public void onLoaded(final long nanos) {
+        loads.increment();
+        totalLoadNanos.add(nanos);
+        lastLoadNanos = nanos;
+    }
+
+    public void onLoadFailed() {
+        loadFailures.increment();
+    }
+
+    public void onCompiled(final long version, final long ramBytesUsed, final long nanos) {
+        compilations.increment();
+        totalCompileNanos.add(nanos);
+        lastCompileNanos = nanos;
+        this.version = version;
+        this.ramBytesUsed = ramBytesUsed;
+    }
+
+    /**
+     * Record that the compiled rewriter was removed from the node-level cache
+     */
+    public void onUnloaded() {
+        ramBytesUsed = 0L;
+    }
+
+    public NodeQuerqyStats.Rewriter toNodeStats() {
+        return new NodeQuerqyStats.Rewriter(version, ramBytesUsed,
+                NodeQuerqyStats.Latency.of(rewriteLatency.snapshot()), rewriteErrors.sum(), loads.sum(), loadFailures.sum(), lastLoadNanos, totalLoadNanos.sum(),
+                compilations.sum(), lastCompileNanos, totalCompileNanos.sum());
+    }
+
+    public String getRewriterId() {
+        return rewriterId;
+    }
+}
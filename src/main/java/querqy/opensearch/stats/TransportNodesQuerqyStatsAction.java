@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch.stats;
+
+import org.opensearch.action.FailedNodeException;
+import org.opensearch.action.support.ActionFilters;
+import org.opensearch.action.support.nodes.TransportNodesAction;
+import org.opensearch.cluster.service.ClusterService;
+import org.opensearch.common.inject.Inject;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.threadpool.ThreadPool;
+import org.opensearch.transport.TransportService;
+import querqy.opensearch.RewriterShardContexts;
+
+import java.io.IOException;
+import java.util.List;
+
+public class TransportNodesQuerqyStatsAction extends TransportNodesAction<NodesQuerqyStatsRequest,
+        NodesQuerqyStatsResponse, NodesQuerqyStatsRequest.NodeRequest, NodesQuerqyStatsResponse.NodeResponse> {
+
+    protected RewriterShardContexts rewriterShardContexts;
+
+    @Inject
+    public TransportNodesQuerqyStatsAction(final ThreadPool threadPool, final ClusterService clusterService,
+                                           final TransportService transportService,
+                                           final ActionFilters actionFilters,
+                                           final RewriterShardContexts rewriterShardContexts) {
+
+        super(NodesQuerqyStatsAction.NAME, threadPool, clusterService, transportService, actionFilters,
+                NodesQuerqyStatsRequest::new, NodesQuerqyStatsRequest.NodeRequest::new,
+                ThreadPool.Names.MANAGEMENT, NodesQuerqyStatsResponse.NodeResponse.class);
+        this.rewriterShardContexts = rewriterShardContexts;
+    }
+
+    @Override
+    protected NodesQuerqyStatsResponse newResponse(final NodesQuerqyStatsRequest request,
+                                                   final List<NodesQuerqyStatsResponse.NodeResponse> nodeResponses,
+                                                   final List<FailedNodeException> failures) {
+        return new NodesQuerqyStatsResponse(clusterService.getClusterName(), nodeResponses, failures);
+    }
+
+    @Override
+    protected NodesQuerqyStatsRequest.NodeRequest newNodeRequest(final NodesQuerqyStatsRequest request) {
+        return request.newNodeRequest();
+    }
+
+    @Override
+    protected NodesQuerqyStatsResponse.NodeResponse newNodeResponse(final StreamInput in) throws IOException {
+        return new NodesQuerqyStatsResponse.NodeResponse(in);
+    }
+
+    @Override
+    protected NodesQuerqyStatsResponse.NodeResponse nodeOperation(final NodesQuerqyStatsRequest.NodeRequest request) {
+        return new NodesQuerqyStatsResponse.NodeResponse(clusterService.localNode(),
+                rewriterShardContexts.getNodeStats(request.getRewriterIds()));
+    }
+}
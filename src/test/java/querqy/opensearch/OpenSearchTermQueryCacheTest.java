@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+import org.junit.Test;
+import org.opensearch.core.index.Index;
+import querqy.lucene.rewrite.cache.CacheKey;
+import querqy.lucene.rewrite.cache.TermQueryCache;
+import querqy.lucene.rewrite.cache.TermQueryCacheValue;
+import querqy.model.Term;
+
+public class OpenSearchTermQueryCacheTest {
+
+    private static final Index INDEX = new Index("idx", "uuid1");
+
+    @Test
+    public void testThatGeneratedTermsAreCached() {
+        final OpenSearchTermQueryCache cache = new OpenSearchTermQueryCache(100, 1024 * 1024);
+        final TermQueryCache termQueryCache = cache.forIndex(INDEX, 1L);
+        final TermQueryCacheValue value = mock(TermQueryCacheValue.class);
+
+        termQueryCache.put(new CacheKey("f1", new Term(null, "a", true)), value);
+
+        assertSame(value, termQueryCache.get(new CacheKey("f1", new Term(null, "a", true))));
+        assertSame(value, cache.forIndex(INDEX, 1L).get(new CacheKey("f1", new Term(null, "a", true))));
+        assertNull(termQueryCache.get(new CacheKey("f2", new Term(null, "a", true))));
+        assertEquals(2L, cache.stats().getHits());
+    }
+
+    @Test
+    public void testThatUserQueryTermsAreNotCached() {
+        final OpenSearchTermQueryCache cache = new OpenSearchTermQueryCache(100, 1024 * 1024);
+        final TermQueryCache termQueryCache = cache.forIndex(INDEX, 1L);
+
+        termQueryCache.put(new CacheKey("f1", new Term(null, "a", false)), mock(TermQueryCacheValue.class));
+
+        assertNull(termQueryCache.get(new CacheKey("f1", new Term(null, "a", false))));
+        assertEquals(0L, cache.count());
+    }
+
+    @Test
+    public void testThatEntriesAreScopedToIndexAndMappingVersion() {
+        final OpenSearchTermQueryCache cache = new OpenSearchTermQueryCache(100, 1024 * 1024);
+        cache.forIndex(INDEX, 1L).put(new CacheKey("f1", new Term(null, "a", true)),
+                mock(TermQueryCacheValue.class));
+
+        assertNull(cache.forIndex(INDEX, 2L).get(new CacheKey("f1", new Term(null, "a", true))));
+        assertNull(cache.forIndex(new Index("idx", "uuid2"), 1L)
+                .get(new CacheKey("f1", new Term(null, "a", true))));
+    }
+
+    @Test
+    public void testThatCacheIsBoundedByEntries() {
+        final OpenSearchTermQueryCache cache = new OpenSearchTermQueryCache(2, 1024 * 1024);
+        final TermQueryCache termQueryCache = cache.forIndex(INDEX, 1L);
+        termQueryCache.put(new CacheKey("f1", new Term(null, "a", true)), mock(TermQueryCacheValue.class));
+        termQueryCache.put(new CacheKey("f1", new Term(null, "b", true)), mock(TermQueryCacheValue.class));
+        termQueryCache.put(new CacheKey("f1", new Term(null, "c", true)), mock(TermQueryCacheValue.class));
+        assertEquals(2L, cache.count());
+    }
+
+    @Test
+    public void testThatCacheIsBoundedByBytes() {
+        final OpenSearchTermQueryCache cache = new OpenSearchTermQueryCache(100,
+                2 * OpenSearchTermQueryCache.ENTRY_OVERHEAD_BYTES + 100);
+        final TermQueryCache termQueryCache = cache.forIndex(INDEX, 1L);
+        termQueryCache.put(new CacheKey("f1", new Term(null, "a", true)), mock(TermQueryCacheValue.class));
+        termQueryCache.put(new CacheKey("f1", new Term(null, "b", true)), mock(TermQueryCacheValue.class));
+        termQueryCache.put(new CacheKey("f1", new Term(null, "c", true)), mock(TermQueryCacheValue.class));
+        assertEquals(2L, cache.count());
+    }
+
+}
@@ -36,6 +36,7 @@ import org.junit.After;
 import org.junit.Test;
 import querqy.opensearch.rewriterstore.PutRewriterAction;
 import querqy.opensearch.rewriterstore.PutRewriterRequest;
+import querqy.opensearch.rewriterstore.RewriterConfigMapping;
 
 import java.util.Collection;
 import java.util.Collections;
@@ -106,10 +107,23 @@ public class QuerqyMappingsUpdate1To3IntegrationTest extends OpenSearchSingleNod
         assertNotNull(info_logging_props);
 
         assertThat( (Map<String, Object>) info_logging_props.get("sinks"), hasEntry("type", "keyword"));
+        final Map<String, Object> sampling_mapping = (Map<String, Object>) info_logging_props.get("sampling");
+        assertNotNull(sampling_mapping);
+        assertThat(sampling_mapping, hasEntry("enabled", false));
 
         final Map<String, Object> config_v_003_mapping = (Map<String, Object>) properties.get("config_v_003");
         assertNotNull(config_v_003_mapping);
         assertEquals(false, config_v_003_mapping.get("doc_values"));
 
+        final Map<String, Object> config_v_004_mapping = (Map<String, Object>) properties.get("config_v_004");
+        assertNotNull(config_v_004_mapping);
+        assertThat(config_v_004_mapping, hasEntry("type", "binary"));
+
+        final Map<String, Object> config_digest_mapping = (Map<String, Object>) properties.get(
+                RewriterConfigMapping.PROP_CONFIG_DIGEST);
+        assertNotNull(config_digest_mapping);
+        assertThat(config_digest_mapping, hasEntry("type", "keyword"));
+        assertThat(config_digest_mapping, hasEntry("index", false));
+
     }
 }
@@ -21,8 +21,21 @@ package querqy.opensearch;
 
 import static org.hamcrest.CoreMatchers.everyItem;
 import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.notNull;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static querqy.opensearch.query.AbstractLuceneQueryTest.anyFilter;
 import static querqy.opensearch.query.AbstractLuceneQueryTest.anyMust;
 import static querqy.opensearch.query.AbstractLuceneQueryTest.anyMustNot;
@@ -38,11 +51,30 @@ import org.apache.lucene.search.TermQuery;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.util.concurrent.ThreadContext;
+import org.opensearch.core.index.Index;
+import org.opensearch.core.tasks.TaskId;
+import org.opensearch.index.query.QueryShardContext;
+import org.opensearch.search.internal.ShardSearchRequest;
+import org.opensearch.tasks.Task;
+import org.opensearch.threadpool.ThreadPool;
+import org.opensearch.transport.TransportChannel;
+import org.opensearch.transport.TransportRequestHandler;
+import querqy.infologging.Sink;
 import querqy.lucene.LuceneQueries;
+import querqy.opensearch.infologging.LogPayloadType;
+import querqy.opensearch.query.InfoLoggingSpec;
+import querqy.opensearch.query.MatchingQuery;
+import querqy.opensearch.query.QuerqyQueryBuilder;
+import querqy.opensearch.query.Rewriter;
+import querqy.rewrite.RewriteChain;
 
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
 
 @RunWith(MockitoJUnitRunner.class)
 public class QuerqyProcessorTest {
@@ -125,4 +157,119 @@ public class QuerqyProcessorTest {
         );
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testThatOnlyTheFirstShardOfTheRequestIsTheInfoLoggingShard() throws Exception {
+        final ThreadContext threadContext = new ThreadContext(Settings.EMPTY);
+        final QuerqyProcessor querqyProcessor = new QuerqyProcessor(mock(RewriterShardContexts.class), null);
+        querqyProcessor.setThreadContext(threadContext);
+
+        assertTrue(onShard(threadContext, 0, 1L, querqyProcessor::isInfoLoggingShard));
+        assertFalse(onShard(threadContext, 1, 2L, querqyProcessor::isInfoLoggingShard));
+    }
+
+    @Test
+    public void testThatTheFirstShardIsTheInfoLoggingShardOncePerParentTask() throws Exception {
+        final ThreadContext threadContext = new ThreadContext(Settings.EMPTY);
+        final QuerqyProcessor querqyProcessor = new QuerqyProcessor(mock(RewriterShardContexts.class), null);
+        querqyProcessor.setThreadContext(threadContext);
+
+        assertTrue(onShard(threadContext, 0, 1L, querqyProcessor::isInfoLoggingShard));
+        // rewritten again in another phase of the same request
+        assertFalse(onShard(threadContext, 0, 1L, querqyProcessor::isInfoLoggingShard));
+        assertTrue(onShard(threadContext, 0, 2L, querqyProcessor::isInfoLoggingShard));
+        // the coordinating node didn't set a parent task
+        assertTrue(onShard(threadContext, 0, -1L, querqyProcessor::isInfoLoggingShard));
+        assertTrue(onShard(threadContext, 0, -1L, querqyProcessor::isInfoLoggingShard));
+    }
+
+    @Test
+    public void testThatQueriesOutsideOfAShardSearchRequestAreInfoLogged() {
+        final QuerqyProcessor querqyProcessor = new QuerqyProcessor(mock(RewriterShardContexts.class), null);
+        querqyProcessor.setThreadContext(new ThreadContext(Settings.EMPTY));
+
+        // e.g. the explain API, which logs every time
+        assertTrue(querqyProcessor.isInfoLoggingShard());
+        assertTrue(querqyProcessor.isInfoLoggingShard());
+    }
+
+    @Test
+    public void testThatTheFirstShardOfTheRequestWritesTheInfoLogOnRewrite() throws Exception {
+        final RewriterShardContexts rewriterShardContexts = mock(RewriterShardContexts.class);
+        when(rewriterShardContexts.getRewriteChain(anyList(), any(QueryShardContext.class))).thenReturn(
+                new RewriteChainAndLogging(new RewriteChain(Collections.emptyList()), Collections.singleton("r1"),
+                        false, Collections.singletonList(1L)));
+        when(rewriterShardContexts.acquireQueryAnalyzer(any())).thenReturn(mock(SearchAnalyzerWrapper.class));
+        final QuerqyProcessor querqyProcessor = spy(new QuerqyProcessor(rewriterShardContexts, mock(Sink.class)));
+        doReturn(null).when(querqyProcessor).buildQuery(any(), any(), any(), any(), any(), any(), any());
+        final ThreadContext threadContext = new ThreadContext(Settings.EMPTY);
+        querqyProcessor.setThreadContext(threadContext);
+
+        final QueryShardContext shard0 = shardContext(0);
+        final QueryShardContext shard1 = shardContext(1);
+
+        // the request only targets shard 1, which comes first in its shard list, and shard 0 of another request
+        onShard(threadContext, 0, 1L, () -> {
+            querqyProcessor.writeInfoLog(queryBuilder(), shard1);
+            return null;
+        });
+        onShard(threadContext, 1, 2L, () -> {
+            querqyProcessor.writeInfoLog(queryBuilder(), shard0);
+            return null;
+        });
+        verify(querqyProcessor, times(1)).buildQuery(any(), any(), eq(shard1), notNull(), any(), any(), any());
+        verify(querqyProcessor, never()).buildQuery(any(), any(), eq(shard0), any(), any(), any(), any());
+
+        // the shard is rewritten again in the query phase if the can_match phase doesn't skip it
+        onShard(threadContext, 0, 1L, () -> {
+            querqyProcessor.writeInfoLog(queryBuilder(), shard1);
+            return null;
+        });
+        verify(querqyProcessor, times(1)).buildQuery(any(), any(), eq(shard1), notNull(), any(), any(), any());
+    }
+
+    @Test
+    public void testThatNoShardWritesTheInfoLogOnRewriteIfNotOncePerRequest() throws Exception {
+        final QuerqyProcessor querqyProcessor = spy(new QuerqyProcessor(mock(RewriterShardContexts.class),
+                mock(Sink.class)));
+        querqyProcessor.setInfoLoggingOncePerRequest(false);
+
+        // all shards log when they build the query
+        querqyProcessor.writeInfoLog(queryBuilder(), shardContext(0));
+        verify(querqyProcessor, never()).buildQuery(any(), any(), any(), any(), any(), any(), any());
+    }
+
+    private static QuerqyQueryBuilder queryBuilder() {
+        final QuerqyQueryBuilder builder = new QuerqyQueryBuilder();
+        builder.setMatchingQuery(new MatchingQuery("a"));
+        builder.setQueryFieldsAndBoostings(Collections.singletonList("f1"));
+        builder.setRewriters(Collections.singletonList(new Rewriter("r1")));
+        builder.setInfoLoggingSpec(new InfoLoggingSpec(LogPayloadType.DETAIL, "q1"));
+        return builder;
+    }
+
+    private static QueryShardContext shardContext(final int shardId) {
+        final QueryShardContext context = mock(QueryShardContext.class);
+        lenient().when(context.getShardId()).thenReturn(shardId);
+        lenient().when(context.index()).thenReturn(new Index("idx", "uuid"));
+        return context;
+    }
+
+    /**
+     * Runs the action like a shard search request handler, which is at the given position in the shard list of the
+     * search request. The search task on the coordinating node has the given id, or none if it is negative.
+     */
+    private static <T> T onShard(final ThreadContext threadContext, final int shardRequestIndex,
+                                 final long parentTaskId, final Callable<T> action) throws Exception {
+        final ShardSearchRequest request = mock(ShardSearchRequest.class);
+        when(request.shardRequestIndex()).thenReturn(shardRequestIndex);
+        lenient().when(request.getParentTask()).thenReturn(parentTaskId < 0L ? TaskId.EMPTY_TASK_ID
+                : new TaskId("coordinator", parentTaskId));
+        final AtomicReference<T> result = new AtomicReference<>();
+        final TransportRequestHandler<ShardSearchRequest> handler = new ShardSearchRequestInterceptor(threadContext)
+                .interceptHandler("indices:data/read/search[phase/query]", ThreadPool.Names.SAME, false,
+                        (req, channel, task) -> result.set(action.call()));
+        handler.messageReceived(request, mock(TransportChannel.class), mock(Task.class));
+        return result.get();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch;
+
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import querqy.model.ExpandedQuery;
+import querqy.parser.WhiteSpaceQuerqyParser;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+public class RewriteOutputsTest {
+
+    @Test
+    public void testThatTheCaptureFactoryPassesTheQueryOn() {
+        final AtomicReference<ExpandedQuery> captured = new AtomicReference<>();
+        final ExpandedQuery query = query("a b");
+
+        assertSame(query, RewriteOutputs.captureFactory(captured::set).createRewriter(query, null).rewrite(query));
+        assertSame(query, captured.get());
+    }
+
+    @Test
+    public void testThatTheReplayFactoryReplacesTheQuery() {
+        final ExpandedQuery output = query("a c");
+        final ExpandedQuery input = query("a b");
+
+        assertSame(output, RewriteOutputs.replayFactory(output).createRewriter(input, null).rewrite(input));
+        // the same output is replayed for each request
+        assertSame(output, RewriteOutputs.replayFactory(output).createRewriter(input, null).rewrite(query("a b")));
+    }
+
+    private static ExpandedQuery query(final String queryString) {
+        return new ExpandedQuery(new WhiteSpaceQuerqyParser().parse(queryString));
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opensearch.OpenSearchException;
+import org.opensearch.OpenSearchStatusException;
+import org.opensearch.action.get.GetRequestBuilder;
+import org.opensearch.action.get.GetResponse;
+import org.opensearch.action.support.PlainActionFuture;
+import org.opensearch.client.Client;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.util.concurrent.OpenSearchExecutors;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.common.breaker.CircuitBreaker;
+import org.opensearch.core.common.breaker.CircuitBreakingException;
+import org.opensearch.core.rest.RestStatus;
+import org.opensearch.indices.InvalidTypeNameException;
+import org.opensearch.threadpool.ThreadPool;
+import querqy.opensearch.RewriterFactoryRegistry.LoadedRewriter;
+import querqy.opensearch.rewriterstore.LoadRewriterConfig;
+import querqy.opensearch.rewriterstore.RewriterConfigMapping;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RewriterFactoryRegistryTest {
+
+    @Before
+    public void resetConfigureCalls() {
+        CountingFactory.CONFIGURE_CALLS.set(0);
+    }
+
+    @Test
+    public void testCompile() {
+        final Map<String, Object> source = new HashMap<>();
+        source.put(RewriterConfigMapping.PROP_TYPE, "rewriter");
+        source.put("class", DummyOpenSearchRewriterFactory.class.getName());
+
+        final LoadedRewriter loadedRewriter = RewriterFactoryRegistry.compile("r1", 7L, source);
+        assertEquals("r1", loadedRewriter.rewriterId);
+        assertEquals(7L, loadedRewriter.version);
+        assertTrue(loadedRewriter.factory instanceof DummyOpenSearchRewriterFactory);
+        assertEquals("r1", loadedRewriter.factory.getRewriterId());
+        assertFalse(loadedRewriter.loggingEnabled);
+        assertEquals(OpenSearchRewriterFactory.DEFAULT_RAM_BYTES_USED, loadedRewriter.ramBytesUsed);
+    }
+
+    @Test
+    public void testEstimateRulesRamBytesUsedGrowsWithRules() {
+        assertEquals(OpenSearchRewriterFactory.DEFAULT_RAM_BYTES_USED,
+                OpenSearchRewriterFactory.estimateRulesRamBytesUsed(null));
+        final long oneRule = OpenSearchRewriterFactory.estimateRulesRamBytesUsed("a =>\n SYNONYM: b");
+        final long twoRules = OpenSearchRewriterFactory.estimateRulesRamBytesUsed(
+                "a =>\n SYNONYM: b\nc =>\n SYNONYM: d");
+        assertTrue(oneRule > OpenSearchRewriterFactory.DEFAULT_RAM_BYTES_USED);
+        assertTrue(twoRules > oneRule);
+    }
+
+    @Test
+    public void testCompileWithInfoLogging() {
+        final Map<String, Object> source = new HashMap<>();
+        source.put(RewriterConfigMapping.PROP_TYPE, "rewriter");
+        source.put("class", DummyOpenSearchRewriterFactory.class.getName());
+        source.put("info_logging", Collections.singletonMap("sinks", Arrays.asList("log4j")));
+
+        assertTrue(RewriterFactoryRegistry.compile("r1", 1L, source).loggingEnabled);
+    }
+
+    @Test(expected = InvalidTypeNameException.class)
+    public void testCompileRequiresRewriterType() {
+        final Map<String, Object> source = new HashMap<>();
+        source.put(RewriterConfigMapping.PROP_TYPE, "something");
+        source.put("class", DummyOpenSearchRewriterFactory.class.getName());
+
+        RewriterFactoryRegistry.compile("r1", 1L, source);
+    }
+
+    @Test
+    public void testCompileReusesFactoryForUnchangedConfigDigest() {
+        final Map<String, Object> source = new HashMap<>();
+        source.put(RewriterConfigMapping.PROP_TYPE, "rewriter");
+        source.put("class", DummyOpenSearchRewriterFactory.class.getName());
+        source.put(RewriterConfigMapping.PROP_CONFIG_DIGEST,
+                RewriterConfigMapping.configDigest(DummyOpenSearchRewriterFactory.class.getName(), null));
+
+        final LoadedRewriter v1 = RewriterFactoryRegistry.compile("r1", 1L, source, null);
+        final LoadedRewriter v2 = RewriterFactoryRegistry.compile("r1", 2L, source, v1);
+        assertEquals(2L, v2.version);
+        assertSame(v1.factory, v2.factory);
+        assertEquals(v1.configDigest, v2.configDigest);
+
+        source.put(RewriterConfigMapping.PROP_CONFIG_DIGEST,
+                RewriterConfigMapping.configDigest(DummyOpenSearchRewriterFactory.class.getName(), "{}"));
+        assertNotSame(v1.factory, RewriterFactoryRegistry.compile("r1", 3L, source, v1).factory);
+    }
+
+    @Test
+    public void testCompileIgnoresConfigDigestInUnknownFormat() {
+        final Map<String, Object> source = new HashMap<>();
+        source.put(RewriterConfigMapping.PROP_TYPE, "rewriter");
+        source.put("class", DummyOpenSearchRewriterFactory.class.getName());
+        source.put(RewriterConfigMapping.PROP_CONFIG_DIGEST, "0:abc");
+
+        final LoadedRewriter v1 = RewriterFactoryRegistry.compile("r1", 1L, source, null);
+        assertNull(v1.configDigest);
+        assertNotSame(v1.factory, RewriterFactoryRegistry.compile("r1", 2L, source, v1).factory);
+    }
+
+    @Test
+    public void testEstimateRamBytesUsedFromStoredRules() throws Exception {
+        final String rules = largeRules(100);
+        assertEquals(OpenSearchRewriterFactory.estimateRulesRamBytesUsed(rules),
+                RewriterFactoryRegistry.estimateRamBytesUsed("r1", storedRewriter(rules), null));
+        assertEquals(0, CountingFactory.CONFIGURE_CALLS.get());
+    }
+
+    @Test
+    public void testThatTheEstimateAndCompilingShareTheParsedConfig() throws Exception {
+        final String rules = largeRules(100);
+        final LoadRewriterConfig loadConfig = new LoadRewriterConfig("r1", storedRewriter(rules));
+        final Map<String, Object> config = loadConfig.getConfig();
+
+        assertEquals(OpenSearchRewriterFactory.estimateRulesRamBytesUsed(rules),
+                RewriterFactoryRegistry.estimateRamBytesUsed(loadConfig, null));
+        final LoadedRewriter loadedRewriter = RewriterFactoryRegistry.compile(1L, loadConfig, null, null);
+
+        assertSame(config, loadConfig.getConfig());
+        assertEquals("r1", loadedRewriter.factory.getRewriterId());
+        assertEquals(1, CountingFactory.CONFIGURE_CALLS.get());
+    }
+
+    @Test
+    public void testThatMaxWeightIsCheckedBeforeCompiling() throws Exception {
+        final RewriterFactoryRegistry registry = new RewriterFactoryRegistry(Settings.builder()
+                .put(RewriterShardContext.CACHE_MAX_WEIGHT.getKey(), "20kb").build());
+        try {
+            registry.onRewriterFetched("r1", getResponse(storedRewriter(largeRules(1000)), 1L));
+            fail("Expected the rewriter to exceed the max weight");
+        } catch (final OpenSearchException e) {
+            assertTrue(e.getMessage().contains(RewriterShardContext.CACHE_MAX_WEIGHT.getKey()));
+        }
+        assertEquals(0, CountingFactory.CONFIGURE_CALLS.get());
+        assertEquals(0L, registry.getCount());
+    }
+
+    @Test
+    public void testThatCircuitBreakerIsCheckedBeforeCompiling() throws Exception {
+        final RewriterFactoryRegistry registry = new RewriterFactoryRegistry(Settings.EMPTY);
+        final CircuitBreaker circuitBreaker = mock(CircuitBreaker.class);
+        when(circuitBreaker.addEstimateBytesAndMaybeBreak(anyLong(), anyString()))
+                .thenThrow(new CircuitBreakingException("full", CircuitBreaker.Durability.TRANSIENT));
+        registry.setCircuitBreaker(circuitBreaker);
+
+        try {
+            registry.onRewriterFetched("r1", getResponse(storedRewriter(largeRules(1000)), 1L));
+            fail("Expected the circuit breaker to break");
+        } catch (final CircuitBreakingException e) {
+            // expected
+        }
+        assertEquals(0, CountingFactory.CONFIGURE_CALLS.get());
+        assertEquals(0L, registry.getCount());
+    }
+
+    @Test
+    public void testThatCircuitBreakerIsReconciledAfterCompiling() throws Exception {
+        final RewriterFactoryRegistry registry = new RewriterFactoryRegistry(Settings.EMPTY);
+        final CircuitBreaker circuitBreaker = mock(CircuitBreaker.class);
+        registry.setCircuitBreaker(circuitBreaker);
+
+        final String rules = largeRules(1000);
+        final long estimate = OpenSearchRewriterFactory.estimateRulesRamBytesUsed(rules);
+        final LoadedRewriter loadedRewriter = registry.onRewriterFetched("r1", getResponse(storedRewriter(rules), 1L));
+
+        assertEquals(1, CountingFactory.CONFIGURE_CALLS.get());
+        assertEquals(OpenSearchRewriterFactory.DEFAULT_RAM_BYTES_USED, loadedRewriter.ramBytesUsed);
+        verify(circuitBreaker).addEstimateBytesAndMaybeBreak(eq(estimate), anyString());
+        verify(circuitBreaker).addWithoutBreaking(loadedRewriter.ramBytesUsed - estimate);
+    }
+
+    @Test
+    public void testThatGetLoadedOrStartLoadingFailsAfterTheTimeoutAndKeepsLoading() {
+        final RewriterFactoryRegistry registry = new RewriterFactoryRegistry(Settings.builder()
+                .put(RewriterFactoryRegistry.LOAD_WAIT_TIMEOUT.getKey(), "10ms").build());
+        final Client client = mock(Client.class);
+        // the config is never fetched
+        when(client.prepareGet(anyString(), anyString())).thenReturn(mock(GetRequestBuilder.class));
+        registry.setClient(client);
+
+        try {
+            registry.getLoadedOrStartLoading("r1");
+            fail("Expected the rewriter not to be loaded");
+        } catch (final OpenSearchStatusException e) {
+            assertEquals(RestStatus.SERVICE_UNAVAILABLE, e.status());
+        }
+        assertTrue(registry.isLoading("r1"));
+
+        // single-flight: a second query doesn't fetch the config again
+        try {
+            registry.getLoadedOrStartLoading("r1");
+            fail("Expected the rewriter not to be loaded");
+        } catch (final OpenSearchStatusException e) {
+            assertEquals(RestStatus.SERVICE_UNAVAILABLE, e.status());
+        }
+        verify(client, times(1)).prepareGet(anyString(), eq("r1"));
+    }
+
+    @Test
+    public void testThatRemovalListenersAreNotifiedWhenARewriterIsCleared() throws Exception {
+        final RewriterFactoryRegistry registry = new RewriterFactoryRegistry(Settings.EMPTY);
+        final List<String> removed = new ArrayList<>();
+        registry.addRemovalListener(removed::add);
+
+        registry.onRewriterFetched("r1", getResponse(storedRewriter("a =>\n SYNONYM: b"), 1L));
+        // a reload replaces the rewriter
+        registry.onRewriterFetched("r1", getResponse(storedRewriter("a =>\n SYNONYM: c"), 2L));
+        assertTrue(removed.isEmpty());
+
+        registry.clearRewriter("r1");
+        assertEquals(Collections.singletonList("r1"), removed);
+    }
+
+    @Test
+    public void testThatRemovalListenersAreNotifiedWhenARewriterExpires() throws Exception {
+        final RewriterFactoryRegistry registry = new RewriterFactoryRegistry(Settings.builder()
+                .put(RewriterShardContext.CACHE_EXPIRE_AFTER_WRITE.getKey(), "1ms").build());
+        final List<String> removed = new ArrayList<>();
+        registry.addRemovalListener(removed::add);
+
+        registry.onRewriterFetched("r1", getResponse(storedRewriter("a =>\n SYNONYM: b"), 1L));
+        Thread.sleep(10L);
+
+        assertNull(registry.getLoaded("r1"));
+        assertEquals(Collections.singletonList("r1"), removed);
+    }
+
+    @Test
+    public void testThatGetLoadedOrStartLoadingWaitsForARewriterThatWasEvictedByPreloading() throws Exception {
+        // room for one rewriter only
+        final RewriterFactoryRegistry registry = new RewriterFactoryRegistry(Settings.builder()
+                .put(RewriterShardContext.CACHE_MAX_WEIGHT.getKey(),
+                        (OpenSearchRewriterFactory.DEFAULT_RAM_BYTES_USED * 3 / 2) + "b").build());
+        final Client client = mock(Client.class);
+        for (final String rewriterId : Arrays.asList("r1", "r2")) {
+            final GetResponse response = getResponse(storedRewriter("a =>\n SYNONYM: b"), 1L);
+            final GetRequestBuilder getRequestBuilder = mock(GetRequestBuilder.class);
+            doAnswer(invocation -> {
+                invocation.<ActionListener<GetResponse>>getArgument(0).onResponse(response);
+                return null;
+            }).when(getRequestBuilder).execute(any());
+            when(client.prepareGet(anyString(), eq(rewriterId))).thenReturn(getRequestBuilder);
+        }
+        final ThreadPool threadPool = mock(ThreadPool.class);
+        when(threadPool.executor(QuerqyPlugin.REWRITER_LOADER_THREAD_POOL_NAME))
+                .thenReturn(OpenSearchExecutors.newDirectExecutorService());
+        registry.setClient(client);
+        registry.setThreadPool(threadPool);
+
+        final PlainActionFuture<Collection<LoadedRewriter>> preloaded = PlainActionFuture.newFuture();
+        registry.loadAll(Collections.singletonList("r1"), preloaded);
+        preloaded.actionGet();
+        // preloading the rewriter of another request evicts r1 before the query of the first request is built
+        final PlainActionFuture<Collection<LoadedRewriter>> preloaded2 = PlainActionFuture.newFuture();
+        registry.loadAll(Collections.singletonList("r2"), preloaded2);
+        preloaded2.actionGet();
+        assertFalse(registry.isLoaded("r1"));
+
+        assertEquals("r1", registry.getLoadedOrStartLoading("r1").rewriterId);
+        assertTrue(registry.isLoaded("r1"));
+        verify(client, times(2)).prepareGet(anyString(), eq("r1"));
+    }
+
+    @Test
+    public void testThatWhenLoadingCompletedRunsTheActionAfterTheLoad() throws Exception {
+        final RewriterFactoryRegistry registry = new RewriterFactoryRegistry(Settings.EMPTY);
+        final Client client = mock(Client.class);
+        final GetRequestBuilder getRequestBuilder = mock(GetRequestBuilder.class);
+        final List<ActionListener<GetResponse>> getListeners = new ArrayList<>();
+        doAnswer(invocation -> getListeners.add(invocation.getArgument(0))).when(getRequestBuilder).execute(any());
+        when(client.prepareGet(anyString(), eq("r1"))).thenReturn(getRequestBuilder);
+        final ThreadPool threadPool = mock(ThreadPool.class);
+        when(threadPool.executor(QuerqyPlugin.REWRITER_LOADER_THREAD_POOL_NAME))
+                .thenReturn(OpenSearchExecutors.newDirectExecutorService());
+        registry.setClient(client);
+        registry.setThreadPool(threadPool);
+
+        final List<Long> loadedVersions = new ArrayList<>();
+        registry.loadAll(Collections.singletonList("r1"), PlainActionFuture.newFuture());
+        registry.whenLoadingCompleted("r1", () -> loadedVersions.add(registry.getLoadedVersion("r1")));
+        assertTrue(loadedVersions.isEmpty());
+
+        getListeners.get(0).onResponse(getResponse(storedRewriter("a =>\n SYNONYM: b"), 3L));
+        assertFalse(registry.isLoading("r1"));
+        assertEquals(Collections.singletonList(3L), loadedVersions);
+
+        // not loading, runs right away
+        registry.whenLoadingCompleted("r1", () -> loadedVersions.add(-1L));
+        assertEquals(Arrays.asList(3L, -1L), loadedVersions);
+    }
+
+    private static Map<String, Object> storedRewriter(final String rules) throws Exception {
+        final Map<String, Object> content = new HashMap<>();
+        content.put("class", CountingFactory.class.getName());
+        content.put("config", Collections.singletonMap("rules", rules));
+        return RewriterConfigMapping.toLuceneSource(content);
+    }
+
+    private static GetResponse getResponse(final Map<String, Object> source, final long version) {
+        final GetResponse response = mock(GetResponse.class);
+        when(response.getSource()).thenReturn(source);
+        when(response.getVersion()).thenReturn(version);
+        return response;
+    }
+
+    private static String largeRules(final int numRules) {
+        final StringBuilder rules = new StringBuilder();
+        for (int i = 0; i < numRules; i++) {
+            rules.append("a").append(i).append(" =>\n SYNONYM: b").append(i).append('\n');
+        }
+        return rules.toString();
+    }
+
+    public static class CountingFactory extends DummyOpenSearchRewriterFactory {
+
+        static final AtomicInteger CONFIGURE_CALLS = new AtomicInteger();
+
+        public CountingFactory(final String rewriterId) {
+            super(rewriterId);
+        }
+
+        @Override
+        public void configure(final Map<String, Object> config) {
+            CONFIGURE_CALLS.incrementAndGet();
+        }
+    }
+
+}
@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.stubbing.Answer;
+import org.opensearch.OpenSearchStatusException;
+import org.opensearch.cluster.metadata.IndexMetadata;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.core.index.shard.ShardId;
+import org.opensearch.core.rest.RestStatus;
+import org.opensearch.index.IndexService;
+import querqy.opensearch.RewriterFactoryRegistry.LoadedRewriter;
+import querqy.opensearch.stats.QuerqyStats;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class RewriterShardContextTest {
+
+    private RewriterFactoryRegistry registry;
+    private RewriterShardContext shardContext;
+
+    @Before
+    public void setUp() {
+        registry = mock(RewriterFactoryRegistry.class);
+        when(registry.getStats()).thenReturn(new QuerqyStats());
+        final Answer<LoadedRewriter> loadedRewriter = invocation -> {
+            final String rewriterId = invocation.getArgument(0);
+            return new LoadedRewriter(rewriterId, 1L, new DummyOpenSearchRewriterFactory(rewriterId), false);
+        };
+        when(registry.getLoadedOrStartLoading(anyString())).thenAnswer(loadedRewriter);
+        when(registry.getOrLoad(anyString())).thenAnswer(loadedRewriter);
+        shardContext = new RewriterShardContext(new ShardId("idx", "uuid", 0), mock(IndexService.class),
+                Settings.EMPTY, registry);
+    }
+
+    @Test
+    public void testThatRewriteChainIsCachedPerRewriterIdList() {
+        final RewriteChainAndLogging chain1 = shardContext.getRewriteChain(Arrays.asList("r1", "r2"));
+        assertSame(chain1, shardContext.getRewriteChain(Arrays.asList("r1", "r2")));
+        assertNotSame(chain1, shardContext.getRewriteChain(Arrays.asList("r2", "r1")));
+        assertNotSame(chain1, shardContext.getRewriteChain(Collections.singletonList("r1")));
+        verify(registry, times(1)).getLoadedOrStartLoading("r1");
+        verify(registry, times(1)).getLoadedOrStartLoading("r2");
+    }
+
+    @Test
+    public void testThatTheNumberOfCachedChainsIsBounded() {
+        for (int i = 0; i <= RewriterShardContext.MAX_CACHED_CHAINS; i++) {
+            shardContext.getRewriteChain(Arrays.asList("r1", "r" + i));
+        }
+        assertEquals(RewriterShardContext.MAX_CACHED_CHAINS, shardContext.chains.count());
+        assertEquals(1L, shardContext.chains.stats().getEvictions());
+    }
+
+    @Test
+    public void testThatCachedChainsExpireWithTheFactories() throws Exception {
+        shardContext = new RewriterShardContext(new ShardId("idx", "uuid", 0), mock(IndexService.class),
+                Settings.builder().put(RewriterShardContext.CACHE_EXPIRE_AFTER_WRITE.getKey(), "10ms").build(),
+                registry);
+        final RewriteChainAndLogging chain1 = shardContext.getRewriteChain(Collections.singletonList("r1"));
+        Thread.sleep(50L);
+        // a chain that is in use must not keep an expired factory
+        assertNotSame(chain1, shardContext.getRewriteChain(Collections.singletonList("r1")));
+        verify(registry, times(2)).getLoadedOrStartLoading("r1");
+    }
+
+    @Test
+    public void testThatChainAndFactoryCacheUsageIsCounted() {
+        shardContext.getRewriteChain(Arrays.asList("r1", "r2"));
+        shardContext.getRewriteChain(Arrays.asList("r1", "r2"));
+        shardContext.getRewriteChain(Collections.singletonList("r1"));
+
+        final QuerqyStats stats = registry.getStats();
+        assertEquals(1L, stats.getChainCacheUsage().getHits());
+        assertEquals(2L, stats.getChainCacheUsage().getMisses());
+        // the factory cache counts its own usage
+        assertEquals(1L, shardContext.getFactoryCacheStats().getHits());
+        // stats are only created for rewriters that were loaded
+        assertNotNull(stats.getRewriter("r1"));
+        assertNotNull(stats.getRewriter("r2"));
+        assertNull(stats.getRewriter("r3"));
+    }
+
+    @Test
+    public void testThatClearingAMemberRewriterInvalidatesTheChain() {
+        final RewriteChainAndLogging chain1 = shardContext.getRewriteChain(Arrays.asList("r1", "r2"));
+        shardContext.clearRewriter("r2");
+        final RewriteChainAndLogging chain2 = shardContext.getRewriteChain(Arrays.asList("r1", "r2"));
+        assertNotSame(chain1, chain2);
+        assertSame(chain2, shardContext.getRewriteChain(Arrays.asList("r1", "r2")));
+        verify(registry, times(2)).getLoadedOrStartLoading("r2");
+    }
+
+    @Test
+    public void testThatReloadingAMemberRewriterInvalidatesTheChain() {
+        final RewriteChainAndLogging chain1 = shardContext.getRewriteChain(Arrays.asList("r1", "r2"));
+        shardContext.reloadRewriter("r1");
+        assertNotSame(chain1, shardContext.getRewriteChain(Arrays.asList("r1", "r2")));
+    }
+
+    @Test
+    public void testThatReloadingKeepsTheCurrentFactoryUntilTheNewOneIsReady() {
+        final RewriterShardContext.RewriterFactoryAndLogging v1 = shardContext.loadFactory("r1", false);
+        when(registry.getOrLoad("r1")).thenAnswer(invocation -> {
+            // the previous version is still serving while the new version is being created
+            assertSame(v1, shardContext.factories.get("r1"));
+            return new LoadedRewriter("r1", 2L, new DummyOpenSearchRewriterFactory("r1"), false);
+        });
+        shardContext.reloadRewriter("r1");
+        assertEquals(2L, shardContext.factories.get("r1").version);
+    }
+
+    @Test
+    public void testThatAFactoryThatMissedAConcurrentReloadIsReplaced() {
+        // the registry returned version 1 but version 2 was swapped in before the factory was cached
+        when(registry.getLoadedVersion("r1")).thenReturn(2L);
+        when(registry.getLoadedOrStartLoading("r1")).thenReturn(
+                new LoadedRewriter("r1", 1L, new DummyOpenSearchRewriterFactory("r1"), false),
+                new LoadedRewriter("r1", 2L, new DummyOpenSearchRewriterFactory("r1"), false));
+
+        assertEquals(2L, shardContext.loadFactory("r1", false).version);
+        assertEquals(2L, shardContext.factories.get("r1").version);
+    }
+
+    @Test
+    public void testThatReloadingWithALoadedRewriterOnlyReplacesCachedFactories() {
+        shardContext.loadFactory("r1", false);
+        shardContext.reloadRewriter(new LoadedRewriter("r1", 2L, new DummyOpenSearchRewriterFactory("r1"), false));
+        shardContext.reloadRewriter(new LoadedRewriter("r2", 2L, new DummyOpenSearchRewriterFactory("r2"), false));
+        assertEquals(2L, shardContext.factories.get("r1").version);
+        assertNull(shardContext.factories.get("r2"));
+        verify(registry, times(1)).getLoadedOrStartLoading("r1");
+    }
+
+    @Test
+    public void testThatAMissingRewriterFailsFastOnTheQueryPath() {
+        when(registry.getLoadedOrStartLoading("r3")).thenThrow(new OpenSearchStatusException(
+                "Rewriter r3 hasn't been loaded on this node yet", RestStatus.SERVICE_UNAVAILABLE));
+        try {
+            shardContext.getRewriteChain(Arrays.asList("r1", "r3"));
+            fail("Expected the query to fail fast");
+        } catch (final OpenSearchStatusException e) {
+            assertEquals(RestStatus.SERVICE_UNAVAILABLE, e.status());
+        }
+        assertNull(shardContext.factories.get("r3"));
+        verify(registry, never()).getOrLoad(anyString());
+    }
+
+    @Test
+    public void testThatClearingAllRewritersInvalidatesTheChain() {
+        final RewriteChainAndLogging chain1 = shardContext.getRewriteChain(Collections.singletonList("r1"));
+        shardContext.clearRewriters();
+        assertNotSame(chain1, shardContext.getRewriteChain(Collections.singletonList("r1")));
+    }
+
+    @Test
+    public void testThatAReplacedQueryAnalyzerIsClosedOnceNoQueryUsesIt() {
+        final IndexMetadata indexMetadata = mock(IndexMetadata.class);
+        final IndexService indexService = mock(IndexService.class);
+        when(indexService.getMetadata()).thenReturn(indexMetadata);
+        shardContext = new RewriterShardContext(new ShardId("idx", "uuid", 0), indexService, Settings.EMPTY,
+                registry);
+
+        when(indexMetadata.getMappingVersion()).thenReturn(1L);
+        final SearchAnalyzerWrapper analyzer1 = shardContext.acquireQueryAnalyzer();
+        final SearchAnalyzerWrapper analyzer1b = shardContext.acquireQueryAnalyzer();
+        assertSame(analyzer1, analyzer1b);
+
+        when(indexMetadata.getMappingVersion()).thenReturn(2L);
+        final SearchAnalyzerWrapper analyzer2 = shardContext.acquireQueryAnalyzer();
+        assertNotSame(analyzer1, analyzer2);
+        assertEquals(2L, analyzer2.getMappingVersion());
+
+        analyzer1.decRef();
+        assertFalse(analyzer1.isClosed());
+        analyzer1b.decRef();
+        assertTrue(analyzer1.isClosed());
+
+        // still the current analyzer of the shard
+        analyzer2.decRef();
+        assertFalse(analyzer2.isClosed());
+    }
+
+    @Test
+    public void testThatTheQueryAnalyzerIsClosedWithTheContext() {
+        final IndexMetadata indexMetadata = mock(IndexMetadata.class);
+        when(indexMetadata.getMappingVersion()).thenReturn(1L);
+        final IndexService indexService = mock(IndexService.class);
+        when(indexService.getMetadata()).thenReturn(indexMetadata);
+        shardContext = new RewriterShardContext(new ShardId("idx", "uuid", 0), indexService, Settings.EMPTY,
+                registry);
+
+        final SearchAnalyzerWrapper analyzer = shardContext.acquireQueryAnalyzer();
+        shardContext.close();
+        // a running query keeps using it
+        assertFalse(analyzer.isClosed());
+        analyzer.decRef();
+        assertTrue(analyzer.isClosed());
+
+        // a query that started before the shard was closed gets an analyzer of its own
+        final SearchAnalyzerWrapper afterClose = shardContext.acquireQueryAnalyzer();
+        assertNotSame(analyzer, afterClose);
+        afterClose.decRef();
+        assertTrue(afterClose.isClosed());
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opensearch.OpenSearchException;
+import org.opensearch.common.cache.Cache;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.util.concurrent.OpenSearchExecutors;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.index.Index;
+import org.opensearch.core.index.shard.ShardId;
+import org.opensearch.index.IndexService;
+import org.opensearch.index.shard.IndexShard;
+import org.opensearch.indices.IndicesService;
+import org.opensearch.threadpool.ThreadPool;
+import querqy.opensearch.RewriterFactoryRegistry.LoadedRewriter;
+import querqy.opensearch.RewriterShardContexts.WarmupStatus;
+import querqy.opensearch.stats.NodeQuerqyStats;
+import querqy.opensearch.stats.QuerqyStats;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class RewriterShardContextsWarmupTest {
+
+    private final ShardId shardId = new ShardId(new Index("idx", "uuid"), 0);
+    private RewriterFactoryRegistry registry;
+    private RewriterShardContexts shardContexts;
+
+    @Before
+    public void setUp() {
+        registry = mock(RewriterFactoryRegistry.class);
+        when(registry.getStats()).thenReturn(new QuerqyStats());
+        when(registry.getCacheStats()).thenReturn(new Cache.CacheStats(0L, 0L, 0L));
+        when(registry.getLoadedOrStartLoading(anyString())).thenAnswer(invocation -> {
+            final String rewriterId = invocation.getArgument(0);
+            return new LoadedRewriter(rewriterId, 1L, new DummyOpenSearchRewriterFactory(rewriterId), false);
+        });
+
+        shardContexts = new RewriterShardContexts(Settings.builder()
+                .putList(RewriterShardContexts.WARMUP_REWRITERS.getKey(), "r1", "r2").build(), registry);
+
+        final IndicesService indicesService = mock(IndicesService.class);
+        when(indicesService.indexService(shardId.getIndex())).thenReturn(mock(IndexService.class));
+        shardContexts.setIndicesService(indicesService);
+
+        final ThreadPool threadPool = mock(ThreadPool.class);
+        when(threadPool.generic()).thenReturn(OpenSearchExecutors.newDirectExecutorService());
+        shardContexts.setThreadPool(threadPool);
+    }
+
+    @Test
+    public void testThatRewritersAreWarmedUpWhenShardIsStarted() {
+        onLoadAll(listener -> listener.onResponse(Collections.emptyList()));
+
+        shardContexts.afterIndexShardStarted(indexShard(shardId));
+
+        final WarmupStatus warmupStatus = shardContexts.getWarmupStatuses().get(shardId);
+        assertNotNull(warmupStatus);
+        assertEquals(WarmupStatus.State.READY, warmupStatus.getState());
+        assertTrue(warmupStatus.getTookMillis() >= 0L);
+        verify(registry).getLoadedOrStartLoading("r1");
+        verify(registry).getLoadedOrStartLoading("r2");
+
+        final NodeQuerqyStats.ShardWarmup shardWarmup = shardContexts.getNodeStats(Collections.emptyList())
+                .getWarmups().get(shardId.toString());
+        assertEquals("ready", shardWarmup.getState());
+        assertEquals(warmupStatus.getTookMillis(), shardWarmup.getTookMillis());
+    }
+
+    @Test
+    public void testThatShardIsWarmingUpUntilRewritersAreLoaded() {
+        // the rewriters are still being fetched
+        onLoadAll(listener -> { });
+
+        shardContexts.afterIndexShardStarted(indexShard(shardId));
+
+        assertEquals(WarmupStatus.State.WARMING_UP, shardContexts.getWarmupStatuses().get(shardId).getState());
+        final NodeQuerqyStats.ShardWarmup shardWarmup = shardContexts.getNodeStats(Collections.emptyList())
+                .getWarmups().get(shardId.toString());
+        assertEquals("warming_up", shardWarmup.getState());
+        assertEquals(-1L, shardWarmup.getTookMillis());
+        verify(registry, never()).getLoadedOrStartLoading(anyString());
+    }
+
+    @Test
+    public void testThatFailedWarmupIsReported() {
+        onLoadAll(listener -> listener.onFailure(new OpenSearchException("Rewriter not found: r2")));
+
+        shardContexts.afterIndexShardStarted(indexShard(shardId));
+
+        final WarmupStatus warmupStatus = shardContexts.getWarmupStatuses().get(shardId);
+        assertEquals(WarmupStatus.State.FAILED, warmupStatus.getState());
+        assertTrue(warmupStatus.getTookMillis() >= 0L);
+        assertEquals("failed", shardContexts.getNodeStats(Collections.emptyList()).getWarmups()
+                .get(shardId.toString()).getState());
+    }
+
+    @Test
+    public void testThatSystemIndicesAreNotWarmedUp() {
+        shardContexts.afterIndexShardStarted(indexShard(new ShardId(new Index(".querqy", "uuid2"), 0)));
+
+        assertTrue(shardContexts.getWarmupStatuses().isEmpty());
+        verify(registry, never()).loadAll(any(), any());
+    }
+
+    @Test
+    public void testThatWarmupStatusIsRemovedWhenShardIsClosed() {
+        onLoadAll(listener -> listener.onResponse(Collections.emptyList()));
+        final IndexShard indexShard = indexShard(shardId);
+        shardContexts.afterIndexShardStarted(indexShard);
+
+        shardContexts.afterIndexShardClosed(shardId, indexShard, Settings.EMPTY);
+
+        assertNull(shardContexts.getWarmupStatuses().get(shardId));
+        assertTrue(shardContexts.getNodeStats(Collections.emptyList()).getWarmups().isEmpty());
+    }
+
+    @Test
+    public void testThatRewritersArePreloadedOnlyIfAShardHasBeenStarted() {
+        onLoadAll(listener -> listener.onResponse(Collections.emptyList()));
+        final List<String> rewriterIds = List.of("r3");
+
+        // like on a coordinating-only node
+        assertTrue(shardContexts.getRewritersToPreload(rewriterIds).isEmpty());
+
+        shardContexts.afterIndexShardStarted(indexShard(new ShardId(new Index(".querqy", "uuid2"), 0)));
+        assertTrue(shardContexts.getRewritersToPreload(rewriterIds).isEmpty());
+
+        final IndexShard indexShard = indexShard(shardId);
+        shardContexts.afterIndexShardStarted(indexShard);
+        assertEquals(rewriterIds, shardContexts.getRewritersToPreload(rewriterIds));
+
+        when(registry.isLoaded("r3")).thenReturn(true);
+        assertTrue(shardContexts.getRewritersToPreload(rewriterIds).isEmpty());
+        when(registry.isLoaded("r3")).thenReturn(false);
+
+        shardContexts.afterIndexShardClosed(shardId, indexShard, Settings.EMPTY);
+        assertTrue(shardContexts.getRewritersToPreload(rewriterIds).isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onLoadAll(final Consumer<ActionListener<Collection<LoadedRewriter>>> answer) {
+        doAnswer(invocation -> {
+            answer.accept(invocation.getArgument(1));
+            return null;
+        }).when(registry).loadAll(eq(List.of("r1", "r2")), any(ActionListener.class));
+    }
+
+    private static IndexShard indexShard(final ShardId shardId) {
+        final IndexShard indexShard = mock(IndexShard.class);
+        when(indexShard.shardId()).thenReturn(shardId);
+        return indexShard;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opensearch.cluster.ClusterChangedEvent;
+import org.opensearch.cluster.ClusterName;
+import org.opensearch.cluster.ClusterState;
+import org.opensearch.cluster.metadata.Metadata;
+import querqy.opensearch.rewriterstore.RewritersMetadata;
+import querqy.opensearch.rewriterstore.RewritersMetadata.RewriterVersion;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class RewritersMetadataListenerTest {
+
+    private RewriterShardContexts rewriterShardContexts;
+    private RewriterFactoryRegistry registry;
+    // tasks that were handed off from the cluster applier thread
+    private List<Runnable> tasks;
+    private RewritersMetadataListener listener;
+
+    @Before
+    public void setUp() {
+        rewriterShardContexts = mock(RewriterShardContexts.class);
+        registry = mock(RewriterFactoryRegistry.class);
+        when(registry.getLoadedVersion(anyString())).thenReturn(-1L);
+        tasks = new ArrayList<>();
+        listener = new RewritersMetadataListener(rewriterShardContexts, registry, tasks::add);
+    }
+
+    @Test
+    public void testThatARewriterWithAStaleLoadedVersionIsReloaded() {
+        loaded("r1", 1L);
+        loaded("r2", 3L);
+
+        listener.clusterChanged(event(rewriters("r1", 1L, "r2", 3L), rewriters("r1", 2L, "r2", 3L)));
+
+        runTasks();
+        verify(rewriterShardContexts).reloadRewriters(Collections.singletonList("r1"));
+        verify(rewriterShardContexts, never()).clearRewriter(anyString());
+    }
+
+    @Test
+    public void testThatRewritersThatWereNotLoadedOnThisNodeAreNotReloaded() {
+        loaded("r1", 2L);
+
+        listener.clusterChanged(event(rewriters("r1", 2L), rewriters("r1", 2L, "r2", 1L)));
+        listener.clusterChanged(event(rewriters("r1", 2L, "r2", 1L), rewriters("r1", 2L, "r2", 2L)));
+
+        assertTrue(tasks.isEmpty());
+        verifyNoInteractions(rewriterShardContexts);
+    }
+
+    @Test
+    public void testThatARewriterThatIsBeingLoadedIsCheckedAgainAfterTheLoad() {
+        loaded("r1", 1L);
+        when(registry.isLoading("r1")).thenReturn(true);
+        final List<Runnable> whenLoaded = captureWhenLoadingCompleted("r1");
+
+        listener.clusterChanged(event(rewriters("r1", 1L), rewriters("r1", 2L)));
+        runTasks();
+
+        verify(rewriterShardContexts, never()).reloadRewriters(anyCollection());
+        assertEquals(1, whenLoaded.size());
+
+        // the load had fetched the previous version
+        when(registry.isLoading("r1")).thenReturn(false);
+        whenLoaded.get(0).run();
+        runTasks();
+
+        verify(rewriterShardContexts).reloadRewriters(Collections.singletonList("r1"));
+    }
+
+    @Test
+    public void testThatARewriterThatWasLoadedInTheCurrentVersionIsNotReloadedAfterTheLoad() {
+        loaded("r1", 1L);
+        when(registry.isLoading("r1")).thenReturn(true);
+        final List<Runnable> whenLoaded = captureWhenLoadingCompleted("r1");
+
+        listener.clusterChanged(event(rewriters("r1", 1L), rewriters("r1", 2L)));
+        runTasks();
+
+        when(registry.isLoading("r1")).thenReturn(false);
+        loaded("r1", 2L);
+        whenLoaded.get(0).run();
+        runTasks();
+
+        verify(rewriterShardContexts, never()).reloadRewriters(anyCollection());
+    }
+
+    @Test
+    public void testThatALoadingRewriterWithAnUnchangedVersionIsNotCheckedAgain() {
+        loaded("r1", 1L);
+        loaded("r2", 1L);
+        when(registry.isLoading("r1")).thenReturn(true);
+
+        listener.clusterChanged(event(rewriters("r1", 1L, "r2", 1L), rewriters("r1", 1L)));
+        runTasks();
+
+        verify(registry, never()).whenLoadingCompleted(anyString(), any());
+    }
+
+    @Test
+    public void testThatRemovedRewritersAreCleared() {
+        loaded("r1", 1L);
+        loaded("r2", 1L);
+
+        listener.clusterChanged(event(rewriters("r1", 1L, "r2", 1L, "r3", 1L), rewriters("r1", 1L)));
+
+        runTasks();
+        verify(rewriterShardContexts).clearRewriter("r2");
+        // r3 wasn't loaded on this node
+        verify(rewriterShardContexts, never()).clearRewriter("r3");
+        verify(rewriterShardContexts, never()).clearRewriter("r1");
+        verify(rewriterShardContexts, never()).reloadRewriters(anyCollection());
+    }
+
+    @Test
+    public void testThatClusterChangedNeverLoadsOnTheApplierThread() {
+        loaded("r1", 1L);
+        loaded("r2", 1L);
+
+        listener.clusterChanged(event(rewriters("r1", 1L, "r2", 1L), rewriters("r1", 2L)));
+
+        // nothing has been cleared or loaded before the task runs on the executor
+        assertEquals(1, tasks.size());
+        verifyNoInteractions(rewriterShardContexts);
+        verify(registry, never()).getOrLoad(anyString());
+        verify(registry, never()).reloadIfLoaded(anyString());
+        verify(registry, never()).reloadAllIfLoaded(anyCollection());
+        verify(registry, never()).loadAll(anyCollection(), any());
+
+        runTasks();
+        verify(rewriterShardContexts).clearRewriter("r2");
+        verify(rewriterShardContexts).reloadRewriters(Collections.singletonList("r1"));
+    }
+
+    @Test
+    public void testThatAReloadInTheMeantimeIsNotRepeated() {
+        loaded("r1", 1L);
+
+        listener.clusterChanged(event(rewriters("r1", 1L), rewriters("r1", 2L)));
+        // a reload request was faster than the executor
+        loaded("r1", 2L);
+        runTasks();
+
+        verify(rewriterShardContexts, never()).reloadRewriters(anyCollection());
+    }
+
+    private void loaded(final String rewriterId, final long version) {
+        when(registry.isLoaded(rewriterId)).thenReturn(true);
+        when(registry.getLoadedVersion(rewriterId)).thenReturn(version);
+    }
+
+    private List<Runnable> captureWhenLoadingCompleted(final String rewriterId) {
+        final List<Runnable> actions = new ArrayList<>();
+        doAnswer(invocation -> actions.add(invocation.getArgument(1)))
+                .when(registry).whenLoadingCompleted(eq(rewriterId), any());
+        return actions;
+    }
+
+    private void runTasks() {
+        final List<Runnable> toRun = new ArrayList<>(tasks);
+        tasks.clear();
+        toRun.forEach(Runnable::run);
+    }
+
+    private static ClusterChangedEvent event(final RewritersMetadata previous, final RewritersMetadata current) {
+        return new ClusterChangedEvent("test", clusterState(current), clusterState(previous));
+    }
+
+    private static ClusterState clusterState(final RewritersMetadata rewritersMetadata) {
+        return ClusterState.builder(ClusterName.DEFAULT)
+                .metadata(Metadata.builder().putCustom(RewritersMetadata.TYPE, rewritersMetadata))
+                .build();
+    }
+
+    private static RewritersMetadata rewriters(final Object... idsAndVersions) {
+        final Map<String, RewriterVersion> rewriters = new HashMap<>();
+        for (int i = 0; i < idsAndVersions.length; i += 2) {
+            rewriters.put((String) idsAndVersions[i], new RewriterVersion((Long) idsAndVersions[i + 1], null));
+        }
+        return new RewritersMetadata(rewriters);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import querqy.model.ExpandedQuery;
+import querqy.opensearch.query.MatchingQuery;
+import querqy.opensearch.query.QuerqyQueryBuilder;
+import querqy.opensearch.query.Rewriter;
+import querqy.parser.WhiteSpaceQuerqyParser;
+import querqy.rewrite.RewriteChain;
+
+import java.util.Collections;
+
+public class RewrittenQueryCacheTest {
+
+    @Test
+    public void testThatEqualQueryBuildersShareTheEntry() {
+        final RewrittenQueryCache cache = new RewrittenQueryCache(10);
+        final RewriteChainAndLogging chain = chain(false);
+        final ExpandedQuery query = query("a");
+
+        cache.put(builder("a"), chain, null, query);
+
+        assertSame(query, cache.get(builder("a"), chain, null));
+        assertNull(cache.get(builder("b"), chain, null));
+        assertEquals(1L, cache.stats().getHits());
+        assertEquals(1L, cache.stats().getMisses());
+    }
+
+    @Test
+    public void testThatEntriesAreScopedToTheRewriteChain() {
+        final RewrittenQueryCache cache = new RewrittenQueryCache(10);
+        cache.put(builder("a"), chain(false), null, query("a"));
+        assertNull(cache.get(builder("a"), chain(false), null));
+    }
+
+    @Test
+    public void testThatEntriesAreScopedToTheReaderCacheKey() {
+        final RewrittenQueryCache cache = new RewrittenQueryCache(10);
+        final RewriteChainAndLogging chain = chain(true);
+        final Object readerKey = new Object();
+        final ExpandedQuery query = query("a");
+
+        cache.put(builder("a"), chain, readerKey, query);
+
+        assertSame(query, cache.get(builder("a"), chain, readerKey));
+        assertNull(cache.get(builder("a"), chain, new Object()));
+    }
+
+    @Test
+    public void testThatCacheIsBoundedBySize() {
+        final RewrittenQueryCache cache = new RewrittenQueryCache(2);
+        final RewriteChainAndLogging chain = chain(false);
+        cache.put(builder("a"), chain, null, query("a"));
+        cache.put(builder("b"), chain, null, query("b"));
+        cache.put(builder("c"), chain, null, query("c"));
+        assertEquals(2L, cache.count());
+        assertEquals(1L, cache.stats().getEvictions());
+    }
+
+    private static RewriteChainAndLogging chain(final boolean readerDependent) {
+        return new RewriteChainAndLogging(new RewriteChain(Collections.emptyList()), Collections.emptySet(),
+                readerDependent, Collections.singletonList(1L));
+    }
+
+    private static ExpandedQuery query(final String queryString) {
+        return new ExpandedQuery(new WhiteSpaceQuerqyParser().parse(queryString));
+    }
+
+    private static QuerqyQueryBuilder builder(final String queryString) {
+        final QuerqyQueryBuilder builder = new QuerqyQueryBuilder();
+        builder.setMatchingQuery(new MatchingQuery(queryString));
+        builder.setQueryFieldsAndBoostings(Collections.singletonList("f1"));
+        builder.setRewriters(Collections.singletonList(new Rewriter("r1")));
+        return builder;
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.junit.Test;
+import org.opensearch.index.analysis.AnalyzerScope;
+import org.opensearch.index.analysis.IndexAnalyzers;
+import org.opensearch.index.analysis.NamedAnalyzer;
+import org.opensearch.index.mapper.MappedFieldType;
+import org.opensearch.index.mapper.MapperService;
+import org.opensearch.index.mapper.TextSearchInfo;
+
+public class SearchAnalyzerWrapperTest {
+
+    @Test
+    public void testThatFieldAnalyzerIsLookedUpOnce() {
+        final NamedAnalyzer keywordAnalyzer = new NamedAnalyzer("keyword", AnalyzerScope.INDEX, new KeywordAnalyzer());
+        final MapperService mapperService = mapperService("f1", keywordAnalyzer);
+
+        final SearchAnalyzerWrapper wrapper = new SearchAnalyzerWrapper(mapperService, 3L);
+        assertSame(keywordAnalyzer, wrapper.getWrappedAnalyzer("f1"));
+        assertSame(keywordAnalyzer, wrapper.getWrappedAnalyzer("f1"));
+        assertEquals(3L, wrapper.getMappingVersion());
+
+        verify(mapperService, times(1)).fieldType("f1");
+    }
+
+    @Test
+    public void testThatUnmappedFieldsUseTheDefaultSearchAnalyzer() {
+        final NamedAnalyzer keywordAnalyzer = new NamedAnalyzer("keyword", AnalyzerScope.INDEX, new KeywordAnalyzer());
+        final MapperService mapperService = mapperService("f1", keywordAnalyzer);
+        final NamedAnalyzer defaultAnalyzer = mapperService.getIndexAnalyzers().getDefaultSearchAnalyzer();
+
+        final SearchAnalyzerWrapper wrapper = new SearchAnalyzerWrapper(mapperService, 1L);
+        assertSame(defaultAnalyzer, wrapper.getWrappedAnalyzer("f2"));
+    }
+
+    @Test
+    public void testThatTheLastReferenceClosesTheAnalyzer() {
+        final SearchAnalyzerWrapper wrapper = new SearchAnalyzerWrapper(mock(MapperService.class), 1L);
+        assertTrue(wrapper.tryIncRef());
+        wrapper.decRef();
+        assertFalse(wrapper.isClosed());
+        wrapper.decRef();
+        assertTrue(wrapper.isClosed());
+        assertFalse(wrapper.tryIncRef());
+    }
+
+    private static MapperService mapperService(final String fieldName, final NamedAnalyzer searchAnalyzer) {
+        final TextSearchInfo textSearchInfo = mock(TextSearchInfo.class);
+        when(textSearchInfo.getSearchAnalyzer()).thenReturn(searchAnalyzer);
+        final MappedFieldType fieldType = mock(MappedFieldType.class);
+        when(fieldType.getTextSearchInfo()).thenReturn(textSearchInfo);
+
+        final IndexAnalyzers indexAnalyzers = mock(IndexAnalyzers.class);
+        when(indexAnalyzers.getDefaultSearchAnalyzer())
+                .thenReturn(new NamedAnalyzer("default", AnalyzerScope.INDEX, new StandardAnalyzer()));
+
+        final MapperService mapperService = mock(MapperService.class);
+        when(mapperService.fieldType(fieldName)).thenReturn(fieldType);
+        when(mapperService.getIndexAnalyzers()).thenReturn(indexAnalyzers);
+        return mapperService;
+    }
+
+}
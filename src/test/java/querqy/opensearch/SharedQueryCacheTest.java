@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import querqy.model.ExpandedQuery;
+import querqy.opensearch.query.MatchingQuery;
+import querqy.opensearch.query.QuerqyQueryBuilder;
+import querqy.opensearch.query.Rewriter;
+import querqy.parser.WhiteSpaceQuerqyParser;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class SharedQueryCacheTest {
+
+    private static final List<Long> VERSIONS = Arrays.asList(1L, 4L);
+
+    @Test
+    public void testThatKeysOfEqualQueriesAreEqual() {
+        final SharedQueryCache.Key key1 = new SharedQueryCache.Key(builder("a"), VERSIONS);
+        final SharedQueryCache.Key key2 = new SharedQueryCache.Key(builder("a"), Arrays.asList(1L, 4L));
+        assertEquals(key1, key2);
+        assertEquals(key1.hashCode(), key2.hashCode());
+    }
+
+    @Test
+    public void testThatKeysAreScopedToQueryAndRewriterVersions() {
+        final SharedQueryCache.Key key = new SharedQueryCache.Key(builder("a"), VERSIONS);
+        assertNotEquals(key, new SharedQueryCache.Key(builder("b"), VERSIONS));
+        assertNotEquals(key, new SharedQueryCache.Key(builder("a"), Arrays.asList(1L, 5L)));
+    }
+
+    @Test
+    public void testThatRewrittenQueriesAreShared() {
+        final SharedQueryCache cache = new SharedQueryCache(10);
+        final ExpandedQuery rewrittenQuery = new ExpandedQuery(new WhiteSpaceQuerqyParser().parse("a"));
+
+        assertNull(cache.get(builder("a"), VERSIONS));
+        cache.put(builder("a"), VERSIONS, rewrittenQuery);
+
+        assertSame(rewrittenQuery, cache.get(builder("a"), Arrays.asList(1L, 4L)));
+        assertNull(cache.get(builder("a"), Arrays.asList(2L, 4L)));
+        assertEquals(1L, cache.count());
+    }
+
+    private static QuerqyQueryBuilder builder(final String queryString) {
+        final QuerqyQueryBuilder builder = new QuerqyQueryBuilder();
+        builder.setMatchingQuery(new MatchingQuery(queryString));
+        builder.setQueryFieldsAndBoostings(Collections.singletonList("f1"));
+        builder.setRewriters(Arrays.asList(new Rewriter("r1"), new Rewriter("r2")));
+        return builder;
+    }
+
+}
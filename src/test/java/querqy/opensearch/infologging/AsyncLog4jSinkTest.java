@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch.infologging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.message.Message;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import querqy.opensearch.DismaxSearchEngineRequestAdapter;
+import querqy.opensearch.query.InfoLoggingSpec;
+
+import java.util.HashMap;
+import java.util.Optional;
+
+public class AsyncLog4jSinkTest {
+
+    private Logger logger;
+
+    @Before
+    public void setUp() {
+        logger = mock(Logger.class);
+    }
+
+    @Test
+    public void testThatTheBufferSizeIsRoundedUpToAPowerOfTwo() {
+        assertEquals(2, new AsyncLog4jSink(logger, 2, AsyncLog4jSink.OverflowPolicy.DROP).getCapacity());
+        assertEquals(8, new AsyncLog4jSink(logger, 5, AsyncLog4jSink.OverflowPolicy.DROP).getCapacity());
+        assertEquals(8192, new AsyncLog4jSink(logger, 8192, AsyncLog4jSink.OverflowPolicy.DROP).getCapacity());
+    }
+
+    @Test
+    public void testThatMessagesAreWrittenWhenTheBufferIsDrained() {
+        final AsyncLog4jSink sink = new AsyncLog4jSink(logger, 4, AsyncLog4jSink.OverflowPolicy.DROP);
+
+        final DismaxSearchEngineRequestAdapter adapter = adapter(LogPayloadType.DETAIL, "req-1");
+        sink.log("m1", "r2", adapter);
+        sink.log("m2", "r1", adapter);
+        sink.log("m3", "r2", adapter);
+        sink.endOfRequest(adapter);
+
+        verify(logger, never()).info(any(Marker.class), any(Message.class));
+        assertTrue(adapter.getContext().isEmpty());
+
+        sink.drain();
+
+        final ArgumentCaptor<Message> message = ArgumentCaptor.forClass(Message.class);
+        verify(logger).info(eq(Log4jSink.MARKER_QUERQY_REWRITER_DETAIL), message.capture());
+        assertEquals("{\"id\":\"req-1\",\"msg\":{\"r1\":[\"m2\"],\"r2\":[\"m1\",\"m3\"]}}",
+                message.getValue().getFormattedMessage());
+        assertEquals(1L, sink.getLoggedCount());
+    }
+
+    @Test
+    public void testThatRequestsAreDroppedIfTheBufferIsFull() {
+        final AsyncLog4jSink sink = new AsyncLog4jSink(logger, 2, AsyncLog4jSink.OverflowPolicy.DROP);
+
+        for (int i = 0; i < 3; i++) {
+            final DismaxSearchEngineRequestAdapter adapter = adapter(LogPayloadType.REWRITER_ID, "req-" + i);
+            sink.log("m", "r1", adapter);
+            sink.endOfRequest(adapter);
+        }
+
+        sink.drain();
+        verify(logger, times(2)).info(eq(Log4jSink.MARKER_QUERQY_REWRITER_ID), any(Message.class));
+        assertEquals(2L, sink.getLoggedCount());
+        assertEquals(1L, sink.getOverflowCount());
+        assertEquals(1L, sink.getDroppedCount());
+
+        // the slots can be reused once they have been drained
+        final DismaxSearchEngineRequestAdapter adapter = adapter(LogPayloadType.REWRITER_ID, "req-3");
+        sink.log("m", "r1", adapter);
+        sink.endOfRequest(adapter);
+        sink.drain();
+        assertEquals(3L, sink.getLoggedCount());
+    }
+
+    @Test
+    public void testThatRequestsAreWrittenByTheCallerIfTheBufferIsFullAndOverflowIsSync() {
+        final AsyncLog4jSink sink = new AsyncLog4jSink(logger, 2, AsyncLog4jSink.OverflowPolicy.SYNC);
+
+        for (int i = 0; i < 3; i++) {
+            final DismaxSearchEngineRequestAdapter adapter = adapter(LogPayloadType.REWRITER_ID, "req-" + i);
+            sink.log("m", "r1", adapter);
+            sink.endOfRequest(adapter);
+        }
+
+        final ArgumentCaptor<Message> message = ArgumentCaptor.forClass(Message.class);
+        verify(logger).info(eq(Log4jSink.MARKER_QUERQY_REWRITER_ID), message.capture());
+        assertEquals("{\"id\":\"req-2\",\"msg\":[\"r1\"]}", message.getValue().getFormattedMessage());
+        assertEquals(1L, sink.getOverflowCount());
+        assertEquals(0L, sink.getDroppedCount());
+
+        sink.drain();
+        assertEquals(3L, sink.getLoggedCount());
+    }
+
+    @Test
+    public void testThatNothingIsWrittenWithoutPayloadType() {
+        final AsyncLog4jSink sink = new AsyncLog4jSink(logger, 2, AsyncLog4jSink.OverflowPolicy.DROP);
+        final DismaxSearchEngineRequestAdapter adapter = adapter(LogPayloadType.NONE, "req-1");
+        sink.log("m", "r1", adapter);
+        sink.endOfRequest(adapter);
+        sink.drain();
+        verify(logger, never()).info(any(Marker.class), any(Message.class));
+        assertEquals(0L, sink.getLoggedCount());
+    }
+
+    @Test
+    public void testParseOverflowPolicy() {
+        assertEquals(AsyncLog4jSink.OverflowPolicy.SYNC, AsyncLog4jSink.OverflowPolicy.parse("sync"));
+        assertEquals(AsyncLog4jSink.OverflowPolicy.DROP, AsyncLog4jSink.OverflowPolicy.parse("DROP"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatUnknownOverflowPolicyIsRejected() {
+        AsyncLog4jSink.OverflowPolicy.parse("block");
+    }
+
+    private static DismaxSearchEngineRequestAdapter adapter(final LogPayloadType payloadType, final String id) {
+        final DismaxSearchEngineRequestAdapter adapter = mock(DismaxSearchEngineRequestAdapter.class);
+        when(adapter.getContext()).thenReturn(new HashMap<>());
+        when(adapter.getInfoLoggingSpec()).thenReturn(Optional.of(new InfoLoggingSpec(payloadType, id)));
+        return adapter;
+    }
+}
@@ -137,10 +137,47 @@ public class InfoLoggingMultiShardIntegrationTest extends OpenSearchIntegTestCas
     }
 
     @Test
-    public void testThatMessageGetsLoggedOncePerShard() throws Exception {
+    public void testThatMessageGetsLoggedOncePerRequest() throws Exception {
 
         index();
+        putRewriter();
 
+        final QuerqyQueryBuilder querqyQuery = querqyQuery();
+        searchUntilRewritten(querqyQuery);
+
+        final List<LogEvent> events = APPENDER.getEvents();
+        assertNotNull(events);
+        // only the first shard in the shard list of the request logs, whichever node it is on
+        assertEquals(1, events.size());
+        LogEvent event = events.get(0);
+        assertEquals("{\"id\":\"query-detail\",\"msg\":{\"common_rules\":[{\"APPLIED_RULES\":[\"msg1\"]}]}}",
+                event.getMessage().getFormattedMessage());
+
+        assertEquals(Log4jSink.MARKER_QUERQY_REWRITER_DETAIL, event.getMarker());
+
+    }
+
+    @Test
+    public void testThatMessageGetsLoggedIfTheRequestDoesNotTargetShard0() throws Exception {
+
+        index();
+        putRewriter();
+
+        final QuerqyQueryBuilder querqyQuery = querqyQuery();
+        searchUntilRewritten(querqyQuery);
+
+        APPENDER.clear();
+        client().prepareSearch(INDEX_NAME).setQuery(querqyQuery).setPreference("_shards:1").execute().get();
+        assertEquals(1, APPENDER.getEvents().size());
+
+        APPENDER.clear();
+        // routes the request to a single shard, which might not be shard 0
+        client().prepareSearch(INDEX_NAME).setQuery(querqyQuery).setRouting("r1").execute().get();
+        assertEquals(1, APPENDER.getEvents().size());
+
+    }
+
+    private void putRewriter() throws Exception {
         final Map<String, Object> content = new HashMap<>();
         content.put("class", querqy.opensearch.rewriter.SimpleCommonRulesRewriterFactory.class.getName());
         final Map<String, Object> loggingConf = new HashMap<>();
@@ -156,16 +193,19 @@ public class InfoLoggingMultiShardIntegrationTest extends OpenSearchIntegTestCas
         final PutRewriterRequest request = new PutRewriterRequest("common_rules", content);
 
         client().execute(PutRewriterAction.INSTANCE, request).get();
+    }
 
-        QuerqyQueryBuilder querqyQuery = new QuerqyQueryBuilder();
+    private static QuerqyQueryBuilder querqyQuery() {
+        final QuerqyQueryBuilder querqyQuery = new QuerqyQueryBuilder();
         querqyQuery.setRewriters(Collections.singletonList(new Rewriter("common_rules")));
         querqyQuery.setMatchingQuery(new MatchingQuery("a k"));
         querqyQuery.setQueryFieldsAndBoostings(Arrays.asList("field1", "field2"));
         querqyQuery.setMinimumShouldMatch("1");
         querqyQuery.setInfoLoggingSpec(new InfoLoggingSpec(LogPayloadType.DETAIL, "query-detail"));
+        return querqyQuery;
+    }
 
-
-
+    private void searchUntilRewritten(final QuerqyQueryBuilder querqyQuery) throws Exception {
         int attempts = 10;
 
         while (attempts > 0) {
@@ -185,17 +225,6 @@ public class InfoLoggingMultiShardIntegrationTest extends OpenSearchIntegTestCas
                 }
             }
         }
-
-        final List<LogEvent> events = APPENDER.getEvents();
-        assertNotNull(events);
-        // max 1 event per shard
-        assertTrue((2 >= events.size()) && (!events.isEmpty()));
-        LogEvent event = events.get(0);
-        assertEquals("{\"id\":\"query-detail\",\"msg\":{\"common_rules\":[{\"APPLIED_RULES\":[\"msg1\"]}]}}",
-                event.getMessage().getFormattedMessage());
-
-        assertEquals(Log4jSink.MARKER_QUERQY_REWRITER_DETAIL, event.getMarker());
-
     }
 
 }
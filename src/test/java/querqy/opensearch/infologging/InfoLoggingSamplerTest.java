@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch.infologging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import querqy.opensearch.RewriteChainAndLogging;
+import querqy.rewrite.RewriteChain;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class InfoLoggingSamplerTest {
+
+    @Test
+    public void testThatNoSamplerIsCreatedIfAllRequestsAreLogged() {
+        assertNull(InfoLoggingSampler.fromConfig(null));
+        assertNull(InfoLoggingSampler.fromConfig(Collections.emptyMap()));
+        assertNull(InfoLoggingSampler.fromConfig(config(1.0, "random", null)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatRateMustNotBeGreaterThanOne() {
+        InfoLoggingSampler.fromConfig(config(1.5, null, null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatUnknownSamplingTypeIsRejected() {
+        InfoLoggingSampler.fromConfig(config(0.5, "shard", null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatMaxPerSecondMustNotBeNegative() {
+        InfoLoggingSampler.fromConfig(config(null, null, -1));
+    }
+
+    @Test
+    public void testThatRateZeroLogsNothing() {
+        final InfoLoggingSampler sampler = InfoLoggingSampler.fromConfig(config(0.0, null, null));
+        assertNotNull(sampler);
+        for (int i = 0; i < 100; i++) {
+            assertFalse(sampler.sample("id-" + i));
+        }
+    }
+
+    @Test
+    public void testThatSamplingByIdIsDeterministic() {
+        final InfoLoggingSampler sampler1 = InfoLoggingSampler.fromConfig(config(0.3, "id", null));
+        final InfoLoggingSampler sampler2 = InfoLoggingSampler.fromConfig(config(0.3, "id", null));
+        int sampled = 0;
+        for (int i = 0; i < 10_000; i++) {
+            final boolean sample = sampler1.sample("request-" + i);
+            assertEquals(sample, sampler1.sample("request-" + i));
+            assertEquals(sample, sampler2.sample("request-" + i));
+            if (sample) {
+                sampled++;
+            }
+        }
+        assertTrue("sampled: " + sampled, sampled > 2700 && sampled < 3300);
+    }
+
+    @Test
+    public void testThatTheTokenBucketLimitsTheRate() {
+        final long[] now = {0L};
+        final InfoLoggingSampler sampler = new InfoLoggingSampler(1.0, InfoLoggingSampler.By.RANDOM, 2.0, 2,
+                () -> now[0]);
+
+        assertTrue(sampler.sample(null));
+        assertTrue(sampler.sample(null));
+        assertFalse(sampler.sample(null));
+
+        now[0] = 500_000_000L;
+        assertTrue(sampler.sample(null));
+        assertFalse(sampler.sample(null));
+
+        now[0] = 10_000_000_000L;
+        // the bucket never holds more than the burst
+        assertTrue(sampler.sample(null));
+        assertTrue(sampler.sample(null));
+        assertFalse(sampler.sample(null));
+    }
+
+    @Test
+    public void testThatUnsampledRewritersAreNotEnabledForLogging() {
+        final Map<String, InfoLoggingSampler> samplers = new HashMap<>();
+        samplers.put("r2", InfoLoggingSampler.fromConfig(config(0.0, null, null)));
+        final RewriteChainAndLogging rewriteChainAndLogging = new RewriteChainAndLogging(
+                new RewriteChain(Collections.emptyList()), new HashSet<>(Arrays.asList("r1", "r2")), samplers, false,
+                Collections.emptyList());
+
+        final Set<String> sampled = rewriteChainAndLogging.sampleRewritersForLogging("id");
+        assertEquals(Collections.singleton("r1"), sampled);
+    }
+
+    private static Map<String, Object> config(final Double rate, final String by, final Integer maxPerSecond) {
+        final Map<String, Object> config = new HashMap<>();
+        if (rate != null) {
+            config.put(InfoLoggingSampler.CONFIG_RATE, rate);
+        }
+        if (by != null) {
+            config.put(InfoLoggingSampler.CONFIG_BY, by);
+        }
+        if (maxPerSecond != null) {
+            config.put(InfoLoggingSampler.CONFIG_MAX_PER_SECOND, maxPerSecond);
+        }
+        return config;
+    }
+}
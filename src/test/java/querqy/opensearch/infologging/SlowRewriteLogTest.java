@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch.infologging;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.message.Message;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.opensearch.common.settings.Settings;
+import querqy.lucene.LuceneSearchEngineRequestAdapter;
+import querqy.model.ExpandedQuery;
+import querqy.parser.WhiteSpaceQuerqyParser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+public class SlowRewriteLogTest {
+
+    private Logger logger;
+    private long now;
+    private SlowRewriteLog slowRewriteLog;
+    private LuceneSearchEngineRequestAdapter requestAdapter;
+    private ExpandedQuery output;
+
+    @Before
+    public void setUp() {
+        logger = mock(Logger.class);
+        now = 0L;
+        slowRewriteLog = new SlowRewriteLog(logger, () -> now);
+        requestAdapter = mock(LuceneSearchEngineRequestAdapter.class);
+        when(requestAdapter.getContext()).thenReturn(new HashMap<>());
+        when(requestAdapter.getQueryString()).thenReturn("a b c");
+        output = new ExpandedQuery(new WhiteSpaceQuerqyParser().parse("a b c"));
+    }
+
+    @Test
+    public void testThatNothingIsLoggedByDefault() {
+        slowRewriteLog.onRewrite("r1", Long.MAX_VALUE - 1L, requestAdapter, output);
+        slowRewriteLog.onRewriteChainEnd(requestAdapter);
+        verify(logger, never()).log(any(Level.class), any(Marker.class), any(Message.class));
+    }
+
+    @Test
+    public void testThatRewritesAreLoggedAtTheLevelOfTheHighestThresholdExceeded() {
+        slowRewriteLog.applySettings(Settings.builder()
+                .put(SlowRewriteLog.REWRITER_INFO_THRESHOLD.getKey(), "1ms")
+                .put(SlowRewriteLog.REWRITER_WARN_THRESHOLD.getKey(), "10ms")
+                .build());
+
+        slowRewriteLog.onRewrite("r1", 999_999L, requestAdapter, output);
+        slowRewriteLog.onRewrite("r1", 1_000_000L, requestAdapter, output);
+        slowRewriteLog.onRewrite("r1", 10_000_000L, requestAdapter, output);
+
+        final ArgumentCaptor<Message> messages = ArgumentCaptor.forClass(Message.class);
+        verify(logger).log(eq(Level.INFO), eq(Log4jSink.MARKER_QUERQY_SLOW_REWRITE), messages.capture());
+        verify(logger).log(eq(Level.WARN), eq(Log4jSink.MARKER_QUERQY_SLOW_REWRITE), messages.capture());
+
+        assertEquals("{\"rewriter\":\"r1\",\"query_hash\":\"" + Integer.toHexString("a b c".hashCode())
+                        + "\",\"took_nanos\":1000000,\"expanded_query_size\":3}",
+                messages.getAllValues().get(0).getFormattedMessage());
+        assertEquals(2L, slowRewriteLog.getLoggedCount());
+    }
+
+    @Test
+    public void testThatRewriterThresholdsCanBeOverridden() {
+        slowRewriteLog.applySettings(Settings.builder()
+                .put(SlowRewriteLog.REWRITER_WARN_THRESHOLD.getKey(), "10ms")
+                .put("querqy.slowlog.rewrite.rewriter.r2.threshold.warn", "1ms")
+                .build());
+
+        slowRewriteLog.onRewrite("r1", 5_000_000L, requestAdapter, output);
+        slowRewriteLog.onRewrite("r2", 5_000_000L, requestAdapter, output);
+
+        final ArgumentCaptor<Message> messages = ArgumentCaptor.forClass(Message.class);
+        verify(logger).log(eq(Level.WARN), eq(Log4jSink.MARKER_QUERQY_SLOW_REWRITE), messages.capture());
+        assertEquals(1, messages.getAllValues().size());
+        assertEquals("r2", ((SlowRewriteLog.Entry) messages.getValue()).rewriterId);
+    }
+
+    @Test
+    public void testThatTheRewriteChainIsLogged() {
+        slowRewriteLog.applySettings(Settings.builder()
+                .put(SlowRewriteLog.CHAIN_WARN_THRESHOLD.getKey(), "3ms")
+                .build());
+
+        slowRewriteLog.onRewrite("r1", 2_000_000L, requestAdapter, new ExpandedQuery(
+                new WhiteSpaceQuerqyParser().parse("a")));
+        slowRewriteLog.onRewrite("r2", 2_000_000L, requestAdapter, output);
+        slowRewriteLog.onRewriteChainEnd(requestAdapter);
+
+        final ArgumentCaptor<Message> messages = ArgumentCaptor.forClass(Message.class);
+        verify(logger).log(eq(Level.WARN), eq(Log4jSink.MARKER_QUERQY_SLOW_REWRITE), messages.capture());
+        final SlowRewriteLog.Entry entry = (SlowRewriteLog.Entry) messages.getValue();
+        assertEquals(SlowRewriteLog.CHAIN, entry.rewriterId);
+        assertEquals(4_000_000L, entry.nanos);
+        assertEquals(3, entry.expandedQuerySize);
+        assertEquals(0, requestAdapter.getContext().size());
+    }
+
+    @Test
+    public void testThatEntriesAreRateLimited() {
+        slowRewriteLog.applySettings(Settings.builder()
+                .put(SlowRewriteLog.REWRITER_WARN_THRESHOLD.getKey(), "1ms")
+                .put(SlowRewriteLog.MAX_ENTRIES_PER_SECOND.getKey(), 2)
+                .build());
+
+        for (int i = 0; i < 5; i++) {
+            slowRewriteLog.onRewrite("r1", 2_000_000L, requestAdapter, output);
+        }
+        now = 1_000_000_000L;
+        slowRewriteLog.onRewrite("r1", 2_000_000L, requestAdapter, output);
+
+        final ArgumentCaptor<Message> messages = ArgumentCaptor.forClass(Message.class);
+        verify(logger, times(3)).log(eq(Level.WARN), eq(Log4jSink.MARKER_QUERQY_SLOW_REWRITE), messages.capture());
+        assertEquals(3L, slowRewriteLog.getRateLimitedCount());
+        assertEquals(3L, ((SlowRewriteLog.Entry) messages.getValue()).suppressed);
+    }
+
+    @Test
+    public void testThatEntriesAreWrittenByTheExecutorAndDroppedIfTheQueueIsFull() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final Executor executor = tasks::add;
+        slowRewriteLog.setExecutor(executor);
+        slowRewriteLog.applySettings(Settings.builder()
+                .put(SlowRewriteLog.REWRITER_WARN_THRESHOLD.getKey(), "1ms")
+                .put(SlowRewriteLog.MAX_ENTRIES_PER_SECOND.getKey(), SlowRewriteLog.QUEUE_CAPACITY + 10)
+                .build());
+
+        for (int i = 0; i < SlowRewriteLog.QUEUE_CAPACITY + 1; i++) {
+            slowRewriteLog.onRewrite("r1", 2_000_000L, requestAdapter, output);
+        }
+
+        verify(logger, never()).log(any(Level.class), any(Marker.class), any(Message.class));
+        assertEquals(1, tasks.size());
+        assertEquals(1L, slowRewriteLog.getDroppedCount());
+
+        tasks.get(0).run();
+        verify(logger, times(SlowRewriteLog.QUEUE_CAPACITY)).log(eq(Level.WARN),
+                eq(Log4jSink.MARKER_QUERQY_SLOW_REWRITE), any(Message.class));
+    }
+}
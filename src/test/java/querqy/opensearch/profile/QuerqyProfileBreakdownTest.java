@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch.profile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class QuerqyProfileBreakdownTest {
+
+    @Test
+    public void testThatLuceneQueryTimeExcludesTheOtherPhases() {
+        final QuerqyProfileBreakdown breakdown = new QuerqyProfileBreakdown();
+        breakdown.addRewriterNanos("r1", 100L);
+        breakdown.addRewriterNanos("r2", 200L);
+        breakdown.addRewriterNanos("r1", 50L);
+        breakdown.addPhraseBoostNanos(300L);
+        breakdown.addRawQueryNanos(40L);
+        breakdown.addRawQueryNanos(60L);
+        breakdown.addProcessNanos(1000L);
+
+        assertEquals(350L, breakdown.getRewriteNanos());
+        assertEquals(150L, (long) breakdown.getRewriterNanos().get("r1"));
+        assertEquals(2, breakdown.getRawQueryCount());
+        assertEquals(250L, breakdown.getLuceneQueryNanos());
+    }
+
+    @Test
+    public void testThatTheCacheIsKeptWhenTheQueryIsBuilt() {
+        final QuerqyProfileBreakdown breakdown = new QuerqyProfileBreakdown();
+        assertNull(breakdown.getCache());
+        breakdown.setCache("shared_query");
+        // the Lucene query is built from the cached rewritten query
+        breakdown.addProcessNanos(10L);
+        assertEquals("shared_query", breakdown.getCache());
+    }
+}
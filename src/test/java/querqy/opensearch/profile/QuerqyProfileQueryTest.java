@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch.profile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class QuerqyProfileQueryTest {
+
+    @Test
+    public void testThatBreakdownIsNotPartOfTheIdentity() {
+        final QuerqyProfileBreakdown breakdown1 = new QuerqyProfileBreakdown();
+        breakdown1.setTotalNanos(100L);
+        final QuerqyProfileBreakdown breakdown2 = new QuerqyProfileBreakdown();
+        breakdown2.setTotalNanos(200L);
+
+        final QuerqyProfileQuery query1 = new QuerqyProfileQuery(new TermQuery(new Term("f1", "a")), breakdown1);
+        final QuerqyProfileQuery query2 = new QuerqyProfileQuery(new TermQuery(new Term("f1", "a")), breakdown2);
+        assertEquals(query1, query2);
+        assertEquals(query1.hashCode(), query2.hashCode());
+        assertNotEquals(query1, new QuerqyProfileQuery(new TermQuery(new Term("f1", "b")), breakdown1));
+        assertNotEquals(query1, new TermQuery(new Term("f1", "a")));
+    }
+
+    @Test
+    public void testThatRewriteKeepsTheBreakdown() throws IOException {
+        final IndexSearcher searcher = new IndexSearcher(new MultiReader());
+        final QuerqyProfileBreakdown breakdown = new QuerqyProfileBreakdown();
+
+        final TermQuery termQuery = new TermQuery(new Term("f1", "a"));
+        final QuerqyProfileQuery unchanged = new QuerqyProfileQuery(termQuery, breakdown);
+        assertSame(unchanged, unchanged.rewrite(searcher));
+
+        final Query bq = new BooleanQuery.Builder().add(termQuery, BooleanClause.Occur.SHOULD).build();
+        final Query rewritten = searcher.rewrite(new QuerqyProfileQuery(bq, breakdown));
+        assertTrue(rewritten instanceof QuerqyProfileQuery);
+        assertEquals(termQuery, ((QuerqyProfileQuery) rewritten).getQuery());
+        assertSame(breakdown, ((QuerqyProfileQuery) rewritten).getBreakdown());
+    }
+
+    @Test
+    public void testThatDescriptionDoesNotContainTimings() {
+        final QuerqyProfileBreakdown breakdown = new QuerqyProfileBreakdown();
+        breakdown.setChainResolutionNanos(42L);
+        breakdown.addRewriterNanos("common_rules", 1000L);
+        final String description = new QuerqyProfileQuery(new TermQuery(new Term("f1", "a")), breakdown).toString();
+        assertEquals("querqy(f1:a)", description);
+    }
+
+}
@@ -29,12 +29,14 @@ import org.opensearch.common.xcontent.XContentType;
 import org.opensearch.common.xcontent.json.JsonXContent;
 import org.opensearch.core.xcontent.NamedXContentRegistry;
 import org.opensearch.core.xcontent.XContentBuilder;
+import org.opensearch.core.xcontent.XContentParseException;
 import org.opensearch.core.xcontent.XContentParser;
 import org.junit.Test;
 import querqy.opensearch.infologging.LogPayloadType;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 public class InfoLoggingSpecTest {
 
@@ -93,6 +95,11 @@ public class InfoLoggingSpecTest {
         assertEquals(spec.isLogged(), spec2.isLogged());
     }
 
+    @Test(expected = XContentParseException.class)
+    public void testThatUnknownPropertiesAreRejected() throws IOException {
+        fromJsonInnerObject("{\"type\": \"DETAIL\", \"_request_id\": \"req1\"}".getBytes(StandardCharsets.UTF_8));
+    }
+
     @Test
     public void testWriteReadStream() throws IOException {
         final InfoLoggingSpec spec =  new InfoLoggingSpec();
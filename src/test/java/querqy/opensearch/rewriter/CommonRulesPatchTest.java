@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class CommonRulesPatchTest {
+
+    private static final String RULES = "# header\n"
+            + "laptop =>\n"
+            + "  SYNONYM: notebook\n"
+            + "\n"
+            + "tv =>\n"
+            + "  SYNONYM: television\n"
+            + "  @{\n"
+            + "    \"_id\": \"tv => 1\"\n"
+            + "  }@\n"
+            + "Smart  Phone =>\n"
+            + "  SYNONYM: mobile\n";
+
+    @Test
+    public void testReplaceRuleKeepsPositionAndOtherRules() {
+        final CommonRulesPatch patch = new CommonRulesPatch("tv =>\n  SYNONYM: tele\n", null);
+        assertEquals("# header\n"
+                + "laptop =>\n"
+                + "  SYNONYM: notebook\n"
+                + "\n"
+                + "tv =>\n"
+                + "  SYNONYM: tele\n"
+                + "Smart  Phone =>\n"
+                + "  SYNONYM: mobile\n", patch.apply(RULES, true));
+    }
+
+    @Test
+    public void testAddRuleIsAppended() {
+        final CommonRulesPatch patch = new CommonRulesPatch("radio =>\n  SYNONYM: receiver", null);
+        assertEquals(RULES + "radio =>\n  SYNONYM: receiver", patch.apply(RULES, true));
+        assertEquals("radio =>\n  SYNONYM: receiver", patch.apply("", true));
+    }
+
+    @Test
+    public void testRemoveRules() {
+        final CommonRulesPatch patch = new CommonRulesPatch(null, Arrays.asList("laptop", "smart phone =>"));
+        assertEquals("# header\n"
+                + "tv =>\n"
+                + "  SYNONYM: television\n"
+                + "  @{\n"
+                + "    \"_id\": \"tv => 1\"\n"
+                + "  }@\n", patch.apply(RULES, true));
+    }
+
+    @Test
+    public void testInputsAreComparedCaseSensitivelyUnlessIgnoreCase() {
+        final CommonRulesPatch patch = new CommonRulesPatch(null, Collections.singletonList("smart phone"));
+        assertEquals(RULES, patch.apply(RULES, false));
+        assertFalse(patch.apply(RULES, true).contains("mobile"));
+    }
+
+    @Test
+    public void testAllRulesForAnInputAreReplaced() {
+        final CommonRulesPatch patch = new CommonRulesPatch("a =>\n  SYNONYM: c\n", null);
+        assertEquals("a =>\n  SYNONYM: c\nx =>\n  SYNONYM: y\n",
+                patch.apply("a =>\n  SYNONYM: b\nx =>\n  SYNONYM: y\na =>\n  UP(10): d\n", true));
+    }
+
+    @Test
+    public void testFromContent() {
+        final Map<String, Object> content = new HashMap<>();
+        content.put(CommonRulesPatch.PROP_PUT, "tv =>\n  SYNONYM: tele\n");
+        content.put(CommonRulesPatch.PROP_REMOVE, "laptop");
+        final CommonRulesPatch patch = CommonRulesPatch.fromContent(content);
+        assertFalse(patch.isEmpty());
+        assertFalse(patch.apply(RULES, true).contains("notebook"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatEmptyPatchIsRejected() {
+        CommonRulesPatch.fromContent(Collections.emptyMap());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatUnknownPropertyIsRejected() {
+        CommonRulesPatch.fromContent(Collections.singletonMap("rules", "a =>\n  SYNONYM: b"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatPutWithoutInputLineIsRejected() {
+        CommonRulesPatch.fromContent(Collections.singletonMap(CommonRulesPatch.PROP_PUT, "SYNONYM: b"));
+    }
+
+}
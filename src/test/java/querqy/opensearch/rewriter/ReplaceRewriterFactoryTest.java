@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriter;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import querqy.model.BooleanClause;
+import querqy.model.DisjunctionMaxQuery;
+import querqy.model.ExpandedQuery;
+import querqy.model.Query;
+import querqy.model.Term;
+import querqy.parser.WhiteSpaceQuerqyParser;
+import querqy.rewrite.RewriterFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ReplaceRewriterFactoryTest {
+
+    private static final String EXACT_RULES = String.join("\n",
+            "# comment",
+            "mobiel; mobil => mobile",
+            "i phone => iphone",
+            "i phone case => iphone-case",
+            "cheap =>",
+            "notebooks => notebook computer",
+            "Apple => apple");
+
+    private static final String WILDCARD_RULES = String.join("\n",
+            EXACT_RULES,
+            "ph* => f$1",
+            "*phones => phone");
+
+    private static final List<String> QUERIES = Arrays.asList(
+            "mobiel",
+            "red mobil",
+            "i phone",
+            "i phone case red",
+            "red i phone cover",
+            "cheap mobiel",
+            "cheap",
+            "notebooks",
+            "apple",
+            "laptop bag",
+            "i",
+            "phantom",
+            "smartphones",
+            "cheap photo");
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testThatFstStorageRewritesLikeHeapStorage() {
+        assertSameRewrites(WILDCARD_RULES, ReplaceRewriterFactory.STORAGE_FST);
+    }
+
+    @Test
+    public void testThatMmapStorageRewritesLikeHeapStorage() {
+        // the memory-mapped dictionary doesn't support wildcards
+        assertSameRewrites(EXACT_RULES, ReplaceRewriterFactory.STORAGE_MMAP);
+    }
+
+    private void assertSameRewrites(final String rules, final String storage) {
+        final RewriterFactory heap = rewriterFactory(rules, ReplaceRewriterFactory.STORAGE_HEAP);
+        final RewriterFactory other = rewriterFactory(rules, storage);
+        for (final String queryString : QUERIES) {
+            assertEquals(queryString, rewrite(heap, queryString), rewrite(other, queryString));
+        }
+    }
+
+    private RewriterFactory rewriterFactory(final String rules, final String storage) {
+        final Map<String, Object> config = new HashMap<>();
+        config.put("rules", rules);
+        config.put("inputDelimiter", ";");
+        config.put("storage", storage);
+        final ReplaceRewriterFactory factory = new ReplaceRewriterFactory("replace");
+        factory.setDictionaryDirectory(tempFolder.getRoot().toPath());
+        factory.configure(config);
+        return factory.createRewriterFactory(null);
+    }
+
+    /**
+     * @return The terms of the clauses of the rewritten user query
+     */
+    private static List<List<String>> rewrite(final RewriterFactory rewriterFactory, final String queryString) {
+        final ExpandedQuery query = new ExpandedQuery(new WhiteSpaceQuerqyParser().parse(queryString));
+        final Query userQuery = (Query) rewriterFactory.createRewriter(query, null).rewrite(query).getUserQuery();
+        final List<List<String>> clauses = new ArrayList<>();
+        for (final BooleanClause clause : userQuery.getClauses()) {
+            final List<String> terms = new ArrayList<>();
+            for (final Term term : ((DisjunctionMaxQuery) clause).getTerms()) {
+                terms.add(term.getValue().toString());
+            }
+            clauses.add(terms);
+        }
+        return clauses;
+    }
+}
@@ -85,4 +85,102 @@ public class ReplaceRewriterIntegrationTest extends AbstractRewriterIntegrationT
 
     }
 
+    public void testReplaceRewriterRulesWithMemoryMappedStorage() throws ExecutionException, InterruptedException {
+        indexDocs(
+                doc("id", "1", "field1", "test1"),
+                doc("id", "2", "field1", "test2"),
+                doc("id", "3", "field1", "test1")
+        );
+
+        final Map<String, Object> content = new HashMap<>();
+        content.put("class", "querqy.opensearch.rewriter.ReplaceRewriterFactory");
+
+        final Map<String, Object> config = new HashMap<>();
+        config.put("rules", "TEST => TEST1 \n TEST2 => TEST");
+        config.put("storage", ReplaceRewriterFactory.STORAGE_MMAP);
+        content.put("config", config);
+
+        final PutRewriterRequest request = new PutRewriterRequest("replace_rules_mmap", content);
+
+        client().execute(PutRewriterAction.INSTANCE, request).get();
+
+        QuerqyQueryBuilder querqyQuery = new QuerqyQueryBuilder(getInstanceFromNode(QuerqyProcessor.class));
+        querqyQuery.setRewriters(singletonList(new Rewriter("replace_rules_mmap")));
+        querqyQuery.setMatchingQuery(new MatchingQuery("test"));
+        querqyQuery.setMinimumShouldMatch("1");
+        querqyQuery.setQueryFieldsAndBoostings(singletonList("field1"));
+
+        SearchRequestBuilder searchRequestBuilder = client().prepareSearch(getIndexName());
+        searchRequestBuilder.setQuery(querqyQuery);
+
+        SearchResponse response = client().search(searchRequestBuilder.request()).get();
+        SearchHits hits = response.getHits();
+
+        assertEquals(2L, hits.getTotalHits().value);
+
+        querqyQuery = new QuerqyQueryBuilder(getInstanceFromNode(QuerqyProcessor.class));
+        querqyQuery.setRewriters(singletonList(new Rewriter("replace_rules_mmap")));
+        querqyQuery.setMatchingQuery(new MatchingQuery("test2"));
+        querqyQuery.setMinimumShouldMatch("1");
+        querqyQuery.setQueryFieldsAndBoostings(singletonList("field1"));
+
+        searchRequestBuilder = client().prepareSearch(getIndexName());
+        searchRequestBuilder.setQuery(querqyQuery);
+
+        response = client().search(searchRequestBuilder.request()).get();
+        hits = response.getHits();
+
+        assertEquals(0L, hits.getTotalHits().value);
+
+    }
+
+    public void testReplaceRewriterRulesWithFstStorage() throws ExecutionException, InterruptedException {
+        indexDocs(
+                doc("id", "1", "field1", "test1"),
+                doc("id", "2", "field1", "test2"),
+                doc("id", "3", "field1", "test1")
+        );
+
+        final Map<String, Object> content = new HashMap<>();
+        content.put("class", "querqy.opensearch.rewriter.ReplaceRewriterFactory");
+
+        final Map<String, Object> config = new HashMap<>();
+        config.put("rules", "TEST => TEST1 \n *T2 => TEST");
+        config.put("storage", ReplaceRewriterFactory.STORAGE_FST);
+        content.put("config", config);
+
+        final PutRewriterRequest request = new PutRewriterRequest("replace_rules_fst", content);
+
+        client().execute(PutRewriterAction.INSTANCE, request).get();
+
+        QuerqyQueryBuilder querqyQuery = new QuerqyQueryBuilder(getInstanceFromNode(QuerqyProcessor.class));
+        querqyQuery.setRewriters(singletonList(new Rewriter("replace_rules_fst")));
+        querqyQuery.setMatchingQuery(new MatchingQuery("test"));
+        querqyQuery.setMinimumShouldMatch("1");
+        querqyQuery.setQueryFieldsAndBoostings(singletonList("field1"));
+
+        SearchRequestBuilder searchRequestBuilder = client().prepareSearch(getIndexName());
+        searchRequestBuilder.setQuery(querqyQuery);
+
+        SearchResponse response = client().search(searchRequestBuilder.request()).get();
+        SearchHits hits = response.getHits();
+
+        assertEquals(2L, hits.getTotalHits().value);
+
+        querqyQuery = new QuerqyQueryBuilder(getInstanceFromNode(QuerqyProcessor.class));
+        querqyQuery.setRewriters(singletonList(new Rewriter("replace_rules_fst")));
+        querqyQuery.setMatchingQuery(new MatchingQuery("test2"));
+        querqyQuery.setMinimumShouldMatch("1");
+        querqyQuery.setQueryFieldsAndBoostings(singletonList("field1"));
+
+        searchRequestBuilder = client().prepareSearch(getIndexName());
+        searchRequestBuilder.setQuery(querqyQuery);
+
+        response = client().search(searchRequestBuilder.request()).get();
+        hits = response.getHits();
+
+        assertEquals(0L, hits.getTotalHits().value);
+
+    }
+
 }
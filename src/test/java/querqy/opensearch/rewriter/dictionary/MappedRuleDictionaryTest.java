@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriter.dictionary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class MappedRuleDictionaryTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testLookup() throws IOException {
+        final Map<String, String> rules = new HashMap<>();
+        rules.put("mobiel", "mobile");
+        rules.put("i" + RuleDictionary.TERM_SEPARATOR + "phone", "iphone");
+        rules.put("äpfel", "apfel");
+        rules.put("🍎", "apple");
+        rules.put("￡", "pound");
+        rules.put("empty", "");
+        for (int i = 0; i < 1000; i++) {
+            rules.put("input" + i, "output" + i);
+        }
+
+        final Path file = tempFolder.getRoot().toPath().resolve("d1" + MappedRuleDictionary.FILE_SUFFIX);
+        MappedRuleDictionary.write(file, rules, 2);
+        final MappedRuleDictionary dictionary = MappedRuleDictionary.open(file);
+
+        assertEquals(rules.size(), dictionary.size());
+        assertEquals(2, dictionary.getMaxInputTerms());
+        for (final Map.Entry<String, String> rule : rules.entrySet()) {
+            assertEquals(rule.getValue(), get(dictionary, rule.getKey()));
+        }
+        assertNull(get(dictionary, "mobie"));
+        assertNull(get(dictionary, "mobiele"));
+        assertNull(get(dictionary, "i"));
+        assertNull(get(dictionary, ""));
+        assertTrue(dictionary.ramBytesUsed() < 1024L);
+    }
+
+    @Test
+    public void testLookupInEmptyDictionary() throws IOException {
+        final Path file = tempFolder.getRoot().toPath().resolve("d2" + MappedRuleDictionary.FILE_SUFFIX);
+        MappedRuleDictionary.write(file, new HashMap<>(), 0);
+        final MappedRuleDictionary dictionary = MappedRuleDictionary.open(file);
+        assertEquals(0, dictionary.size());
+        assertNull(get(dictionary, "a"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testThatCorruptedFileIsRejected() throws IOException {
+        final Path file = tempFolder.getRoot().toPath().resolve("d3" + MappedRuleDictionary.FILE_SUFFIX);
+        MappedRuleDictionary.write(file, Map.of("a", "b"), 1);
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {'x'}), channel.size() - Long.BYTES - 1);
+        }
+        MappedRuleDictionary.open(file);
+    }
+
+    @Test
+    public void testThatInitDirectoryDeletesLeftOverFiles() throws IOException {
+        final Path dir = tempFolder.newFolder("dictionaries").toPath();
+        final Path leftOver = dir.resolve("old" + MappedRuleDictionary.FILE_SUFFIX);
+        final Path other = dir.resolve("other.txt");
+        Files.write(leftOver, new byte[] {1});
+        Files.write(other, new byte[] {1});
+
+        MappedRuleDictionary.initDirectory(dir);
+        assertFalse(Files.exists(leftOver));
+        assertTrue(Files.exists(other));
+
+        final MappedRuleDictionary dictionary = MappedRuleDictionary.create(dir, Map.of("a", "b"), 1);
+        assertEquals("b", get(dictionary, "a"));
+    }
+
+    @Test
+    public void testThatFilesAreCreatedInTheGivenDirectory() throws IOException {
+        final Path dir1 = tempFolder.newFolder("node1").toPath();
+        final Path dir2 = tempFolder.newFolder("node2").toPath();
+        MappedRuleDictionary.initDirectory(dir1);
+        MappedRuleDictionary.initDirectory(dir2);
+
+        final MappedRuleDictionary dictionary1 = MappedRuleDictionary.create(dir1, Map.of("a", "b"), 1);
+        assertEquals(1, countDictionaryFiles(dir1));
+        assertEquals(0, countDictionaryFiles(dir2));
+
+        // initializing the directory of another node must not affect this node
+        MappedRuleDictionary.initDirectory(tempFolder.newFolder("node3").toPath());
+        final MappedRuleDictionary dictionary2 = MappedRuleDictionary.create(dir2, Map.of("c", "d"), 1);
+        assertEquals(1, countDictionaryFiles(dir1));
+        assertEquals(1, countDictionaryFiles(dir2));
+
+        assertEquals("b", get(dictionary1, "a"));
+        assertEquals("d", get(dictionary2, "c"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testThatCreateFailsWithoutDirectory() throws IOException {
+        MappedRuleDictionary.create(null, Map.of("a", "b"), 1);
+    }
+
+    private static long countDictionaryFiles(final Path dir) throws IOException {
+        try (final Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.toString().endsWith(MappedRuleDictionary.FILE_SUFFIX)).count();
+        }
+    }
+
+    private static String get(final RuleDictionary dictionary, final String key) {
+        final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        // look up at an offset to make sure that offset and length are respected
+        final byte[] padded = new byte[bytes.length + 2];
+        System.arraycopy(bytes, 0, padded, 1, bytes.length);
+        return dictionary.get(padded, 1, bytes.length);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriter.replace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import querqy.opensearch.rewriter.dictionary.MappedRuleDictionary;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class DictionaryReplaceRewriterTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private DictionaryReplaceRewriter rewriter;
+
+    @Before
+    public void setUp() throws IOException {
+        final ReplaceRulesParser parsed = ReplaceRulesParser.parse(String.join("\n",
+                "# comment",
+                "mobiel; mobil => mobile",
+                "i phone => iphone",
+                "i phone case => iphone-case",
+                "cheap =>",
+                "",
+                "Apple => apple"), ";", true);
+        rewriter = new DictionaryReplaceRewriter(
+                MappedRuleDictionary.create(tempFolder.getRoot().toPath(), parsed.getRules(),
+                        parsed.getMaxInputTerms()), true, null);
+    }
+
+    @Test
+    public void testReplaceSingleTerms() {
+        assertEquals(Arrays.asList("mobile", "phone"), rewriter.replace(Arrays.asList("Mobiel", "phone")));
+        assertEquals(Arrays.asList("red", "mobile"), rewriter.replace(Arrays.asList("red", "mobil")));
+        assertEquals(Collections.singletonList("apple"), rewriter.replace(Collections.singletonList("APPLE")));
+    }
+
+    @Test
+    public void testLongestInputWins() {
+        assertEquals(Arrays.asList("iphone-case", "red"),
+                rewriter.replace(Arrays.asList("i", "phone", "case", "red")));
+        assertEquals(Arrays.asList("red", "iphone", "cover"),
+                rewriter.replace(Arrays.asList("red", "i", "phone", "cover")));
+    }
+
+    @Test
+    public void testEmptyOutputRemovesTerms() {
+        assertEquals(Collections.singletonList("mobile"), rewriter.replace(Arrays.asList("cheap", "mobiel")));
+    }
+
+    @Test
+    public void testNoMatch() {
+        assertNull(rewriter.replace(Arrays.asList("i", "pad")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatWildcardInputsAreRejected() {
+        ReplaceRulesParser.parse("mobi* => mobile", "\t", true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatDuplicateInputsAreRejected() {
+        ReplaceRulesParser.parse("a => b\nA => c", "\t", true);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriter.replace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class FstReplaceRewriterTest {
+
+    private FstReplaceRules rules;
+    private FstReplaceRewriter rewriter;
+
+    @Before
+    public void setUp() throws IOException {
+        rules = FstReplaceRules.build(ReplaceRulesParser.parse(String.join("\n",
+                "# comment",
+                "mobiel; mobil => mobile",
+                "i phone => iphone",
+                "i phone case => iphone-case",
+                "cheap =>",
+                "",
+                "Apple => apple",
+                "ph* => f$1",
+                "phot* => fot$1",
+                "*phones => phone",
+                "*ones => one$1",
+                "phone => telephone"), ";", true, true));
+        rewriter = new FstReplaceRewriter(rules, true, null);
+    }
+
+    @Test
+    public void testReplaceSingleTerms() {
+        assertEquals(Arrays.asList("mobile", "case"), rewriter.replace(Arrays.asList("Mobiel", "case")));
+        assertEquals(Arrays.asList("red", "mobile"), rewriter.replace(Arrays.asList("red", "mobil")));
+        assertEquals(Collections.singletonList("apple"), rewriter.replace(Collections.singletonList("APPLE")));
+    }
+
+    @Test
+    public void testLongestInputWins() {
+        assertEquals(Arrays.asList("iphone-case", "red"),
+                rewriter.replace(Arrays.asList("i", "phone", "case", "red")));
+        assertEquals(Arrays.asList("red", "iphone", "cover"),
+                rewriter.replace(Arrays.asList("red", "i", "phone", "cover")));
+    }
+
+    @Test
+    public void testEmptyOutputRemovesTerms() {
+        assertEquals(Collections.singletonList("mobile"), rewriter.replace(Arrays.asList("cheap", "mobiel")));
+    }
+
+    @Test
+    public void testPrefixRules() {
+        assertEquals(Collections.singletonList("fantom"), rewriter.replace(Collections.singletonList("Phantom")));
+        assertEquals(Collections.singletonList("fotograph"), rewriter.replace(Collections.singletonList("photograph")));
+        // the wildcard must match at least one character
+        assertNull(rewriter.replace(Collections.singletonList("ph")));
+    }
+
+    @Test
+    public void testSuffixRules() {
+        assertEquals(Collections.singletonList("phone"), rewriter.replace(Collections.singletonList("smartphones")));
+        assertEquals(Collections.singletonList("oneb"), rewriter.replace(Collections.singletonList("bones")));
+        assertNull(rewriter.replace(Collections.singletonList("ones")));
+    }
+
+    @Test
+    public void testExactInputWinsOverWildcards() {
+        assertEquals(Collections.singletonList("telephone"), rewriter.replace(Collections.singletonList("phone")));
+        assertEquals(Arrays.asList("iphone", "fase"), rewriter.replace(Arrays.asList("i", "phone", "phase")));
+    }
+
+    @Test
+    public void testNoMatch() {
+        assertNull(rewriter.replace(Arrays.asList("i", "pad")));
+    }
+
+    @Test
+    public void testRulesWithoutWildcards() throws IOException {
+        final FstReplaceRewriter exactOnly = new FstReplaceRewriter(
+                FstReplaceRules.build(ReplaceRulesParser.parse("a b => c", "\t", false, true)), false, null);
+        assertEquals(Collections.singletonList("c"), exactOnly.replace(Arrays.asList("a", "b")));
+        assertNull(exactOnly.replace(Arrays.asList("A", "b")));
+        assertNull(exactOnly.replace(Collections.singletonList("a")));
+    }
+
+    @Test
+    public void testRamBytesUsed() {
+        assertTrue(rules.ramBytesUsed() > 0L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatInfixWildcardsAreRejected() {
+        ReplaceRulesParser.parse("mo*bile => mobile", "\t", true, true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatMultiTermWildcardInputsAreRejected() {
+        ReplaceRulesParser.parse("i pho* => iphone", "\t", true, true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatBareWildcardsAreRejected() {
+        ReplaceRulesParser.parse("* => iphone", "\t", true, true);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriterstore;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+import org.opensearch.action.ActionRequestValidationException;
+import org.opensearch.common.io.stream.BytesStreamOutput;
+import querqy.opensearch.DummyOpenSearchRewriterFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class BulkPutRewriterRequestTest {
+
+    @Test
+    public void testValidateEmptyRequest() {
+        assertNotNull(new BulkPutRewriterRequest(Collections.emptyMap()).validate());
+    }
+
+    @Test
+    public void testValidationErrorsArePrefixedWithRewriterId() {
+        final Map<String, Map<String, Object>> rewriters = new LinkedHashMap<>();
+        rewriters.put("r1", rewriter(Collections.emptyMap()));
+        rewriters.put("r2", rewriter(Collections.singletonMap("error", "an error message")));
+
+        final ActionRequestValidationException validationResult = new BulkPutRewriterRequest(rewriters).validate();
+        assertNotNull(validationResult);
+        assertThat(validationResult.validationErrors(), contains("[r2] an error message"));
+    }
+
+    @Test
+    public void testValidRequest() {
+        final Map<String, Map<String, Object>> rewriters = new LinkedHashMap<>();
+        rewriters.put("r1", rewriter(Collections.emptyMap()));
+        rewriters.put("r2", rewriter(Collections.emptyMap()));
+
+        assertNull(new BulkPutRewriterRequest(rewriters).validate());
+    }
+
+    @Test
+    public void testStreamSerialization() throws IOException {
+        final Map<String, Map<String, Object>> rewriters = new LinkedHashMap<>();
+        rewriters.put("r1", rewriter(Collections.singletonMap("prop1", "Some value")));
+        rewriters.put("r2", rewriter(Collections.emptyMap()));
+
+        final BulkPutRewriterRequest request1 = new BulkPutRewriterRequest(rewriters);
+        final BytesStreamOutput output = new BytesStreamOutput();
+        request1.writeTo(output);
+        output.flush();
+
+        final BulkPutRewriterRequest request2 = new BulkPutRewriterRequest(output.bytes().streamInput());
+        assertEquals(request1.getRewriters(), request2.getRewriters());
+    }
+
+    private static Map<String, Object> rewriter(final Map<String, Object> config) {
+        final Map<String, Object> content = new HashMap<>();
+        content.put("class", DummyOpenSearchRewriterFactory.class.getName());
+        content.put("config", new HashMap<>(config));
+        return content;
+    }
+
+}
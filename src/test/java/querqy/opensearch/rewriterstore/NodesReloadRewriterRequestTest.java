@@ -25,6 +25,7 @@ import org.opensearch.common.io.stream.BytesStreamOutput;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 public class NodesReloadRewriterRequestTest {
 
@@ -41,4 +42,18 @@ public class NodesReloadRewriterRequestTest {
         assertEquals("r1", request2.getRewriterId());
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testStreamSerializationOfSeveralRewriters() throws IOException {
+
+        final NodesReloadRewriterRequest request1 = new NodesReloadRewriterRequest(Arrays.asList("r1", "r2"));
+        final BytesStreamOutput output = new BytesStreamOutput();
+        request1.writeTo(output);
+        output.flush();
+
+        final NodesReloadRewriterRequest request2 = new NodesReloadRewriterRequest(output.bytes().streamInput());
+        assertEquals(Arrays.asList("r1", "r2"), request2.getRewriterIds());
+        assertEquals(Arrays.asList("r1", "r2"), request2.newNodeRequest().getRewriterIds());
+
+    }
+}
@@ -28,15 +28,20 @@ import org.opensearch.cluster.node.DiscoveryNode;
 import org.opensearch.core.common.io.stream.ByteBufferStreamInput;
 import org.opensearch.core.common.io.stream.DataOutputStreamOutput;
 import org.opensearch.core.common.transport.TransportAddress;
+import org.opensearch.common.io.stream.BytesStreamOutput;
+import org.opensearch.common.xcontent.XContentHelper;
+import org.opensearch.common.xcontent.XContentType;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.SocketException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Map;
 
 public class NodesReloadRewriterResponseTest {
 
@@ -74,4 +79,61 @@ public class NodesReloadRewriterResponseTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testWriteToReadFromStreamWithRewriterExceptions() throws IOException {
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final DataOutputStreamOutput dos = new DataOutputStreamOutput(new DataOutputStream(bos));
+
+        final NodesReloadRewriterResponse response = new NodesReloadRewriterResponse(
+                new ClusterName("c1"),
+                Collections.singletonList(
+                        new NodesReloadRewriterResponse.NodeResponse(
+                                new DiscoveryNode("n1",
+                                        new TransportAddress(TransportAddress.META_ADDRESS, 9234),
+                                        Version.CURRENT), null,
+                                Collections.singletonMap("r2", new IllegalStateException("r2 failed")))),
+                Collections.emptyList());
+
+        response.writeTo(dos);
+        dos.flush();
+        dos.close();
+
+        final ByteBufferStreamInput byteInput = new ByteBufferStreamInput(ByteBuffer.wrap(bos.toByteArray()));
+        final NodesReloadRewriterResponse response1 = new NodesReloadRewriterResponse(byteInput);
+        assertEquals(response, response1);
+        assertEquals("r2 failed", response1.getNodes().get(0).rewriterExceptions().get("r2").getMessage());
+
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testNodeTimings() throws IOException {
+
+        final NodesReloadRewriterResponse response = new NodesReloadRewriterResponse(
+                new ClusterName("c1"),
+                Collections.singletonList(
+                        new NodesReloadRewriterResponse.NodeResponse(
+                                new DiscoveryNode("n1",
+                                        new TransportAddress(TransportAddress.META_ADDRESS, 9234),
+                                        Version.CURRENT), null, Collections.emptyMap(), 1234L)),
+                Collections.emptyList());
+
+        final BytesStreamOutput output = new BytesStreamOutput();
+        response.writeTo(output);
+        output.flush();
+
+        final NodesReloadRewriterResponse response1 = new NodesReloadRewriterResponse(output.bytes().streamInput());
+        assertEquals(response, response1);
+        assertEquals(1234L, response1.getNodes().get(0).getTookMillis());
+
+        final Map<String, Object> parsed;
+        try (InputStream stream = XContentHelper.toXContent(response1, XContentType.JSON, true).streamInput()) {
+            parsed = XContentHelper.convertToMap(XContentType.JSON.xContent(), stream, false);
+        }
+        final Map<String, Object> node = (Map<String, Object>) ((Map<String, Object>) parsed.get("nodes")).get("n1");
+        assertEquals(1234, ((Number) node.get("took")).intValue());
+
+    }
+
+}
@@ -28,6 +28,7 @@ import org.opensearch.action.ActionRequestValidationException;
 import org.opensearch.common.io.stream.BytesStreamOutput;
 import org.hamcrest.Matchers;
 import org.junit.Test;
+import org.opensearch.index.seqno.SequenceNumbers;
 import querqy.opensearch.DummyOpenSearchRewriterFactory;
 
 import java.io.IOException;
@@ -103,6 +104,16 @@ public class PutRewriterRequestTest {
 
         assertEquals(request1.getRewriterId(), request2.getRewriterId());
         assertEquals(request1.getContent(), request2.getContent());
+        assertEquals(SequenceNumbers.UNASSIGNED_SEQ_NO, request2.getIfSeqNo());
+
+        final PutRewriterRequest request3 = new PutRewriterRequest("r8", content, 5L, 1L);
+        final BytesStreamOutput output3 = new BytesStreamOutput();
+        request3.writeTo(output3);
+        output3.flush();
+
+        final PutRewriterRequest request4 = new PutRewriterRequest(output3.bytes().streamInput());
+        assertEquals(5L, request4.getIfSeqNo());
+        assertEquals(1L, request4.getIfPrimaryTerm());
 
     }
 
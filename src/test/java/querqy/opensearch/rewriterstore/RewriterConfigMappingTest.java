@@ -21,6 +21,8 @@ package querqy.opensearch.rewriterstore;
 
 import static org.hamcrest.Matchers.everyItem;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -28,7 +30,12 @@ import org.apache.lucene.util.BytesRef;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 public class RewriterConfigMappingTest {
@@ -66,4 +73,81 @@ public class RewriterConfigMappingTest {
         RewriterConfigMapping.stringToSourceValue("12345", 2);
     }
 
+    @Test
+    public void testToLuceneSourceStoresConfigDigest() throws IOException {
+        final Map<String, Object> content = new HashMap<>();
+        content.put("class", "querqy.SomeRewriterFactory");
+        content.put("config", Collections.singletonMap("rules", "a =>\n SYNONYM: b"));
+
+        final Map<String, Object> source = RewriterConfigMapping.toLuceneSource(content);
+        final String digest = RewriterConfigMapping.CURRENT.getConfigDigest(source);
+        assertTrue(digest.startsWith(RewriterConfigMapping.CONFIG_DIGEST_FORMAT + ":"));
+        assertEquals(digest, RewriterConfigMapping.toLuceneSource(content)
+                .get(RewriterConfigMapping.PROP_CONFIG_DIGEST));
+
+        content.put("config", Collections.singletonMap("rules", "a =>\n SYNONYM: c"));
+        assertNotEquals(digest, RewriterConfigMapping.toLuceneSource(content)
+                .get(RewriterConfigMapping.PROP_CONFIG_DIGEST));
+
+        content.put("class", "querqy.OtherRewriterFactory");
+        content.put("config", Collections.singletonMap("rules", "a =>\n SYNONYM: b"));
+        assertNotEquals(digest, RewriterConfigMapping.toLuceneSource(content)
+                .get(RewriterConfigMapping.PROP_CONFIG_DIGEST));
+    }
+
+    @Test
+    public void testConfigDigestInUnknownFormatIsIgnored() {
+        assertNull(RewriterConfigMapping.CURRENT.getConfigDigest(
+                Collections.<String, Object>singletonMap(RewriterConfigMapping.PROP_CONFIG_DIGEST, "0:abc")));
+        assertNull(RewriterConfigMapping.CURRENT.getConfigDigest(Collections.emptyMap()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testToLuceneSourceStoresCompressedConfig() throws IOException {
+        final StringBuilder rules = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            rules.append("input").append(i).append(" =>\n SYNONYM: output").append(i).append("\n");
+        }
+        final Map<String, Object> content = new HashMap<>();
+        content.put("class", "querqy.SomeRewriterFactory");
+        content.put("config", Collections.singletonMap("rules", rules.toString()));
+
+        final Map<String, Object> source = RewriterConfigMapping.toLuceneSource(content);
+        assertEquals(RewriterConfigMapping.CURRENT_MAPPING_VERSION, source.get(RewriterConfigMapping.PROP_VERSION));
+        final List<String> chunks = (List<String>) source.get("config_v_004");
+        assertEquals(1, chunks.size());
+        assertTrue(chunks.get(0).length() < rules.length() / 2);
+
+        final RewriterConfigMapping mapping = RewriterConfigMapping.getMapping(source);
+        assertTrue(mapping == RewriterConfigMapping.CURRENT);
+        assertEquals(rules.toString(), mapping.getConfig("r1", source).get("rules"));
+    }
+
+    @Test
+    public void testCompressedConfigInMultipleChunks() throws IOException {
+        final String json = "{\"rules\":\"a =>\\n SYNONYM: b\\nc =>\\n SYNONYM: d\",\"ignoreCase\":true}";
+        final List<String> chunks = RewriterConfigMapping.compressToSourceValue(json, 5);
+        assertTrue(chunks.size() > 1);
+
+        final Map<String, Object> source = new HashMap<>();
+        source.put(RewriterConfigMapping.PROP_VERSION, RewriterConfigMapping.CURRENT_MAPPING_VERSION);
+        source.put("config_v_004", chunks);
+
+        final Map<String, Object> config = RewriterConfigMapping.getMapping(source).getConfig("r1", source);
+        assertEquals("a =>\n SYNONYM: b\nc =>\n SYNONYM: d", config.get("rules"));
+        assertEquals(true, config.get("ignoreCase"));
+    }
+
+    @Test
+    public void testVersion3ConfigCanStillBeLoaded() {
+        final Map<String, Object> source = new HashMap<>();
+        source.put(RewriterConfigMapping.PROP_VERSION, 3);
+        source.put("config_v_003", Arrays.asList("{\"rules\":", "\"a =>\\n SYNONYM: b\"}"));
+
+        final RewriterConfigMapping mapping = RewriterConfigMapping.getMapping(source);
+        assertTrue(mapping == RewriterConfigMapping.V3_MAPPING);
+        assertEquals("a =>\n SYNONYM: b", mapping.getConfig("r1", source).get("rules"));
+    }
+
 }
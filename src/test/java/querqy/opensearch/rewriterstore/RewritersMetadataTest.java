@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriterstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.opensearch.common.io.stream.BytesStreamOutput;
+import org.opensearch.common.xcontent.XContentFactory;
+import org.opensearch.common.xcontent.XContentType;
+import org.opensearch.core.common.bytes.BytesReference;
+import org.opensearch.core.xcontent.DeprecationHandler;
+import org.opensearch.core.xcontent.NamedXContentRegistry;
+import org.opensearch.core.xcontent.ToXContent;
+import org.opensearch.core.xcontent.XContentBuilder;
+import org.opensearch.core.xcontent.XContentParser;
+import querqy.opensearch.rewriterstore.RewritersMetadata.RewriterVersion;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class RewritersMetadataTest {
+
+    @Test
+    public void testStreamSerialization() throws IOException {
+        final Map<String, RewriterVersion> rewriters = new HashMap<>();
+        rewriters.put("r1", new RewriterVersion(3L, "1:abc"));
+        rewriters.put("r2", new RewriterVersion(1L, null));
+        final RewritersMetadata metadata1 = new RewritersMetadata(rewriters);
+
+        final BytesStreamOutput output = new BytesStreamOutput();
+        metadata1.writeTo(output);
+        output.flush();
+
+        final RewritersMetadata metadata2 = new RewritersMetadata(output.bytes().streamInput());
+        assertEquals(metadata1, metadata2);
+        assertEquals(new RewriterVersion(3L, "1:abc"), metadata2.getRewriters().get("r1"));
+        assertEquals(new RewriterVersion(1L, null), metadata2.getRewriters().get("r2"));
+    }
+
+    @Test
+    public void testXContentRoundTrip() throws IOException {
+        final Map<String, RewriterVersion> rewriters = new HashMap<>();
+        rewriters.put("r1", new RewriterVersion(3L, "1:abc"));
+        rewriters.put("r2", new RewriterVersion(1L, null));
+        final RewritersMetadata metadata1 = new RewritersMetadata(rewriters);
+
+        final XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+        metadata1.toXContent(builder, ToXContent.EMPTY_PARAMS);
+        builder.endObject();
+
+        try (final XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY,
+                DeprecationHandler.THROW_UNSUPPORTED_OPERATION, BytesReference.bytes(builder).streamInput())) {
+            parser.nextToken();
+            assertEquals(metadata1, RewritersMetadata.fromXContent(parser));
+        }
+    }
+
+    @Test
+    public void testApplyOnlyRaisesVersions() {
+        final RewritersMetadata metadata = new RewritersMetadata(
+                Collections.singletonMap("r1", new RewriterVersion(3L, "1:abc")));
+
+        assertSame(metadata, metadata.apply(Collections.singletonMap("r1", new RewriterVersion(2L, "1:old")),
+                Collections.emptyList()));
+        assertSame(metadata, metadata.apply(Collections.singletonMap("r1", new RewriterVersion(3L, "1:abc")),
+                Collections.emptyList()));
+        assertSame(metadata, metadata.apply(Collections.emptyMap(), Collections.singletonList("r2")));
+
+        final RewritersMetadata updated = metadata.apply(
+                Collections.singletonMap("r2", new RewriterVersion(1L, null)), Collections.emptyList());
+        assertEquals(new RewriterVersion(3L, "1:abc"), updated.getRewriters().get("r1"));
+        assertEquals(new RewriterVersion(1L, null), updated.getRewriters().get("r2"));
+        // not modified
+        assertFalse(metadata.getRewriters().containsKey("r2"));
+
+        final RewritersMetadata raised = updated.apply(
+                Collections.singletonMap("r1", new RewriterVersion(4L, "1:def")), Arrays.asList("r2"));
+        assertEquals(Collections.singletonMap("r1", new RewriterVersion(4L, "1:def")), raised.getRewriters());
+    }
+
+    @Test
+    public void testUpdateRequestStreamSerialization() throws IOException {
+        final UpdateRewritersMetadataRequest request1 = new UpdateRewritersMetadataRequest(
+                Collections.singletonMap("r1", new RewriterVersion(2L, "1:abc")), Arrays.asList("r2", "r3"));
+
+        final BytesStreamOutput output = new BytesStreamOutput();
+        request1.writeTo(output);
+        output.flush();
+
+        final UpdateRewritersMetadataRequest request2 = new UpdateRewritersMetadataRequest(
+                output.bytes().streamInput());
+        assertEquals(request1.getPut(), request2.getPut());
+        assertEquals(Arrays.asList("r2", "r3"), request2.getRemove());
+        assertTrue(request2.validate() == null);
+    }
+}
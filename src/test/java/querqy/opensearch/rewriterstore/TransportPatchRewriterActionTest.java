@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package querqy.opensearch.rewriterstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import org.opensearch.ResourceNotFoundException;
+import org.opensearch.action.get.GetResponse;
+import querqy.opensearch.DummyOpenSearchRewriterFactory;
+import querqy.opensearch.rewriter.CommonRulesPatch;
+import querqy.opensearch.rewriter.SimpleCommonRulesRewriterFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TransportPatchRewriterActionTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBuildPutRequest() throws Exception {
+        final Map<String, Object> content = new HashMap<>();
+        content.put("class", SimpleCommonRulesRewriterFactory.class.getName());
+        final Map<String, Object> config = new HashMap<>();
+        config.put("rules", "a =>\n  SYNONYM: b\n");
+        config.put("ignoreCase", false);
+        content.put("config", config);
+        content.put("info_logging", Collections.singletonMap("sinks", "log4j"));
+
+        final GetResponse getResponse = mock(GetResponse.class);
+        when(getResponse.getSource()).thenReturn(RewriterConfigMapping.toLuceneSource(content));
+        when(getResponse.getSeqNo()).thenReturn(12L);
+        when(getResponse.getPrimaryTerm()).thenReturn(2L);
+
+        final PatchRewriterRequest patchRequest = new PatchRewriterRequest("r1",
+                Collections.singletonMap(CommonRulesPatch.PROP_PUT, "c =>\n  SYNONYM: d\n"));
+
+        final PutRewriterRequest putRequest = TransportPatchRewriterAction.buildPutRequest(patchRequest,
+                getResponse);
+        assertEquals("r1", putRequest.getRewriterId());
+        assertEquals(12L, putRequest.getIfSeqNo());
+        assertEquals(2L, putRequest.getIfPrimaryTerm());
+        assertEquals(SimpleCommonRulesRewriterFactory.class.getName(), putRequest.getContent().get("class"));
+        assertEquals(content.get("info_logging"), putRequest.getContent().get("info_logging"));
+
+        final Map<String, Object> patchedConfig = (Map<String, Object>) putRequest.getContent().get("config");
+        assertEquals("a =>\n  SYNONYM: b\nc =>\n  SYNONYM: d\n", patchedConfig.get("rules"));
+        assertEquals(false, patchedConfig.get("ignoreCase"));
+    }
+
+    @Test(expected = ResourceNotFoundException.class)
+    public void testBuildPutRequestForMissingRewriter() {
+        final GetResponse getResponse = mock(GetResponse.class);
+        TransportPatchRewriterAction.buildPutRequest(new PatchRewriterRequest("r1",
+                Collections.singletonMap(CommonRulesPatch.PROP_REMOVE, "a")), getResponse);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatOnlyCommonRulesRewritersCanBePatched() throws Exception {
+        final GetResponse getResponse = mock(GetResponse.class);
+        when(getResponse.getSource()).thenReturn(RewriterConfigMapping.toLuceneSource(
+                Collections.singletonMap("class", DummyOpenSearchRewriterFactory.class.getName())));
+        TransportPatchRewriterAction.buildPutRequest(new PatchRewriterRequest("r1",
+                Collections.singletonMap(CommonRulesPatch.PROP_REMOVE, "a")), getResponse);
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testThatBucketsAreContiguous() {
+        for (int i = 1; i < LatencyHistogram.BUCKETS; i++) {
+            final long lowestValue = LatencyHistogram.highestValueInBucket(i - 1) + 1L;
+            assertEquals(i, LatencyHistogram.bucketIndex(lowestValue));
+            assertEquals(i, LatencyHistogram.bucketIndex(LatencyHistogram.highestValueInBucket(i)));
+        }
+    }
+
+    @Test
+    public void testThatLargeValuesAreRecordedInTheLastBucket() {
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testThatEmptyHistogramReportsZero() {
+        final LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0L, snapshot.getCount());
+        assertEquals(0L, snapshot.getValueAtQuantile(0.99));
+    }
+
+    @Test
+    public void testPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1L; value <= 10_000L; value++) {
+            histogram.record(value * 1000L);
+        }
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(10_000L, snapshot.getCount());
+        assertEquals(10_000_000L, snapshot.getMax());
+        assertWithinPrecision(5_000_000L, snapshot.getValueAtQuantile(0.5));
+        assertWithinPrecision(9_900_000L, snapshot.getValueAtQuantile(0.99));
+        assertWithinPrecision(9_990_000L, snapshot.getValueAtQuantile(0.999));
+        assertEquals(10_000_000L, snapshot.getValueAtQuantile(1.0));
+    }
+
+    @Test
+    public void testThatNegativeValuesAreRecordedAsZero() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5L);
+        assertEquals(0L, histogram.snapshot().getValueAtQuantile(0.5));
+    }
+
+    private static void assertWithinPrecision(final long expected, final long actual) {
+        assertTrue("Expected about " + expected + " but was " + actual,
+                actual >= expected && actual <= expected + expected / 16);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch.stats;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.opensearch.Version;
+import org.opensearch.action.FailedNodeException;
+import org.opensearch.cluster.ClusterName;
+import org.opensearch.cluster.node.DiscoveryNode;
+import org.opensearch.core.common.io.stream.ByteBufferStreamInput;
+import org.opensearch.core.common.io.stream.DataOutputStreamOutput;
+import org.opensearch.core.common.transport.TransportAddress;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class NodesQuerqyStatsResponseTest {
+
+    @Test
+    public void testWriteToReadFromStream() throws IOException {
+
+        final Map<String, NodeQuerqyStats.CacheUsage> caches = new LinkedHashMap<>();
+        caches.put("rewriter", new NodeQuerqyStats.CacheUsage(10L, 2L, 0L));
+        caches.put("term_query", new NodeQuerqyStats.CacheUsage(100L, 20L, 5L));
+
+        final Map<String, NodeQuerqyStats.Rewriter> rewriters = new TreeMap<>();
+        rewriters.put("r1", new NodeQuerqyStats.Rewriter(3L, 4096L,
+                new NodeQuerqyStats.Latency(7L, 7000L, 900L, 1500L, 1500L, 1500L), 1L, 2L, 0L, 1_000_000L,
+                2_000_000L, 1L, 500_000L, 500_000L));
+        rewriters.put("r2", new NodeQuerqyStats.Rewriter(-1L, 0L,
+                new NodeQuerqyStats.Latency(0L, 0L, 0L, 0L, 0L, 0L), 0L, 0L, 1L, -1L, 0L, 0L, -1L, 0L));
+
+        final Map<String, NodeQuerqyStats.LogUsage> logs = new LinkedHashMap<>();
+        logs.put("slow_rewrite", new NodeQuerqyStats.LogUsage(3L, 0L, 1L));
+        logs.put("info_logging", new NodeQuerqyStats.LogUsage(100L, 2L, 7L));
+
+        final Map<String, NodeQuerqyStats.ShardWarmup> warmups = new TreeMap<>();
+        warmups.put("[idx][0]", new NodeQuerqyStats.ShardWarmup("ready", 42L));
+        warmups.put("[idx][1]", new NodeQuerqyStats.ShardWarmup("warming_up", -1L));
+
+        final NodesQuerqyStatsResponse response = new NodesQuerqyStatsResponse(
+                new ClusterName("c1"),
+                Arrays.asList(
+                        new NodesQuerqyStatsResponse.NodeResponse(
+                                new DiscoveryNode("n1", new TransportAddress(TransportAddress.META_ADDRESS, 9234),
+                                        Version.CURRENT),
+                                new NodeQuerqyStats(new NodeQuerqyStats.Latency(9L, 90_000L, 9000L, 20_000L,
+                                        20_000L, 20_000L), 1L, 1L, 3L, 4096L, -1L, caches, rewriters, logs, warmups)),
+                        new NodesQuerqyStatsResponse.NodeResponse(
+                                new DiscoveryNode("n2", new TransportAddress(TransportAddress.META_ADDRESS, 9235),
+                                        Version.CURRENT),
+                                new NodeQuerqyStats(new NodeQuerqyStats.Latency(0L, 0L, 0L, 0L, 0L, 0L), 0L, 0L,
+                                        0L, 0L, 1024L, Collections.emptyMap(), Collections.emptyMap(),
+                                        Collections.emptyMap(), Collections.emptyMap()))
+                ), Collections.singletonList(new FailedNodeException("n3", "node 3 down", new SocketException())));
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final DataOutputStreamOutput dos = new DataOutputStreamOutput(new DataOutputStream(bos));
+        response.writeTo(dos);
+        dos.flush();
+        dos.close();
+
+        final ByteBufferStreamInput byteInput = new ByteBufferStreamInput(ByteBuffer.wrap(bos.toByteArray()));
+        assertEquals(response, new NodesQuerqyStatsResponse(byteInput));
+    }
+
+    @Test
+    public void testHitRate() {
+        assertEquals(0.0, new NodeQuerqyStats.CacheUsage(0L, 0L, 0L).getHitRate(), 0.0001);
+        assertEquals(0.75, new NodeQuerqyStats.CacheUsage(3L, 1L, 0L).getHitRate(), 0.0001);
+    }
+}
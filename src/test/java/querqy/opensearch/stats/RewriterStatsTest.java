@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package querqy.opensearch.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import querqy.opensearch.DismaxSearchEngineRequestAdapter;
+import querqy.opensearch.profile.QuerqyProfileBreakdown;
+import querqy.model.ExpandedQuery;
+import querqy.model.Query;
+import querqy.model.Term;
+import querqy.rewrite.QueryRewriter;
+import querqy.rewrite.RewriterFactory;
+import querqy.rewrite.SearchEngineRequestAdapter;
+
+import java.util.Collections;
+import java.util.Set;
+
+public class RewriterStatsTest {
+
+    @Test
+    public void testThatRewritesAreCounted() {
+        final RewriterStats stats = new RewriterStats("r1");
+        final RewriterFactory factory = stats.instrument(factory(query -> query));
+
+        final ExpandedQuery query = new ExpandedQuery(new Query());
+        assertSame(query, factory.createRewriter(query, null).rewrite(query));
+        factory.createRewriter(query, null).rewrite(query);
+
+        final NodeQuerqyStats.Rewriter nodeStats = stats.toNodeStats();
+        assertEquals(2L, nodeStats.getRewrites().getCount());
+        assertEquals(0L, nodeStats.getRewriteErrors());
+    }
+
+    @Test
+    public void testThatRewriteErrorsAreCounted() {
+        final RewriterStats stats = new RewriterStats("r1");
+        final RewriterFactory factory = stats.instrument(factory(query -> {
+            throw new IllegalStateException("test");
+        }));
+
+        final ExpandedQuery query = new ExpandedQuery(new Query());
+        try {
+            factory.createRewriter(query, null).rewrite(query);
+            fail("Expected IllegalStateException");
+        } catch (final IllegalStateException e) {
+            assertEquals("test", e.getMessage());
+        }
+
+        final NodeQuerqyStats.Rewriter nodeStats = stats.toNodeStats();
+        assertEquals(1L, nodeStats.getRewrites().getCount());
+        assertEquals(1L, nodeStats.getRewriteErrors());
+    }
+
+    @Test
+    public void testThatRewriteIsRecordedInProfileBreakdown() {
+        final RewriterStats stats = new RewriterStats("r1");
+        final RewriterFactory factory = stats.instrument(factory(query -> query));
+
+        final QuerqyProfileBreakdown breakdown = new QuerqyProfileBreakdown();
+        final DismaxSearchEngineRequestAdapter requestAdapter = mock(DismaxSearchEngineRequestAdapter.class);
+        when(requestAdapter.getProfileBreakdown()).thenReturn(breakdown);
+
+        final ExpandedQuery query = new ExpandedQuery(new Query());
+        factory.createRewriter(query, requestAdapter).rewrite(query);
+
+        assertTrue(breakdown.getRewriterNanos().containsKey("r1"));
+        assertEquals(1L, stats.toNodeStats().getRewrites().getCount());
+    }
+
+    @Test
+    public void testThatInstrumentedFactoryKeepsRewriterId() {
+        assertEquals("r1", new RewriterStats("r1").instrument(factory(query -> query)).getRewriterId());
+    }
+
+    @Test
+    public void testLoadsAndCompilations() {
+        final RewriterStats stats = new RewriterStats("r1");
+        stats.onCompiled(3L, 2048L, 1_000_000L);
+        stats.onLoaded(5_000_000L);
+        stats.onLoadFailed();
+
+        NodeQuerqyStats.Rewriter nodeStats = stats.toNodeStats();
+        assertEquals(3L, nodeStats.getVersion());
+        assertEquals(2048L, nodeStats.getHeapEstimateBytes());
+        assertEquals(1L, nodeStats.getLoads());
+        assertEquals(1L, nodeStats.getCompilations());
+
+        stats.onUnloaded();
+        nodeStats = stats.toNodeStats();
+        assertEquals(0L, nodeStats.getHeapEstimateBytes());
+    }
+
+    @Test
+    public void testThatLoadFailuresDontCreateRewriterStats() {
+        final QuerqyStats stats = new QuerqyStats();
+        stats.onRewriterLoadFailed("unknown");
+        assertNull(stats.getRewriter("unknown"));
+        assertTrue(stats.getRewriterStats(Collections.emptyList()).isEmpty());
+        assertEquals(1L, stats.getRewriterLoadFailures());
+
+        stats.rewriter("r1").onLoaded(1_000L);
+        stats.onRewriterLoadFailed("r1");
+        assertEquals(1L, stats.getRewriterStats(Collections.emptyList()).size());
+        assertEquals(2L, stats.getRewriterLoadFailures());
+    }
+
+    @Test
+    public void testThatRewriterStatsAreRemoved() {
+        final QuerqyStats stats = new QuerqyStats();
+        stats.rewriter("r1");
+        stats.rewriter("r2");
+        stats.removeRewriter("r1");
+        assertNull(stats.getRewriter("r1"));
+        assertNotNull(stats.getRewriter("r2"));
+        stats.removeRewriters();
+        assertTrue(stats.getRewriterStats(Collections.emptyList()).isEmpty());
+    }
+
+    private static RewriterFactory factory(final QueryRewriter rewriter) {
+        return new RewriterFactory("r1") {
+            @Override
+            public QueryRewriter createRewriter(final ExpandedQuery input,
+                                                final SearchEngineRequestAdapter searchEngineRequestAdapter) {
+                return rewriter;
+            }
+
+            @Override
+            public Set<Term> getGenerableTerms() {
+                return Collections.emptySet();
+            }
+        };
+    }
+}